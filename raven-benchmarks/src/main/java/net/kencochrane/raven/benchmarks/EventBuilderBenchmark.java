@@ -0,0 +1,37 @@
+package net.kencochrane.raven.benchmarks;
+
+import net.kencochrane.raven.event.Event;
+import net.kencochrane.raven.event.EventBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Finalisation of an event by {@link EventBuilder#build()}.
+ * <p>
+ * A builder can only be built once, a new one is prepared before each invocation, outside of the measurement.
+ */
+@State(Scope.Thread)
+public class EventBuilderBenchmark {
+    private EventBuilder eventBuilder;
+
+    /**
+     * Prepares the builder of the next invocation.
+     */
+    @Setup(Level.Invocation)
+    public void setUp() {
+        eventBuilder = EventFixtures.eventBuilder(EventFixtures.SHALLOW_STACK_DEPTH);
+    }
+
+    /**
+     * Builds the event.
+     *
+     * @return the event, consumed by JMH.
+     */
+    @Benchmark
+    public Event build() {
+        return eventBuilder.build();
+    }
+}
@@ -0,0 +1,190 @@
+package net.kencochrane.raven.benchmarks;
+
+import net.kencochrane.raven.event.Event;
+import net.kencochrane.raven.event.EventBuilder;
+import net.kencochrane.raven.event.interfaces.ExceptionInterface;
+import net.kencochrane.raven.event.interfaces.HttpInterface;
+import net.kencochrane.raven.event.interfaces.MessageInterface;
+import net.kencochrane.raven.event.interfaces.StackTraceInterface;
+
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Realistic events and interfaces shared by the benchmarks.
+ * <p>
+ * The events look like those sent by a web application: a formatted log message, an exception thrown a few dozen
+ * frames deep in a framework (or a few hundred with a recursive call), the MDC and the current HTTP request.
+ */
+public final class EventFixtures {
+    /**
+     * Depth of the stack of a typical exception thrown by a web application.
+     */
+    public static final int SHALLOW_STACK_DEPTH = 40;
+    /**
+     * Depth of the stack of an exception thrown from a recursive call.
+     */
+    public static final int DEEP_STACK_DEPTH = 400;
+    private static final int METHODS_PER_CLASS = 7;
+    private static final int FIRST_LINE_NUMBER = 30;
+    private static final int SERVER_PORT = 443;
+    private static final int LOCAL_PORT = 8443;
+    private static final String[] FRAMEWORK_CLASSES = {
+            "org.eclipse.jetty.server.handler.HandlerWrapper",
+            "org.springframework.web.servlet.FrameworkServlet",
+            "org.springframework.web.servlet.DispatcherServlet",
+            "org.hibernate.internal.SessionImpl",
+            "com.example.shop.web.CheckoutController",
+            "com.example.shop.service.OrderService",
+            "sun.reflect.NativeMethodAccessorImpl",
+            "java.lang.reflect.Method"};
+
+    private EventFixtures() {
+    }
+
+    /**
+     * Creates a stack trace made of framework and application frames.
+     *
+     * @param depth number of frames.
+     * @return a realistic stack trace.
+     */
+    public static StackTraceElement[] stackTrace(int depth) {
+        StackTraceElement[] stackTrace = new StackTraceElement[depth];
+        for (int i = 0; i < depth; i++) {
+            String className = FRAMEWORK_CLASSES[i % FRAMEWORK_CLASSES.length];
+            String fileName = className.substring(className.lastIndexOf('.') + 1) + ".java";
+            stackTrace[i] = new StackTraceElement(className, "handle" + (i % METHODS_PER_CLASS), fileName,
+                    FIRST_LINE_NUMBER + i);
+        }
+        return stackTrace;
+    }
+
+    /**
+     * Creates an exception caused by another one, sharing the bottom of their stack traces.
+     *
+     * @param depth depth of the stack traces.
+     * @return an exception with a cause.
+     */
+    public static Throwable exception(int depth) {
+        StackTraceElement[] stackTrace = stackTrace(depth);
+        IllegalStateException cause = new IllegalStateException("Connection refused: db.example.com:5432");
+        cause.setStackTrace(stackTrace);
+        RuntimeException exception = new RuntimeException("Couldn't process the order 21837", cause);
+        exception.setStackTrace(Arrays.copyOfRange(stackTrace, 2, depth));
+        return exception;
+    }
+
+    /**
+     * Creates the HTTP request of a logged-in user submitting a form.
+     *
+     * @return a request which can be captured by an {@link HttpInterface}.
+     */
+    public static HttpServletRequest httpServletRequest() {
+        final Map<String, List<String>> headers = new LinkedHashMap<String, List<String>>();
+        headers.put("Host", Collections.singletonList("shop.example.com"));
+        headers.put("User-Agent", Collections.singletonList(
+                "Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/38.0.2125.104"));
+        headers.put("Accept", Arrays.asList("text/html", "application/xhtml+xml", "application/xml;q=0.9"));
+        headers.put("Accept-Language", Collections.singletonList("en-GB,en;q=0.8,fr;q=0.6"));
+        headers.put("Referer", Collections.singletonList("https://shop.example.com/cart"));
+        headers.put("Content-Type", Collections.singletonList("application/x-www-form-urlencoded"));
+        headers.put("X-Forwarded-For", Arrays.asList("203.0.113.7", "10.0.0.12"));
+        final Map<String, String[]> parameters = new LinkedHashMap<String, String[]>();
+        parameters.put("item", new String[]{"4412", "9134", "1207"});
+        parameters.put("coupon", new String[]{"AUTUMN14"});
+        parameters.put("shipping", new String[]{"express"});
+        final Cookie[] cookies = {new Cookie("JSESSIONID", "2C4B19B0A8D12A9C8F1C3E8A4F6B1D27"),
+                new Cookie("locale", "en_GB")};
+        final Map<String, Object> values = new HashMap<String, Object>();
+        values.put("getRequestURL", new StringBuffer("https://shop.example.com/checkout"));
+        values.put("getMethod", "POST");
+        values.put("getQueryString", "step=payment");
+        values.put("getRemoteAddr", "10.0.0.12");
+        values.put("getServerName", "shop.example.com");
+        values.put("getServerPort", SERVER_PORT);
+        values.put("getLocalAddr", "10.0.1.5");
+        values.put("getLocalName", "web-3");
+        values.put("getLocalPort", LOCAL_PORT);
+        values.put("getProtocol", "HTTP/1.1");
+        values.put("isSecure", true);
+        values.put("isAsyncStarted", false);
+        values.put("getRemoteUser", "jdoe");
+
+        return (HttpServletRequest) Proxy.newProxyInstance(EventFixtures.class.getClassLoader(),
+                new Class<?>[]{HttpServletRequest.class}, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        String name = method.getName();
+                        if ("getHeaderNames".equals(name))
+                            return Collections.enumeration(headers.keySet());
+                        if ("getHeaders".equals(name)) {
+                            List<String> headerValues = headers.get(args[0]);
+                            return Collections.enumeration(headerValues != null
+                                    ? headerValues : Collections.<String>emptyList());
+                        }
+                        if ("getParameterMap".equals(name))
+                            return parameters;
+                        if ("getParameterValues".equals(name))
+                            return parameters.get(args[0]);
+                        if ("getCookies".equals(name))
+                            return cookies.clone();
+                        return values.get(name);
+                    }
+                });
+    }
+
+    /**
+     * Creates a builder for a logged exception, holding every interface supported by Raven.
+     *
+     * @param depth depth of the stack trace of the exception.
+     * @return a builder ready to be built.
+     */
+    public static EventBuilder eventBuilder(int depth) {
+        Throwable exception = exception(depth);
+        return new EventBuilder()
+                .setMessage("Couldn't process the order 21837 for the user jdoe")
+                .setLevel(Event.Level.ERROR)
+                .setLogger("com.example.shop.service.OrderService")
+                .setServerName("web-3")
+                .setCulprit(exception.getStackTrace()[0])
+                .addTag("environment", "production")
+                .addTag("release", "2.14.1")
+                .addExtra("thread", "qtp1146147158-27")
+                .addExtra("requestId", "f0b3c4a2-8d8e-4c8b-9b1e-5b0a6f7c2d11")
+                .addExtra("user", "jdoe")
+                .addSentryInterface(new MessageInterface("Couldn't process the order %s for the user %s",
+                        "21837", "jdoe"))
+                .addSentryInterface(new ExceptionInterface(exception))
+                .addSentryInterface(new HttpInterface(httpServletRequest()));
+    }
+
+    /**
+     * Creates a built event for a logged exception.
+     *
+     * @param depth depth of the stack trace of the exception.
+     * @return an event holding every interface supported by Raven.
+     */
+    public static Event event(int depth) {
+        return eventBuilder(depth).build();
+    }
+
+    /**
+     * Creates the stack trace interface of an exception caused by another one.
+     *
+     * @param depth depth of the stack traces.
+     * @return the stack trace interface of the enclosing exception.
+     */
+    public static StackTraceInterface stackTraceInterface(int depth) {
+        Throwable exception = exception(depth);
+        return new StackTraceInterface(exception.getStackTrace(), exception.getCause().getStackTrace());
+    }
+}
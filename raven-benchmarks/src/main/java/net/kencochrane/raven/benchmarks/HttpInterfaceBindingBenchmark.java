@@ -0,0 +1,34 @@
+package net.kencochrane.raven.benchmarks;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.google.common.io.ByteStreams;
+import net.kencochrane.raven.event.interfaces.HttpInterface;
+import net.kencochrane.raven.marshaller.json.HttpInterfaceBinding;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+
+/**
+ * Serialisation of a captured HTTP request.
+ */
+@State(Scope.Thread)
+public class HttpInterfaceBindingBenchmark {
+    private final JsonFactory jsonFactory = new JsonFactory();
+    private final HttpInterfaceBinding binding = new HttpInterfaceBinding();
+    private final HttpInterface httpInterface = new HttpInterface(EventFixtures.httpServletRequest());
+
+    /**
+     * Serialises the HTTP request.
+     *
+     * @throws IOException never.
+     */
+    @Benchmark
+    public void writeInterface() throws IOException {
+        JsonGenerator generator = jsonFactory.createGenerator(ByteStreams.nullOutputStream());
+        binding.writeInterface(generator, httpInterface);
+        generator.close();
+    }
+}
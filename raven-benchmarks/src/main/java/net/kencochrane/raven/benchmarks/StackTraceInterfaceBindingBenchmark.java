@@ -0,0 +1,50 @@
+package net.kencochrane.raven.benchmarks;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.google.common.io.ByteStreams;
+import net.kencochrane.raven.event.interfaces.StackTraceInterface;
+import net.kencochrane.raven.marshaller.json.StackTraceInterfaceBinding;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Serialisation of the stack trace of an exception, on shallow and deep traces.
+ */
+@State(Scope.Thread)
+public class StackTraceInterfaceBindingBenchmark {
+    @Param({ "40", "400" })
+    private int stackDepth;
+    private final JsonFactory jsonFactory = new JsonFactory();
+    private StackTraceInterfaceBinding binding;
+    private StackTraceInterface stackTraceInterface;
+
+    /**
+     * Creates a binding hiding the frames in common with the enclosing exception.
+     */
+    @Setup
+    public void setUp() {
+        binding = new StackTraceInterfaceBinding();
+        binding.setRemoveCommonFramesWithEnclosing(true);
+        binding.setNotInAppFrames(Arrays.asList("java.", "sun.", "org.eclipse.jetty.", "org.springframework."));
+        stackTraceInterface = EventFixtures.stackTraceInterface(stackDepth);
+    }
+
+    /**
+     * Serialises the stack trace.
+     *
+     * @throws IOException never.
+     */
+    @Benchmark
+    public void writeInterface() throws IOException {
+        JsonGenerator generator = jsonFactory.createGenerator(ByteStreams.nullOutputStream());
+        binding.writeInterface(generator, stackTraceInterface);
+        generator.close();
+    }
+}
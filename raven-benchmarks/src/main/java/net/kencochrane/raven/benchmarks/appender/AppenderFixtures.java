@@ -0,0 +1,85 @@
+package net.kencochrane.raven.benchmarks.appender;
+
+import net.kencochrane.raven.Raven;
+import net.kencochrane.raven.benchmarks.EventFixtures;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Logging events shared by the appender benchmarks, so that each framework is given the same work.
+ */
+public final class AppenderFixtures {
+    /**
+     * Name of the logger.
+     */
+    public static final String LOGGER_NAME = "com.example.shop.service.OrderService";
+    /**
+     * Message logged without parameters.
+     */
+    public static final String MESSAGE = "Couldn't process the order 21837 for the user jdoe";
+    /**
+     * Message logged with {@link #PARAMETERS}, in the format of slf4j and log4j 2.
+     */
+    public static final String PARAMETERISED_MESSAGE = "Couldn't process the order {} for the user {}";
+    /**
+     * Message logged with {@link #PARAMETERS}, in the format of {@link java.text.MessageFormat} used by JUL.
+     */
+    public static final String JUL_PARAMETERISED_MESSAGE = "Couldn''t process the order {0} for the user {1}";
+    /**
+     * Name of the thread logging the events.
+     */
+    public static final String THREAD_NAME = "qtp1146147158-27";
+    private static final int MDC_SIZE = 20;
+    private static final Object[] PARAMETERS = {"21837", "jdoe"};
+
+    private AppenderFixtures() {
+    }
+
+    /**
+     * Gets the parameters of {@link #PARAMETERISED_MESSAGE}.
+     *
+     * @return a new array of parameters, which can be modified by the logging framework.
+     */
+    public static Object[] parameters() {
+        return PARAMETERS.clone();
+    }
+
+    /**
+     * Creates the exception logged in the {@link Scenario#EXCEPTION} scenario.
+     *
+     * @return an exception with a cause, thrown a few dozen frames deep.
+     */
+    public static Throwable exception() {
+        return EventFixtures.exception(EventFixtures.SHALLOW_STACK_DEPTH);
+    }
+
+    /**
+     * Creates the MDC of the {@link Scenario#MDC} scenario.
+     *
+     * @return an immutable MDC made of twenty entries.
+     */
+    public static Map<String, String> mdc() {
+        Map<String, String> mdc = new LinkedHashMap<String, String>();
+        mdc.put("requestId", "f0b3c4a2-8d8e-4c8b-9b1e-5b0a6f7c2d11");
+        mdc.put("user", "jdoe");
+        mdc.put("session", "2C4B19B0A8D12A9C8F1C3E8A4F6B1D27");
+        mdc.put("remoteAddr", "203.0.113.7");
+        for (int i = mdc.size(); i < MDC_SIZE; i++) {
+            mdc.put("attribute" + i, "value of the attribute " + i);
+        }
+        return Collections.unmodifiableMap(mdc);
+    }
+
+    /**
+     * Creates a synchronous Raven instance without any builder helper, sending its events nowhere.
+     *
+     * @return a Raven instance for the appenders.
+     */
+    public static Raven raven() {
+        Raven raven = new Raven();
+        raven.setConnection(new NoopConnection());
+        return raven;
+    }
+}
@@ -0,0 +1,65 @@
+package net.kencochrane.raven.benchmarks.appender;
+
+import net.kencochrane.raven.jul.SentryHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+/**
+ * Time spent by the logging thread in the {@link SentryHandler} of {@code java.util.logging}, the events being
+ * dropped by a {@link NoopConnection}.
+ * <p>
+ * A new record is created for each invocation, as JUL would, since the records cache the source computed by the
+ * handler. JUL doesn't have an MDC, hence the lack of {@link Scenario#MDC} scenario.
+ */
+@State(Scope.Thread)
+public class JulHandlerBenchmark {
+    @Param({ "MESSAGE", "PARAMETERISED", "EXCEPTION" })
+    private Scenario scenario;
+    private SentryHandler handler;
+    private String message;
+    private Object[] parameters;
+    private Throwable exception;
+
+    /**
+     * Creates the handler and prepares the content of the records.
+     */
+    @Setup
+    public void setUp() {
+        handler = new SentryHandler(AppenderFixtures.raven());
+
+        message = scenario == Scenario.PARAMETERISED
+                ? AppenderFixtures.JUL_PARAMETERISED_MESSAGE : AppenderFixtures.MESSAGE;
+        parameters = scenario == Scenario.PARAMETERISED ? AppenderFixtures.parameters() : null;
+        exception = scenario == Scenario.EXCEPTION ? AppenderFixtures.exception() : null;
+    }
+
+    /**
+     * Closes the handler.
+     */
+    @TearDown
+    public void tearDown() {
+        handler.close();
+    }
+
+    /**
+     * Sends a record to the handler.
+     *
+     * @return the record, consumed by JMH.
+     */
+    @Benchmark
+    public LogRecord publish() {
+        LogRecord record = new LogRecord(Level.SEVERE, message);
+        record.setLoggerName(AppenderFixtures.LOGGER_NAME);
+        record.setParameters(parameters);
+        record.setThrown(exception);
+        handler.publish(record);
+        return record;
+    }
+}
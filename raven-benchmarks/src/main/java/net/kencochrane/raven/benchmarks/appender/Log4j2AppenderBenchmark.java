@@ -0,0 +1,73 @@
+package net.kencochrane.raven.benchmarks.appender;
+
+import net.kencochrane.raven.log4j2.SentryAppender;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.ThreadContext;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.message.Message;
+import org.apache.logging.log4j.message.ParameterizedMessage;
+import org.apache.logging.log4j.message.SimpleMessage;
+import org.apache.logging.log4j.spi.AbstractLogger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.Map;
+
+/**
+ * Time spent by the logging thread in the log4j 2 {@link SentryAppender}, the events being dropped by a
+ * {@link NoopConnection}.
+ * <p>
+ * A new logging event is created for each invocation, as log4j 2 would, since the events cache the location computed
+ * by the appender.
+ */
+@State(Scope.Thread)
+public class Log4j2AppenderBenchmark {
+    private static final String FQCN = AbstractLogger.class.getName();
+    @Param({ "MESSAGE", "PARAMETERISED", "EXCEPTION", "MDC" })
+    private Scenario scenario;
+    private SentryAppender appender;
+    private Throwable exception;
+    private Map<String, String> mdc;
+
+    /**
+     * Starts the appender and prepares the content of the logging events.
+     */
+    @Setup
+    public void setUp() {
+        appender = new SentryAppender(AppenderFixtures.raven());
+        appender.start();
+
+        exception = scenario == Scenario.EXCEPTION ? AppenderFixtures.exception() : null;
+        mdc = scenario == Scenario.MDC ? AppenderFixtures.mdc() : ThreadContext.EMPTY_MAP;
+    }
+
+    /**
+     * Stops the appender.
+     */
+    @TearDown
+    public void tearDown() {
+        appender.stop();
+    }
+
+    /**
+     * Sends a logging event to the appender.
+     *
+     * @return the logging event, consumed by JMH.
+     */
+    @Benchmark
+    public LogEvent append() {
+        Message message = scenario == Scenario.PARAMETERISED
+                ? new ParameterizedMessage(AppenderFixtures.PARAMETERISED_MESSAGE, AppenderFixtures.parameters())
+                : new SimpleMessage(AppenderFixtures.MESSAGE);
+        LogEvent logEvent = new Log4jLogEvent(AppenderFixtures.LOGGER_NAME, null, FQCN, Level.ERROR, message,
+                exception, mdc, ThreadContext.EMPTY_STACK, AppenderFixtures.THREAD_NAME, null,
+                System.currentTimeMillis());
+        appender.append(logEvent);
+        return logEvent;
+    }
+}
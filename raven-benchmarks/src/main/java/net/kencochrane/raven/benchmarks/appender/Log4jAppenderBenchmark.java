@@ -0,0 +1,71 @@
+package net.kencochrane.raven.benchmarks.appender;
+
+import net.kencochrane.raven.log4j.SentryAppender;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.MDC;
+import org.apache.log4j.spi.LoggingEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.Map;
+
+/**
+ * Time spent by the logging thread in the log4j {@link SentryAppender}, the events being dropped by a
+ * {@link NoopConnection}.
+ * <p>
+ * A new logging event is created for each invocation, as log4j would, since the events cache the location and the
+ * copy of the MDC computed by the appender. Log4j doesn't support parameterised messages, hence the lack of
+ * {@link Scenario#PARAMETERISED} scenario.
+ */
+@State(Scope.Thread)
+public class Log4jAppenderBenchmark {
+    private static final String FQCN = Logger.class.getName();
+    @Param({ "MESSAGE", "EXCEPTION", "MDC" })
+    private Scenario scenario;
+    private SentryAppender appender;
+    private Logger logger;
+    private Throwable exception;
+
+    /**
+     * Creates the appender and fills the MDC of the benchmark thread.
+     */
+    @Setup
+    public void setUp() {
+        logger = Logger.getLogger(AppenderFixtures.LOGGER_NAME);
+        appender = new SentryAppender(AppenderFixtures.raven());
+        appender.activateOptions();
+
+        exception = scenario == Scenario.EXCEPTION ? AppenderFixtures.exception() : null;
+        if (scenario == Scenario.MDC) {
+            for (Map.Entry<String, String> mdcEntry : AppenderFixtures.mdc().entrySet()) {
+                MDC.put(mdcEntry.getKey(), mdcEntry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Closes the appender and clears the MDC of the benchmark thread.
+     */
+    @TearDown
+    public void tearDown() {
+        appender.close();
+        MDC.clear();
+    }
+
+    /**
+     * Sends a logging event to the appender.
+     *
+     * @return the logging event, consumed by JMH.
+     */
+    @Benchmark
+    public LoggingEvent append() {
+        LoggingEvent loggingEvent = new LoggingEvent(FQCN, logger, Level.ERROR, AppenderFixtures.MESSAGE, exception);
+        appender.doAppend(loggingEvent);
+        return loggingEvent;
+    }
+}
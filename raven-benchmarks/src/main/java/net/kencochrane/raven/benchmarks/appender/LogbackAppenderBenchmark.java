@@ -0,0 +1,76 @@
+package net.kencochrane.raven.benchmarks.appender;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import net.kencochrane.raven.logback.SentryAppender;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Time spent by the logging thread in the logback {@link SentryAppender}, the events being dropped by a
+ * {@link NoopConnection}.
+ * <p>
+ * A new logging event is created for each invocation, as logback would, since the events cache the formatted message
+ * and the caller data computed by the appender.
+ */
+@State(Scope.Thread)
+public class LogbackAppenderBenchmark {
+    private static final String FQCN = Logger.class.getName();
+    @Param({ "MESSAGE", "PARAMETERISED", "EXCEPTION", "MDC" })
+    private Scenario scenario;
+    private SentryAppender appender;
+    private Logger logger;
+    private String message;
+    private Object[] parameters;
+    private Throwable exception;
+    private Map<String, String> mdc;
+
+    /**
+     * Starts the appender and prepares the content of the logging events.
+     */
+    @Setup
+    public void setUp() {
+        LoggerContext loggerContext = new LoggerContext();
+        logger = loggerContext.getLogger(AppenderFixtures.LOGGER_NAME);
+        appender = new SentryAppender(AppenderFixtures.raven());
+        appender.setContext(loggerContext);
+        appender.start();
+
+        message = scenario == Scenario.PARAMETERISED
+                ? AppenderFixtures.PARAMETERISED_MESSAGE : AppenderFixtures.MESSAGE;
+        parameters = scenario == Scenario.PARAMETERISED ? AppenderFixtures.parameters() : null;
+        exception = scenario == Scenario.EXCEPTION ? AppenderFixtures.exception() : null;
+        mdc = scenario == Scenario.MDC ? AppenderFixtures.mdc() : Collections.<String, String>emptyMap();
+    }
+
+    /**
+     * Stops the appender.
+     */
+    @TearDown
+    public void tearDown() {
+        appender.stop();
+    }
+
+    /**
+     * Sends a logging event to the appender.
+     *
+     * @return the logging event, consumed by JMH.
+     */
+    @Benchmark
+    public LoggingEvent append() {
+        LoggingEvent loggingEvent = new LoggingEvent(FQCN, logger, Level.ERROR, message, exception, parameters);
+        loggingEvent.setThreadName(AppenderFixtures.THREAD_NAME);
+        loggingEvent.setMDCPropertyMap(mdc);
+        appender.doAppend(loggingEvent);
+        return loggingEvent;
+    }
+}
@@ -0,0 +1,32 @@
+package net.kencochrane.raven.benchmarks.appender;
+
+import net.kencochrane.raven.connection.Connection;
+import net.kencochrane.raven.event.Event;
+
+/**
+ * Connection dropping the events, leaving only the cost of capturing them.
+ * <p>
+ * The last event is kept so the JIT compiler can't treat it as dead code.
+ */
+public final class NoopConnection implements Connection {
+    private volatile Event lastEvent;
+
+    @Override
+    public void send(Event event) {
+        lastEvent = event;
+    }
+
+    /**
+     * Gets the last event sent through this connection.
+     *
+     * @return the last event, or {@code null} if no event has been sent yet.
+     */
+    public Event getLastEvent() {
+        return lastEvent;
+    }
+
+    @Override
+    public void close() {
+        lastEvent = null;
+    }
+}
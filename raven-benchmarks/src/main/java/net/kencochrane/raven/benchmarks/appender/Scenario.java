@@ -0,0 +1,23 @@
+package net.kencochrane.raven.benchmarks.appender;
+
+/**
+ * Kinds of logging events sent to the appenders.
+ */
+public enum Scenario {
+    /**
+     * Plain message without parameters.
+     */
+    MESSAGE,
+    /**
+     * Message with parameters, formatted by the logging framework.
+     */
+    PARAMETERISED,
+    /**
+     * Plain message along with an exception caused by another one.
+     */
+    EXCEPTION,
+    /**
+     * Plain message logged with a large MDC.
+     */
+    MDC
+}
@@ -0,0 +1,166 @@
+package net.kencochrane.raven.benchmarks.loadtest;
+
+import net.kencochrane.raven.Raven;
+import net.kencochrane.raven.RavenFactory;
+import net.kencochrane.raven.dsn.Dsn;
+import net.kencochrane.raven.event.Event;
+import net.kencochrane.raven.event.EventBuilder;
+import net.kencochrane.raven.event.interfaces.ExceptionInterface;
+import net.kencochrane.raven.event.interfaces.MessageInterface;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end load test sending events to a local Sentry stub through each transport.
+ * <p>
+ * Each scenario creates a {@link Raven} instance from a DSN pointing to the stub, then a number of producer threads
+ * send events as fast as they can. The following measures are reported:
+ * <ul>
+ * <li>the rate at which the producers managed to send the events,</li>
+ * <li>the 50th, 99th and 99.9th percentiles of the time spent in {@link Raven#sendEvent(Event)},</li>
+ * <li>the number of events which never reached the stub (discarded by the asynchronous connection or lost by
+ * UDP),</li>
+ * <li>the rate at which the stub received the events.</li>
+ * </ul>
+ * Usage: {@code LoadTest [producers] [eventsPerProducer] [httpPort] [udpPort]}, everything runs on the local host.
+ */
+public final class LoadTest {
+    private static final int PRODUCERS_ARGUMENT = 0;
+    private static final int EVENTS_PER_PRODUCER_ARGUMENT = 1;
+    private static final int HTTP_PORT_ARGUMENT = 2;
+    private static final int UDP_PORT_ARGUMENT = 3;
+    private static final int DEFAULT_PRODUCERS = 4;
+    private static final int DEFAULT_EVENTS_PER_PRODUCER = 5000;
+    private static final int DEFAULT_UDP_PORT = 9001;
+    private static final int STACK_DEPTH = 30;
+    /**
+     * Time without any new event received after which the remaining events are considered lost.
+     */
+    private static final long DRAIN_TIMEOUT = TimeUnit.SECONDS.toNanos(2);
+    private static final long DRAIN_POLL_INTERVAL = 10;
+    private static final String[][] SCENARIOS = {
+            {"http", "http", "raven.async=false"},
+            {"udp", "udp", "raven.async=false"},
+            {"async-http", "http", "raven.async=true&raven.async.queuesize=10000"},
+            {"async-udp", "udp", "raven.async=true&raven.async.queuesize=10000"}};
+
+    private LoadTest() {
+    }
+
+    /**
+     * Starts the stub and runs every scenario.
+     *
+     * @param args number of producers, number of events per producer, HTTP port and UDP port, all optional.
+     * @throws Exception if the stub couldn't start or a producer failed.
+     */
+    public static void main(String[] args) throws Exception {
+        int producers = intArgument(args, PRODUCERS_ARGUMENT, DEFAULT_PRODUCERS);
+        int eventsPerProducer = intArgument(args, EVENTS_PER_PRODUCER_ARGUMENT, DEFAULT_EVENTS_PER_PRODUCER);
+        int httpPort = intArgument(args, HTTP_PORT_ARGUMENT, 0);
+        int udpPort = intArgument(args, UDP_PORT_ARGUMENT, DEFAULT_UDP_PORT);
+        // The results are the output of the load test, not log messages
+        //CHECKSTYLE.OFF: RegexpSinglelineJava
+        PrintStream report = System.out;
+        //CHECKSTYLE.ON: RegexpSinglelineJava
+
+        System.setProperty("org.eclipse.jetty.LEVEL", "WARN");
+        SentryStubServer stubServer = new SentryStubServer(httpPort, udpPort);
+        stubServer.start();
+        try {
+            report.println(producers + " producers, " + eventsPerProducer + " events per producer");
+            report.println(LoadTestResult.header());
+            for (String[] scenario : SCENARIOS) {
+                String dsn = stubServer.getDsn(scenario[1], scenario[2]);
+                report.println(runScenario(scenario[0], dsn, stubServer, producers, eventsPerProducer));
+            }
+        } finally {
+            stubServer.stop();
+        }
+    }
+
+    private static int intArgument(String[] args, int index, int defaultValue) {
+        return args.length > index ? Integer.parseInt(args[index]) : defaultValue;
+    }
+
+    private static Event createEvent() {
+        Throwable exception = new IllegalStateException("Couldn't process the order 21837");
+        StackTraceElement[] stackTrace = new StackTraceElement[STACK_DEPTH];
+        for (int i = 0; i < stackTrace.length; i++) {
+            stackTrace[i] = new StackTraceElement("com.example.shop.service.OrderService", "process" + i,
+                    "OrderService.java", i + 1);
+        }
+        exception.setStackTrace(stackTrace);
+        return new EventBuilder()
+                .setMessage("Couldn't process the order 21837 for the user jdoe")
+                .setLevel(Event.Level.ERROR)
+                .setLogger("com.example.shop.service.OrderService")
+                .addTag("environment", "load-test")
+                .addExtra("user", "jdoe")
+                .addSentryInterface(new MessageInterface("Couldn't process the order %s for the user %s",
+                        "21837", "jdoe"))
+                .addSentryInterface(new ExceptionInterface(exception))
+                .build();
+    }
+
+    private static LoadTestResult runScenario(String name, String dsn, SentryStubServer stubServer, int producers,
+                                              int eventsPerProducer) throws Exception {
+        final Raven raven = RavenFactory.ravenInstance(new Dsn(dsn));
+        final Event event = createEvent();
+        final long[][] latencies = new long[producers][eventsPerProducer];
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> producerThreads = new ArrayList<Thread>(producers);
+        for (int i = 0; i < producers; i++) {
+            final long[] producerLatencies = latencies[i];
+            Thread producerThread = new Thread(name + "-producer-" + i) {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    for (int j = 0; j < producerLatencies.length; j++) {
+                        long callStart = System.nanoTime();
+                        raven.sendEvent(event);
+                        producerLatencies[j] = System.nanoTime() - callStart;
+                    }
+                }
+            };
+            producerThread.start();
+            producerThreads.add(producerThread);
+        }
+
+        long initialReceivedEvents = stubServer.getReceivedEventCount();
+        long startTime = System.nanoTime();
+        start.countDown();
+        for (Thread producerThread : producerThreads) {
+            producerThread.join();
+        }
+        long sendingNanos = System.nanoTime() - startTime;
+
+        // Wait until the stub doesn't receive anything anymore
+        long expectedEvents = (long) producers * eventsPerProducer;
+        long receivedEvents = stubServer.getReceivedEventCount() - initialReceivedEvents;
+        long lastReceptionTime = System.nanoTime();
+        while (receivedEvents < expectedEvents && System.nanoTime() - lastReceptionTime < DRAIN_TIMEOUT) {
+            Thread.sleep(DRAIN_POLL_INTERVAL);
+            long currentReceivedEvents = stubServer.getReceivedEventCount() - initialReceivedEvents;
+            if (currentReceivedEvents != receivedEvents) {
+                receivedEvents = currentReceivedEvents;
+                lastReceptionTime = System.nanoTime();
+            }
+        }
+        raven.closeConnection();
+
+        long[] allLatencies = new long[(int) expectedEvents];
+        for (int i = 0; i < producers; i++) {
+            System.arraycopy(latencies[i], 0, allLatencies, i * eventsPerProducer, eventsPerProducer);
+        }
+        return new LoadTestResult(name, allLatencies, sendingNanos, receivedEvents, lastReceptionTime - startTime);
+    }
+}
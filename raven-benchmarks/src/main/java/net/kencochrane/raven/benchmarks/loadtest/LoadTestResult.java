@@ -0,0 +1,76 @@
+package net.kencochrane.raven.benchmarks.loadtest;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures of a load test scenario.
+ */
+public class LoadTestResult {
+    private static final double P50 = 0.50;
+    private static final double P99 = 0.99;
+    private static final double P999 = 0.999;
+    private static final double NANOS_PER_MICRO = TimeUnit.MICROSECONDS.toNanos(1);
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+    private final String scenario;
+    private final long[] sortedLatencies;
+    private final long sendingNanos;
+    private final long receivedEvents;
+    private final long receivingNanos;
+
+    /**
+     * Creates the result of a scenario.
+     *
+     * @param scenario       name of the scenario.
+     * @param latencies      caller-side latency of each call to {@code Raven.sendEvent}, in nanoseconds.
+     * @param sendingNanos   time spent by the producers sending the events.
+     * @param receivedEvents number of events received by the server.
+     * @param receivingNanos time between the first event sent and the last event received.
+     */
+    public LoadTestResult(String scenario, long[] latencies, long sendingNanos, long receivedEvents,
+                          long receivingNanos) {
+        this.scenario = scenario;
+        this.sortedLatencies = latencies.clone();
+        Arrays.sort(this.sortedLatencies);
+        this.sendingNanos = sendingNanos;
+        this.receivedEvents = receivedEvents;
+        this.receivingNanos = receivingNanos;
+    }
+
+    /**
+     * Gets the header of the table of results.
+     *
+     * @return the names of the columns of {@link #toString()}.
+     */
+    public static String header() {
+        return String.format("%-12s %10s %12s %10s %10s %10s %10s %12s",
+                "scenario", "events", "sent/s", "p50 us", "p99 us", "p999 us", "dropped", "received/s");
+    }
+
+    private double percentileMicros(double percentile) {
+        if (sortedLatencies.length == 0)
+            return 0;
+        int index = (int) Math.min(sortedLatencies.length - 1, Math.floor(percentile * sortedLatencies.length));
+        return sortedLatencies[index] / NANOS_PER_MICRO;
+    }
+
+    private static double perSecond(long count, long nanos) {
+        return nanos > 0 ? count * NANOS_PER_SECOND / nanos : 0;
+    }
+
+    public long getSentEvents() {
+        return sortedLatencies.length;
+    }
+
+    public long getDroppedEvents() {
+        return Math.max(0, getSentEvents() - receivedEvents);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%-12s %10d %12.0f %10.1f %10.1f %10.1f %10d %12.0f",
+                scenario, getSentEvents(), perSecond(getSentEvents(), sendingNanos),
+                percentileMicros(P50), percentileMicros(P99), percentileMicros(P999),
+                getDroppedEvents(), perSecond(receivedEvents, receivingNanos));
+    }
+}
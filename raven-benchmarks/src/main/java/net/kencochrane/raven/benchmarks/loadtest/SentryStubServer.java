@@ -0,0 +1,97 @@
+package net.kencochrane.raven.benchmarks.loadtest;
+
+import net.kencochrane.raven.sentrystub.SentryAuthenticationFilter;
+import net.kencochrane.raven.sentrystub.SentryHttpServlet;
+import net.kencochrane.raven.sentrystub.SentryStub;
+import net.kencochrane.raven.sentrystub.SentryUdpContextListener;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.FilterHolder;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+
+import javax.servlet.DispatcherType;
+import java.util.EnumSet;
+
+/**
+ * Sentry stub running in an embedded Jetty server, receiving the events over HTTP and UDP.
+ * <p>
+ * The servlets, filter and listener are those of the {@code sentry-stub} web application, registered by hand as the
+ * embedded server doesn't scan the annotations.
+ */
+public class SentryStubServer {
+    /**
+     * Public key of the user declared in the stub.
+     */
+    public static final String PUBLIC_KEY = "8292bf61d620417282e68a72ae03154a";
+    /**
+     * Secret key of the user declared in the stub.
+     */
+    public static final String SECRET_KEY = "e3908e05ad874b24b7a168992bfa3577";
+    /**
+     * Project of the user declared in the stub.
+     */
+    public static final String PROJECT_ID = "1";
+    private final Server server;
+    private final int udpPort;
+
+    /**
+     * Creates a stub listening on the given ports.
+     *
+     * @param httpPort port of the HTTP server, 0 for any free port.
+     * @param udpPort  port of the UDP socket.
+     */
+    public SentryStubServer(int httpPort, int udpPort) {
+        this.udpPort = udpPort;
+        server = new Server(httpPort);
+        ServletContextHandler context = new ServletContextHandler();
+        context.setContextPath("/");
+        context.setInitParameter("sentryUdpPort", String.valueOf(udpPort));
+        context.addEventListener(new SentryUdpContextListener());
+        context.addServlet(SentryHttpServlet.class, "/api/*");
+        context.addFilter(new FilterHolder(new SentryAuthenticationFilter()), "/api/*",
+                EnumSet.of(DispatcherType.REQUEST));
+        server.setHandler(context);
+    }
+
+    /**
+     * Starts the HTTP server and the UDP socket.
+     *
+     * @throws Exception if the server couldn't start.
+     */
+    public void start() throws Exception {
+        server.start();
+    }
+
+    /**
+     * Stops the HTTP server and the UDP socket.
+     *
+     * @throws Exception if the server couldn't stop.
+     */
+    public void stop() throws Exception {
+        server.stop();
+    }
+
+    /**
+     * Gets the DSN of the stub for a given transport.
+     *
+     * @param protocol protocol of the transport, {@code http} or {@code udp}.
+     * @param options  DSN options, without the leading {@code ?}.
+     * @return the DSN of the stub.
+     */
+    public String getDsn(String protocol, String options) {
+        int port = "udp".equals(protocol) ? udpPort : ((ServerConnector) server.getConnectors()[0]).getLocalPort();
+        return protocol + "://" + PUBLIC_KEY + ":" + SECRET_KEY + "@localhost:" + port + "/" + PROJECT_ID
+                + "?" + options;
+    }
+
+    /**
+     * Gets the number of events received so far, forgetting the events themselves.
+     *
+     * @return the number of events received since the server started.
+     */
+    public long getReceivedEventCount() {
+        SentryStub sentryStub = SentryStub.getInstance();
+        sentryStub.removeEvents();
+        return sentryStub.getReceivedEventCount();
+    }
+}
@@ -3,15 +3,20 @@ package net.kencochrane.raven.log4j;
 import com.google.common.base.Splitter;
 import net.kencochrane.raven.Raven;
 import net.kencochrane.raven.RavenFactory;
+import net.kencochrane.raven.context.RavenContext;
 import net.kencochrane.raven.dsn.Dsn;
 import net.kencochrane.raven.dsn.InvalidDsnException;
 import net.kencochrane.raven.environment.RavenEnvironment;
+import net.kencochrane.raven.event.DeferredEvent;
 import net.kencochrane.raven.event.Event;
 import net.kencochrane.raven.event.EventBuilder;
 import net.kencochrane.raven.event.interfaces.ExceptionInterface;
 import net.kencochrane.raven.event.interfaces.StackTraceInterface;
+import net.kencochrane.raven.filter.KeyFilter;
+import net.kencochrane.raven.filter.LogFilter;
 import org.apache.log4j.AppenderSkeleton;
 import org.apache.log4j.Level;
+import org.apache.log4j.helpers.LogLog;
 import org.apache.log4j.spi.ErrorCode;
 import org.apache.log4j.spi.LocationInfo;
 import org.apache.log4j.spi.LoggingEvent;
@@ -56,6 +61,49 @@ public class SentryAppender extends AppenderSkeleton {
      * Might be empty in which case no tags are sent.
      */
     protected Map<String, String> tags = Collections.emptyMap();
+    /**
+     * Whether the events should be built by the thread sending them rather than by the thread logging them.
+     * <p>
+     * When enabled, only the logging event is captured when it's appended; the Sentry event itself is built
+     * (and the builder helpers are run) later on, by the asynchronous connection if there is one.
+     */
+    protected boolean deferredBuilding;
+    /**
+     * Maximum number of frames kept in the StackTrace of each exception.
+     * <p>
+     * Deeper StackTraces keep their most recent and oldest frames, the frames in the middle are omitted.
+     * Unlimited by default ({@link StackTraceInterface#UNLIMITED_FRAMES}).
+     */
+    protected int maxFrames = StackTraceInterface.UNLIMITED_FRAMES;
+    /**
+     * Filter selecting the keys of the contexts (such as the MDC) captured as extras.
+     * <p>
+     * Built from {@link #contextIncludes} and {@link #contextExcludes}.
+     */
+    protected KeyFilter contextFilter = KeyFilter.ACCEPT_ALL;
+    /**
+     * Keys of the contexts captured as extras, separated by a comma (every key if not set).
+     */
+    protected String contextIncludes;
+    /**
+     * Keys of the contexts never captured as extras, separated by a comma.
+     */
+    protected String contextExcludes;
+    /**
+     * Filter applied to the logging events before any other processing.
+     * <p>
+     * Built from {@link #minLevel} and {@link #loggerLevels}.
+     */
+    protected LogFilter logFilter = LogFilter.ACCEPT_ALL;
+    /**
+     * Minimum level of the logging events sent to Sentry, as a Sentry level name (such as {@code WARNING}).
+     */
+    protected String minLevel;
+    /**
+     * Minimum level of the logging events sent to Sentry for some loggers, by logger prefix
+     * (such as {@code org.hibernate:ERROR,com.foo:INFO}).
+     */
+    protected String loggerLevels;
 
     /**
      * Creates an instance of SentryAppender.
@@ -131,22 +179,47 @@ public class SentryAppender extends AppenderSkeleton {
 
     @Override
     protected void append(LoggingEvent loggingEvent) {
+        if (!isLoggable(loggingEvent))
+            return;
+
         // Do not log the event if the current thread is managed by raven
-        if (RavenEnvironment.isManagingThread())
+        RavenEnvironment.ManagedScope managedScope = RavenEnvironment.enterIfNotManaged();
+        if (managedScope == null)
             return;
 
-        RavenEnvironment.startManagingThread();
         try {
-            Event event = buildEvent(loggingEvent);
-            raven.sendEvent(event);
+            // Sampled out events aren't even built
+            if (!raven.sample())
+                return;
+
+            if (deferredBuilding) {
+                raven.sendSampledEvent(new DeferredLoggingEvent(loggingEvent));
+            } else {
+                Event event = buildEvent(loggingEvent);
+                raven.sendSampledEvent(event);
+            }
         } catch (Exception e) {
             getErrorHandler().error("An exception occurred while creating a new event in Raven", e,
                     ErrorCode.WRITE_FAILURE);
         } finally {
-            RavenEnvironment.stopManagingThread();
+            managedScope.exit();
         }
     }
 
+    /**
+     * Checks whether the logging event is accepted by the {@link #logFilter}.
+     *
+     * @param loggingEvent logging event.
+     * @return true if the logging event should be sent to Sentry.
+     */
+    private boolean isLoggable(LoggingEvent loggingEvent) {
+        if (logFilter.acceptsAll())
+            return true;
+
+        Level level = loggingEvent.getLevel();
+        return logFilter.isLoggable(loggingEvent.getLoggerName(), level != null ? formatLevel(level) : null, null);
+    }
+
     /**
      * Builds an Event based on the logging event.
      *
@@ -163,7 +236,7 @@ public class SentryAppender extends AppenderSkeleton {
 
         if (loggingEvent.getThrowableInformation() != null) {
             Throwable throwable = loggingEvent.getThrowableInformation().getThrowable();
-            eventBuilder.addSentryInterface(new ExceptionInterface(throwable));
+            eventBuilder.addSentryInterface(new ExceptionInterface(throwable, maxFrames));
         } else if (loggingEvent.getLocationInformation().fullInfo != null) {
             LocationInfo location = loggingEvent.getLocationInformation();
             if (!LocationInfo.NA.equals(location.getFileName()) && !LocationInfo.NA.equals(location.getLineNumber())) {
@@ -182,10 +255,10 @@ public class SentryAppender extends AppenderSkeleton {
         if (loggingEvent.getNDC() != null)
             eventBuilder.addExtra(LOG4J_NDC, loggingEvent.getNDC());
 
+        // The properties are an unmodifiable view over the copy of the MDC taken for the logging event
         @SuppressWarnings("unchecked")
         Map<String, Object> properties = (Map<String, Object>) loggingEvent.getProperties();
-        for (Map.Entry<String, Object> mdcEntry : properties.entrySet())
-            eventBuilder.addExtra(mdcEntry.getKey(), mdcEntry.getValue());
+        eventBuilder.addExtraContext(properties, contextFilter);
 
         for (Map.Entry<String, String> tagEntry : tags.entrySet())
             eventBuilder.addTag(tagEntry.getKey(), tagEntry.getValue());
@@ -211,6 +284,69 @@ public class SentryAppender extends AppenderSkeleton {
         this.tags = Splitter.on(",").withKeyValueSeparator(":").split(tags);
     }
 
+    public void setDeferredBuilding(boolean deferredBuilding) {
+        this.deferredBuilding = deferredBuilding;
+    }
+
+    public void setMaxFrames(int maxFrames) {
+        this.maxFrames = maxFrames;
+    }
+
+    /**
+     * Set the keys of the contexts (such as the MDC) captured in the events.
+     *
+     * @param contextIncludes A String of keys separated by commas(,), every key is captured if not set.
+     */
+    public void setContextIncludes(String contextIncludes) {
+        this.contextIncludes = contextIncludes;
+        contextFilter = KeyFilter.parse(contextIncludes, contextExcludes);
+    }
+
+    /**
+     * Set the keys of the contexts (such as the MDC) never captured in the events.
+     *
+     * @param contextExcludes A String of keys separated by commas(,).
+     */
+    public void setContextExcludes(String contextExcludes) {
+        this.contextExcludes = contextExcludes;
+        contextFilter = KeyFilter.parse(contextIncludes, contextExcludes);
+    }
+
+    /**
+     * Set the minimum level of the logging events sent to Sentry.
+     *
+     * @param minLevel name of a Sentry level ({@code DEBUG}, {@code INFO}, {@code WARNING}, {@code ERROR} or
+     *                 {@code FATAL}).
+     */
+    public void setMinLevel(String minLevel) {
+        this.minLevel = minLevel;
+        updateLogFilter();
+    }
+
+    /**
+     * Set the minimum level of the logging events sent to Sentry for some loggers.
+     *
+     * @param loggerLevels A String of logger prefixes and Sentry levels. prefixes/levels are separated by colon(:) and
+     *                     prefixes are separated by commas(,).
+     */
+    public void setLoggerLevels(String loggerLevels) {
+        this.loggerLevels = loggerLevels;
+        updateLogFilter();
+    }
+
+    /**
+     * Rebuilds the {@link #logFilter} after a change of its configuration, keeping the previous filter if a level
+     * is invalid.
+     */
+    private void updateLogFilter() {
+        try {
+            logFilter = LogFilter.parse(minLevel, loggerLevels, null);
+        } catch (IllegalArgumentException e) {
+            LogLog.error("Invalid level in '" + minLevel + "' or '" + loggerLevels + "', the filter is left unchanged",
+                    e);
+        }
+    }
+
     @Override
     public void close() {
         RavenEnvironment.startManagingThread();
@@ -232,4 +368,39 @@ public class SentryAppender extends AppenderSkeleton {
     public boolean requiresLayout() {
         return false;
     }
+
+    /**
+     * Event built from a logging event once it's about to be sent.
+     */
+    private final class DeferredLoggingEvent implements DeferredEvent {
+        private final LoggingEvent loggingEvent;
+        private final RavenContext context;
+
+        /**
+         * Captures the logging event, making sure that the details bound to the current thread are computed.
+         *
+         * @param loggingEvent logging event to capture.
+         */
+        private DeferredLoggingEvent(LoggingEvent loggingEvent) {
+            // Same details as the ones computed by log4j's AsyncAppender
+            loggingEvent.getNDC();
+            loggingEvent.getThreadName();
+            loggingEvent.getMDCCopy();
+            loggingEvent.getLocationInformation();
+            loggingEvent.getRenderedMessage();
+            this.loggingEvent = loggingEvent;
+            this.context = raven.captureContext();
+        }
+
+        @Override
+        public Event build() {
+            // The builder helpers see the context of the thread in which the event was logged
+            RavenContext previousContext = context.attach();
+            try {
+                return buildEvent(loggingEvent);
+            } finally {
+                RavenContext.restore(previousContext);
+            }
+        }
+    }
 }
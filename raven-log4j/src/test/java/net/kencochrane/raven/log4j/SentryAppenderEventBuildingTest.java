@@ -3,9 +3,12 @@ package net.kencochrane.raven.log4j;
 import com.google.common.base.Joiner;
 import mockit.*;
 import net.kencochrane.raven.Raven;
+import net.kencochrane.raven.context.RavenContext;
+import net.kencochrane.raven.event.DeferredEvent;
 import net.kencochrane.raven.event.Event;
 import net.kencochrane.raven.event.EventBuilder;
 import net.kencochrane.raven.event.interfaces.ExceptionInterface;
+import net.kencochrane.raven.event.interfaces.HttpInterface;
 import net.kencochrane.raven.event.interfaces.SentryException;
 import net.kencochrane.raven.event.interfaces.StackTraceInterface;
 import org.apache.log4j.Level;
@@ -17,13 +20,19 @@ import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import static mockit.Deencapsulation.setField;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.arrayWithSize;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
 
 public class SentryAppenderEventBuildingTest {
     @Tested
@@ -36,6 +45,10 @@ public class SentryAppenderEventBuildingTest {
 
     @BeforeMethod
     public void setUp() throws Exception {
+        new NonStrictExpectations() {{
+            mockRaven.sample();
+            result = true;
+        }};
         sentryAppender = new SentryAppender(mockRaven);
         mockUpErrorHandler = new MockUpErrorHandler();
         sentryAppender.setErrorHandler(mockUpErrorHandler.getMockInstance());
@@ -63,7 +76,7 @@ public class SentryAppenderEventBuildingTest {
         new Verifications() {{
             Event event;
             mockRaven.runBuilderHelpers((EventBuilder) any);
-            mockRaven.sendEvent(event = withCapture());
+            mockRaven.sendSampledEvent(event = withCapture());
             assertThat(event.getMessage(), is(message));
             assertThat(event.getLogger(), is(loggerName));
             assertThat(event.getExtra(), Matchers.<String, Object>hasEntry(SentryAppender.THREAD_NAME, threadName));
@@ -89,7 +102,7 @@ public class SentryAppenderEventBuildingTest {
 
         new Verifications() {{
             Event event;
-            mockRaven.sendEvent(event = withCapture());
+            mockRaven.sendSampledEvent(event = withCapture());
             assertThat(event.getLevel(), is(expectedLevel));
         }};
         assertNoErrorsInErrorHandler();
@@ -103,7 +116,7 @@ public class SentryAppenderEventBuildingTest {
 
         new Verifications() {{
             Event event;
-            mockRaven.sendEvent(event = withCapture());
+            mockRaven.sendSampledEvent(event = withCapture());
             ExceptionInterface exceptionInterface = (ExceptionInterface) event.getSentryInterfaces()
                     .get(ExceptionInterface.EXCEPTION_INTERFACE);
             SentryException sentryException = exceptionInterface.getExceptions().getFirst();
@@ -123,12 +136,49 @@ public class SentryAppenderEventBuildingTest {
 
         new Verifications() {{
             Event event;
-            mockRaven.sendEvent(event = withCapture());
+            mockRaven.sendSampledEvent(event = withCapture());
             assertThat(event.getExtra(), Matchers.<String, Object>hasEntry(extraKey, extraValue));
         }};
         assertNoErrorsInErrorHandler();
     }
 
+    @Test
+    public void testMdcKeysFiltered() throws Exception {
+        final Map<String, String> mdc = new HashMap<String, String>();
+        mdc.put("requestId", "0f3b8c6e-2d4a-4b1f-9e7c-5a8d1f2b3c4e");
+        mdc.put("password", "7c2e9a4b-1f6d-4e3a-8b5c-9d0e1f2a3b4c");
+        mdc.put("other", "3a1b2c4d-5e6f-4a7b-8c9d-0e1f2a3b4c5d");
+        sentryAppender.setContextIncludes("requestId,password");
+        sentryAppender.setContextExcludes("password");
+
+        sentryAppender.append(new LoggingEvent(null, mockLogger, 0, Level.ERROR, null, null,
+                null, null, null, mdc));
+
+        new Verifications() {{
+            Event event;
+            mockRaven.sendSampledEvent(event = withCapture());
+            assertThat(event.getExtra(), Matchers.<String, Object>hasEntry("requestId", mdc.get("requestId")));
+            assertThat(event.getExtra().containsKey("password"), is(false));
+            assertThat(event.getExtra().containsKey("other"), is(false));
+        }};
+        assertNoErrorsInErrorHandler();
+    }
+
+    @Test
+    public void testMdcOverridesThreadName() throws Exception {
+        final String threadName = "b6e1d3c2-4a5f-4e8b-9c7d-1a2b3c4d5e6f";
+
+        sentryAppender.append(new LoggingEvent(null, mockLogger, 0, Level.ERROR, null, "thread",
+                null, null, null, Collections.singletonMap(SentryAppender.THREAD_NAME, threadName)));
+
+        new Verifications() {{
+            Event event;
+            mockRaven.sendSampledEvent(event = withCapture());
+            assertThat(event.getExtra(), Matchers.<String, Object>hasEntry(SentryAppender.THREAD_NAME, threadName));
+        }};
+        assertNoErrorsInErrorHandler();
+    }
+
     @Test
     public void testNdcAddedToExtra() throws Exception {
         final String ndcEntries = Joiner.on(' ').join("930580ba-f92f-4893-855b-ac24efa1a6c2",
@@ -139,7 +189,7 @@ public class SentryAppenderEventBuildingTest {
 
         new Verifications() {{
             Event event;
-            mockRaven.sendEvent(event = withCapture());
+            mockRaven.sendSampledEvent(event = withCapture());
             assertThat(event.getExtra(), Matchers.<String, Object>hasEntry(SentryAppender.LOG4J_NDC, ndcEntries));
         }};
         assertNoErrorsInErrorHandler();
@@ -168,7 +218,7 @@ public class SentryAppenderEventBuildingTest {
 
         new Verifications() {{
             Event event;
-            mockRaven.sendEvent(event = withCapture());
+            mockRaven.sendSampledEvent(event = withCapture());
             StackTraceInterface stackTraceInterface = (StackTraceInterface) event.getSentryInterfaces()
                     .get(StackTraceInterface.STACKTRACE_INTERFACE);
             assertThat(stackTraceInterface.getStackTrace(), arrayWithSize(1));
@@ -201,7 +251,7 @@ public class SentryAppenderEventBuildingTest {
 
         new Verifications() {{
             Event event;
-            mockRaven.sendEvent(event = withCapture());
+            mockRaven.sendSampledEvent(event = withCapture());
             assertThat(event.getCulprit(), is("a.b(c:42)"));
         }};
         assertNoErrorsInErrorHandler();
@@ -219,9 +269,118 @@ public class SentryAppenderEventBuildingTest {
 
         new Verifications() {{
             Event event;
-            mockRaven.sendEvent(event = withCapture());
+            mockRaven.sendSampledEvent(event = withCapture());
             assertThat(event.getCulprit(), is(loggerName));
         }};
         assertNoErrorsInErrorHandler();
     }
+
+    @Test
+    public void testDeferredBuilding() throws Exception {
+        final String message = "Deferred message";
+        new NonStrictExpectations() {{
+            mockRaven.captureContext();
+            result = RavenContext.EMPTY;
+        }};
+        sentryAppender.setDeferredBuilding(true);
+
+        sentryAppender.append(new LoggingEvent(null, mockLogger, 0, Level.INFO, message, null));
+
+        final List<DeferredEvent> deferredEvents = new ArrayList<DeferredEvent>();
+        new Verifications() {{
+            mockRaven.runBuilderHelpers((EventBuilder) any);
+            times = 0;
+            mockRaven.sendSampledEvent(withCapture(deferredEvents));
+        }};
+
+        final Event event = deferredEvents.get(0).build();
+        new Verifications() {{
+            mockRaven.runBuilderHelpers((EventBuilder) any);
+            assertThat(event.getMessage(), is(message));
+        }};
+        assertNoErrorsInErrorHandler();
+    }
+
+    @Test
+    public void testDeferredBuildingKeepsCallerContextAndParameters(@Injectable HttpInterface httpInterface)
+            throws Exception {
+        final List<HttpInterface> helperHttpInterfaces = new ArrayList<HttpInterface>();
+        new NonStrictExpectations() {{
+            mockRaven.captureContext();
+            result = new Delegate<RavenContext>() {
+                @SuppressWarnings("unused")
+                public RavenContext captureContext() {
+                    return RavenContext.capture();
+                }
+            };
+            mockRaven.runBuilderHelpers((EventBuilder) any);
+            result = new Delegate<Void>() {
+                @SuppressWarnings("unused")
+                public void runBuilderHelpers(EventBuilder eventBuilder) {
+                    helperHttpInterfaces.add(RavenContext.current().getHttpInterface());
+                }
+            };
+        }};
+        sentryAppender.setDeferredBuilding(true);
+        StringBuilder parameter = new StringBuilder("before");
+
+        RavenContext previousContext = new RavenContext(httpInterface).attach();
+        try {
+            sentryAppender.append(new LoggingEvent(null, mockLogger, 0, Level.INFO, parameter, null));
+        } finally {
+            RavenContext.restore(previousContext);
+        }
+        parameter.replace(0, parameter.length(), "after");
+
+        final List<DeferredEvent> deferredEvents = new ArrayList<DeferredEvent>();
+        new Verifications() {{
+            mockRaven.sendSampledEvent(withCapture(deferredEvents));
+        }};
+        Event event = deferredEvents.get(0).build();
+
+        assertThat(helperHttpInterfaces, contains(httpInterface));
+        assertThat(RavenContext.current().getHttpInterface(), is(nullValue()));
+        assertThat(event.getMessage(), is("before"));
+        assertNoErrorsInErrorHandler();
+    }
+
+    @Test
+    public void testSampledOutEventsAreNotBuilt() throws Exception {
+        new NonStrictExpectations() {{
+            mockRaven.sample();
+            result = false;
+        }};
+
+        sentryAppender.append(new LoggingEvent(null, mockLogger, 0, Level.ERROR, "Sampled out", null));
+
+        new Verifications() {{
+            mockRaven.runBuilderHelpers((EventBuilder) any);
+            times = 0;
+            mockRaven.sendSampledEvent((Event) any);
+            times = 0;
+        }};
+        assertNoErrorsInErrorHandler();
+    }
+
+    @Test
+    public void testEventsFilteredByLevel() throws Exception {
+        sentryAppender.setMinLevel("warning");
+        sentryAppender.setLoggerLevels("com.example.noisy:ERROR");
+        new NonStrictExpectations() {{
+            mockLogger.getName();
+            returns("com.example.Foo", "com.example.noisy.Foo", "com.example.Foo");
+        }};
+
+        sentryAppender.append(new LoggingEvent(null, mockLogger, 0, Level.INFO, null, null));
+        sentryAppender.append(new LoggingEvent(null, mockLogger, 0, Level.WARN, null, null));
+        sentryAppender.append(new LoggingEvent(null, mockLogger, 0, Level.WARN, null, null));
+
+        new Verifications() {{
+            mockRaven.runBuilderHelpers((EventBuilder) any);
+            times = 1;
+            mockRaven.sendSampledEvent((Event) any);
+            times = 1;
+        }};
+        assertNoErrorsInErrorHandler();
+    }
 }
@@ -29,6 +29,10 @@ public class SentryAppenderFailuresTest {
 
     @BeforeMethod
     public void setUp() throws Exception {
+        new NonStrictExpectations() {{
+            mockRaven.sample();
+            result = true;
+        }};
         sentryAppender = new SentryAppender(mockRaven);
         mockUpErrorHandler = new MockUpErrorHandler();
         sentryAppender.setErrorHandler(mockUpErrorHandler.getMockInstance());
@@ -38,7 +42,7 @@ public class SentryAppenderFailuresTest {
     @Test
     public void testRavenFailureDoesNotPropagate() throws Exception {
         new NonStrictExpectations() {{
-            mockRaven.sendEvent((Event) any);
+            mockRaven.sendSampledEvent((Event) any);
             result = new UnsupportedOperationException();
         }};
 
@@ -69,7 +73,7 @@ public class SentryAppenderFailuresTest {
             sentryAppender.append(new LoggingEvent(null, mockLogger, 0, Level.INFO, null, null));
 
             new Verifications() {{
-                mockRaven.sendEvent((Event) any);
+                mockRaven.sendSampledEvent((Event) any);
                 times = 0;
             }};
             assertThat(mockUpErrorHandler.getErrorCount(), is(0));
@@ -3,15 +3,20 @@ package net.kencochrane.raven.log4j2;
 import com.google.common.base.Splitter;
 import net.kencochrane.raven.Raven;
 import net.kencochrane.raven.RavenFactory;
+import net.kencochrane.raven.context.RavenContext;
 import net.kencochrane.raven.dsn.Dsn;
 import net.kencochrane.raven.dsn.InvalidDsnException;
 import net.kencochrane.raven.environment.RavenEnvironment;
+import net.kencochrane.raven.event.DeferredEvent;
 import net.kencochrane.raven.event.Event;
 import net.kencochrane.raven.event.EventBuilder;
 import net.kencochrane.raven.event.interfaces.ExceptionInterface;
 import net.kencochrane.raven.event.interfaces.MessageInterface;
 import net.kencochrane.raven.event.interfaces.StackTraceInterface;
+import net.kencochrane.raven.filter.KeyFilter;
+import net.kencochrane.raven.filter.LogFilter;
 import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.Marker;
 import org.apache.logging.log4j.core.Filter;
 import org.apache.logging.log4j.core.LogEvent;
 import org.apache.logging.log4j.core.appender.AbstractAppender;
@@ -19,6 +24,7 @@ import org.apache.logging.log4j.core.config.plugins.Plugin;
 import org.apache.logging.log4j.core.config.plugins.PluginAttribute;
 import org.apache.logging.log4j.core.config.plugins.PluginElement;
 import org.apache.logging.log4j.core.config.plugins.PluginFactory;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
 import org.apache.logging.log4j.message.Message;
 
 import java.util.*;
@@ -68,6 +74,53 @@ public class SentryAppender extends AbstractAppender {
      * Might be empty in which case no tags are sent.
      */
     protected Map<String, String> tags = Collections.emptyMap();
+    /**
+     * Whether the events should be built by the thread sending them rather than by the thread logging them.
+     * <p>
+     * When enabled, only the logging event is captured when it's appended; the Sentry event itself is built
+     * (and the builder helpers are run) later on, by the asynchronous connection if there is one.
+     */
+    protected boolean deferredBuilding;
+    /**
+     * Maximum number of frames kept in the StackTrace of each exception.
+     * <p>
+     * Deeper StackTraces keep their most recent and oldest frames, the frames in the middle are omitted.
+     * Unlimited by default ({@link StackTraceInterface#UNLIMITED_FRAMES}).
+     */
+    protected int maxFrames = StackTraceInterface.UNLIMITED_FRAMES;
+    /**
+     * Filter selecting the keys of the contexts (such as the MDC) captured as extras.
+     * <p>
+     * Built from {@link #contextIncludes} and {@link #contextExcludes}.
+     */
+    protected KeyFilter contextFilter = KeyFilter.ACCEPT_ALL;
+    /**
+     * Keys of the contexts captured as extras, separated by a comma (every key if not set).
+     */
+    protected String contextIncludes;
+    /**
+     * Keys of the contexts never captured as extras, separated by a comma.
+     */
+    protected String contextExcludes;
+    /**
+     * Filter applied to the logging events before any other processing.
+     * <p>
+     * Built from {@link #minLevel}, {@link #loggerLevels} and {@link #excludedMarkers}.
+     */
+    protected LogFilter logFilter = LogFilter.ACCEPT_ALL;
+    /**
+     * Minimum level of the logging events sent to Sentry, as a Sentry level name (such as {@code WARNING}).
+     */
+    protected String minLevel;
+    /**
+     * Minimum level of the logging events sent to Sentry for some loggers, by logger prefix
+     * (such as {@code org.hibernate:ERROR,com.foo:INFO}).
+     */
+    protected String loggerLevels;
+    /**
+     * Names of the markers for which the logging events aren't sent to Sentry, separated by a comma.
+     */
+    protected String excludedMarkers;
 
     /**
      * Creates an instance of SentryAppender.
@@ -90,14 +143,22 @@ public class SentryAppender extends AbstractAppender {
         super(name, filter, null, true);
     }
 
+    //CHECKSTYLE.OFF: ParameterNumber
     /**
      * Create a Sentry Appender.
      *
-     * @param name         The name of the Appender.
-     * @param dsn          Data Source Name to access the Sentry server.
-     * @param ravenFactory Name of the factory to use to build the {@link Raven} instance.
-     * @param tags         Tags to add to each event.
-     * @param filter       The filter, if any, to use.
+     * @param name             The name of the Appender.
+     * @param dsn              Data Source Name to access the Sentry server.
+     * @param ravenFactory     Name of the factory to use to build the {@link Raven} instance.
+     * @param tags             Tags to add to each event.
+     * @param deferredBuilding Whether the events should be built by the thread sending them.
+     * @param maxFrames        Maximum number of frames kept in the StackTrace of each exception.
+     * @param minLevel         Minimum level of the events sent to Sentry.
+     * @param loggerLevels     Minimum level of the events sent to Sentry, by logger prefix.
+     * @param excludedMarkers  Markers for which the events aren't sent to Sentry.
+     * @param contextIncludes  Keys of the context map captured in the events.
+     * @param contextExcludes  Keys of the context map never captured in the events.
+     * @param filter           The filter, if any, to use.
      * @return The SentryAppender.
      */
     @PluginFactory
@@ -105,6 +166,13 @@ public class SentryAppender extends AbstractAppender {
                                                 @PluginAttribute("dsn") final String dsn,
                                                 @PluginAttribute("ravenFactory") final String ravenFactory,
                                                 @PluginAttribute("tags") final String tags,
+                                                @PluginAttribute("deferredBuilding") final String deferredBuilding,
+                                                @PluginAttribute("maxFrames") final String maxFrames,
+                                                @PluginAttribute("minLevel") final String minLevel,
+                                                @PluginAttribute("loggerLevels") final String loggerLevels,
+                                                @PluginAttribute("excludedMarkers") final String excludedMarkers,
+                                                @PluginAttribute("contextIncludes") final String contextIncludes,
+                                                @PluginAttribute("contextExcludes") final String contextExcludes,
                                                 @PluginElement("filters") final Filter filter) {
 
         if (name == null) {
@@ -117,8 +185,22 @@ public class SentryAppender extends AbstractAppender {
         if (tags != null)
             sentryAppender.setTags(tags);
         sentryAppender.setRavenFactory(ravenFactory);
+        sentryAppender.setDeferredBuilding(Boolean.parseBoolean(deferredBuilding));
+        if (maxFrames != null) {
+            try {
+                sentryAppender.setMaxFrames(Integer.parseInt(maxFrames.trim()));
+            } catch (NumberFormatException e) {
+                LOGGER.error("Invalid maximum number of frames '" + maxFrames + "', every frame is kept", e);
+            }
+        }
+        sentryAppender.setMinLevel(minLevel);
+        sentryAppender.setLoggerLevels(loggerLevels);
+        sentryAppender.setExcludedMarkers(excludedMarkers);
+        sentryAppender.setContextIncludes(contextIncludes);
+        sentryAppender.setContextExcludes(contextExcludes);
         return sentryAppender;
     }
+    //CHECKSTYLE.ON: ParameterNumber
 
     /**
      * Transforms a {@link Level} into an {@link Event.Level}.
@@ -164,22 +246,56 @@ public class SentryAppender extends AbstractAppender {
      */
     @Override
     public void append(LogEvent logEvent) {
+        if (!isLoggable(logEvent))
+            return;
+
         // Do not log the event if the current thread is managed by raven
-        if (RavenEnvironment.isManagingThread())
+        RavenEnvironment.ManagedScope managedScope = RavenEnvironment.enterIfNotManaged();
+        if (managedScope == null)
             return;
 
-        RavenEnvironment.startManagingThread();
         try {
             if (raven == null)
                 initRaven();
 
-            Event event = buildEvent(logEvent);
-            raven.sendEvent(event);
+            // Sampled out events aren't even built
+            if (!raven.sample())
+                return;
+
+            if (deferredBuilding) {
+                raven.sendSampledEvent(new DeferredLogEvent(logEvent));
+            } else {
+                Event event = buildEvent(logEvent);
+                raven.sendSampledEvent(event);
+            }
         } catch (Exception e) {
             error("An exception occurred while creating a new event in Raven", logEvent, e);
         } finally {
-            RavenEnvironment.stopManagingThread();
+            managedScope.exit();
+        }
+    }
+
+    /**
+     * Checks whether the logging event is accepted by the {@link #logFilter}.
+     *
+     * @param logEvent logging event.
+     * @return true if the logging event should be sent to Sentry.
+     */
+    private boolean isLoggable(LogEvent logEvent) {
+        if (logFilter.acceptsAll())
+            return true;
+
+        // The excluded markers are also looked up in the parents of the marker of the event
+        Marker marker = logEvent.getMarker();
+        if (marker != null) {
+            for (String excludedMarker : logFilter.getExcludedMarkers()) {
+                if (marker.isInstanceOf(excludedMarker))
+                    return false;
+            }
         }
+
+        Level level = logEvent.getLevel();
+        return logFilter.isLoggable(logEvent.getLoggerName(), level != null ? formatLevel(level) : null, null);
     }
 
     /**
@@ -205,29 +321,52 @@ public class SentryAppender extends AbstractAppender {
      * @return Event containing details provided by the logging system.
      */
     protected Event buildEvent(LogEvent event) {
-        Message eventMessage = event.getMessage();
+        String formattedMessage = event.getMessage().getFormattedMessage();
+        return buildEvent(event, formattedMessage, createMessageInterface(event.getMessage(), formattedMessage));
+    }
+
+    private static MessageInterface createMessageInterface(Message message, String formattedMessage) {
+        String format = message.getFormat();
+        if (formattedMessage.equals(format))
+            return null;
+        return new MessageInterface(format, formatMessageParameters(message.getParameters()));
+    }
+
+    /**
+     * Builds an Event based on the logging event and its already formatted message.
+     * <p>
+     * Some messages are formatted each time {@link Message#getFormattedMessage()} is called, and their parameters
+     * might be modified by the application once the event is logged. The formatted message and parameters are
+     * obtained once and reused when the event is built.
+     *
+     * @param event            Log generated.
+     * @param formattedMessage Message of the logging event, formatted.
+     * @param messageInterface Message of the logging event along with its parameters formatted as strings, or
+     *                         {@code null} if the message has no parameters.
+     * @return Event containing details provided by the logging system.
+     */
+    protected Event buildEvent(LogEvent event, String formattedMessage, MessageInterface messageInterface) {
         EventBuilder eventBuilder = new EventBuilder()
                 .setTimestamp(new Date(event.getTimeMillis()))
-                .setMessage(eventMessage.getFormattedMessage())
+                .setMessage(formattedMessage)
                 .setLogger(event.getLoggerName())
                 .setLevel(formatLevel(event.getLevel()))
                 .addExtra(THREAD_NAME, event.getThreadName());
 
-        if (!eventMessage.getFormattedMessage().equals(eventMessage.getFormat())) {
-            eventBuilder.addSentryInterface(new MessageInterface(eventMessage.getFormat(),
-                    formatMessageParameters(eventMessage.getParameters())));
-        }
+        if (messageInterface != null)
+            eventBuilder.addSentryInterface(messageInterface);
 
+        // The source is computed from the current stack the first time only
+        StackTraceElement source = event.getSource();
         Throwable throwable = event.getThrown();
         if (throwable != null) {
-            eventBuilder.addSentryInterface(new ExceptionInterface(throwable));
-        } else if (event.getSource() != null) {
-            StackTraceElement[] stackTrace = {event.getSource()};
-            eventBuilder.addSentryInterface(new StackTraceInterface(stackTrace));
+            eventBuilder.addSentryInterface(new ExceptionInterface(throwable, maxFrames));
+        } else if (source != null) {
+            eventBuilder.addSentryInterface(new StackTraceInterface(new StackTraceElement[]{source}));
         }
 
-        if (event.getSource() != null) {
-            eventBuilder.setCulprit(event.getSource());
+        if (source != null) {
+            eventBuilder.setCulprit(source);
         } else {
             eventBuilder.setCulprit(event.getLoggerName());
         }
@@ -235,11 +374,9 @@ public class SentryAppender extends AbstractAppender {
         if (event.getContextStack() != null)
             eventBuilder.addExtra(LOG4J_NDC, event.getContextStack().asList());
 
-        if (event.getContextMap() != null) {
-            for (Map.Entry<String, String> mdcEntry : event.getContextMap().entrySet()) {
-                eventBuilder.addExtra(mdcEntry.getKey(), mdcEntry.getValue());
-            }
-        }
+        // The context map is an immutable snapshot taken when the logging event was created
+        if (event.getContextMap() != null)
+            eventBuilder.addExtraContext(event.getContextMap(), contextFilter);
 
         if (event.getMarker() != null)
             eventBuilder.addTag(LOG4J_MARKER, event.getMarker().getName());
@@ -268,6 +405,79 @@ public class SentryAppender extends AbstractAppender {
         this.tags = Splitter.on(",").withKeyValueSeparator(":").split(tags);
     }
 
+    public void setDeferredBuilding(boolean deferredBuilding) {
+        this.deferredBuilding = deferredBuilding;
+    }
+
+    public void setMaxFrames(int maxFrames) {
+        this.maxFrames = maxFrames;
+    }
+
+    /**
+     * Set the keys of the contexts (such as the MDC) captured in the events.
+     *
+     * @param contextIncludes A String of keys separated by commas(,), every key is captured if not set.
+     */
+    public void setContextIncludes(String contextIncludes) {
+        this.contextIncludes = contextIncludes;
+        contextFilter = KeyFilter.parse(contextIncludes, contextExcludes);
+    }
+
+    /**
+     * Set the keys of the contexts (such as the MDC) never captured in the events.
+     *
+     * @param contextExcludes A String of keys separated by commas(,).
+     */
+    public void setContextExcludes(String contextExcludes) {
+        this.contextExcludes = contextExcludes;
+        contextFilter = KeyFilter.parse(contextIncludes, contextExcludes);
+    }
+
+    /**
+     * Set the minimum level of the logging events sent to Sentry.
+     *
+     * @param minLevel name of a Sentry level ({@code DEBUG}, {@code INFO}, {@code WARNING}, {@code ERROR} or
+     *                 {@code FATAL}).
+     */
+    public void setMinLevel(String minLevel) {
+        this.minLevel = minLevel;
+        updateLogFilter();
+    }
+
+    /**
+     * Set the minimum level of the logging events sent to Sentry for some loggers.
+     *
+     * @param loggerLevels A String of logger prefixes and Sentry levels. prefixes/levels are separated by colon(:) and
+     *                     prefixes are separated by commas(,).
+     */
+    public void setLoggerLevels(String loggerLevels) {
+        this.loggerLevels = loggerLevels;
+        updateLogFilter();
+    }
+
+    /**
+     * Set the markers for which the logging events aren't sent to Sentry.
+     *
+     * @param excludedMarkers A String of marker names separated by commas(,).
+     */
+    public void setExcludedMarkers(String excludedMarkers) {
+        this.excludedMarkers = excludedMarkers;
+        updateLogFilter();
+    }
+
+    /**
+     * Rebuilds the {@link #logFilter} after a change of its configuration, keeping the previous filter if a level
+     * is invalid.
+     */
+    private void updateLogFilter() {
+        try {
+            logFilter = LogFilter.parse(minLevel, loggerLevels, excludedMarkers);
+        } catch (IllegalArgumentException e) {
+            LOGGER.error("Invalid level in '" + minLevel + "' or '" + loggerLevels + "', the filter is left unchanged",
+                    e);
+        }
+    }
+
     @Override
     public void stop() {
         RavenEnvironment.startManagingThread();
@@ -283,4 +493,46 @@ public class SentryAppender extends AbstractAppender {
             RavenEnvironment.stopManagingThread();
         }
     }
+
+    /**
+     * Event built from a logging event once it's about to be sent.
+     */
+    private final class DeferredLogEvent implements DeferredEvent {
+        private final LogEvent logEvent;
+        private final String formattedMessage;
+        private final MessageInterface messageInterface;
+        private final RavenContext context;
+
+        /**
+         * Captures a copy of the logging event, making sure that the details bound to the current thread are
+         * computed.
+         * <p>
+         * The logging event itself can't be kept as some implementations (such as the ones used by the asynchronous
+         * loggers) are reused once the appenders are done with them.
+         *
+         * @param logEvent logging event to capture.
+         */
+        private DeferredLogEvent(LogEvent logEvent) {
+            Message message = logEvent.getMessage();
+            // Freezes the formatted message and parameters, they might change once the logging call returns
+            this.formattedMessage = message.getFormattedMessage();
+            this.messageInterface = createMessageInterface(message, formattedMessage);
+            this.context = raven.captureContext();
+            this.logEvent = Log4jLogEvent.createEvent(logEvent.getLoggerName(), logEvent.getMarker(),
+                    logEvent.getLoggerFqcn(), logEvent.getLevel(), message, logEvent.getThrown(),
+                    logEvent.getThrownProxy(), logEvent.getContextMap(), logEvent.getContextStack(),
+                    logEvent.getThreadName(), logEvent.getSource(), logEvent.getTimeMillis());
+        }
+
+        @Override
+        public Event build() {
+            // The builder helpers see the context of the thread in which the event was logged
+            RavenContext previousContext = context.attach();
+            try {
+                return buildEvent(logEvent, formattedMessage, messageInterface);
+            } finally {
+                RavenContext.restore(previousContext);
+            }
+        }
+    }
 }
@@ -1,20 +1,28 @@
 package net.kencochrane.raven.log4j2;
 
+import mockit.Delegate;
 import mockit.Injectable;
+import mockit.NonStrictExpectations;
 import mockit.Tested;
 import mockit.Verifications;
 import net.kencochrane.raven.Raven;
+import net.kencochrane.raven.context.RavenContext;
+import net.kencochrane.raven.event.DeferredEvent;
 import net.kencochrane.raven.event.Event;
 import net.kencochrane.raven.event.EventBuilder;
 import net.kencochrane.raven.event.interfaces.ExceptionInterface;
+import net.kencochrane.raven.event.interfaces.HttpInterface;
 import net.kencochrane.raven.event.interfaces.MessageInterface;
 import net.kencochrane.raven.event.interfaces.SentryException;
 import net.kencochrane.raven.event.interfaces.StackTraceInterface;
 import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.Marker;
 import org.apache.logging.log4j.MarkerManager;
 import org.apache.logging.log4j.ThreadContext;
 import org.apache.logging.log4j.core.impl.Log4jLogEvent;
 import org.apache.logging.log4j.message.FormattedMessage;
+import org.apache.logging.log4j.message.Message;
+import org.apache.logging.log4j.message.ParameterizedMessage;
 import org.apache.logging.log4j.message.SimpleMessage;
 import org.apache.logging.log4j.spi.DefaultThreadContextStack;
 import org.hamcrest.Matchers;
@@ -22,10 +30,13 @@ import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.*;
@@ -39,6 +50,10 @@ public class SentryAppenderEventBuildingTest {
 
     @BeforeMethod
     public void setUp() throws Exception {
+        new NonStrictExpectations() {{
+            mockRaven.sample();
+            result = true;
+        }};
         sentryAppender = new SentryAppender(mockRaven);
         mockUpErrorHandler = new MockUpErrorHandler();
         sentryAppender.setHandler(mockUpErrorHandler.getMockInstance());
@@ -61,7 +76,7 @@ public class SentryAppenderEventBuildingTest {
         new Verifications() {{
             Event event;
             mockRaven.runBuilderHelpers((EventBuilder) any);
-            mockRaven.sendEvent(event = withCapture());
+            mockRaven.sendSampledEvent(event = withCapture());
             assertThat(event.getMessage(), is(message));
             assertThat(event.getLogger(), is(loggerName));
             assertThat(event.getExtra(), Matchers.<String, Object>hasEntry(SentryAppender.THREAD_NAME, threadName));
@@ -87,7 +102,7 @@ public class SentryAppenderEventBuildingTest {
 
         new Verifications() {{
             Event event;
-            mockRaven.sendEvent(event = withCapture());
+            mockRaven.sendSampledEvent(event = withCapture());
             assertThat(event.getLevel(), is(expectedLevel));
         }};
         assertNoErrorsInErrorHandler();
@@ -101,7 +116,7 @@ public class SentryAppenderEventBuildingTest {
 
         new Verifications() {{
             Event event;
-            mockRaven.sendEvent(event = withCapture());
+            mockRaven.sendSampledEvent(event = withCapture());
             ExceptionInterface exceptionInterface = (ExceptionInterface) event.getSentryInterfaces()
                     .get(ExceptionInterface.EXCEPTION_INTERFACE);
             SentryException sentryException = exceptionInterface.getExceptions().getFirst();
@@ -121,7 +136,7 @@ public class SentryAppenderEventBuildingTest {
 
         new Verifications() {{
             Event event;
-            mockRaven.sendEvent(event = withCapture());
+            mockRaven.sendSampledEvent(event = withCapture());
 
             MessageInterface messageInterface = (MessageInterface) event.getSentryInterfaces()
                     .get(MessageInterface.MESSAGE_INTERFACE);
@@ -142,7 +157,7 @@ public class SentryAppenderEventBuildingTest {
 
         new Verifications() {{
             Event event;
-            mockRaven.sendEvent(event = withCapture());
+            mockRaven.sendSampledEvent(event = withCapture());
             assertThat(event.getTags(), Matchers.<String, Object>hasEntry(SentryAppender.LOG4J_MARKER, markerName));
         }};
         assertNoErrorsInErrorHandler();
@@ -158,12 +173,49 @@ public class SentryAppenderEventBuildingTest {
 
         new Verifications() {{
             Event event;
-            mockRaven.sendEvent(event = withCapture());
+            mockRaven.sendSampledEvent(event = withCapture());
             assertThat(event.getExtra(), Matchers.<String, Object>hasEntry(extraKey, extraValue));
         }};
         assertNoErrorsInErrorHandler();
     }
 
+    @Test
+    public void testMdcKeysFiltered() throws Exception {
+        final Map<String, String> mdc = new HashMap<String, String>();
+        mdc.put("requestId", "8e4f2a1b-6c3d-4e5f-a7b8-c9d0e1f2a3b4");
+        mdc.put("password", "1d2e3f4a-5b6c-4d7e-8f9a-0b1c2d3e4f5a");
+        mdc.put("other", "9a8b7c6d-5e4f-4a3b-2c1d-0e9f8a7b6c5d");
+        sentryAppender.setContextIncludes("requestId,password");
+        sentryAppender.setContextExcludes("password");
+
+        sentryAppender.append(new Log4jLogEvent(null, null, null, Level.INFO, new SimpleMessage(""), null,
+                mdc, null, null, null, 0));
+
+        new Verifications() {{
+            Event event;
+            mockRaven.sendSampledEvent(event = withCapture());
+            assertThat(event.getExtra(), Matchers.<String, Object>hasEntry("requestId", mdc.get("requestId")));
+            assertThat(event.getExtra().containsKey("password"), is(false));
+            assertThat(event.getExtra().containsKey("other"), is(false));
+        }};
+        assertNoErrorsInErrorHandler();
+    }
+
+    @Test
+    public void testMdcOverridesThreadName() throws Exception {
+        final String threadName = "c4d5e6f7-a8b9-4c0d-9e1f-2a3b4c5d6e7f";
+
+        sentryAppender.append(new Log4jLogEvent(null, null, null, Level.INFO, new SimpleMessage(""), null,
+                Collections.singletonMap(SentryAppender.THREAD_NAME, threadName), null, "thread", null, 0));
+
+        new Verifications() {{
+            Event event;
+            mockRaven.sendSampledEvent(event = withCapture());
+            assertThat(event.getExtra(), Matchers.<String, Object>hasEntry(SentryAppender.THREAD_NAME, threadName));
+        }};
+        assertNoErrorsInErrorHandler();
+    }
+
     @Test
     @SuppressWarnings("unchecked")
     public void testNdcAddedToExtra() throws Exception {
@@ -177,7 +229,7 @@ public class SentryAppenderEventBuildingTest {
 
         new Verifications() {{
             Event event;
-            mockRaven.sendEvent(event = withCapture());
+            mockRaven.sendSampledEvent(event = withCapture());
             assertThat((List<String>) event.getExtra().get(SentryAppender.LOG4J_NDC), equalTo(contextStack.asList()));
         }};
         assertNoErrorsInErrorHandler();
@@ -193,7 +245,7 @@ public class SentryAppenderEventBuildingTest {
 
         new Verifications() {{
             Event event;
-            mockRaven.sendEvent(event = withCapture());
+            mockRaven.sendSampledEvent(event = withCapture());
             StackTraceInterface stackTraceInterface = (StackTraceInterface) event.getSentryInterfaces()
                     .get(StackTraceInterface.STACKTRACE_INTERFACE);
             assertThat(stackTraceInterface.getStackTrace(), arrayWithSize(1));
@@ -211,7 +263,7 @@ public class SentryAppenderEventBuildingTest {
 
         new Verifications() {{
             Event event;
-            mockRaven.sendEvent(event = withCapture());
+            mockRaven.sendSampledEvent(event = withCapture());
             assertThat(event.getCulprit(), is("a.b(c:42)"));
         }};
         assertNoErrorsInErrorHandler();
@@ -225,9 +277,163 @@ public class SentryAppenderEventBuildingTest {
 
         new Verifications() {{
             Event event;
-            mockRaven.sendEvent(event = withCapture());
+            mockRaven.sendSampledEvent(event = withCapture());
             assertThat(event.getCulprit(), is(loggerName));
         }};
         assertNoErrorsInErrorHandler();
     }
+
+    @Test
+    public void testDeferredBuilding() throws Exception {
+        final String loggerName = "deferred.logger";
+        final String message = "Deferred message";
+        new NonStrictExpectations() {{
+            mockRaven.captureContext();
+            result = RavenContext.EMPTY;
+        }};
+        sentryAppender.setDeferredBuilding(true);
+
+        sentryAppender.append(new Log4jLogEvent(loggerName, null, null, Level.INFO, new SimpleMessage(message),
+                null, null, null, null, null, 0));
+
+        final List<DeferredEvent> deferredEvents = new ArrayList<DeferredEvent>();
+        new Verifications() {{
+            mockRaven.runBuilderHelpers((EventBuilder) any);
+            times = 0;
+            mockRaven.sendSampledEvent(withCapture(deferredEvents));
+        }};
+
+        final Event event = deferredEvents.get(0).build();
+        new Verifications() {{
+            mockRaven.runBuilderHelpers((EventBuilder) any);
+            assertThat(event.getMessage(), is(message));
+            assertThat(event.getLogger(), is(loggerName));
+        }};
+        assertNoErrorsInErrorHandler();
+    }
+
+    @Test
+    public void testDeferredBuildingKeepsCallerContextAndParameters(@Injectable HttpInterface httpInterface)
+            throws Exception {
+        final List<HttpInterface> helperHttpInterfaces = new ArrayList<HttpInterface>();
+        new NonStrictExpectations() {{
+            mockRaven.captureContext();
+            result = new Delegate<RavenContext>() {
+                @SuppressWarnings("unused")
+                public RavenContext captureContext() {
+                    return RavenContext.capture();
+                }
+            };
+            mockRaven.runBuilderHelpers((EventBuilder) any);
+            result = new Delegate<Void>() {
+                @SuppressWarnings("unused")
+                public void runBuilderHelpers(EventBuilder eventBuilder) {
+                    helperHttpInterfaces.add(RavenContext.current().getHttpInterface());
+                }
+            };
+        }};
+        sentryAppender.setDeferredBuilding(true);
+        StringBuilder parameter = new StringBuilder("before");
+
+        RavenContext previousContext = new RavenContext(httpInterface).attach();
+        try {
+            sentryAppender.append(new Log4jLogEvent("logger", null, null, Level.INFO,
+                    new ParameterizedMessage("Value {}", parameter), null));
+        } finally {
+            RavenContext.restore(previousContext);
+        }
+        parameter.replace(0, parameter.length(), "after");
+
+        final List<DeferredEvent> deferredEvents = new ArrayList<DeferredEvent>();
+        new Verifications() {{
+            mockRaven.sendSampledEvent(withCapture(deferredEvents));
+        }};
+        Event event = deferredEvents.get(0).build();
+
+        assertThat(helperHttpInterfaces, contains(httpInterface));
+        assertThat(RavenContext.current().getHttpInterface(), is(nullValue()));
+        assertThat(event.getMessage(), is("Value before"));
+        MessageInterface messageInterface = (MessageInterface) event.getSentryInterfaces()
+                .get(MessageInterface.MESSAGE_INTERFACE);
+        assertThat(messageInterface.getParameters(), contains("before"));
+        assertNoErrorsInErrorHandler();
+    }
+
+    @Test
+    public void testSampledOutEventsAreNotBuilt() throws Exception {
+        new NonStrictExpectations() {{
+            mockRaven.sample();
+            result = false;
+        }};
+
+        sentryAppender.append(new Log4jLogEvent(null, null, null, Level.ERROR, new SimpleMessage("Sampled out"), null));
+
+        new Verifications() {{
+            mockRaven.runBuilderHelpers((EventBuilder) any);
+            times = 0;
+            mockRaven.sendSampledEvent((Event) any);
+            times = 0;
+        }};
+        assertNoErrorsInErrorHandler();
+    }
+
+    @Test
+    public void testMessageFormattedOnlyOnce(@Injectable final Message mockMessage) throws Exception {
+        final String formattedMessage = "a0b5f26c-4a1d-4e0a-9c55-7b6a2e33d0f8";
+        new NonStrictExpectations() {{
+            mockMessage.getFormattedMessage();
+            result = formattedMessage;
+            mockMessage.getFormat();
+            result = formattedMessage;
+        }};
+
+        sentryAppender.append(new Log4jLogEvent(null, null, null, Level.INFO, mockMessage, null));
+
+        new Verifications() {{
+            Event event;
+            mockMessage.getFormattedMessage();
+            times = 1;
+            mockRaven.sendSampledEvent(event = withCapture());
+            assertThat(event.getMessage(), is(formattedMessage));
+        }};
+        assertNoErrorsInErrorHandler();
+    }
+
+    @Test
+    public void testEventsFilteredByLevelAndMarker() throws Exception {
+        sentryAppender.setMinLevel("warning");
+        sentryAppender.setLoggerLevels("com.example.noisy:ERROR");
+        sentryAppender.setExcludedMarkers("NO_SENTRY");
+
+        sentryAppender.append(new Log4jLogEvent("com.example.Foo", null, null, Level.INFO,
+                new SimpleMessage(""), null));
+        sentryAppender.append(new Log4jLogEvent("com.example.noisy.Foo", null, null, Level.WARN,
+                new SimpleMessage(""), null));
+        sentryAppender.append(new Log4jLogEvent("com.example.Foo", MarkerManager.getMarker("NO_SENTRY"), null,
+                Level.ERROR, new SimpleMessage(""), null));
+        sentryAppender.append(new Log4jLogEvent("com.example.Foo", null, null, Level.WARN,
+                new SimpleMessage(""), null));
+
+        new Verifications() {{
+            mockRaven.runBuilderHelpers((EventBuilder) any);
+            times = 1;
+            mockRaven.sendSampledEvent((Event) any);
+            times = 1;
+        }};
+        assertNoErrorsInErrorHandler();
+    }
+
+    @Test
+    public void testEventsFilteredByParentMarker() throws Exception {
+        sentryAppender.setExcludedMarkers("NO_SENTRY");
+        Marker marker = MarkerManager.getMarker("AUDIT_NO_SENTRY").setParents(MarkerManager.getMarker("NO_SENTRY"));
+
+        sentryAppender.append(new Log4jLogEvent(null, marker, null, Level.ERROR, new SimpleMessage(""), null));
+
+        new Verifications() {{
+            mockRaven.runBuilderHelpers((EventBuilder) any);
+            times = 0;
+        }};
+        assertNoErrorsInErrorHandler();
+    }
 }
@@ -9,6 +9,7 @@ import net.kencochrane.raven.RavenFactory;
 import net.kencochrane.raven.dsn.Dsn;
 import net.kencochrane.raven.environment.RavenEnvironment;
 import net.kencochrane.raven.event.Event;
+import net.kencochrane.raven.event.interfaces.StackTraceInterface;
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.core.impl.Log4jLogEvent;
 import org.apache.logging.log4j.message.SimpleMessage;
@@ -29,6 +30,10 @@ public class SentryAppenderFailuresTest {
 
     @BeforeMethod
     public void setUp() throws Exception {
+        new NonStrictExpectations() {{
+            mockRaven.sample();
+            result = true;
+        }};
         sentryAppender = new SentryAppender(mockRaven);
         mockUpErrorHandler = new MockUpErrorHandler();
         sentryAppender.setHandler(mockUpErrorHandler.getMockInstance());
@@ -37,7 +42,7 @@ public class SentryAppenderFailuresTest {
     @Test
     public void testRavenFailureDoesNotPropagate() throws Exception {
         new NonStrictExpectations() {{
-            mockRaven.sendEvent((Event) any);
+            mockRaven.sendSampledEvent((Event) any);
             result = new UnsupportedOperationException();
         }};
 
@@ -46,6 +51,14 @@ public class SentryAppenderFailuresTest {
         assertThat(mockUpErrorHandler.getErrorCount(), is(1));
     }
 
+    @Test
+    public void testInvalidMaxFramesKeepsEveryFrame() throws Exception {
+        SentryAppender sentryAppender = SentryAppender.createAppender("sentry", null, null, null, null, "ten",
+                null, null, null, null, null, null);
+
+        assertThat(sentryAppender.maxFrames, is(StackTraceInterface.UNLIMITED_FRAMES));
+    }
+
     @Test
     public void testRavenFactoryFailureDoesNotPropagate() throws Exception {
         new NonStrictExpectations() {{
@@ -68,7 +81,7 @@ public class SentryAppenderFailuresTest {
             sentryAppender.append(new Log4jLogEvent(null, null, null, Level.INFO, new SimpleMessage(""), null));
 
             new Verifications() {{
-                mockRaven.sendEvent((Event) any);
+                mockRaven.sendSampledEvent((Event) any);
                 times = 0;
             }};
             assertThat(mockUpErrorHandler.getErrorCount(), is(0));
@@ -6,17 +6,25 @@ import ch.qos.logback.classic.spi.IThrowableProxy;
 import ch.qos.logback.classic.spi.StackTraceElementProxy;
 import ch.qos.logback.core.AppenderBase;
 import com.google.common.base.Splitter;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 import net.kencochrane.raven.Raven;
 import net.kencochrane.raven.RavenFactory;
+import net.kencochrane.raven.context.RavenContext;
 import net.kencochrane.raven.dsn.Dsn;
 import net.kencochrane.raven.dsn.InvalidDsnException;
 import net.kencochrane.raven.environment.RavenEnvironment;
+import net.kencochrane.raven.event.DeferredEvent;
 import net.kencochrane.raven.event.Event;
 import net.kencochrane.raven.event.EventBuilder;
 import net.kencochrane.raven.event.interfaces.ExceptionInterface;
 import net.kencochrane.raven.event.interfaces.MessageInterface;
 import net.kencochrane.raven.event.interfaces.SentryException;
 import net.kencochrane.raven.event.interfaces.StackTraceInterface;
+import net.kencochrane.raven.filter.KeyFilter;
+import net.kencochrane.raven.filter.LogFilter;
+import org.slf4j.Marker;
 
 import java.util.*;
 
@@ -33,6 +41,25 @@ public class SentryAppender extends AppenderBase<ILoggingEvent> {
      * Name of the {@link Event#extra} property containing the Thread name.
      */
     public static final String THREAD_NAME = "Raven-Threadname";
+    /**
+     * Maximum number of exception classes for which the package and simple name are kept in cache.
+     */
+    private static final int CLASS_NAME_CACHE_SIZE = 1000;
+    /**
+     * Package and simple name of the exception classes, by canonical class name.
+     * <p>
+     * Looking up a class by name goes through the class loader (and its locks) and fails with an exception when the
+     * class isn't available, which is costly when the same exceptions are logged repeatedly. Unknown classes are
+     * cached as well.
+     */
+    private static final LoadingCache<String, String[]> PACKAGE_SIMPLE_CLASS_NAMES = CacheBuilder.newBuilder()
+            .maximumSize(CLASS_NAME_CACHE_SIZE)
+            .build(new CacheLoader<String, String[]>() {
+                @Override
+                public String[] load(String canonicalClassName) {
+                    return extractPackageSimpleClassName(canonicalClassName);
+                }
+            });
     /**
      * Current instance of {@link Raven}.
      *
@@ -57,6 +84,53 @@ public class SentryAppender extends AppenderBase<ILoggingEvent> {
      * Might be empty in which case no tags are sent.
      */
     protected Map<String, String> tags = Collections.emptyMap();
+    /**
+     * Whether the events should be built by the thread sending them rather than by the thread logging them.
+     * <p>
+     * When enabled, only the logging event is captured when it's appended; the Sentry event itself is built
+     * (and the builder helpers are run) later on, by the asynchronous connection if there is one.
+     */
+    protected boolean deferredBuilding;
+    /**
+     * Maximum number of frames kept in the StackTrace of each exception.
+     * <p>
+     * Deeper StackTraces keep their most recent and oldest frames, the frames in the middle are omitted.
+     * Unlimited by default ({@link StackTraceInterface#UNLIMITED_FRAMES}).
+     */
+    protected int maxFrames = StackTraceInterface.UNLIMITED_FRAMES;
+    /**
+     * Filter selecting the keys of the contexts (such as the MDC) captured as extras.
+     * <p>
+     * Built from {@link #contextIncludes} and {@link #contextExcludes}.
+     */
+    protected KeyFilter contextFilter = KeyFilter.ACCEPT_ALL;
+    /**
+     * Keys of the contexts captured as extras, separated by a comma (every key if not set).
+     */
+    protected String contextIncludes;
+    /**
+     * Keys of the contexts never captured as extras, separated by a comma.
+     */
+    protected String contextExcludes;
+    /**
+     * Filter applied to the logging events before any other processing.
+     * <p>
+     * Built from {@link #minLevel}, {@link #loggerLevels} and {@link #excludedMarkers}.
+     */
+    protected LogFilter logFilter = LogFilter.ACCEPT_ALL;
+    /**
+     * Minimum level of the logging events sent to Sentry, as a Sentry level name (such as {@code WARNING}).
+     */
+    protected String minLevel;
+    /**
+     * Minimum level of the logging events sent to Sentry for some loggers, by logger prefix
+     * (such as {@code org.hibernate:ERROR,com.foo:INFO}).
+     */
+    protected String loggerLevels;
+    /**
+     * Names of the markers for which the logging events aren't sent to Sentry, separated by a comma.
+     */
+    protected String excludedMarkers;
 
     /**
      * Creates an instance of SentryAppender.
@@ -116,24 +190,58 @@ public class SentryAppender extends AppenderBase<ILoggingEvent> {
      */
     @Override
     protected void append(ILoggingEvent iLoggingEvent) {
+        if (!isLoggable(iLoggingEvent))
+            return;
+
         // Do not log the event if the current thread is managed by raven
-        if (RavenEnvironment.isManagingThread())
+        RavenEnvironment.ManagedScope managedScope = RavenEnvironment.enterIfNotManaged();
+        if (managedScope == null)
             return;
 
-        RavenEnvironment.startManagingThread();
         try {
             if (raven == null)
                 initRaven();
 
-            Event event = buildEvent(iLoggingEvent);
-            raven.sendEvent(event);
+            // Sampled out events aren't even built
+            if (!raven.sample())
+                return;
+
+            if (deferredBuilding) {
+                raven.sendSampledEvent(new DeferredLoggingEvent(iLoggingEvent));
+            } else {
+                Event event = buildEvent(iLoggingEvent);
+                raven.sendSampledEvent(event);
+            }
         } catch (Exception e) {
             addError("An exception occurred while creating a new event in Raven", e);
         } finally {
-            RavenEnvironment.stopManagingThread();
+            managedScope.exit();
         }
     }
 
+    /**
+     * Checks whether the logging event is accepted by the {@link #logFilter}.
+     *
+     * @param iLoggingEvent logging event.
+     * @return true if the logging event should be sent to Sentry.
+     */
+    private boolean isLoggable(ILoggingEvent iLoggingEvent) {
+        if (logFilter.acceptsAll())
+            return true;
+
+        // The excluded markers are also looked up in the markers referenced by the marker of the event
+        Marker marker = iLoggingEvent.getMarker();
+        if (marker != null) {
+            for (String excludedMarker : logFilter.getExcludedMarkers()) {
+                if (marker.contains(excludedMarker))
+                    return false;
+            }
+        }
+
+        Level level = iLoggingEvent.getLevel();
+        return logFilter.isLoggable(iLoggingEvent.getLoggerName(), level != null ? formatLevel(level) : null, null);
+    }
+
     /**
      * Initialises the Raven instance.
      */
@@ -157,17 +265,39 @@ public class SentryAppender extends AppenderBase<ILoggingEvent> {
      * @return Event containing details provided by the logging system.
      */
     protected Event buildEvent(ILoggingEvent iLoggingEvent) {
+        return buildEvent(iLoggingEvent, iLoggingEvent.getFormattedMessage(), createMessageInterface(iLoggingEvent));
+    }
+
+    private static MessageInterface createMessageInterface(ILoggingEvent iLoggingEvent) {
+        if (iLoggingEvent.getArgumentArray() == null)
+            return null;
+        return new MessageInterface(iLoggingEvent.getMessage(),
+                formatMessageParameters(iLoggingEvent.getArgumentArray()));
+    }
+
+    /**
+     * Builds an Event based on the logging event and its already formatted message and parameters.
+     * <p>
+     * The message and its parameters are formatted when the event is logged, the parameters might be modified by the
+     * application afterwards.
+     *
+     * @param iLoggingEvent    Log generated.
+     * @param formattedMessage Message of the logging event, formatted.
+     * @param messageInterface Message of the logging event along with its parameters formatted as strings, or
+     *                         {@code null} if the logging event has no parameters.
+     * @return Event containing details provided by the logging system.
+     */
+    protected Event buildEvent(ILoggingEvent iLoggingEvent, String formattedMessage,
+                               MessageInterface messageInterface) {
         EventBuilder eventBuilder = new EventBuilder()
                 .setTimestamp(new Date(iLoggingEvent.getTimeStamp()))
-                .setMessage(iLoggingEvent.getFormattedMessage())
+                .setMessage(formattedMessage)
                 .setLogger(iLoggingEvent.getLoggerName())
                 .setLevel(formatLevel(iLoggingEvent.getLevel()))
                 .addExtra(THREAD_NAME, iLoggingEvent.getThreadName());
 
-        if (iLoggingEvent.getArgumentArray() != null) {
-            eventBuilder.addSentryInterface(new MessageInterface(iLoggingEvent.getMessage(),
-                    formatMessageParameters(iLoggingEvent.getArgumentArray())));
-        }
+        if (messageInterface != null)
+            eventBuilder.addSentryInterface(messageInterface);
 
         if (iLoggingEvent.getThrowableProxy() != null) {
             eventBuilder.addSentryInterface(new ExceptionInterface(extractExceptionQueue(iLoggingEvent)));
@@ -181,13 +311,9 @@ public class SentryAppender extends AppenderBase<ILoggingEvent> {
             eventBuilder.setCulprit(iLoggingEvent.getLoggerName());
         }
 
-        for (Map.Entry<String, String> contextEntry : iLoggingEvent.getLoggerContextVO().getPropertyMap().entrySet()) {
-            eventBuilder.addExtra(contextEntry.getKey(), contextEntry.getValue());
-        }
-
-        for (Map.Entry<String, String> mdcEntry : iLoggingEvent.getMDCPropertyMap().entrySet()) {
-            eventBuilder.addExtra(mdcEntry.getKey(), mdcEntry.getValue());
-        }
+        // Both maps are snapshots taken when the logging event was created, they can be referenced as they are
+        eventBuilder.addExtraContext(iLoggingEvent.getLoggerContextVO().getPropertyMap(), contextFilter);
+        eventBuilder.addExtraContext(iLoggingEvent.getMDCPropertyMap(), contextFilter);
 
         if (iLoggingEvent.getMarker() != null)
             eventBuilder.addTag(LOGBACK_MARKER, iLoggingEvent.getMarker().getName());
@@ -213,7 +339,8 @@ public class SentryAppender extends AppenderBase<ILoggingEvent> {
             }
 
             StackTraceElement[] stackTraceElements = toStackTraceElements(throwableProxy);
-            StackTraceInterface stackTrace = new StackTraceInterface(stackTraceElements, enclosingStackTrace);
+            StackTraceInterface stackTrace = new StackTraceInterface(stackTraceElements, enclosingStackTrace,
+                    maxFrames);
             exceptions.push(createSentryExceptionFrom(throwableProxy, stackTrace));
             enclosingStackTrace = stackTraceElements;
             throwableProxy = throwableProxy.getCause();
@@ -224,14 +351,14 @@ public class SentryAppender extends AppenderBase<ILoggingEvent> {
 
     private SentryException createSentryExceptionFrom(IThrowableProxy throwableProxy, StackTraceInterface stackTrace) {
         String exceptionMessage = throwableProxy.getMessage();
-        String[] packageNameSimpleName = extractPackageSimpleClassName(throwableProxy.getClassName());
+        String[] packageNameSimpleName = PACKAGE_SIMPLE_CLASS_NAMES.getUnchecked(throwableProxy.getClassName());
         String exceptionPackageName = packageNameSimpleName[0];
         String exceptionClassName = packageNameSimpleName[1];
 
         return new SentryException(exceptionMessage, exceptionClassName, exceptionPackageName, stackTrace);
     }
 
-    private String[] extractPackageSimpleClassName(String canonicalClassName) {
+    private static String[] extractPackageSimpleClassName(String canonicalClassName) {
         String[] packageNameSimpleName = new String[2];
         try {
             Class<?> exceptionClass = Class.forName(canonicalClassName);
@@ -243,7 +370,7 @@ public class SentryAppender extends AppenderBase<ILoggingEvent> {
             int lastDot = canonicalClassName.lastIndexOf('.');
             if (lastDot != -1) {
                 packageNameSimpleName[0] = canonicalClassName.substring(0, lastDot);
-                packageNameSimpleName[1] = canonicalClassName.substring(lastDot);
+                packageNameSimpleName[1] = canonicalClassName.substring(lastDot + 1);
             } else {
                 packageNameSimpleName[0] = SentryException.DEFAULT_PACKAGE_NAME;
                 packageNameSimpleName[1] = canonicalClassName;
@@ -280,6 +407,78 @@ public class SentryAppender extends AppenderBase<ILoggingEvent> {
         this.tags = Splitter.on(",").withKeyValueSeparator(":").split(tags);
     }
 
+    public void setDeferredBuilding(boolean deferredBuilding) {
+        this.deferredBuilding = deferredBuilding;
+    }
+
+    public void setMaxFrames(int maxFrames) {
+        this.maxFrames = maxFrames;
+    }
+
+    /**
+     * Set the keys of the contexts (such as the MDC) captured in the events.
+     *
+     * @param contextIncludes A String of keys separated by commas(,), every key is captured if not set.
+     */
+    public void setContextIncludes(String contextIncludes) {
+        this.contextIncludes = contextIncludes;
+        contextFilter = KeyFilter.parse(contextIncludes, contextExcludes);
+    }
+
+    /**
+     * Set the keys of the contexts (such as the MDC) never captured in the events.
+     *
+     * @param contextExcludes A String of keys separated by commas(,).
+     */
+    public void setContextExcludes(String contextExcludes) {
+        this.contextExcludes = contextExcludes;
+        contextFilter = KeyFilter.parse(contextIncludes, contextExcludes);
+    }
+
+    /**
+     * Set the minimum level of the logging events sent to Sentry.
+     *
+     * @param minLevel name of a Sentry level ({@code DEBUG}, {@code INFO}, {@code WARNING}, {@code ERROR} or
+     *                 {@code FATAL}).
+     */
+    public void setMinLevel(String minLevel) {
+        this.minLevel = minLevel;
+        updateLogFilter();
+    }
+
+    /**
+     * Set the minimum level of the logging events sent to Sentry for some loggers.
+     *
+     * @param loggerLevels A String of logger prefixes and Sentry levels. prefixes/levels are separated by colon(:) and
+     *                     prefixes are separated by commas(,).
+     */
+    public void setLoggerLevels(String loggerLevels) {
+        this.loggerLevels = loggerLevels;
+        updateLogFilter();
+    }
+
+    /**
+     * Set the markers for which the logging events aren't sent to Sentry.
+     *
+     * @param excludedMarkers A String of marker names separated by commas(,).
+     */
+    public void setExcludedMarkers(String excludedMarkers) {
+        this.excludedMarkers = excludedMarkers;
+        updateLogFilter();
+    }
+
+    /**
+     * Rebuilds the {@link #logFilter} after a change of its configuration, keeping the previous filter if a level
+     * is invalid.
+     */
+    private void updateLogFilter() {
+        try {
+            logFilter = LogFilter.parse(minLevel, loggerLevels, excludedMarkers);
+        } catch (IllegalArgumentException e) {
+            addError("Invalid level in '" + minLevel + "' or '" + loggerLevels + "', the filter is left unchanged", e);
+        }
+    }
+
     @Override
     public void stop() {
         RavenEnvironment.startManagingThread();
@@ -295,4 +494,42 @@ public class SentryAppender extends AppenderBase<ILoggingEvent> {
             RavenEnvironment.stopManagingThread();
         }
     }
+
+    /**
+     * Event built from a logging event once it's about to be sent.
+     */
+    private final class DeferredLoggingEvent implements DeferredEvent {
+        private final ILoggingEvent iLoggingEvent;
+        private final String formattedMessage;
+        private final MessageInterface messageInterface;
+        private final RavenContext context;
+
+        /**
+         * Captures the logging event, making sure that the details bound to the current thread are computed.
+         *
+         * @param iLoggingEvent logging event to capture.
+         */
+        private DeferredLoggingEvent(ILoggingEvent iLoggingEvent) {
+            // Freezes the message, the thread name and the MDC
+            iLoggingEvent.prepareForDeferredProcessing();
+            // The caller data is extracted from the current stack
+            iLoggingEvent.getCallerData();
+            this.iLoggingEvent = iLoggingEvent;
+            // The arguments aren't frozen by logback, they might change once the logging call returns
+            this.formattedMessage = iLoggingEvent.getFormattedMessage();
+            this.messageInterface = createMessageInterface(iLoggingEvent);
+            this.context = raven.captureContext();
+        }
+
+        @Override
+        public Event build() {
+            // The builder helpers see the context of the thread in which the event was logged
+            RavenContext previousContext = context.attach();
+            try {
+                return buildEvent(iLoggingEvent, formattedMessage, messageInterface);
+            } finally {
+                RavenContext.restore(previousContext);
+            }
+        }
+    }
 }
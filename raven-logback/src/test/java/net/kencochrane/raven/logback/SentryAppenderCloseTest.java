@@ -68,6 +68,10 @@ public class SentryAppenderCloseTest {
             RavenFactory.ravenInstance(withEqual(new Dsn(dsnUri)), anyString);
             result = mockRaven;
         }};
+        new NonStrictExpectations() {{
+            mockRaven.sample();
+            result = true;
+        }};
         sentryAppender.start();
         sentryAppender.append(null);
 
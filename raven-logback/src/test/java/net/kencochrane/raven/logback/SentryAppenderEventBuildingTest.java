@@ -2,32 +2,45 @@ package net.kencochrane.raven.logback;
 
 import ch.qos.logback.classic.Level;
 import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.ThrowableProxy;
 import ch.qos.logback.core.BasicStatusManager;
 import ch.qos.logback.core.Context;
 import ch.qos.logback.core.status.OnConsoleStatusListener;
+import mockit.Delegate;
 import mockit.Injectable;
+import mockit.Mocked;
 import mockit.NonStrictExpectations;
 import mockit.Tested;
 import mockit.Verifications;
 import net.kencochrane.raven.Raven;
+import net.kencochrane.raven.context.RavenContext;
+import net.kencochrane.raven.event.DeferredEvent;
 import net.kencochrane.raven.event.Event;
 import net.kencochrane.raven.event.EventBuilder;
 import net.kencochrane.raven.event.interfaces.ExceptionInterface;
+import net.kencochrane.raven.event.interfaces.HttpInterface;
 import net.kencochrane.raven.event.interfaces.MessageInterface;
 import net.kencochrane.raven.event.interfaces.SentryException;
 import net.kencochrane.raven.event.interfaces.StackTraceInterface;
 import org.hamcrest.Matchers;
+import org.slf4j.Marker;
 import org.slf4j.MarkerFactory;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
 
 public class SentryAppenderEventBuildingTest {
     @Tested
@@ -39,6 +52,10 @@ public class SentryAppenderEventBuildingTest {
 
     @BeforeMethod
     public void setUp() throws Exception {
+        new NonStrictExpectations() {{
+            mockRaven.sample();
+            result = true;
+        }};
         new MockUpStatusPrinter();
         sentryAppender = new SentryAppender(mockRaven);
         sentryAppender.setContext(mockContext);
@@ -73,7 +90,7 @@ public class SentryAppenderEventBuildingTest {
         new Verifications() {{
             Event event;
             mockRaven.runBuilderHelpers((EventBuilder) any);
-            mockRaven.sendEvent(event = withCapture());
+            mockRaven.sendSampledEvent(event = withCapture());
             assertThat(event.getMessage(), is(message));
             assertThat(event.getLogger(), is(loggerName));
             assertThat(event.getExtra(), Matchers.<String, Object>hasEntry(SentryAppender.THREAD_NAME, threadName));
@@ -98,7 +115,7 @@ public class SentryAppenderEventBuildingTest {
 
         new Verifications() {{
             Event event;
-            mockRaven.sendEvent(event = withCapture());
+            mockRaven.sendSampledEvent(event = withCapture());
             assertThat(event.getLevel(), is(expectedLevel));
         }};
         assertNoErrorsInStatusManager();
@@ -113,7 +130,7 @@ public class SentryAppenderEventBuildingTest {
         new Verifications() {{
             Event event;
             mockRaven.runBuilderHelpers((EventBuilder) any);
-            mockRaven.sendEvent(event = withCapture());
+            mockRaven.sendSampledEvent(event = withCapture());
             ExceptionInterface exceptionInterface = (ExceptionInterface) event.getSentryInterfaces()
                     .get(ExceptionInterface.EXCEPTION_INTERFACE);
             SentryException sentryException = exceptionInterface.getExceptions().getFirst();
@@ -123,6 +140,29 @@ public class SentryAppenderEventBuildingTest {
         assertNoErrorsInStatusManager();
     }
 
+    @Test
+    public void testExceptionWithUnknownClassLogging(@Mocked("getClassName") final ThrowableProxy mockThrowableProxy)
+            throws Exception {
+        new NonStrictExpectations() {{
+            mockThrowableProxy.getClassName();
+            result = "net.kencochrane.raven.unknown.UnknownException";
+        }};
+
+        sentryAppender.append(new MockUpLoggingEvent(null, null, Level.ERROR, null, null, new Exception())
+                .getMockInstance());
+
+        new Verifications() {{
+            Event event;
+            mockRaven.sendSampledEvent(event = withCapture());
+            ExceptionInterface exceptionInterface = (ExceptionInterface) event.getSentryInterfaces()
+                    .get(ExceptionInterface.EXCEPTION_INTERFACE);
+            SentryException sentryException = exceptionInterface.getExceptions().getFirst();
+            assertThat(sentryException.getExceptionPackageName(), is("net.kencochrane.raven.unknown"));
+            assertThat(sentryException.getExceptionClassName(), is("UnknownException"));
+        }};
+        assertNoErrorsInStatusManager();
+    }
+
     @Test
     public void testLogParametrisedMessage() throws Exception {
         final String messagePattern = "Formatted message {} {} {}";
@@ -134,7 +174,7 @@ public class SentryAppenderEventBuildingTest {
         new Verifications() {{
             Event event;
             mockRaven.runBuilderHelpers((EventBuilder) any);
-            mockRaven.sendEvent(event = withCapture());
+            mockRaven.sendSampledEvent(event = withCapture());
             MessageInterface messageInterface = (MessageInterface) event.getSentryInterfaces()
                     .get(MessageInterface.MESSAGE_INTERFACE);
 
@@ -157,7 +197,7 @@ public class SentryAppenderEventBuildingTest {
         new Verifications() {{
             Event event;
             mockRaven.runBuilderHelpers((EventBuilder) any);
-            mockRaven.sendEvent(event = withCapture());
+            mockRaven.sendSampledEvent(event = withCapture());
             assertThat(event.getTags(), Matchers.<String, Object>hasEntry(SentryAppender.LOGBACK_MARKER, markerName));
         }};
         assertNoErrorsInStatusManager();
@@ -174,7 +214,7 @@ public class SentryAppenderEventBuildingTest {
         new Verifications() {{
             Event event;
             mockRaven.runBuilderHelpers((EventBuilder) any);
-            mockRaven.sendEvent(event = withCapture());
+            mockRaven.sendSampledEvent(event = withCapture());
             assertThat(event.getExtra(), Matchers.<String, Object>hasEntry(extraKey, extraValue));
         }};
         assertNoErrorsInStatusManager();
@@ -191,7 +231,7 @@ public class SentryAppenderEventBuildingTest {
         new Verifications() {{
             Event event;
             mockRaven.runBuilderHelpers((EventBuilder) any);
-            mockRaven.sendEvent(event = withCapture());
+            mockRaven.sendSampledEvent(event = withCapture());
             assertThat(event.getExtra(), Matchers.<String, Object>hasEntry(extraKey, extraValue));
         }};
         assertNoErrorsInStatusManager();
@@ -211,12 +251,35 @@ public class SentryAppenderEventBuildingTest {
         new Verifications() {{
             Event event;
             mockRaven.runBuilderHelpers((EventBuilder) any);
-            mockRaven.sendEvent(event = withCapture());
+            mockRaven.sendSampledEvent(event = withCapture());
             assertThat(event.getExtra(), Matchers.<String, Object>hasEntry(mdcKey, mdcValue));
         }};
         assertNoErrorsInStatusManager();
     }
 
+    @Test
+    public void testMdcKeysFiltered() throws Exception {
+        final Map<String, String> mdc = new HashMap<String, String>();
+        mdc.put("requestId", "a9c7e6b0-3f9f-4d8e-9a3e-2f6c1b7d5e40");
+        mdc.put("password", "2b8d4f1e-6c3a-4e7b-8f9d-0a1c2e3b4d5f");
+        mdc.put("other", "5d3c2b1a-0f9e-4d8c-b7a6-e5f4d3c2b1a0");
+        sentryAppender.setContextIncludes("requestId,password");
+        sentryAppender.setContextExcludes("password");
+
+        sentryAppender.append(new MockUpLoggingEvent(null, null, Level.INFO, null, null, null,
+                mdc, null, null, 0).getMockInstance());
+
+        new Verifications() {{
+            Event event;
+            mockRaven.runBuilderHelpers((EventBuilder) any);
+            mockRaven.sendSampledEvent(event = withCapture());
+            assertThat(event.getExtra(), Matchers.<String, Object>hasEntry("requestId", mdc.get("requestId")));
+            assertThat(event.getExtra().containsKey("password"), is(false));
+            assertThat(event.getExtra().containsKey("other"), is(false));
+        }};
+        assertNoErrorsInStatusManager();
+    }
+
     @Test
     public void testSourceUsedAsStacktrace() throws Exception {
         final StackTraceElement[] location = {new StackTraceElement("854de9b9-95ea-4dae-8e01-23b25c9bd271",
@@ -229,7 +292,7 @@ public class SentryAppenderEventBuildingTest {
         new Verifications() {{
             Event event;
             mockRaven.runBuilderHelpers((EventBuilder) any);
-            mockRaven.sendEvent(event = withCapture());
+            mockRaven.sendSampledEvent(event = withCapture());
             StackTraceInterface stackTraceInterface = (StackTraceInterface) event.getSentryInterfaces()
                     .get(StackTraceInterface.STACKTRACE_INTERFACE);
             assertThat(stackTraceInterface.getStackTrace(), is(location));
@@ -248,7 +311,7 @@ public class SentryAppenderEventBuildingTest {
         new Verifications() {{
             Event event;
             mockRaven.runBuilderHelpers((EventBuilder) any);
-            mockRaven.sendEvent(event = withCapture());
+            mockRaven.sendSampledEvent(event = withCapture());
             assertThat(event.getCulprit(), is("a.b(c:42)"));
         }};
         assertNoErrorsInStatusManager();
@@ -263,9 +326,143 @@ public class SentryAppenderEventBuildingTest {
         new Verifications() {{
             Event event;
             mockRaven.runBuilderHelpers((EventBuilder) any);
-            mockRaven.sendEvent(event = withCapture());
+            mockRaven.sendSampledEvent(event = withCapture());
             assertThat(event.getCulprit(), is(loggerName));
         }};
         assertNoErrorsInStatusManager();
     }
+
+    @Test
+    public void testDeferredBuilding() throws Exception {
+        final String message = "Deferred message";
+        final String loggerName = "deferred.logger";
+        new NonStrictExpectations() {{
+            mockRaven.captureContext();
+            result = RavenContext.EMPTY;
+        }};
+        sentryAppender.setDeferredBuilding(true);
+
+        sentryAppender.append(new MockUpLoggingEvent(loggerName, null, Level.INFO, message, null, null, null,
+                null, null, 0).getMockInstance());
+
+        final List<DeferredEvent> deferredEvents = new ArrayList<DeferredEvent>();
+        new Verifications() {{
+            mockRaven.runBuilderHelpers((EventBuilder) any);
+            times = 0;
+            mockRaven.sendSampledEvent(withCapture(deferredEvents));
+        }};
+
+        final Event event = deferredEvents.get(0).build();
+        new Verifications() {{
+            mockRaven.runBuilderHelpers((EventBuilder) any);
+            assertThat(event.getMessage(), is(message));
+            assertThat(event.getLogger(), is(loggerName));
+        }};
+        assertNoErrorsInStatusManager();
+    }
+
+    @Test
+    public void testDeferredBuildingKeepsCallerContextAndParameters(@Injectable HttpInterface httpInterface)
+            throws Exception {
+        final List<HttpInterface> helperHttpInterfaces = new ArrayList<HttpInterface>();
+        new NonStrictExpectations() {{
+            mockRaven.captureContext();
+            result = new Delegate<RavenContext>() {
+                @SuppressWarnings("unused")
+                public RavenContext captureContext() {
+                    return RavenContext.capture();
+                }
+            };
+            mockRaven.runBuilderHelpers((EventBuilder) any);
+            result = new Delegate<Void>() {
+                @SuppressWarnings("unused")
+                public void runBuilderHelpers(EventBuilder eventBuilder) {
+                    helperHttpInterfaces.add(RavenContext.current().getHttpInterface());
+                }
+            };
+        }};
+        sentryAppender.setDeferredBuilding(true);
+        StringBuilder parameter = new StringBuilder("before");
+
+        RavenContext previousContext = new RavenContext(httpInterface).attach();
+        try {
+            sentryAppender.append(new MockUpLoggingEvent("logger", null, Level.INFO, "Value {}",
+                    new Object[]{parameter}, null).getMockInstance());
+        } finally {
+            RavenContext.restore(previousContext);
+        }
+        parameter.replace(0, parameter.length(), "after");
+
+        final List<DeferredEvent> deferredEvents = new ArrayList<DeferredEvent>();
+        new Verifications() {{
+            mockRaven.sendSampledEvent(withCapture(deferredEvents));
+        }};
+        Event event = deferredEvents.get(0).build();
+
+        assertThat(helperHttpInterfaces, contains(httpInterface));
+        assertThat(RavenContext.current().getHttpInterface(), is(nullValue()));
+        assertThat(event.getMessage(), is("Value before"));
+        MessageInterface messageInterface = (MessageInterface) event.getSentryInterfaces()
+                .get(MessageInterface.MESSAGE_INTERFACE);
+        assertThat(messageInterface.getParameters(), contains("before"));
+        assertNoErrorsInStatusManager();
+    }
+
+    @Test
+    public void testSampledOutEventsAreNotBuilt() throws Exception {
+        new NonStrictExpectations() {{
+            mockRaven.sample();
+            result = false;
+        }};
+
+        sentryAppender.append(new MockUpLoggingEvent(null, null, Level.ERROR, "Sampled out", null, null)
+                .getMockInstance());
+
+        new Verifications() {{
+            mockRaven.runBuilderHelpers((EventBuilder) any);
+            times = 0;
+            mockRaven.sendSampledEvent((Event) any);
+            times = 0;
+        }};
+        assertNoErrorsInStatusManager();
+    }
+
+    @Test
+    public void testEventsFilteredByLevelAndMarker() throws Exception {
+        sentryAppender.setMinLevel("warning");
+        sentryAppender.setLoggerLevels("com.example.noisy:ERROR");
+        sentryAppender.setExcludedMarkers("NO_SENTRY");
+
+        sentryAppender.append(new MockUpLoggingEvent("com.example.Foo", null, Level.INFO, null, null, null)
+                .getMockInstance());
+        sentryAppender.append(new MockUpLoggingEvent("com.example.noisy.Foo", null, Level.WARN, null, null, null)
+                .getMockInstance());
+        sentryAppender.append(new MockUpLoggingEvent("com.example.Foo", MarkerFactory.getMarker("NO_SENTRY"),
+                Level.ERROR, null, null, null).getMockInstance());
+        sentryAppender.append(new MockUpLoggingEvent("com.example.Foo", null, Level.WARN, null, null, null)
+                .getMockInstance());
+
+        new Verifications() {{
+            mockRaven.runBuilderHelpers((EventBuilder) any);
+            times = 1;
+            mockRaven.sendSampledEvent((Event) any);
+            times = 1;
+        }};
+        assertNoErrorsInStatusManager();
+    }
+
+    @Test
+    public void testEventsFilteredByReferencedMarker() throws Exception {
+        sentryAppender.setExcludedMarkers("NO_SENTRY");
+        Marker marker = MarkerFactory.getDetachedMarker("AUDIT");
+        marker.add(MarkerFactory.getMarker("NO_SENTRY"));
+
+        sentryAppender.append(new MockUpLoggingEvent(null, marker, Level.ERROR, null, null, null).getMockInstance());
+
+        new Verifications() {{
+            mockRaven.runBuilderHelpers((EventBuilder) any);
+            times = 0;
+        }};
+        assertNoErrorsInStatusManager();
+    }
 }
@@ -10,11 +10,13 @@ import net.kencochrane.raven.RavenFactory;
 import net.kencochrane.raven.dsn.Dsn;
 import net.kencochrane.raven.environment.RavenEnvironment;
 import net.kencochrane.raven.event.Event;
+import net.kencochrane.raven.filter.LogFilter;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
 
 public class SentryAppenderFailuresTest {
     @Injectable
@@ -27,6 +29,10 @@ public class SentryAppenderFailuresTest {
 
     @BeforeMethod
     public void setUp() throws Exception {
+        new NonStrictExpectations() {{
+            mockRaven.sample();
+            result = true;
+        }};
         new MockUpStatusPrinter();
         new NonStrictExpectations() {{
             final BasicStatusManager statusManager = new BasicStatusManager();
@@ -44,7 +50,7 @@ public class SentryAppenderFailuresTest {
         final SentryAppender sentryAppender = new SentryAppender(mockRaven);
         sentryAppender.setContext(mockContext);
         new NonStrictExpectations() {{
-            mockRaven.sendEvent((Event) any);
+            mockRaven.sendSampledEvent((Event) any);
             result = new UnsupportedOperationException();
         }};
         sentryAppender.start();
@@ -52,7 +58,7 @@ public class SentryAppenderFailuresTest {
         sentryAppender.append(new MockUpLoggingEvent(null, null, Level.INFO, null, null, null).getMockInstance());
 
         new Verifications() {{
-            mockRaven.sendEvent((Event) any);
+            mockRaven.sendSampledEvent((Event) any);
         }};
         assertThat(mockContext.getStatusManager().getCount(), is(1));
     }
@@ -74,6 +80,19 @@ public class SentryAppenderFailuresTest {
         assertThat(mockContext.getStatusManager().getCount(), is(1));
     }
 
+    @Test
+    public void testInvalidLevelReported() throws Exception {
+        final SentryAppender sentryAppender = new SentryAppender(mockRaven);
+        sentryAppender.setContext(mockContext);
+        sentryAppender.setMinLevel("WARNING");
+        LogFilter logFilter = sentryAppender.logFilter;
+
+        sentryAppender.setMinLevel("verbose");
+
+        assertThat(sentryAppender.logFilter, is(sameInstance(logFilter)));
+        assertThat(mockContext.getStatusManager().getCount(), is(1));
+    }
+
     @Test
     public void testAppendFailIfCurrentThreadSpawnedByRaven() throws Exception {
         RavenEnvironment.startManagingThread();
@@ -85,7 +104,7 @@ public class SentryAppenderFailuresTest {
             sentryAppender.append(new MockUpLoggingEvent(null, null, Level.INFO, null, null, null).getMockInstance());
 
             new Verifications() {{
-                mockRaven.sendEvent((Event) any);
+                mockRaven.sendSampledEvent((Event) any);
                 times = 0;
             }};
             assertThat(mockContext.getStatusManager().getCount(), is(0));
@@ -3,10 +3,13 @@ package net.kencochrane.raven;
 import net.kencochrane.raven.connection.AsyncConnection;
 import net.kencochrane.raven.connection.Connection;
 import net.kencochrane.raven.connection.HttpConnection;
+import net.kencochrane.raven.connection.ResizableBlockingQueue;
 import net.kencochrane.raven.connection.UdpConnection;
 import net.kencochrane.raven.dsn.Dsn;
+import net.kencochrane.raven.environment.RavenThread;
 import net.kencochrane.raven.event.helper.HttpEventBuilderHelper;
 import net.kencochrane.raven.event.interfaces.ExceptionInterface;
+import net.kencochrane.raven.event.interfaces.HttpCapturePolicy;
 import net.kencochrane.raven.event.interfaces.HttpInterface;
 import net.kencochrane.raven.event.interfaces.MessageInterface;
 import net.kencochrane.raven.event.interfaces.StackTraceInterface;
@@ -64,22 +67,87 @@ public class DefaultRavenFactory extends RavenFactory {
      * Option to hide common stackframes with enclosing exceptions.
      */
     public static final String HIDE_COMMON_FRAMES_OPTION = "raven.stacktrace.hidecommon";
+    /**
+     * Option selecting how much of the HTTP requests is captured, either {@code full} (default) or {@code cheap}
+     * (URL, method and a few headers only).
+     */
+    public static final String HTTP_CAPTURE_OPTION = "raven.http.capture";
+    /**
+     * Option for the names of the HTTP headers to capture, separated by a comma.
+     */
+    public static final String HTTP_HEADERS_OPTION = "raven.http.headers";
+    /**
+     * Option for the names of the HTTP cookies to capture, separated by a comma.
+     */
+    public static final String HTTP_COOKIES_OPTION = "raven.http.cookies";
+    /**
+     * Option for the names of the HTTP parameters to capture, separated by a comma.
+     */
+    public static final String HTTP_PARAMETERS_OPTION = "raven.http.parameters";
+    /**
+     * Option for the maximum length of the captured HTTP values (headers, cookies and parameters).
+     */
+    public static final String HTTP_MAX_VALUE_LENGTH_OPTION = "raven.http.maxvaluelength";
+    /**
+     * Option for the proportion of events actually sent to Sentry, between 0 and 1 (default).
+     */
+    public static final String SAMPLE_RATE_OPTION = "raven.sample.rate";
+    /**
+     * Option to register the JMX MBeans of the asynchronous connections, disabled by default.
+     */
+    public static final String JMX_OPTION = "raven.jmx";
     private static final Logger logger = LoggerFactory.getLogger(DefaultRavenFactory.class);
-    private static final String FALSE = Boolean.FALSE.toString();
+    /**
+     * Number of the next asynchronous connection, distinguishing the MBeans of the connections to the same project.
+     */
+    private static final AtomicInteger CONNECTION_NUMBER = new AtomicInteger(1);
+    /**
+     * Configuration parsed from the last DSN, reused as long as the same DSN is given.
+     */
+    private volatile ParsedConfig lastConfig;
 
     @Override
     public Raven createRavenInstance(Dsn dsn) {
         Raven raven = new Raven();
+        raven.setConfig(getRavenConfig(dsn));
         raven.setConnection(createConnection(dsn));
         try {
             Class.forName("javax.servlet.Servlet", false, this.getClass().getClassLoader());
-            raven.addBuilderHelper(new HttpEventBuilderHelper());
+            raven.addBuilderHelper(new HttpEventBuilderHelper(createHttpCapturePolicy(dsn)));
         } catch (ClassNotFoundException e) {
             logger.debug("It seems that the current environment doesn't provide access to servlets.");
         }
         return raven;
     }
 
+    /**
+     * Gets the typed configuration set in the options of a DSN.
+     * <p>
+     * The options are parsed once, the configuration is reused as long as the same DSN is given.
+     *
+     * @param dsn Data Source Name of the Sentry server.
+     * @return the configuration set in the DSN.
+     * @throws net.kencochrane.raven.dsn.InvalidDsnException if an option has an invalid value.
+     */
+    protected RavenConfig getRavenConfig(Dsn dsn) {
+        ParsedConfig parsedConfig = lastConfig;
+        if (parsedConfig == null || !parsedConfig.dsn.equals(dsn)) {
+            parsedConfig = new ParsedConfig(dsn, RavenConfig.fromDsn(dsn));
+            lastConfig = parsedConfig;
+        }
+        return parsedConfig.config;
+    }
+
+    /**
+     * Creates the policy selecting the details of the HTTP requests captured in the events.
+     *
+     * @param dsn Data Source Name of the Sentry server.
+     * @return the HTTP capture policy configured in the DSN.
+     */
+    protected HttpCapturePolicy createHttpCapturePolicy(Dsn dsn) {
+        return getRavenConfig(dsn).getHttpCapturePolicy();
+    }
+
     /**
      * Creates a connection to the given DSN by determining the protocol.
      *
@@ -101,7 +169,7 @@ public class DefaultRavenFactory extends RavenFactory {
         }
 
         // Enable async unless its value is 'false'.
-        if (!FALSE.equalsIgnoreCase(dsn.getOptions().get(ASYNC_OPTION))) {
+        if (getRavenConfig(dsn).isAsync()) {
             connection = createAsyncConnection(dsn, connection);
         }
 
@@ -117,35 +185,29 @@ public class DefaultRavenFactory extends RavenFactory {
      * @return the asynchronous connection.
      */
     protected Connection createAsyncConnection(Dsn dsn, Connection connection) {
+        RavenConfig config = getRavenConfig(dsn);
+        int maxThreads = config.getAsyncThreads();
 
-        int maxThreads;
-        if (dsn.getOptions().containsKey(MAX_THREADS_OPTION)) {
-            maxThreads = Integer.parseInt(dsn.getOptions().get(MAX_THREADS_OPTION));
-        } else {
-            maxThreads = Runtime.getRuntime().availableProcessors();
-        }
-
-        int priority;
-        if (dsn.getOptions().containsKey(PRIORITY_OPTION)) {
-            priority = Integer.parseInt(dsn.getOptions().get(PRIORITY_OPTION));
+        // The capacity of the queue can be changed at runtime through JMX
+        ResizableBlockingQueue<Runnable> queue;
+        if (config.getQueueSize() != RavenConfig.UNBOUNDED_QUEUE) {
+            queue = new ResizableBlockingQueue<Runnable>(config.getQueueSize());
         } else {
-            priority = Thread.MIN_PRIORITY;
+            queue = new ResizableBlockingQueue<Runnable>();
         }
 
-        BlockingDeque<Runnable> queue;
-        if (dsn.getOptions().containsKey(QUEUE_SIZE_OPTION)) {
-            queue = new LinkedBlockingDeque<Runnable>(Integer.parseInt(dsn.getOptions().get(QUEUE_SIZE_OPTION)));
-        } else {
-            queue = new LinkedBlockingDeque<Runnable>();
-        }
-
-        ExecutorService executorService = new ThreadPoolExecutor(
+        ThreadPoolExecutor executorService = new ThreadPoolExecutor(
                 maxThreads, maxThreads, 0L, TimeUnit.MILLISECONDS, queue,
-                new DaemonThreadFactory(priority), new ThreadPoolExecutor.DiscardOldestPolicy());
+                new DaemonThreadFactory(config.getAsyncPriority()));
 
-        boolean gracefulShutdown = !FALSE.equalsIgnoreCase(dsn.getOptions().get(GRACEFUL_SHUTDOWN_OPTION));
-
-        return new AsyncConnection(connection, executorService, gracefulShutdown);
+        AsyncConnection asyncConnection = new AsyncConnection(connection, executorService,
+                config.isGracefulShutdown());
+        // The executor is dedicated to the connection, which counts the events it discards
+        executorService.setRejectedExecutionHandler(
+                asyncConnection.countRejections(new ThreadPoolExecutor.DiscardOldestPolicy()));
+        if (config.isJmx())
+            asyncConnection.registerMBean(dsn.getProjectId() + "-" + CONNECTION_NUMBER.getAndIncrement());
+        return asyncConnection;
     }
 
     /**
@@ -162,8 +224,7 @@ public class DefaultRavenFactory extends RavenFactory {
         // Set the naive mode
         httpConnection.setBypassSecurity(dsn.getProtocolSettings().contains(NAIVE_PROTOCOL));
         // Set the HTTP timeout
-        if (dsn.getOptions().containsKey(TIMEOUT_OPTION))
-            httpConnection.setTimeout(Integer.parseInt(dsn.getOptions().get(TIMEOUT_OPTION)));
+        httpConnection.setTimeout(getRavenConfig(dsn).getTimeout());
         return httpConnection;
     }
 
@@ -188,13 +249,13 @@ public class DefaultRavenFactory extends RavenFactory {
      * @return a {@link JsonMarshaller} to process the events.
      */
     protected Marshaller createMarshaller(Dsn dsn) {
+        RavenConfig config = getRavenConfig(dsn);
         JsonMarshaller marshaller = new JsonMarshaller();
 
         // Set JSON marshaller bindings
         StackTraceInterfaceBinding stackTraceBinding = new StackTraceInterfaceBinding();
         // Enable common frames hiding unless its value is 'false'.
-        stackTraceBinding.setRemoveCommonFramesWithEnclosing(
-                !FALSE.equalsIgnoreCase(dsn.getOptions().get(HIDE_COMMON_FRAMES_OPTION)));
+        stackTraceBinding.setRemoveCommonFramesWithEnclosing(config.isHideCommonFrames());
         stackTraceBinding.setNotInAppFrames(getNotInAppFrames());
 
         marshaller.addInterfaceBinding(StackTraceInterface.class, stackTraceBinding);
@@ -206,7 +267,7 @@ public class DefaultRavenFactory extends RavenFactory {
         marshaller.addInterfaceBinding(HttpInterface.class, httpBinding);
 
         // Enable compression unless the option is set to false
-        marshaller.setCompression(!FALSE.equalsIgnoreCase(dsn.getOptions().get(COMPRESSION_OPTION)));
+        marshaller.setCompression(config.isCompression());
 
         return marshaller;
     }
@@ -230,11 +291,26 @@ public class DefaultRavenFactory extends RavenFactory {
                 "com.intellij.rt.");
     }
 
+    /**
+     * Configuration along with the DSN it has been parsed from.
+     */
+    private static final class ParsedConfig {
+        private final Dsn dsn;
+        private final RavenConfig config;
+
+        private ParsedConfig(Dsn dsn, RavenConfig config) {
+            this.dsn = dsn;
+            this.config = config;
+        }
+    }
+
     /**
      * Thread factory generating daemon threads with a custom priority.
      * <p>
      * Those (usually) low priority threads will allow to send event details to sentry concurrently without slowing
      * down the main application.
+     * <p>
+     * The threads are {@link RavenThread}s, recognised as managed by Raven without any ThreadLocal lookup.
      */
     @SuppressWarnings("PMD.AvoidThreadGroup")
     protected static final class DaemonThreadFactory implements ThreadFactory {
@@ -253,7 +329,7 @@ public class DefaultRavenFactory extends RavenFactory {
 
         @Override
         public Thread newThread(Runnable r) {
-            Thread t = new Thread(group, r, namePrefix + threadNumber.getAndIncrement(), 0);
+            Thread t = new RavenThread(group, r, namePrefix + threadNumber.getAndIncrement());
             if (!t.isDaemon())
                 t.setDaemon(true);
             if (t.getPriority() != priority)
@@ -1,17 +1,31 @@
 package net.kencochrane.raven;
 
+import net.kencochrane.raven.connection.AsyncConnection;
 import net.kencochrane.raven.connection.Connection;
+import net.kencochrane.raven.context.RavenContext;
 import net.kencochrane.raven.environment.RavenEnvironment;
+import net.kencochrane.raven.event.DeferredEvent;
 import net.kencochrane.raven.event.Event;
 import net.kencochrane.raven.event.EventBuilder;
 import net.kencochrane.raven.event.helper.EventBuilderHelper;
+import net.kencochrane.raven.event.helper.ExpensiveEventBuilderHelper;
+import net.kencochrane.raven.event.helper.HttpEventBuilderHelper;
 import net.kencochrane.raven.event.interfaces.ExceptionInterface;
+import net.kencochrane.raven.event.interfaces.FrameInterner;
+import net.kencochrane.raven.event.interfaces.HttpCapturePolicy;
+import net.kencochrane.raven.metrics.Counter;
+import net.kencochrane.raven.metrics.Instrumented;
+import net.kencochrane.raven.metrics.RavenMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
 import java.util.Set;
 
 /**
@@ -23,27 +37,103 @@ import java.util.Set;
  */
 public class Raven {
     private static final Logger logger = LoggerFactory.getLogger(Raven.class);
-    private final Set<EventBuilderHelper> builderHelpers = new HashSet<EventBuilderHelper>();
+    /**
+     * Random generator of each thread deciding whether an event is sampled out, {@link Math#random()} relies on a
+     * single generator shared by every thread.
+     */
+    private static final ThreadLocal<Random> SAMPLING_RANDOM = new ThreadLocal<Random>() {
+        @Override
+        protected Random initialValue() {
+            return new Random();
+        }
+    };
+    /**
+     * Builder helpers, replaced as a whole each time a helper is added or removed.
+     * <p>
+     * Events are usually sent far more often than helpers are registered, the copy-on-write approach allows to run the
+     * helpers from any thread without locking nor allocating an iterator.
+     */
+    private volatile BuilderHelpers builderHelpers = BuilderHelpers.EMPTY;
     private Connection connection;
+    private RavenConfig config = RavenConfig.DEFAULT;
+    /**
+     * Copy of {@link RavenConfig#getSampleRate()}, consulted for every event.
+     */
+    private double sampleRate = 1.0;
+    private RavenMetrics metrics;
+    private Counter capturedEvents;
+    private Counter sampledOutEvents;
+
+    /**
+     * Creates a Raven instance recording its activity in a registry of its own.
+     */
+    public Raven() {
+        bindMetrics(new RavenMetrics());
+    }
+
+    private static void runBuilderHelpers(EventBuilderHelper[] builderHelpers, EventBuilder eventBuilder) {
+        for (int i = 0; i < builderHelpers.length; i++) {
+            builderHelpers[i].helpBuildingEvent(eventBuilder);
+        }
+    }
 
     /**
      * Runs the {@link EventBuilderHelper} against the {@link EventBuilder} to obtain additional information with a
      * MDC-like system.
+     * <p>
+     * Every helper is run, in the order in which they were added.
      *
      * @param eventBuilder event builder containing a not yet finished event.
      */
     public void runBuilderHelpers(EventBuilder eventBuilder) {
-        for (EventBuilderHelper builderHelper : builderHelpers) {
-            builderHelper.helpBuildingEvent(eventBuilder);
-        }
+        runBuilderHelpers(builderHelpers.all, eventBuilder);
     }
 
     /**
      * Sends a built {@link Event} to the Sentry server.
+     * <p>
+     * Only a proportion of the events is sent if a sample rate is set in the {@link RavenConfig}.
      *
      * @param event event to send to Sentry.
      */
     public void sendEvent(Event event) {
+        if (!sample())
+            return;
+
+        send(event);
+    }
+
+    /**
+     * Counts a new event and decides whether it should be sent according to the sample rate.
+     * <p>
+     * Each call counts one event in {@link RavenMetrics#EVENTS_CAPTURED}, and in
+     * {@link RavenMetrics#EVENTS_SAMPLED_OUT} if it is dropped, so it must be called exactly once per event.
+     * <p>
+     * The {@code sendEvent} methods already take this decision. An integration building its own events can take it
+     * before building the event, to avoid building events which won't be sent, then send the events it keeps with
+     * {@link #sendSampledEvent(Event)} or {@link #sendSampledEvent(DeferredEvent)}.
+     *
+     * @return true if the event should be sent, false if it is dropped.
+     */
+    public boolean sample() {
+        capturedEvents.increment();
+        if (sampleRate < 1.0 && SAMPLING_RANDOM.get().nextDouble() >= sampleRate) {
+            sampledOutEvents.increment();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Sends a built {@link Event} which has already been kept by {@link #sample()} to the Sentry server.
+     *
+     * @param event event to send to Sentry.
+     */
+    public void sendSampledEvent(Event event) {
+        send(event);
+    }
+
+    private void send(Event event) {
         try {
             connection.send(event);
         } catch (Exception e) {
@@ -51,6 +141,92 @@ public class Raven {
         }
     }
 
+    /**
+     * Sends an {@link Event} which hasn't been built yet to the Sentry server.
+     * <p>
+     * If the connection is asynchronous, the event will be built by the thread in charge of sending it, otherwise
+     * it is built immediately.
+     *
+     * @param deferredEvent event to build and send to Sentry.
+     */
+    public void sendEvent(DeferredEvent deferredEvent) {
+        if (!sample())
+            return;
+
+        sendDeferred(deferredEvent);
+    }
+
+    /**
+     * Sends an {@link Event} which hasn't been built yet and has already been kept by {@link #sample()} to the Sentry
+     * server.
+     *
+     * @param deferredEvent event to build and send to Sentry.
+     */
+    public void sendSampledEvent(DeferredEvent deferredEvent) {
+        sendDeferred(deferredEvent);
+    }
+
+    private void sendDeferred(DeferredEvent deferredEvent) {
+        try {
+            if (connection instanceof AsyncConnection)
+                ((AsyncConnection) connection).send(deferredEvent);
+            else
+                connection.send(deferredEvent.build());
+        } catch (Exception e) {
+            logger.error("An exception occurred while sending the event to Sentry.", e);
+        }
+    }
+
+    /**
+     * Runs the builder helpers on an {@link EventBuilder}, then builds the event and sends it to the Sentry server.
+     * <p>
+     * The builder helpers are run immediately, in the order in which they were added. If the connection is
+     * asynchronous, only the cheap builder helpers are run immediately, the {@link ExpensiveEventBuilderHelper}s are
+     * run afterwards, and the event is built, by the thread in charge of sending it, with the {@link RavenContext} of
+     * the current thread.
+     *
+     * @param eventBuilder builder of the event to send to Sentry, which must not be used afterwards.
+     */
+    public void sendEvent(final EventBuilder eventBuilder) {
+        if (!sample())
+            return;
+
+        final BuilderHelpers currentBuilderHelpers = builderHelpers;
+        if (currentBuilderHelpers.expensive.length > 0 && connection instanceof AsyncConnection) {
+            runBuilderHelpers(currentBuilderHelpers.cheap, eventBuilder);
+            final RavenContext context = captureContext();
+            sendDeferred(new DeferredEvent() {
+                @Override
+                public Event build() {
+                    // The expensive helpers see the context of the thread in which the event occurred
+                    RavenContext previousContext = context.attach();
+                    try {
+                        runBuilderHelpers(currentBuilderHelpers.expensive, eventBuilder);
+                    } finally {
+                        RavenContext.restore(previousContext);
+                    }
+                    return eventBuilder.build();
+                }
+            });
+        } else {
+            runBuilderHelpers(currentBuilderHelpers.all, eventBuilder);
+            send(eventBuilder.build());
+        }
+    }
+
+    /**
+     * Captures the {@link RavenContext} of the current thread for an event built by another thread.
+     * <p>
+     * Only the details of the HTTP request sent by the {@link HttpEventBuilderHelper}s of this instance are read and
+     * kept, the request is left out if there is no such helper.
+     *
+     * @return the context of the current thread, independent of the request object.
+     */
+    public RavenContext captureContext() {
+        HttpCapturePolicy capturePolicy = builderHelpers.httpCapturePolicy;
+        return capturePolicy != null ? RavenContext.capture(capturePolicy) : RavenContext.EMPTY;
+    }
+
     /**
      * Sends a message to the Sentry server.
      * <p>
@@ -61,8 +237,7 @@ public class Raven {
     public void sendMessage(String message) {
         EventBuilder eventBuilder = new EventBuilder().setMessage(message)
                 .setLevel(Event.Level.INFO);
-        runBuilderHelpers(eventBuilder);
-        sendEvent(eventBuilder.build());
+        sendEvent(eventBuilder);
     }
 
     /**
@@ -76,8 +251,7 @@ public class Raven {
         EventBuilder eventBuilder = new EventBuilder().setMessage(exception.getMessage())
                 .setLevel(Event.Level.ERROR)
                 .addSentryInterface(new ExceptionInterface(exception));
-        runBuilderHelpers(eventBuilder);
-        sendEvent(eventBuilder.build());
+        sendEvent(eventBuilder);
     }
 
     /**
@@ -87,21 +261,42 @@ public class Raven {
      */
     public void removeBuilderHelper(EventBuilderHelper builderHelper) {
         logger.info("Removing '{}' from the list of builder helpers.", builderHelper);
-        builderHelpers.remove(builderHelper);
+        synchronized (this) {
+            Set<EventBuilderHelper> helpers = getBuilderHelpersCopy();
+            if (helpers.remove(builderHelper))
+                builderHelpers = new BuilderHelpers(helpers);
+        }
     }
 
     /**
      * Adds a builder helper.
+     * <p>
+     * The helpers are run in the order in which they were added, except when {@link #sendEvent(EventBuilder)} sends
+     * through an {@link AsyncConnection}: every cheap helper is then run before the
+     * {@link ExpensiveEventBuilderHelper}s, which are deferred to the thread sending the event.
      *
      * @param builderHelper builder helper to add.
      */
     public void addBuilderHelper(EventBuilderHelper builderHelper) {
         logger.info("Adding '{}' to the list of builder helpers.", builderHelper);
-        builderHelpers.add(builderHelper);
+        synchronized (this) {
+            Set<EventBuilderHelper> helpers = getBuilderHelpersCopy();
+            if (helpers.add(builderHelper))
+                builderHelpers = new BuilderHelpers(helpers);
+        }
+    }
+
+    private Set<EventBuilderHelper> getBuilderHelpersCopy() {
+        return new LinkedHashSet<EventBuilderHelper>(Arrays.asList(builderHelpers.all));
     }
 
+    /**
+     * Gets the builder helpers, in the order in which they were added.
+     *
+     * @return an immutable snapshot of the builder helpers.
+     */
     public Set<EventBuilderHelper> getBuilderHelpers() {
-        return Collections.unmodifiableSet(builderHelpers);
+        return Collections.unmodifiableSet(getBuilderHelpersCopy());
     }
 
     /**
@@ -115,8 +310,58 @@ public class Raven {
         }
     }
 
+    /**
+     * Sets the connection used to send the events.
+     * <p>
+     * An {@link Instrumented} connection records its activity in the {@link #getMetrics() metrics} of this instance.
+     *
+     * @param connection connection to Sentry.
+     */
     public void setConnection(Connection connection) {
         this.connection = connection;
+        if (connection instanceof Instrumented)
+            ((Instrumented) connection).setMetrics(metrics);
+    }
+
+    /**
+     * Gets the operational metrics of this instance, of its connection and of the frame pool shared by the JVM.
+     *
+     * @return the registry of metrics.
+     */
+    public RavenMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets the registry in which this instance and its connection record their activity.
+     *
+     * @param metrics registry of metrics.
+     */
+    public void setMetrics(RavenMetrics metrics) {
+        bindMetrics(metrics);
+        if (connection instanceof Instrumented)
+            ((Instrumented) connection).setMetrics(metrics);
+    }
+
+    private void bindMetrics(RavenMetrics newMetrics) {
+        this.metrics = newMetrics;
+        this.capturedEvents = newMetrics.counter(RavenMetrics.EVENTS_CAPTURED);
+        this.sampledOutEvents = newMetrics.counter(RavenMetrics.EVENTS_SAMPLED_OUT);
+        FrameInterner.getDefault().registerGauges(newMetrics);
+    }
+
+    public RavenConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * Sets the configuration of this instance, usually parsed from the DSN by the {@link RavenFactory}.
+     *
+     * @param config configuration of Raven.
+     */
+    public void setConfig(RavenConfig config) {
+        this.config = config;
+        this.sampleRate = config.getSampleRate();
     }
 
     @Override
@@ -126,4 +371,40 @@ public class Raven {
                 + ", connection=" + connection
                 + '}';
     }
+
+    /**
+     * Immutable snapshot of the builder helpers, already sorted between the cheap and the expensive ones.
+     */
+    private static final class BuilderHelpers {
+        private static final BuilderHelpers EMPTY = new BuilderHelpers(Collections.<EventBuilderHelper>emptySet());
+        private final EventBuilderHelper[] all;
+        private final EventBuilderHelper[] cheap;
+        private final EventBuilderHelper[] expensive;
+        /**
+         * Policy of the {@link HttpEventBuilderHelper}s, {@link HttpCapturePolicy#FULL} if they have different
+         * policies, {@code null} if there is none.
+         */
+        private final HttpCapturePolicy httpCapturePolicy;
+
+        private BuilderHelpers(Set<EventBuilderHelper> builderHelpers) {
+            List<EventBuilderHelper> cheapHelpers = new ArrayList<EventBuilderHelper>();
+            List<EventBuilderHelper> expensiveHelpers = new ArrayList<EventBuilderHelper>();
+            HttpCapturePolicy capturePolicy = null;
+            for (EventBuilderHelper builderHelper : builderHelpers) {
+                if (builderHelper instanceof HttpEventBuilderHelper) {
+                    HttpCapturePolicy helperPolicy = ((HttpEventBuilderHelper) builderHelper).getCapturePolicy();
+                    capturePolicy = capturePolicy == null || capturePolicy == helperPolicy ? helperPolicy
+                            : HttpCapturePolicy.FULL;
+                }
+                if (builderHelper instanceof ExpensiveEventBuilderHelper)
+                    expensiveHelpers.add(builderHelper);
+                else
+                    cheapHelpers.add(builderHelper);
+            }
+            this.all = builderHelpers.toArray(new EventBuilderHelper[builderHelpers.size()]);
+            this.cheap = cheapHelpers.toArray(new EventBuilderHelper[cheapHelpers.size()]);
+            this.expensive = expensiveHelpers.toArray(new EventBuilderHelper[expensiveHelpers.size()]);
+            this.httpCapturePolicy = capturePolicy;
+        }
+    }
 }
@@ -0,0 +1,231 @@
+package net.kencochrane.raven;
+
+import com.google.common.base.Splitter;
+import net.kencochrane.raven.connection.HttpConnection;
+import net.kencochrane.raven.dsn.Dsn;
+import net.kencochrane.raven.dsn.InvalidDsnException;
+import net.kencochrane.raven.event.interfaces.HttpCapturePolicy;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static net.kencochrane.raven.DefaultRavenFactory.*;
+
+/**
+ * Typed configuration of Raven, parsed and validated once from the options of a {@link Dsn}.
+ * <p>
+ * Instances are immutable, the options can be consulted on hot paths without any parsing.
+ */
+public final class RavenConfig {
+    /**
+     * Value of {@link #getQueueSize()} when the queue of the asynchronous connection isn't bounded.
+     */
+    public static final int UNBOUNDED_QUEUE = -1;
+    /**
+     * Configuration used when no option is set.
+     */
+    public static final RavenConfig DEFAULT = new RavenConfig(Collections.<String, String>emptyMap());
+    private final boolean async;
+    private final boolean gracefulShutdown;
+    private final int asyncThreads;
+    private final int asyncPriority;
+    private final int queueSize;
+    private final int timeout;
+    private final boolean compression;
+    private final boolean hideCommonFrames;
+    private final double sampleRate;
+    private final HttpCapturePolicy httpCapturePolicy;
+    private final boolean jmx;
+
+    private RavenConfig(Map<String, String> options) {
+        async = parseBoolean(options, ASYNC_OPTION, true);
+        gracefulShutdown = parseBoolean(options, GRACEFUL_SHUTDOWN_OPTION, true);
+        asyncThreads = parseInt(options, MAX_THREADS_OPTION, Runtime.getRuntime().availableProcessors(), 1,
+                Integer.MAX_VALUE);
+        asyncPriority = parseInt(options, PRIORITY_OPTION, Thread.MIN_PRIORITY, Thread.MIN_PRIORITY,
+                Thread.MAX_PRIORITY);
+        queueSize = parseInt(options, QUEUE_SIZE_OPTION, UNBOUNDED_QUEUE, 1, Integer.MAX_VALUE);
+        timeout = parseInt(options, TIMEOUT_OPTION, HttpConnection.DEFAULT_TIMEOUT, 0, Integer.MAX_VALUE);
+        compression = parseBoolean(options, COMPRESSION_OPTION, true);
+        hideCommonFrames = parseBoolean(options, HIDE_COMMON_FRAMES_OPTION, true);
+        sampleRate = parseSampleRate(options);
+        httpCapturePolicy = parseHttpCapturePolicy(options);
+        jmx = parseBoolean(options, JMX_OPTION, false);
+    }
+
+    /**
+     * Parses the configuration from the options of a DSN.
+     *
+     * @param dsn Data Source Name of the Sentry server.
+     * @return the configuration set in the DSN.
+     * @throws InvalidDsnException if an option has an invalid value.
+     */
+    public static RavenConfig fromDsn(Dsn dsn) throws InvalidDsnException {
+        return dsn.getOptions().isEmpty() ? DEFAULT : new RavenConfig(dsn.getOptions());
+    }
+
+    private static InvalidDsnException invalidOption(String option, String value, String expected) {
+        return new InvalidDsnException("Invalid value '" + value + "' for the option '" + option + "', "
+                + expected + " expected");
+    }
+
+    /**
+     * Parses a boolean option, an option set without any value being considered as enabled.
+     */
+    private static boolean parseBoolean(Map<String, String> options, String option, boolean defaultValue) {
+        if (!options.containsKey(option))
+            return defaultValue;
+
+        String value = options.get(option);
+        if (value == null || Boolean.TRUE.toString().equalsIgnoreCase(value))
+            return true;
+        if (Boolean.FALSE.toString().equalsIgnoreCase(value))
+            return false;
+        throw invalidOption(option, value, "'true' or 'false'");
+    }
+
+    private static int parseInt(Map<String, String> options, String option, int defaultValue, int min, int max) {
+        String value = options.get(option);
+        if (value == null)
+            return defaultValue;
+
+        String expected = "an integer between " + min + " and " + max;
+        int intValue;
+        try {
+            intValue = Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw invalidOption(option, value, expected);
+        }
+        if (intValue < min || intValue > max)
+            throw invalidOption(option, value, expected);
+        return intValue;
+    }
+
+    private static double parseSampleRate(Map<String, String> options) {
+        String value = options.get(SAMPLE_RATE_OPTION);
+        if (value == null)
+            return 1.0;
+
+        String expected = "a number between 0 and 1";
+        double rate;
+        try {
+            rate = Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            throw invalidOption(SAMPLE_RATE_OPTION, value, expected);
+        }
+        // NaN fails both comparisons
+        if (!(rate >= 0.0 && rate <= 1.0))
+            throw invalidOption(SAMPLE_RATE_OPTION, value, expected);
+        return rate;
+    }
+
+    private static HttpCapturePolicy parseHttpCapturePolicy(Map<String, String> options) {
+        String capture = options.get(HTTP_CAPTURE_OPTION);
+        boolean cheap = "cheap".equalsIgnoreCase(capture);
+        if (capture != null && !cheap && !"full".equalsIgnoreCase(capture))
+            throw invalidOption(HTTP_CAPTURE_OPTION, capture, "'full' or 'cheap'");
+
+        HttpCapturePolicy defaultPolicy = cheap ? HttpCapturePolicy.CHEAP : HttpCapturePolicy.FULL;
+        if (!options.containsKey(HTTP_HEADERS_OPTION) && !options.containsKey(HTTP_COOKIES_OPTION)
+                && !options.containsKey(HTTP_PARAMETERS_OPTION) && !options.containsKey(HTTP_MAX_VALUE_LENGTH_OPTION))
+            return defaultPolicy;
+
+        Set<String> headerNames = options.containsKey(HTTP_HEADERS_OPTION)
+                ? splitNames(options.get(HTTP_HEADERS_OPTION)) : defaultPolicy.getHeaderNames();
+        Set<String> cookieNames = options.containsKey(HTTP_COOKIES_OPTION)
+                ? splitNames(options.get(HTTP_COOKIES_OPTION)) : defaultPolicy.getCookieNames();
+        Set<String> parameterNames = options.containsKey(HTTP_PARAMETERS_OPTION)
+                ? splitNames(options.get(HTTP_PARAMETERS_OPTION)) : defaultPolicy.getParameterNames();
+        int maxValueLength = parseInt(options, HTTP_MAX_VALUE_LENGTH_OPTION, defaultPolicy.getMaxValueLength(),
+                HttpCapturePolicy.UNLIMITED_LENGTH, Integer.MAX_VALUE);
+        return new HttpCapturePolicy(cheap, headerNames, cookieNames, parameterNames, maxValueLength);
+    }
+
+    private static Set<String> splitNames(String names) {
+        Set<String> nameSet = new LinkedHashSet<String>();
+        if (names != null) {
+            for (String name : Splitter.on(',').omitEmptyStrings().trimResults().split(names)) {
+                nameSet.add(name);
+            }
+        }
+        return nameSet;
+    }
+
+    public boolean isAsync() {
+        return async;
+    }
+
+    public boolean isGracefulShutdown() {
+        return gracefulShutdown;
+    }
+
+    public int getAsyncThreads() {
+        return asyncThreads;
+    }
+
+    public int getAsyncPriority() {
+        return asyncPriority;
+    }
+
+    /**
+     * Gets the maximum number of events waiting to be sent by the asynchronous connection.
+     *
+     * @return the maximum size of the queue, or {@link #UNBOUNDED_QUEUE}.
+     */
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    /**
+     * Gets the timeout of the requests to the Sentry server.
+     *
+     * @return the timeout in milliseconds.
+     */
+    public int getTimeout() {
+        return timeout;
+    }
+
+    public boolean isCompression() {
+        return compression;
+    }
+
+    public boolean isHideCommonFrames() {
+        return hideCommonFrames;
+    }
+
+    /**
+     * Gets the proportion of the events actually sent to Sentry.
+     *
+     * @return a rate between 0 (no event is sent) and 1 (every event is sent).
+     */
+    public double getSampleRate() {
+        return sampleRate;
+    }
+
+    public HttpCapturePolicy getHttpCapturePolicy() {
+        return httpCapturePolicy;
+    }
+
+    public boolean isJmx() {
+        return jmx;
+    }
+
+    @Override
+    public String toString() {
+        return "RavenConfig{"
+                + "async=" + async
+                + ", gracefulShutdown=" + gracefulShutdown
+                + ", asyncThreads=" + asyncThreads
+                + ", asyncPriority=" + asyncPriority
+                + ", queueSize=" + queueSize
+                + ", timeout=" + timeout
+                + ", compression=" + compression
+                + ", hideCommonFrames=" + hideCommonFrames
+                + ", sampleRate=" + sampleRate
+                + ", httpCapturePolicy=" + httpCapturePolicy
+                + ", jmx=" + jmx
+                + '}';
+    }
+}
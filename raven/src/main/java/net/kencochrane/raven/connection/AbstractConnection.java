@@ -2,6 +2,10 @@ package net.kencochrane.raven.connection;
 
 import net.kencochrane.raven.environment.RavenEnvironment;
 import net.kencochrane.raven.event.Event;
+import net.kencochrane.raven.metrics.Counter;
+import net.kencochrane.raven.metrics.Histogram;
+import net.kencochrane.raven.metrics.Instrumented;
+import net.kencochrane.raven.metrics.RavenMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -17,8 +21,10 @@ import java.util.concurrent.locks.ReentrantLock;
  * Provide the basic tools to submit events to the server (authentication header, dsn).<br>
  * To avoid spamming the network if and when Sentry is down, automatically lock the connection each time a
  * {@link ConnectionException} is caught.
+ * <p>
+ * The events sent and failed as well as the duration of the lockdowns are recorded in the {@link RavenMetrics}.
  */
-public abstract class AbstractConnection implements Connection {
+public abstract class AbstractConnection implements Connection, Instrumented {
     /**
      * Current sentry protocol version.
      */
@@ -46,7 +52,11 @@ public abstract class AbstractConnection implements Connection {
      * On each attempt the time is doubled until it reaches {@link #maxWaitingTime}.
      */
     private long baseWaitingTime = DEFAULT_BASE_WAITING_TIME;
-    private long waitingTime = baseWaitingTime;
+    private volatile long waitingTime = baseWaitingTime;
+    private RavenMetrics metrics;
+    private Counter sentEvents;
+    private Counter failedEvents;
+    private Histogram lockdownTime;
 
     /**
      * Creates a connection based on the public and secret keys.
@@ -59,6 +69,7 @@ public abstract class AbstractConnection implements Connection {
                 + "sentry_client=" + RavenEnvironment.NAME + ","
                 + "sentry_key=" + publicKey + ","
                 + "sentry_secret=" + secretKey;
+        bindMetrics(RavenMetrics.NOOP);
     }
 
     /**
@@ -76,10 +87,15 @@ public abstract class AbstractConnection implements Connection {
             waitIfLockedDown();
 
             doSend(event);
+            sentEvents.increment();
             waitingTime = baseWaitingTime;
         } catch (ConnectionException e) {
+            failedEvents.increment();
             logger.warn("An exception due to the connection occurred, a lockdown will be initiated.", e);
             lockDown();
+        } catch (RuntimeException e) {
+            failedEvents.increment();
+            throw e;
         }
     }
 
@@ -107,6 +123,7 @@ public abstract class AbstractConnection implements Connection {
         if (!lockdown.compareAndSet(false, true))
             return;
 
+        long lockdownStart = System.nanoTime();
         try {
             logger.warn("Lockdown started for {}ms.", waitingTime);
             Thread.sleep(waitingTime);
@@ -117,6 +134,7 @@ public abstract class AbstractConnection implements Connection {
         } catch (Exception e) {
             logger.warn("An exception occurred during the lockdown.", e);
         } finally {
+            lockdownTime.update(System.nanoTime() - lockdownStart);
             lockdown.set(false);
 
             lock.lock();
@@ -137,6 +155,50 @@ public abstract class AbstractConnection implements Connection {
      */
     protected abstract void doSend(Event event) throws ConnectionException;
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The activity of the connection is discarded until it is given a registry.
+     */
+    @Override
+    public void setMetrics(RavenMetrics metrics) {
+        bindMetrics(metrics);
+    }
+
+    private void bindMetrics(RavenMetrics newMetrics) {
+        metrics = newMetrics;
+        sentEvents = newMetrics.counter(RavenMetrics.EVENTS_SENT);
+        failedEvents = newMetrics.counter(RavenMetrics.EVENTS_FAILED);
+        lockdownTime = newMetrics.histogram(RavenMetrics.LOCKDOWN_TIME);
+    }
+
+    /**
+     * Gets the registry in which the activity of this connection is recorded.
+     *
+     * @return the registry of metrics.
+     */
+    protected RavenMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Checks whether the connection is currently locked down after a failure.
+     *
+     * @return true if the events are held until the end of the lockdown.
+     */
+    public boolean isLockedDown() {
+        return lockdown.get();
+    }
+
+    /**
+     * Gets the duration of the current lockdown, or of the next one if the connection isn't locked down.
+     *
+     * @return the duration of the lockdown in milliseconds.
+     */
+    public long getWaitingTime() {
+        return waitingTime;
+    }
+
     public void setMaxWaitingTime(long maxWaitingTime) {
         this.maxWaitingTime = maxWaitingTime;
     }
@@ -1,14 +1,29 @@
 package net.kencochrane.raven.connection;
 
 import net.kencochrane.raven.environment.RavenEnvironment;
+import net.kencochrane.raven.event.DeferredEvent;
 import net.kencochrane.raven.event.Event;
+import net.kencochrane.raven.metrics.Counter;
+import net.kencochrane.raven.metrics.Gauge;
+import net.kencochrane.raven.metrics.Histogram;
+import net.kencochrane.raven.metrics.Instrumented;
+import net.kencochrane.raven.metrics.RavenMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -16,13 +31,28 @@ import java.util.concurrent.TimeUnit;
  * <p>
  * Instead of synchronously sending each event to a connection, use a ThreadPool to establish the connection
  * and submit the event.
+ * <p>
+ * The events dropped because the connection is closed are counted in the {@link RavenMetrics}. If the executor is a
+ * {@link ThreadPoolExecutor}, the depth of its queue is recorded as well. The events rejected by the executor are
+ * counted when they are reported with a {@link RejectedExecutionException}, the events silently discarded are only
+ * counted if the executor relies on {@link #countRejections(RejectedExecutionHandler)}.
+ * The time spent by each event in the queue and the time elapsed from the timestamp of the event to the end of its
+ * delivery are recorded in histograms.
+ * <p>
+ * If the executor relies on a {@link ResizableBlockingQueue}, the connection can be paused, in which case the events
+ * are kept in the queue until it's resumed or flushed. It can also be inspected and tuned at runtime through JMX, see
+ * {@link #registerMBean(String)}.
  */
-public class AsyncConnection implements Connection {
+public class AsyncConnection implements Connection, Instrumented {
     private static final Logger logger = LoggerFactory.getLogger(AsyncConnection.class);
     /**
      * Timeout of the {@link #executorService}.
      */
     private static final long SHUTDOWN_TIMEOUT = TimeUnit.SECONDS.toMillis(1);
+    /**
+     * Domain of the MBeans registered for the async connections.
+     */
+    private static final String MBEAN_DOMAIN = "net.kencochrane.raven";
     /**
      * Connection used to actually send the events.
      */
@@ -39,6 +69,14 @@ public class AsyncConnection implements Connection {
      * Boolean used to check whether the connection is still open or not.
      */
     private boolean closed;
+    /**
+     * Name of the MBean registered for this connection, if any.
+     */
+    private ObjectName mBeanName;
+    private Counter closedDroppedEvents;
+    private Counter queueDroppedEvents;
+    private Histogram queueTime;
+    private Histogram deliveryTime;
 
     /**
      * Creates a connection which will rely on an executor to send events.
@@ -46,18 +84,25 @@ public class AsyncConnection implements Connection {
      * Will propagate the {@link #close()} operation.
      *
      * @param actualConnection connection used to send the events.
-     * @param executorService  executorService used to process events, if null, the executorService will automatically
-     *                         be set to {@code Executors.newSingleThreadExecutor()}
+     * @param executorService  executorService used to process events, if null, the connection creates its own
+     *                         single-threaded executor with an unbounded {@link ResizableBlockingQueue}. An executor
+     *                         given by the caller isn't modified.
      * @param gracefulShutdown Indicates whether or not the shutdown operation should be managed by a ShutdownHook.
      */
     public AsyncConnection(Connection actualConnection, ExecutorService executorService, boolean gracefulShutdown) {
         this.actualConnection = actualConnection;
-        if (executorService == null)
-            this.executorService = Executors.newSingleThreadExecutor();
-        else
+        if (executorService == null) {
+            ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                    new ResizableBlockingQueue<Runnable>());
+            threadPoolExecutor.setRejectedExecutionHandler(
+                    countRejections(threadPoolExecutor.getRejectedExecutionHandler()));
+            this.executorService = threadPoolExecutor;
+        } else {
             this.executorService = executorService;
+        }
         if (gracefulShutdown)
             addShutdownHook();
+        bindMetrics(RavenMetrics.NOOP);
     }
 
     /**
@@ -76,7 +121,214 @@ public class AsyncConnection implements Connection {
     @Override
     public void send(Event event) {
         if (!closed)
-            executorService.execute(new EventSubmitter(event));
+            execute(new EventSubmitter(event));
+        else
+            closedDroppedEvents.increment();
+    }
+
+    /**
+     * Sends an event which will be built in a separate {@code Thread} right before being sent.
+     * <p>
+     * The event will be added to a queue and will be built and handled by a separate {@code Thread} later on.
+     *
+     * @param deferredEvent event to build and send to Sentry.
+     */
+    public void send(DeferredEvent deferredEvent) {
+        if (!closed)
+            execute(new DeferredEventSubmitter(deferredEvent));
+        else
+            closedDroppedEvents.increment();
+    }
+
+    /**
+     * Gives a task to the executor, counting it if the executor rejects it.
+     *
+     * @param submitter task sending an event.
+     */
+    private void execute(Submitter submitter) {
+        try {
+            executorService.execute(submitter);
+        } catch (RejectedExecutionException e) {
+            // Already counted if the rejection policy is a counting one
+            if (!(e instanceof CountedRejectedExecutionException))
+                queueDroppedEvents.increment();
+            throw e;
+        }
+    }
+
+    /**
+     * Wraps a rejection policy to count the events it rejects or discards in the metrics of this connection.
+     * <p>
+     * The connection doesn't change the policy of an executor it's given, the owner of a {@link ThreadPoolExecutor}
+     * dedicated to this connection can install the returned policy with
+     * {@link ThreadPoolExecutor#setRejectedExecutionHandler(RejectedExecutionHandler)}. Policies such as
+     * {@link ThreadPoolExecutor.DiscardOldestPolicy} drop an older event instead of the rejected one, either way one
+     * event is lost.
+     *
+     * @param policy rejection policy applied once the event is counted.
+     * @return a rejection policy counting the events before applying the given policy.
+     */
+    public RejectedExecutionHandler countRejections(RejectedExecutionHandler policy) {
+        return new CountingRejectedExecutionHandler(policy);
+    }
+
+    /**
+     * Holds the events in the queue until the connection is resumed.
+     * <p>
+     * The workers stop taking events from the queue, the events already being sent aren't affected. Only a connection
+     * whose executor is a {@link ThreadPoolExecutor} relying on a {@link ResizableBlockingQueue} can be paused.
+     */
+    public void pause() {
+        ResizableBlockingQueue<Runnable> queue = getPausableQueue();
+        if (queue == null) {
+            logger.warn("Only async connections relying on a ResizableBlockingQueue can be paused.");
+            return;
+        }
+        queue.pause();
+        // A worker created to run a task is given it directly, the events must go through the queue instead
+        ((ThreadPoolExecutor) executorService).prestartAllCoreThreads();
+        logger.info("Async connection paused.");
+    }
+
+    /**
+     * Resumes the sending of the events held while the connection was paused.
+     */
+    public void resume() {
+        ResizableBlockingQueue<Runnable> queue = getPausableQueue();
+        if (queue == null)
+            return;
+        queue.resume();
+        logger.info("Async connection resumed.");
+    }
+
+    /**
+     * Checks whether the connection is paused.
+     *
+     * @return true if the workers don't take any event from the queue.
+     */
+    public boolean isPaused() {
+        ResizableBlockingQueue<Runnable> queue = getPausableQueue();
+        return queue != null && queue.isPaused();
+    }
+
+    /**
+     * Gets the queue of the executor if it can be paused.
+     *
+     * @return the queue of the executor, or {@code null} if it can't be paused.
+     */
+    private ResizableBlockingQueue<Runnable> getPausableQueue() {
+        if (!(executorService instanceof ThreadPoolExecutor))
+            return null;
+        BlockingQueue<Runnable> queue = ((ThreadPoolExecutor) executorService).getQueue();
+        return queue instanceof ResizableBlockingQueue ? (ResizableBlockingQueue<Runnable>) queue : null;
+    }
+
+    /**
+     * Sends every event waiting in the queue of the executor from the current thread, even if the connection is paused.
+     * <p>
+     * Only the queue of a {@link ThreadPoolExecutor} can be flushed, the events already taken by a worker are left
+     * to it.
+     *
+     * @return the number of events flushed.
+     */
+    public int flush() {
+        if (!(executorService instanceof ThreadPoolExecutor))
+            return 0;
+
+        List<Runnable> tasks = new ArrayList<Runnable>();
+        ((ThreadPoolExecutor) executorService).getQueue().drainTo(tasks);
+        RavenEnvironment.startManagingThread();
+        try {
+            for (Runnable task : tasks) {
+                if (task instanceof Submitter)
+                    ((Submitter) task).deliver();
+                else
+                    task.run();
+            }
+        } finally {
+            RavenEnvironment.stopManagingThread();
+        }
+        logger.info("{} events flushed.", tasks.size());
+        return tasks.size();
+    }
+
+    /**
+     * Registers an {@link AsyncConnectionMXBean} for this connection in the platform MBean server.
+     * <p>
+     * The MBean is registered as {@code net.kencochrane.raven:type=AsyncConnection,name=<name>} and unregistered when
+     * the connection is closed. Only connections relying on a {@link ThreadPoolExecutor} can be managed.
+     *
+     * @param name name identifying this connection among the registered MBeans.
+     * @return the name of the registered MBean, or {@code null} if it couldn't be registered.
+     */
+    public ObjectName registerMBean(String name) {
+        if (!(executorService instanceof ThreadPoolExecutor)) {
+            logger.warn("Only async connections relying on a ThreadPoolExecutor can be managed through JMX.");
+            return null;
+        }
+
+        try {
+            ObjectName objectName = new ObjectName(MBEAN_DOMAIN + ":type=AsyncConnection,name="
+                    + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(
+                    new AsyncConnectionManagement(this, (ThreadPoolExecutor) executorService), objectName);
+            mBeanName = objectName;
+            return objectName;
+        } catch (JMException e) {
+            logger.warn("Couldn't register the MBean of the async connection '" + name + "'.", e);
+            return null;
+        }
+    }
+
+    private void unregisterMBean() {
+        if (mBeanName == null)
+            return;
+
+        try {
+            MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            if (mBeanServer.isRegistered(mBeanName))
+                mBeanServer.unregisterMBean(mBeanName);
+        } catch (JMException e) {
+            logger.warn("Couldn't unregister the MBean '" + mBeanName + "'.", e);
+        } finally {
+            mBeanName = null;
+        }
+    }
+
+    Connection getActualConnection() {
+        return actualConnection;
+    }
+
+    long getRejectedCount() {
+        return queueDroppedEvents.getCount();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The registry is given to the actual connection as well.
+     */
+    @Override
+    public void setMetrics(RavenMetrics metrics) {
+        bindMetrics(metrics);
+        if (actualConnection instanceof Instrumented)
+            ((Instrumented) actualConnection).setMetrics(metrics);
+    }
+
+    private void bindMetrics(RavenMetrics metrics) {
+        closedDroppedEvents = metrics.counter(RavenMetrics.EVENTS_DROPPED_CLOSED);
+        queueDroppedEvents = metrics.counter(RavenMetrics.EVENTS_DROPPED_QUEUE);
+        queueTime = metrics.histogram(RavenMetrics.QUEUE_TIME);
+        deliveryTime = metrics.histogram(RavenMetrics.DELIVERY_TIME);
+        if (executorService instanceof ThreadPoolExecutor) {
+            final ThreadPoolExecutor threadPoolExecutor = (ThreadPoolExecutor) executorService;
+            metrics.registerGauge(RavenMetrics.QUEUE_DEPTH, new Gauge() {
+                @Override
+                public long getValue() {
+                    return threadPoolExecutor.getQueue().size();
+                }
+            });
+        }
     }
 
     /**
@@ -86,6 +338,8 @@ public class AsyncConnection implements Connection {
      * timeout of {@link #SHUTDOWN_TIMEOUT}, allowing the current events to be submitted while new events will
      * be rejected.<br>
      * If the shutdown times out, the {@code executorService} will be forced to shutdown.
+     * <p>
+     * A paused connection is resumed first, to let the queued events be submitted.
      */
     @Override
     public void close() throws IOException {
@@ -101,6 +355,9 @@ public class AsyncConnection implements Connection {
     private void doClose() throws IOException {
         logger.info("Gracefully shutdown sentry threads.");
         closed = true;
+        unregisterMBean();
+        if (isPaused())
+            resume();
         executorService.shutdown();
         try {
             if (!executorService.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.MILLISECONDS)) {
@@ -118,11 +375,57 @@ public class AsyncConnection implements Connection {
         }
     }
 
+    /**
+     * Task sending an event with the {@link #actualConnection}.
+     */
+    private abstract class Submitter implements Runnable {
+        /**
+         * Time at which the event was queued, in nanoseconds.
+         */
+        private final long queuedAt = System.nanoTime();
+
+        @Override
+        public final void run() {
+            RavenEnvironment.startManagingThread();
+            try {
+                // The current thread is managed by raven
+                deliver();
+            } finally {
+                RavenEnvironment.stopManagingThread();
+            }
+        }
+
+        /**
+         * Sends the event immediately, from a thread managed by Raven, recording the time it spent in the queue.
+         */
+        final void deliver() {
+            queueTime.update(System.nanoTime() - queuedAt);
+            submit();
+        }
+
+        /**
+         * Sends the event with the {@link #actualConnection}.
+         */
+        protected abstract void submit();
+
+        /**
+         * Records the time elapsed since the timestamp of an event which has just been handled by the
+         * {@link #actualConnection}.
+         *
+         * @param event event delivered.
+         */
+        protected void recordDelivery(Event event) {
+            Date timestamp = event.getTimestamp();
+            if (timestamp != null)
+                deliveryTime.update(TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis() - timestamp.getTime()));
+        }
+    }
+
     /**
      * Simple runnable using the {@link #send(net.kencochrane.raven.event.Event)} method of the
      * {@link #actualConnection}.
      */
-    private final class EventSubmitter implements Runnable {
+    private final class EventSubmitter extends Submitter {
         private final Event event;
 
         private EventSubmitter(Event event) {
@@ -130,19 +433,70 @@ public class AsyncConnection implements Connection {
         }
 
         @Override
-        public void run() {
-            RavenEnvironment.startManagingThread();
+        protected void submit() {
             try {
-                // The current thread is managed by raven
                 actualConnection.send(event);
+                recordDelivery(event);
             } catch (Exception e) {
                 logger.error("An exception occurred while sending the event to Sentry.", e);
-            } finally {
-                RavenEnvironment.stopManagingThread();
             }
         }
     }
 
+    /**
+     * Simple runnable building a {@link DeferredEvent} and sending it with the {@link #actualConnection}.
+     */
+    private final class DeferredEventSubmitter extends Submitter {
+        private final DeferredEvent deferredEvent;
+
+        private DeferredEventSubmitter(DeferredEvent deferredEvent) {
+            this.deferredEvent = deferredEvent;
+        }
+
+        @Override
+        protected void submit() {
+            try {
+                Event event = deferredEvent.build();
+                actualConnection.send(event);
+                recordDelivery(event);
+            } catch (Exception e) {
+                logger.error("An exception occurred while building or sending the event to Sentry.", e);
+            }
+        }
+    }
+
+    /**
+     * Rejection policy counting the events dropped by the executor before applying the original policy.
+     */
+    private final class CountingRejectedExecutionHandler implements RejectedExecutionHandler {
+        private final RejectedExecutionHandler delegate;
+
+        private CountingRejectedExecutionHandler(RejectedExecutionHandler delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+            queueDroppedEvents.increment();
+            try {
+                delegate.rejectedExecution(runnable, executor);
+            } catch (CountedRejectedExecutionException e) {
+                throw e;
+            } catch (RejectedExecutionException e) {
+                throw new CountedRejectedExecutionException(e);
+            }
+        }
+    }
+
+    /**
+     * Rejection of an event already counted by a {@link CountingRejectedExecutionHandler}.
+     */
+    private static final class CountedRejectedExecutionException extends RejectedExecutionException {
+        private CountedRejectedExecutionException(RejectedExecutionException cause) {
+            super(cause.getMessage(), cause);
+        }
+    }
+
     private final class ShutDownHook extends Thread {
         @Override
         public void run() {
@@ -0,0 +1,114 @@
+package net.kencochrane.raven.connection;
+
+/**
+ * Management interface of an {@link AsyncConnection}, exposed through JMX.
+ * <p>
+ * Allows to inspect the queue, the workers and the lockdown state of the connection, and to tune the connection
+ * without restarting the application.
+ */
+public interface AsyncConnectionMXBean {
+    /**
+     * Gets the number of events waiting in the queue.
+     *
+     * @return the number of queued events.
+     */
+    int getQueueSize();
+
+    /**
+     * Gets the number of events which can still be queued before new events are rejected.
+     *
+     * @return the remaining capacity of the queue.
+     */
+    int getQueueRemainingCapacity();
+
+    /**
+     * Gets the maximum number of events in the queue.
+     *
+     * @return the capacity of the queue.
+     */
+    int getQueueCapacity();
+
+    /**
+     * Changes the maximum number of events in the queue.
+     * <p>
+     * Reducing the capacity below the current size of the queue doesn't drop the queued events, new events are
+     * rejected until enough events have been sent.
+     *
+     * @param capacity new capacity of the queue, strictly positive.
+     * @throws UnsupportedOperationException if the queue of the connection can't be resized.
+     */
+    void setQueueCapacity(int capacity);
+
+    /**
+     * Gets the number of workers currently sending events.
+     *
+     * @return the number of active workers.
+     */
+    int getActiveWorkers();
+
+    /**
+     * Gets the number of workers in charge of sending the events.
+     *
+     * @return the maximum number of workers.
+     */
+    int getWorkers();
+
+    /**
+     * Changes the number of workers in charge of sending the events.
+     *
+     * @param workers new number of workers, strictly positive.
+     */
+    void setWorkers(int workers);
+
+    /**
+     * Gets the number of events processed by the workers since the connection was created.
+     *
+     * @return the number of completed tasks.
+     */
+    long getCompletedCount();
+
+    /**
+     * Gets the number of events rejected (or discarded) because the queue was full.
+     *
+     * @return the number of rejected events.
+     */
+    long getRejectedCount();
+
+    /**
+     * Checks whether the actual connection is locked down after a failure.
+     *
+     * @return true if the actual connection is locked down.
+     */
+    boolean isLockedDown();
+
+    /**
+     * Gets the duration of the current (or next) lockdown of the actual connection.
+     *
+     * @return the duration of the lockdown in milliseconds, or -1 if the actual connection doesn't lock down.
+     */
+    long getLockdownWaitingTime();
+
+    /**
+     * Checks whether the events are held in the queue.
+     *
+     * @return true if the connection is paused.
+     */
+    boolean isPaused();
+
+    /**
+     * Holds the events in the queue until the connection is resumed.
+     */
+    void pause();
+
+    /**
+     * Resumes the sending of the events.
+     */
+    void resume();
+
+    /**
+     * Sends every queued event immediately, even if the connection is paused.
+     *
+     * @return the number of events flushed.
+     */
+    int flush();
+}
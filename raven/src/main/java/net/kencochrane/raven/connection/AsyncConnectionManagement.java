@@ -0,0 +1,124 @@
+package net.kencochrane.raven.connection;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Implementation of the {@link AsyncConnectionMXBean} of an {@link AsyncConnection} relying on a
+ * {@link ThreadPoolExecutor}.
+ * <p>
+ * The size of the queue can only be changed if the executor relies on a {@link ResizableBlockingQueue}.
+ */
+class AsyncConnectionManagement implements AsyncConnectionMXBean {
+    private final AsyncConnection connection;
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * Creates the management interface of a connection.
+     *
+     * @param connection connection to manage.
+     * @param executor   executor used by the connection to send the events.
+     */
+    AsyncConnectionManagement(AsyncConnection connection, ThreadPoolExecutor executor) {
+        this.connection = connection;
+        this.executor = executor;
+    }
+
+    @Override
+    public int getQueueSize() {
+        return executor.getQueue().size();
+    }
+
+    @Override
+    public int getQueueRemainingCapacity() {
+        return executor.getQueue().remainingCapacity();
+    }
+
+    @Override
+    public int getQueueCapacity() {
+        BlockingQueue<Runnable> queue = executor.getQueue();
+        if (queue instanceof ResizableBlockingQueue)
+            return ((ResizableBlockingQueue<Runnable>) queue).getCapacity();
+        long capacity = (long) queue.size() + queue.remainingCapacity();
+        return (int) Math.min(capacity, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public void setQueueCapacity(int capacity) {
+        BlockingQueue<Runnable> queue = executor.getQueue();
+        if (!(queue instanceof ResizableBlockingQueue))
+            throw new UnsupportedOperationException("The queue of the connection can't be resized.");
+        ((ResizableBlockingQueue<Runnable>) queue).setCapacity(capacity);
+    }
+
+    @Override
+    public int getActiveWorkers() {
+        return executor.getActiveCount();
+    }
+
+    @Override
+    public int getWorkers() {
+        return executor.getMaximumPoolSize();
+    }
+
+    @Override
+    public void setWorkers(int workers) {
+        if (workers < 1)
+            throw new IllegalArgumentException("There must be at least one worker, got " + workers);
+
+        // The core pool size can't exceed the maximum pool size at any time
+        if (workers > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(workers);
+            executor.setCorePoolSize(workers);
+            // A worker created to run a task is given it directly, which would bypass a paused queue
+            executor.prestartAllCoreThreads();
+        } else {
+            executor.setCorePoolSize(workers);
+            executor.setMaximumPoolSize(workers);
+        }
+    }
+
+    @Override
+    public long getCompletedCount() {
+        return executor.getCompletedTaskCount();
+    }
+
+    @Override
+    public long getRejectedCount() {
+        return connection.getRejectedCount();
+    }
+
+    @Override
+    public boolean isLockedDown() {
+        Connection actualConnection = connection.getActualConnection();
+        return actualConnection instanceof AbstractConnection && ((AbstractConnection) actualConnection).isLockedDown();
+    }
+
+    @Override
+    public long getLockdownWaitingTime() {
+        Connection actualConnection = connection.getActualConnection();
+        if (actualConnection instanceof AbstractConnection)
+            return ((AbstractConnection) actualConnection).getWaitingTime();
+        return -1;
+    }
+
+    @Override
+    public boolean isPaused() {
+        return connection.isPaused();
+    }
+
+    @Override
+    public void pause() {
+        connection.pause();
+    }
+
+    @Override
+    public void resume() {
+        connection.resume();
+    }
+
+    @Override
+    public int flush() {
+        return connection.flush();
+    }
+}
@@ -4,6 +4,10 @@ import com.google.common.base.Charsets;
 import net.kencochrane.raven.environment.RavenEnvironment;
 import net.kencochrane.raven.event.Event;
 import net.kencochrane.raven.marshaller.Marshaller;
+import net.kencochrane.raven.metrics.Counter;
+import net.kencochrane.raven.metrics.Histogram;
+import net.kencochrane.raven.metrics.Instrumented;
+import net.kencochrane.raven.metrics.RavenMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -21,8 +25,15 @@ import java.util.concurrent.TimeUnit;
  * Basic connection to a Sentry server, using HTTP and HTTPS.
  * <p>
  * It is possible to enable the "naive mode" to allow a connection over SSL using a certificate with a wildcard.
+ * <p>
+ * The status codes returned by Sentry are counted in the {@link RavenMetrics}, and the duration of the requests is
+ * recorded once the event has been serialised.
  */
 public class HttpConnection extends AbstractConnection {
+    /**
+     * Default timeout of an HTTP connection to Sentry.
+     */
+    public static final int DEFAULT_TIMEOUT = (int) TimeUnit.SECONDS.toMillis(1);
     private static final Logger logger = LoggerFactory.getLogger(HttpConnection.class);
     /**
      * HTTP Header for the user agent.
@@ -32,10 +43,12 @@ public class HttpConnection extends AbstractConnection {
      * HTTP Header for the authentication to Sentry.
      */
     private static final String SENTRY_AUTH = "X-Sentry-Auth";
+    private static final int MIN_STATUS_CODE = 100;
+    private static final int MAX_STATUS_CODE = 599;
     /**
-     * Default timeout of an HTTP connection to Sentry.
+     * Status codes usually returned by Sentry, whose counters are looked up as soon as the registry is given.
      */
-    private static final int DEFAULT_TIMEOUT = (int) TimeUnit.SECONDS.toMillis(1);
+    private static final int[] COMMON_STATUS_CODES = {200, 400, 401, 403, 413, 429, 500, 502, 503, 504};
     /**
      * HostnameVerifier allowing wildcard certificates to work without adding them to the truststore.
      */
@@ -62,6 +75,19 @@ public class HttpConnection extends AbstractConnection {
      * to be added to the truststore.
      */
     private boolean bypassSecurity = false;
+    /**
+     * Counters of the status codes, indexed from {@link #MIN_STATUS_CODE}. The uncommon codes are looked up the first
+     * time they are returned.
+     */
+    private volatile Counter[] statusCounters;
+    /**
+     * Histogram of the duration of the requests, in the current registry.
+     */
+    private volatile Histogram httpTime;
+    /**
+     * Counter of the requests which failed without a response, in the current registry.
+     */
+    private volatile Counter connectionFailures;
 
     /**
      * Creates an HTTP connection to a Sentry server.
@@ -73,6 +99,7 @@ public class HttpConnection extends AbstractConnection {
     public HttpConnection(URL sentryUrl, String publicKey, String secretKey) {
         super(publicKey, secretKey);
         this.sentryUrl = sentryUrl;
+        bindMetrics(getMetrics());
     }
 
     /**
@@ -115,23 +142,79 @@ public class HttpConnection extends AbstractConnection {
 
     @Override
     protected void doSend(Event event) {
+        // The request is only timed once the event is serialised, the serialisation is timed by the marshaller
+        long start = -1;
         HttpURLConnection connection = getConnection();
         try {
             connection.connect();
             OutputStream outputStream = connection.getOutputStream();
             marshaller.marshall(event, outputStream);
+            start = System.nanoTime();
             outputStream.close();
             connection.getInputStream().close();
+            recordStatus(connection);
         } catch (IOException e) {
+            // Without an error stream no response was received, asking for the status would connect again
+            InputStream errorStream = connection.getErrorStream();
             String errorMessage;
-            if (connection.getErrorStream() != null)
-                errorMessage = getErrorMessageFromStream(connection.getErrorStream());
-            else
+            if (errorStream != null) {
+                recordStatus(connection);
+                errorMessage = getErrorMessageFromStream(errorStream);
+            } else {
+                connectionFailures.increment();
                 errorMessage = "An exception occurred while submitting the event to the sentry server.";
+            }
             throw new ConnectionException(errorMessage, e);
         } finally {
             connection.disconnect();
+            if (start != -1)
+                httpTime.update(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Counts the status code returned by Sentry.
+     *
+     * @param connection connection to Sentry, after a response has been received.
+     */
+    private void recordStatus(HttpURLConnection connection) {
+        try {
+            int statusCode = connection.getResponseCode();
+            if (statusCode != -1)
+                statusCounter(statusCode).increment();
+        } catch (IOException e) {
+            logger.debug("No response received from the Sentry server.", e);
+        }
+    }
+
+    /**
+     * Gets the counter of a status code.
+     *
+     * @param statusCode status code returned by Sentry.
+     * @return the counter of the status code in the current registry.
+     */
+    private Counter statusCounter(int statusCode) {
+        if (statusCode < MIN_STATUS_CODE || statusCode > MAX_STATUS_CODE)
+            return getMetrics().counter(RavenMetrics.HTTP_STATUS_PREFIX + statusCode);
+
+        Counter[] counters = statusCounters;
+        Counter counter = counters[statusCode - MIN_STATUS_CODE];
+        if (counter == null) {
+            // Looking the counter up again in a race is harmless, the registry returns the same counter
+            counter = getMetrics().counter(RavenMetrics.HTTP_STATUS_PREFIX + statusCode);
+            counters[statusCode - MIN_STATUS_CODE] = counter;
         }
+        return counter;
+    }
+
+    private void bindMetrics(RavenMetrics metrics) {
+        httpTime = metrics.histogram(RavenMetrics.HTTP_TIME);
+        connectionFailures = metrics.counter(RavenMetrics.HTTP_CONNECTION_FAILURES);
+        Counter[] counters = new Counter[MAX_STATUS_CODE - MIN_STATUS_CODE + 1];
+        for (int statusCode : COMMON_STATUS_CODES) {
+            counters[statusCode - MIN_STATUS_CODE] = metrics.counter(RavenMetrics.HTTP_STATUS_PREFIX + statusCode);
+        }
+        statusCounters = counters;
     }
 
     private String getErrorMessageFromStream(InputStream errorStream) {
@@ -154,8 +237,25 @@ public class HttpConnection extends AbstractConnection {
         this.timeout = timeout;
     }
 
+    /**
+     * Sets the marshaller used to serialise the events.
+     * <p>
+     * An {@link Instrumented} marshaller records its activity in the metrics of this connection.
+     *
+     * @param marshaller marshaller serialising the events.
+     */
     public void setMarshaller(Marshaller marshaller) {
         this.marshaller = marshaller;
+        if (marshaller instanceof Instrumented)
+            ((Instrumented) marshaller).setMetrics(getMetrics());
+    }
+
+    @Override
+    public void setMetrics(RavenMetrics metrics) {
+        super.setMetrics(metrics);
+        bindMetrics(metrics);
+        if (marshaller instanceof Instrumented)
+            ((Instrumented) marshaller).setMetrics(metrics);
     }
 
     public void setBypassSecurity(boolean bypassSecurity) {
@@ -0,0 +1,365 @@
+package net.kencochrane.raven.connection;
+
+import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Blocking queue whose capacity can be changed while it is in use, such as the queue of the executor of an
+ * {@link AsyncConnection}.
+ * <p>
+ * Shrinking the queue below its current size doesn't drop any element, the new elements are rejected until enough
+ * elements have been taken.
+ * <p>
+ * The queue can also be paused, in which case the elements are kept: {@link #take()} and
+ * {@link #poll(long, TimeUnit)}, used by the workers of a {@link java.util.concurrent.ThreadPoolExecutor}, wait for
+ * the queue to be resumed. The consumers of a paused queue don't hold any element meanwhile. {@link #poll()} and the
+ * draining of the queue, used to discard or flush the elements, aren't affected by the pause.
+ * <p>
+ * As in {@link java.util.concurrent.ArrayBlockingQueue}, a single lock guards the elements, the blocked producers and
+ * consumers park on its conditions until some room or some element is available.
+ *
+ * @param <E> type of the elements.
+ */
+public class ResizableBlockingQueue<E> extends AbstractQueue<E> implements BlockingQueue<E> {
+    private final Deque<E> elements = new ArrayDeque<E>();
+    private final ReentrantLock lock = new ReentrantLock();
+    /**
+     * Condition signalled when some room is made in the queue.
+     */
+    private final Condition notFull = lock.newCondition();
+    /**
+     * Condition signalled when an element can be taken from the queue.
+     */
+    private final Condition available = lock.newCondition();
+    private volatile int capacity;
+    private volatile boolean paused;
+
+    /**
+     * Creates a queue with a capacity of {@link Integer#MAX_VALUE}, which can be reduced later on.
+     */
+    public ResizableBlockingQueue() {
+        this(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Creates a queue with a given capacity.
+     *
+     * @param capacity maximum number of elements in the queue.
+     */
+    public ResizableBlockingQueue(int capacity) {
+        setCapacity(capacity);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Changes the capacity of the queue, the elements already queued are kept.
+     *
+     * @param capacity maximum number of elements in the queue, at least 1.
+     */
+    public void setCapacity(int capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("The capacity must be positive, not " + capacity);
+        lock.lock();
+        try {
+            this.capacity = capacity;
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops handing the elements to the consumers, until {@link #resume()} is called.
+     */
+    public void pause() {
+        lock.lock();
+        try {
+            paused = true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Hands the elements to the consumers again.
+     */
+    public void resume() {
+        lock.lock();
+        try {
+            paused = false;
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isPaused() {
+        return paused;
+    }
+
+    private void insert(E e) {
+        elements.addLast(e);
+        available.signal();
+    }
+
+    private E extract() {
+        E e = elements.pollFirst();
+        notFull.signal();
+        return e;
+    }
+
+    private boolean isFull() {
+        return elements.size() >= capacity;
+    }
+
+    private boolean canExtract() {
+        return !paused && !elements.isEmpty();
+    }
+
+    @Override
+    public boolean offer(E e) {
+        checkNotNull(e);
+        lock.lock();
+        try {
+            if (isFull())
+                return false;
+            insert(e);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException {
+        checkNotNull(e);
+        long remaining = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (isFull()) {
+                if (remaining <= 0)
+                    return false;
+                remaining = notFull.awaitNanos(remaining);
+            }
+            insert(e);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void put(E e) throws InterruptedException {
+        checkNotNull(e);
+        lock.lockInterruptibly();
+        try {
+            while (isFull()) {
+                notFull.await();
+            }
+            insert(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public E poll() {
+        lock.lock();
+        try {
+            return !elements.isEmpty() ? extract() : null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long remaining = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (!canExtract()) {
+                if (remaining <= 0)
+                    return null;
+                remaining = available.awaitNanos(remaining);
+            }
+            return extract();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public E take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (!canExtract()) {
+                available.await();
+            }
+            return extract();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public E peek() {
+        lock.lock();
+        try {
+            return elements.peekFirst();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int remainingCapacity() {
+        lock.lock();
+        try {
+            return Math.max(capacity - elements.size(), 0);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        lock.lock();
+        try {
+            if (!elements.remove(o))
+                return false;
+            notFull.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void clear() {
+        lock.lock();
+        try {
+            elements.clear();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> c, int maxElements) {
+        if (c == this)
+            throw new IllegalArgumentException("A queue can't be drained to itself");
+        lock.lock();
+        try {
+            int drained = 0;
+            while (drained < maxElements && !elements.isEmpty()) {
+                c.add(elements.pollFirst());
+                drained++;
+            }
+            if (drained > 0)
+                notFull.signalAll();
+            return drained;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The iterator goes through a snapshot of the queue, removing an element through the iterator removes it from
+     * the queue if it's still there.
+     */
+    @Override
+    public Iterator<E> iterator() {
+        lock.lock();
+        try {
+            return new SnapshotIterator(new ArrayList<E>(elements));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return elements.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static void checkNotNull(Object e) {
+        if (e == null)
+            throw new NullPointerException("The queue doesn't accept null elements");
+    }
+
+    /**
+     * Removes a specific element, rather than an element equal to it.
+     *
+     * @param element element to remove.
+     */
+    private void removeElement(E element) {
+        lock.lock();
+        try {
+            Iterator<E> iterator = elements.iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next() == element) {
+                    iterator.remove();
+                    notFull.signal();
+                    return;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Iterator over a copy of the elements, removing the elements from the queue itself.
+     */
+    private final class SnapshotIterator implements Iterator<E> {
+        private final Iterator<E> snapshot;
+        private E last;
+
+        private SnapshotIterator(Collection<E> snapshot) {
+            this.snapshot = snapshot.iterator();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return snapshot.hasNext();
+        }
+
+        @Override
+        public E next() {
+            last = snapshot.next();
+            return last;
+        }
+
+        @Override
+        public void remove() {
+            if (last == null)
+                throw new IllegalStateException("No element to remove");
+            removeElement(last);
+            last = null;
+        }
+    }
+}
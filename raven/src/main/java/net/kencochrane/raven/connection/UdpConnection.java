@@ -2,6 +2,8 @@ package net.kencochrane.raven.connection;
 
 import net.kencochrane.raven.event.Event;
 import net.kencochrane.raven.marshaller.Marshaller;
+import net.kencochrane.raven.metrics.Instrumented;
+import net.kencochrane.raven.metrics.RavenMetrics;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
@@ -88,8 +90,24 @@ public class UdpConnection extends AbstractConnection {
         }
     }
 
+    /**
+     * Sets the marshaller used to serialise the events.
+     * <p>
+     * An {@link Instrumented} marshaller records its activity in the metrics of this connection.
+     *
+     * @param marshaller marshaller serialising the events.
+     */
     public void setMarshaller(Marshaller marshaller) {
         this.marshaller = marshaller;
+        if (marshaller instanceof Instrumented)
+            ((Instrumented) marshaller).setMetrics(getMetrics());
+    }
+
+    @Override
+    public void setMetrics(RavenMetrics metrics) {
+        super.setMetrics(metrics);
+        if (marshaller instanceof Instrumented)
+            ((Instrumented) marshaller).setMetrics(metrics);
     }
 
     @Override
@@ -0,0 +1,103 @@
+package net.kencochrane.raven.context;
+
+import com.google.common.util.concurrent.ForwardingExecutorService;
+import net.kencochrane.raven.event.interfaces.HttpCapturePolicy;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Executor service giving the tasks it runs the {@link RavenContext} of the thread submitting them.
+ * <p>
+ * The tasks are actually run by a delegate executor service, this class only wraps them. The details of the HTTP
+ * request handed over to the tasks are selected by a {@link HttpCapturePolicy}, the tasks submitted together through
+ * {@code invokeAll} or {@code invokeAny} sharing a single snapshot.
+ */
+public class ContextPropagatingExecutorService extends ForwardingExecutorService {
+    private final ExecutorService delegate;
+    private final HttpCapturePolicy capturePolicy;
+
+    /**
+     * Creates an executor service propagating the {@link RavenContext}, with every detail of the HTTP request.
+     *
+     * @param delegate executor service actually running the tasks.
+     */
+    public ContextPropagatingExecutorService(ExecutorService delegate) {
+        this(delegate, HttpCapturePolicy.FULL);
+    }
+
+    /**
+     * Creates an executor service propagating the {@link RavenContext}.
+     *
+     * @param delegate      executor service actually running the tasks.
+     * @param capturePolicy policy selecting the details of the HTTP request handed over to the tasks.
+     */
+    public ContextPropagatingExecutorService(ExecutorService delegate, HttpCapturePolicy capturePolicy) {
+        this.delegate = delegate;
+        this.capturePolicy = capturePolicy;
+    }
+
+    private <T> List<Callable<T>> wrap(Collection<? extends Callable<T>> tasks) {
+        RavenContext context = RavenContext.capture(capturePolicy);
+        List<Callable<T>> wrappedTasks = new ArrayList<Callable<T>>(tasks.size());
+        for (Callable<T> task : tasks) {
+            wrappedTasks.add(RavenContext.bind(context, task));
+        }
+        return wrappedTasks;
+    }
+
+    @Override
+    protected ExecutorService delegate() {
+        return delegate;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        delegate.execute(RavenContext.wrap(command, capturePolicy));
+    }
+
+    @Override
+    public <T> Future<T> submit(Callable<T> task) {
+        return delegate.submit(RavenContext.wrap(task, capturePolicy));
+    }
+
+    @Override
+    public Future<?> submit(Runnable task) {
+        return delegate.submit(RavenContext.wrap(task, capturePolicy));
+    }
+
+    @Override
+    public <T> Future<T> submit(Runnable task, T result) {
+        return delegate.submit(RavenContext.wrap(task, capturePolicy), result);
+    }
+
+    @Override
+    public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks) throws InterruptedException {
+        return delegate.invokeAll(wrap(tasks));
+    }
+
+    @Override
+    public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks, long timeout, TimeUnit unit)
+            throws InterruptedException {
+        return delegate.invokeAll(wrap(tasks), timeout, unit);
+    }
+
+    @Override
+    public <T> T invokeAny(Collection<? extends Callable<T>> tasks)
+            throws InterruptedException, ExecutionException {
+        return delegate.invokeAny(wrap(tasks));
+    }
+
+    @Override
+    public <T> T invokeAny(Collection<? extends Callable<T>> tasks, long timeout, TimeUnit unit)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        return delegate.invokeAny(wrap(tasks), timeout, unit);
+    }
+}
@@ -0,0 +1,20 @@
+package net.kencochrane.raven.context;
+
+import net.kencochrane.raven.event.interfaces.HttpCapturePolicy;
+import net.kencochrane.raven.event.interfaces.HttpInterface;
+
+/**
+ * HTTP request currently handled by a thread, read only when its details are actually needed.
+ * <p>
+ * The request object belongs to the servlet container and may be recycled once the request is over, a source must
+ * only be used from the thread handling the request.
+ */
+public interface HttpRequestSource {
+    /**
+     * Takes a snapshot of the request.
+     *
+     * @param capturePolicy policy selecting the details of the request to capture.
+     * @return a snapshot of the request, independent of the request object.
+     */
+    HttpInterface capture(HttpCapturePolicy capturePolicy);
+}
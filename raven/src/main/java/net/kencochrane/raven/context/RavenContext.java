@@ -0,0 +1,281 @@
+package net.kencochrane.raven.context;
+
+import net.kencochrane.raven.event.interfaces.HttpCapturePolicy;
+import net.kencochrane.raven.event.interfaces.HttpInterface;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+
+/**
+ * Details bound to the unit of work (such as an HTTP request) handled by a thread.
+ * <p>
+ * A context either refers to the live HTTP request handled by the thread, read only when an event is built, or holds
+ * an immutable snapshot of it. The live request is never read when the unit of work starts, the filters and servlets
+ * handling it can still decode its parameters and read its body as they see fit.
+ * <p>
+ * The context can be handed over to other threads (async servlets, tasks submitted to an executor) with
+ * {@link #wrap(Runnable, HttpCapturePolicy)}, {@link #wrap(Callable, HttpCapturePolicy)},
+ * {@link #propagatingExecutor(Executor, HttpCapturePolicy)} or a {@link ContextPropagatingExecutorService}, which call
+ * {@link #capture(HttpCapturePolicy)} on the submitting thread: the details of the request allowed by the policy are
+ * then read, and that snapshot is given to the task. Events built from those threads are given the same details as
+ * events built from the original thread, as long as the policy allows every detail the Raven instances send. Raven
+ * instances deferring the building of their events capture the context with their own policy, see
+ * {@link net.kencochrane.raven.Raven#captureContext()}.
+ * <p>
+ * Recommended usage:
+ * <pre>{@code
+ * RavenContext previousContext = context.attach();
+ * try {
+ *     // Code running with the given context.
+ * } finally {
+ *     RavenContext.restore(previousContext);
+ * }
+ * }</pre>
+ */
+public final class RavenContext {
+    /**
+     * Context of the threads which aren't handling any specific unit of work.
+     */
+    public static final RavenContext EMPTY = new RavenContext((HttpInterface) null);
+    private static final ThreadLocal<RavenContext> CURRENT_CONTEXT = new ThreadLocal<RavenContext>();
+    private final HttpInterface httpInterface;
+    private final HttpRequestSource requestSource;
+
+    /**
+     * Creates a context holding a snapshot of the HTTP request.
+     *
+     * @param httpInterface HTTP request handled by the unit of work, or {@code null}.
+     */
+    public RavenContext(HttpInterface httpInterface) {
+        this.httpInterface = httpInterface;
+        this.requestSource = null;
+    }
+
+    /**
+     * Creates a context referring to the live HTTP request handled by the current thread.
+     *
+     * @param requestSource HTTP request handled by the unit of work, read only when needed.
+     */
+    public RavenContext(HttpRequestSource requestSource) {
+        this.httpInterface = null;
+        this.requestSource = requestSource;
+    }
+
+    /**
+     * Gets the context of the current thread.
+     *
+     * @return the context attached to the current thread, or {@link #EMPTY} if there is none.
+     */
+    public static RavenContext current() {
+        RavenContext context = CURRENT_CONTEXT.get();
+        return context != null ? context : EMPTY;
+    }
+
+    /**
+     * Gets the context of the current thread, in a form which can be handed over to other threads, with every detail
+     * of the HTTP request.
+     *
+     * @return the context of the current thread, independent of the request object.
+     * @see #capture(HttpCapturePolicy)
+     */
+    public static RavenContext capture() {
+        return capture(HttpCapturePolicy.FULL);
+    }
+
+    /**
+     * Gets the context of the current thread, in a form which can be handed over to other threads, with the details
+     * of the HTTP request allowed by a policy.
+     * <p>
+     * If the current context refers to the live HTTP request, the allowed details are read from the request at that
+     * time, the other details are neither read nor kept. The request is read on each call, so that the snapshot
+     * reflects the request as it is when the work is handed over.
+     *
+     * @param capturePolicy policy selecting the details of the request to capture.
+     * @return the context of the current thread, independent of the request object.
+     */
+    public static RavenContext capture(HttpCapturePolicy capturePolicy) {
+        RavenContext context = current();
+        if (context.requestSource == null
+                && (context.httpInterface == null || capturePolicy.isCapturingEverything()))
+            return context;
+        return new RavenContext(context.getHttpInterface(capturePolicy));
+    }
+
+    /**
+     * Attaches back a context previously replaced by {@link #attach()}.
+     *
+     * @param previousContext context returned by {@link #attach()}.
+     */
+    public static void restore(RavenContext previousContext) {
+        if (previousContext == EMPTY)
+            CURRENT_CONTEXT.remove();
+        else
+            CURRENT_CONTEXT.set(previousContext);
+    }
+
+    /**
+     * Wraps a task so it runs with the context of the current thread, with every detail of the HTTP request,
+     * whichever thread ends up running it.
+     *
+     * @param task task to wrap.
+     * @return a task attaching the current context while running the given task.
+     */
+    public static Runnable wrap(Runnable task) {
+        return wrap(task, HttpCapturePolicy.FULL);
+    }
+
+    /**
+     * Wraps a task so it runs with the context of the current thread, whichever thread ends up running it.
+     *
+     * @param task          task to wrap.
+     * @param capturePolicy policy selecting the details of the HTTP request handed over to the task.
+     * @return a task attaching the current context while running the given task.
+     */
+    public static Runnable wrap(Runnable task, HttpCapturePolicy capturePolicy) {
+        return bind(capture(capturePolicy), task);
+    }
+
+    /**
+     * Wraps a task so it runs with the context of the current thread, with every detail of the HTTP request,
+     * whichever thread ends up running it.
+     *
+     * @param task task to wrap.
+     * @param <T>  type of the result of the task.
+     * @return a task attaching the current context while running the given task.
+     */
+    public static <T> Callable<T> wrap(Callable<T> task) {
+        return wrap(task, HttpCapturePolicy.FULL);
+    }
+
+    /**
+     * Wraps a task so it runs with the context of the current thread, whichever thread ends up running it.
+     *
+     * @param task          task to wrap.
+     * @param capturePolicy policy selecting the details of the HTTP request handed over to the task.
+     * @param <T>           type of the result of the task.
+     * @return a task attaching the current context while running the given task.
+     */
+    public static <T> Callable<T> wrap(Callable<T> task, HttpCapturePolicy capturePolicy) {
+        return bind(capture(capturePolicy), task);
+    }
+
+    /**
+     * Wraps a task so it runs with a captured context.
+     *
+     * @param context context handed over to the task.
+     * @param task    task to wrap.
+     * @return a task attaching the context while running the given task.
+     */
+    static Runnable bind(final RavenContext context, final Runnable task) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                RavenContext previousContext = context.attach();
+                try {
+                    task.run();
+                } finally {
+                    restore(previousContext);
+                }
+            }
+        };
+    }
+
+    /**
+     * Wraps a task so it runs with a captured context.
+     *
+     * @param context context handed over to the task.
+     * @param task    task to wrap.
+     * @param <T>     type of the result of the task.
+     * @return a task attaching the context while running the given task.
+     */
+    static <T> Callable<T> bind(final RavenContext context, final Callable<T> task) {
+        return new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                RavenContext previousContext = context.attach();
+                try {
+                    return task.call();
+                } finally {
+                    restore(previousContext);
+                }
+            }
+        };
+    }
+
+    /**
+     * Wraps an executor so the tasks it runs are given the context of the thread submitting them, with every detail
+     * of the HTTP request.
+     *
+     * @param executor executor actually running the tasks.
+     * @return an executor propagating the context of the submitting threads.
+     * @see ContextPropagatingExecutorService
+     */
+    public static Executor propagatingExecutor(Executor executor) {
+        return propagatingExecutor(executor, HttpCapturePolicy.FULL);
+    }
+
+    /**
+     * Wraps an executor so the tasks it runs are given the context of the thread submitting them.
+     *
+     * @param executor      executor actually running the tasks.
+     * @param capturePolicy policy selecting the details of the HTTP request handed over to the tasks.
+     * @return an executor propagating the context of the submitting threads.
+     * @see ContextPropagatingExecutorService
+     */
+    public static Executor propagatingExecutor(final Executor executor, final HttpCapturePolicy capturePolicy) {
+        return new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                executor.execute(wrap(command, capturePolicy));
+            }
+        };
+    }
+
+    /**
+     * Attaches this context to the current thread.
+     *
+     * @return the context previously attached to the current thread, to give back to {@link #restore(RavenContext)}.
+     */
+    public RavenContext attach() {
+        RavenContext previousContext = current();
+        if (this == EMPTY)
+            CURRENT_CONTEXT.remove();
+        else
+            CURRENT_CONTEXT.set(this);
+        return previousContext;
+    }
+
+    /**
+     * Gets the HTTP request handled by the unit of work, with every detail.
+     *
+     * @return a snapshot of the HTTP request, or {@code null} if the unit of work isn't an HTTP request.
+     */
+    public HttpInterface getHttpInterface() {
+        return getHttpInterface(HttpCapturePolicy.FULL);
+    }
+
+    /**
+     * Gets the details of the HTTP request handled by the unit of work allowed by a policy.
+     * <p>
+     * The live request is read at that time, only the allowed details being read. A snapshot is restricted to the
+     * allowed details.
+     *
+     * @param capturePolicy policy selecting the details of the request to capture.
+     * @return a snapshot of the HTTP request, or {@code null} if the unit of work isn't an HTTP request.
+     */
+    public HttpInterface getHttpInterface(HttpCapturePolicy capturePolicy) {
+        if (requestSource != null)
+            return requestSource.capture(capturePolicy);
+        if (httpInterface == null || capturePolicy.isCapturingEverything())
+            return httpInterface;
+        return httpInterface.restrict(capturePolicy);
+    }
+
+    @Override
+    public String toString() {
+        return "RavenContext{"
+                + "httpInterface=" + httpInterface
+                + ", requestSource=" + requestSource
+                + '}';
+    }
+}
@@ -4,7 +4,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ResourceBundle;
-import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Manages environment information on Raven.
@@ -20,11 +19,13 @@ public final class RavenEnvironment {
     public static final String NAME = ResourceBundle.getBundle("raven-build").getString("build.name");
     /**
      * Indicates whether the current thread is managed by raven or not.
+     * <p>
+     * {@link RavenThread}s don't rely on this ThreadLocal, they hold their own {@link ManagedScope}.
      */
-    protected static final ThreadLocal<AtomicInteger> RAVEN_THREAD = new ThreadLocal<AtomicInteger>() {
+    protected static final ThreadLocal<ManagedScope> RAVEN_THREAD = new ThreadLocal<ManagedScope>() {
         @Override
-        protected AtomicInteger initialValue() {
-            return new AtomicInteger();
+        protected ManagedScope initialValue() {
+            return new ManagedScope();
         }
     };
     private static final Logger logger = LoggerFactory.getLogger(RavenEnvironment.class);
@@ -32,6 +33,18 @@ public final class RavenEnvironment {
     private RavenEnvironment() {
     }
 
+    /**
+     * Gets the scope of the current thread.
+     *
+     * @return the scope keeping track of the management of the current thread.
+     */
+    private static ManagedScope currentScope() {
+        Thread currentThread = Thread.currentThread();
+        if (currentThread instanceof RavenThread)
+            return ((RavenThread) currentThread).getManagedScope();
+        return RAVEN_THREAD.get();
+    }
+
     /**
      * Sets the current thread as managed by Raven.
      * <p>
@@ -48,11 +61,12 @@ public final class RavenEnvironment {
      * }</pre>
      */
     public static void startManagingThread() {
+        ManagedScope scope = currentScope();
         try {
-            if (isManagingThread())
+            if (scope.depth > 0)
                 logger.warn("Thread already managed by Raven");
         } finally {
-            RAVEN_THREAD.get().incrementAndGet();
+            scope.depth++;
         }
     }
 
@@ -62,23 +76,84 @@ public final class RavenEnvironment {
      * The logs generated by Threads not managed by Raven will send logs to Sentry.
      */
     public static void stopManagingThread() {
+        ManagedScope scope = currentScope();
         try {
-            if (!isManagingThread()) {
+            if (scope.depth <= 0) {
                 //Start managing the thread only to send the warning
                 startManagingThread();
                 logger.warn("Thread not yet managed by Raven");
             }
         } finally {
-            RAVEN_THREAD.get().decrementAndGet();
+            scope.depth--;
         }
     }
 
+    /**
+     * Sets the current thread as managed by Raven, unless it is already managed.
+     * <p>
+     * This is a cheaper equivalent of {@link #isManagingThread()} followed by {@link #startManagingThread()}, meant for
+     * the code paths entered for every logging event.
+     * <p>
+     * Recommended usage:
+     * <pre>{@code
+     * RavenEnvironment.ManagedScope scope = RavenEnvironment.enterIfNotManaged();
+     * if (scope == null)
+     *     return;
+     * try {
+     *     // Some code that shouldn't generate Sentry logs.
+     * } finally {
+     *     scope.exit();
+     * }
+     * }</pre>
+     *
+     * @return the scope to exit once the thread shouldn't be managed anymore, or {@code null} if the thread was
+     * already managed by Raven.
+     */
+    public static ManagedScope enterIfNotManaged() {
+        Thread currentThread = Thread.currentThread();
+        if (currentThread instanceof RavenThread)
+            return null;
+
+        ManagedScope scope = RAVEN_THREAD.get();
+        if (scope.depth > 0)
+            return null;
+        scope.depth++;
+        return scope;
+    }
+
     /**
      * Checks whether the current thread is managed by Raven or not.
+     * <p>
+     * {@link RavenThread}s are always managed by Raven.
      *
      * @return {@code true} if the thread is managed by Raven, {@code false} otherwise.
      */
     public static boolean isManagingThread() {
-        return RAVEN_THREAD.get().get() > 0;
+        Thread currentThread = Thread.currentThread();
+        return currentThread instanceof RavenThread || RAVEN_THREAD.get().depth > 0;
+    }
+
+    /**
+     * Number of times a thread has been set as managed by Raven.
+     * <p>
+     * A scope is confined to its thread, which is why a plain counter is enough.
+     */
+    public static final class ManagedScope {
+        private int depth;
+
+        /**
+         * Creates a scope for a thread which isn't managed yet.
+         */
+        ManagedScope() {
+        }
+
+        /**
+         * Sets the thread which obtained this scope through {@link #enterIfNotManaged()} as not managed by Raven.
+         * <p>
+         * Must be called from that same thread.
+         */
+        public void exit() {
+            depth--;
+        }
     }
 }
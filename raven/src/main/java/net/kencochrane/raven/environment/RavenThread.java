@@ -0,0 +1,31 @@
+package net.kencochrane.raven.environment;
+
+/**
+ * Thread dedicated to Raven, such as the threads sending the events to Sentry.
+ * <p>
+ * The logs generated by a Raven thread are never sent to Sentry. Such threads are recognised by their type, without
+ * going through a {@link ThreadLocal}.
+ */
+public class RavenThread extends Thread {
+    private final RavenEnvironment.ManagedScope managedScope = new RavenEnvironment.ManagedScope();
+
+    /**
+     * Creates a thread dedicated to Raven.
+     *
+     * @param group  thread group of the new thread.
+     * @param target task run by the thread.
+     * @param name   name of the new thread.
+     */
+    public RavenThread(ThreadGroup group, Runnable target, String name) {
+        super(group, target, name);
+    }
+
+    /**
+     * Gets the scope keeping track of the calls to {@link RavenEnvironment#startManagingThread()} in this thread.
+     *
+     * @return the scope of this thread.
+     */
+    RavenEnvironment.ManagedScope getManagedScope() {
+        return managedScope;
+    }
+}
@@ -0,0 +1,192 @@
+package net.kencochrane.raven.event;
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Small array backed {@link java.util.Map} used to hold the content of an {@link Event}.
+ * <p>
+ * Keys and values are stored next to each other in a single array, which is lighter than a {@link java.util.HashMap}
+ * for the few entries usually found in an event. Lookups are linear, which is cheaper than hashing for such sizes.
+ * Beyond {@link #MAX_ARRAY_ENTRIES} entries, the entries are moved to a {@link LinkedHashMap} so that filling a large
+ * map doesn't become quadratic. In both cases the entries are iterated in the order in which they were added.
+ * <p>
+ * The map can only be filled by the {@link EventBuilder} and becomes immutable once {@link #freeze()} has been
+ * called, removing the need to wrap it in an unmodifiable view.
+ *
+ * @param <K> type of the keys.
+ * @param <V> type of the values.
+ */
+final class CompactMap<K, V> extends AbstractMap<K, V> implements Serializable {
+    private static final int DEFAULT_CAPACITY = 4;
+    /**
+     * Number of entries above which the linear scan of the table is replaced by a hash lookup.
+     */
+    private static final int MAX_ARRAY_ENTRIES = 8;
+    /**
+     * Keys and values, the key of the n-th entry is at {@code 2n} and its value at {@code 2n + 1}. Null once the
+     * entries have been moved to {@link #hashMap}.
+     */
+    private Object[] table = new Object[DEFAULT_CAPACITY * 2];
+    private int size;
+    /**
+     * Entries of the map once there are more than {@link #MAX_ARRAY_ENTRIES}, null until then.
+     */
+    private Map<K, V> hashMap;
+    private boolean frozen;
+
+    /**
+     * Finds the position of a key in the table.
+     *
+     * @param key key to look for.
+     * @return the position of the key in the table, or -1 if the key isn't in the map.
+     */
+    private int indexOf(Object key) {
+        for (int i = 0; i < size * 2; i += 2) {
+            Object k = table[i];
+            if (key == null ? k == null : key.equals(k))
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Associates a value to a key, replacing the previous value if there is one.
+     *
+     * @param key   key of the entry.
+     * @param value value of the entry.
+     * @return the previous value associated to the key, or {@code null}.
+     * @throws UnsupportedOperationException if the map has been frozen.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public V put(K key, V value) {
+        if (frozen)
+            throw new UnsupportedOperationException("The map is immutable");
+        if (hashMap != null)
+            return hashMap.put(key, value);
+
+        int index = indexOf(key);
+        if (index >= 0) {
+            V previous = (V) table[index + 1];
+            table[index + 1] = value;
+            return previous;
+        }
+
+        if (size == MAX_ARRAY_ENTRIES) {
+            moveToHashMap();
+            return hashMap.put(key, value);
+        }
+        if (size * 2 == table.length) {
+            Object[] newTable = new Object[table.length * 2];
+            System.arraycopy(table, 0, newTable, 0, table.length);
+            table = newTable;
+        }
+        table[size * 2] = key;
+        table[size * 2 + 1] = value;
+        size++;
+        return null;
+    }
+
+    /**
+     * Moves the entries of the table to a hash map, keeping their order.
+     */
+    @SuppressWarnings("unchecked")
+    private void moveToHashMap() {
+        Map<K, V> newHashMap = new LinkedHashMap<K, V>();
+        for (int i = 0; i < size * 2; i += 2) {
+            newHashMap.put((K) table[i], (V) table[i + 1]);
+        }
+        hashMap = newHashMap;
+        table = null;
+    }
+
+    /**
+     * Makes the map immutable.
+     */
+    void freeze() {
+        frozen = true;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        if (hashMap != null)
+            return hashMap.get(key);
+        int index = indexOf(key);
+        return index >= 0 ? (V) table[index + 1] : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        if (hashMap != null)
+            return hashMap.containsKey(key);
+        return indexOf(key) >= 0;
+    }
+
+    @Override
+    public int size() {
+        return hashMap != null ? hashMap.size() : size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        if (hashMap != null)
+            return Collections.unmodifiableMap(hashMap).entrySet();
+        return new EntrySet();
+    }
+
+    /**
+     * Read only view of the entries of the map.
+     */
+    private final class EntrySet extends AbstractSet<Entry<K, V>> {
+        @Override
+        public Iterator<Entry<K, V>> iterator() {
+            return new EntryIterator();
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    /**
+     * Read only iterator over the entries of the map.
+     */
+    private final class EntryIterator implements Iterator<Entry<K, V>> {
+        private int next;
+
+        @Override
+        public boolean hasNext() {
+            return next < size;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Entry<K, V> next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+
+            int index = next++ * 2;
+            return new SimpleImmutableEntry<K, V>((K) table[index], (V) table[index + 1]);
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("The map is immutable");
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package net.kencochrane.raven.event;
+
+/**
+ * Event whose construction is postponed until it is about to be sent.
+ * <p>
+ * A deferred event only holds a snapshot of the immutable details captured when the event occurred, the actual
+ * {@link Event} (and all the work related to its creation) is built later on, usually by the thread in charge of
+ * sending it to Sentry.
+ * <p>
+ * As the event might be built from another thread, implementations must not rely on details bound to the thread
+ * in which the event occurred.
+ */
+public interface DeferredEvent {
+    /**
+     * Builds the actual {@link Event} from the captured details.
+     *
+     * @return the event to send to Sentry.
+     */
+    Event build();
+}
@@ -3,8 +3,8 @@ package net.kencochrane.raven.event;
 import net.kencochrane.raven.event.interfaces.SentryInterface;
 
 import java.io.Serializable;
+import java.util.Collections;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
 
@@ -56,9 +56,9 @@ public class Event implements Serializable {
     /**
      * A map or list of tags for this event.
      * <p>
-     * Automatically created with a Map that is made unmodifiable by the {@link EventBuilder}.
+     * Empty by default, the {@link EventBuilder} replaces it with an immutable Map if tags are added.
      */
-    private Map<String, String> tags = new HashMap<String, String>();
+    private Map<String, String> tags = Collections.emptyMap();
     /**
      * Identifies the host client from which the event was recorded.
      */
@@ -66,9 +66,9 @@ public class Event implements Serializable {
     /**
      * A map or list of additional properties for this event.
      * <p>
-     * Automatically created with a Map that is made unmodifiable by the {@link EventBuilder}.
+     * Empty by default, the {@link EventBuilder} replaces it with an immutable Map if extras are added.
      */
-    private Map<String, Object> extra = new HashMap<String, Object>();
+    private Map<String, Object> extra = Collections.emptyMap();
     /**
      * Checksum for the event, allowing to group events with a similar checksum.
      */
@@ -76,9 +76,9 @@ public class Event implements Serializable {
     /**
      * Additional interfaces for other information and metadata.
      * <p>
-     * Automatically created with a Map that is made unmodifiable by the {@link EventBuilder}.
+     * Empty by default, the {@link EventBuilder} replaces it with an immutable Map if interfaces are added.
      */
-    private Map<String, SentryInterface> sentryInterfaces = new HashMap<String, SentryInterface>();
+    private Map<String, SentryInterface> sentryInterfaces = Collections.emptyMap();
 
     /**
      * Creates a new Event (should be called only through {@link EventBuilder} with the specified identifier.
@@ -111,6 +111,15 @@ public class Event implements Serializable {
         this.timestamp = timestamp;
     }
 
+    /**
+     * Checks whether a timestamp has been set, without cloning it as {@link #getTimestamp()} does.
+     *
+     * @return true if the event has a timestamp.
+     */
+    boolean hasTimestamp() {
+        return timestamp != null;
+    }
+
     public Level getLevel() {
         return level;
     }
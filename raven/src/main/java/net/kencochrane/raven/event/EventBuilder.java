@@ -2,12 +2,16 @@ package net.kencochrane.raven.event;
 
 import com.google.common.base.Charsets;
 import net.kencochrane.raven.event.interfaces.SentryInterface;
+import net.kencochrane.raven.filter.KeyFilter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.net.InetAddress;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.Callable;
 import java.util.concurrent.FutureTask;
@@ -36,6 +40,27 @@ public class EventBuilder {
     private static final HostnameCache HOSTNAME_CACHE = new HostnameCache(HOSTNAME_CACHE_DURATION);
     private final Event event;
     private boolean alreadyBuilt = false;
+    /**
+     * Tags of the event, only created when the first tag is added.
+     */
+    private CompactMap<String, String> tags;
+    /**
+     * Extra properties of the event, only created when the first property is added.
+     */
+    private CompactMap<String, Object> extra;
+    /**
+     * Layers of the extra properties below {@link #extra}, from the oldest to the most recent, only created when the
+     * first context is added. Each context is a layer, as well as the properties added one by one before it.
+     */
+    private List<Map<String, ?>> extraContexts;
+    /**
+     * Filter applied to each layer in {@link #extraContexts}.
+     */
+    private List<KeyFilter> extraContextFilters;
+    /**
+     * Sentry interfaces of the event, only created when the first interface is added.
+     */
+    private CompactMap<String, SentryInterface> sentryInterfaces;
 
     /**
      * Creates a new EventBuilder to prepare a new {@link Event}.
@@ -75,7 +100,7 @@ public class EventBuilder {
      */
     private static void autoSetMissingValues(Event event) {
         // Ensure that a timestamp is set (to now at least!)
-        if (event.getTimestamp() == null)
+        if (!event.hasTimestamp())
             event.setTimestamp(new Date());
 
         // Ensure that a platform is set
@@ -88,19 +113,18 @@ public class EventBuilder {
     }
 
     /**
-     * Ensures that every field in the {@code Event} are immutable to avoid confusion later.
+     * Freezes a map filled by the builder so it can be published in the {@link Event}.
      *
-     * @param event event to make immutable.
+     * @param map map to freeze, possibly {@code null} if nothing has been added to it.
+     * @param <V> type of the values.
+     * @return an immutable map, shared if there is no content.
      */
-    private static void makeImmutable(Event event) {
-        // Make the tags unmodifiable
-        event.setTags(Collections.unmodifiableMap(event.getTags()));
-
-        // Make the extra properties unmodifiable (everything in it is still mutable though)
-        event.setExtra(Collections.unmodifiableMap(event.getExtra()));
+    private static <V> Map<String, V> freeze(CompactMap<String, V> map) {
+        if (map == null)
+            return Collections.emptyMap();
 
-        // Make the SentryInterfaces unmodifiable
-        event.setSentryInterfaces(Collections.unmodifiableMap(event.getSentryInterfaces()));
+        map.freeze();
+        return map;
     }
 
     /**
@@ -203,7 +227,9 @@ public class EventBuilder {
      * @return the current {@code EventBuilder} for chained calls.
      */
     public EventBuilder addTag(String tagKey, String tagValue) {
-        event.getTags().put(tagKey, tagValue);
+        if (tags == null)
+            tags = new CompactMap<String, String>();
+        tags.put(tagKey, tagValue);
         return this;
     }
 
@@ -226,7 +252,39 @@ public class EventBuilder {
      * @return the current {@code EventBuilder} for chained calls.
      */
     public EventBuilder addExtra(String extraName, Object extraValue) {
-        event.getExtra().put(extraName, extraValue);
+        if (extra == null)
+            extra = new CompactMap<String, Object>();
+        extra.put(extraName, extraValue);
+        return this;
+    }
+
+    /**
+     * Adds a whole context (such as the MDC) to the extra properties of the event.
+     * <p>
+     * The context is referenced as it is rather than being copied entry by entry, it must be an immutable snapshot
+     * which won't be modified afterwards. As if the context had been copied, its entries take precedence over the
+     * extra properties and contexts added before it, and are overridden by those added after it.
+     *
+     * @param context snapshot of the context, which must not be modified afterwards.
+     * @param filter  filter selecting the keys of the context to capture.
+     * @return the current {@code EventBuilder} for chained calls.
+     */
+    public EventBuilder addExtraContext(Map<String, ?> context, KeyFilter filter) {
+        if (context.isEmpty())
+            return this;
+
+        if (extraContexts == null) {
+            extraContexts = new ArrayList<Map<String, ?>>();
+            extraContextFilters = new ArrayList<KeyFilter>();
+        }
+        if (extra != null) {
+            // The properties added so far are overridden by the context, the next ones override it
+            extraContexts.add(EventBuilder.<Object>freeze(extra));
+            extraContextFilters.add(KeyFilter.ACCEPT_ALL);
+            extra = null;
+        }
+        extraContexts.add(context);
+        extraContextFilters.add(filter);
         return this;
     }
 
@@ -263,14 +321,17 @@ public class EventBuilder {
      * @return the current {@code EventBuilder} for chained calls.
      */
     public EventBuilder addSentryInterface(SentryInterface sentryInterface) {
-        event.getSentryInterfaces().put(sentryInterface.getInterfaceName(), sentryInterface);
+        if (sentryInterfaces == null)
+            sentryInterfaces = new CompactMap<String, SentryInterface>();
+        sentryInterfaces.put(sentryInterface.getInterfaceName(), sentryInterface);
         return this;
     }
 
     /**
      * Finalises the {@link Event} and returns it.
      * <p>
-     * This operations will automatically set the missing values and make the mutable values immutable.
+     * This operations will automatically set the missing values and hand over the tags, extras and interfaces to
+     * the event in their immutable form.
      *
      * @return an immutable event.
      */
@@ -279,10 +340,17 @@ public class EventBuilder {
             throw new IllegalStateException("A message can't be built twice");
 
         autoSetMissingValues(event);
-        makeImmutable(event);
-
-        // Lock it only when everything has been set, in case of exception it should be possible to try to build again.
+        // Lock it before freezing the maps, a builder whose maps are frozen can't be used anymore. In case of exception
+        // while setting the missing values, it should still be possible to try to build again.
         alreadyBuilt = true;
+
+        // The extra properties are immutable, but the values themselves might still be mutable
+        event.setTags(EventBuilder.<String>freeze(tags));
+        if (extraContexts == null)
+            event.setExtra(EventBuilder.<Object>freeze(extra));
+        else
+            event.setExtra(new LayeredExtraMap(EventBuilder.<Object>freeze(extra), extraContexts, extraContextFilters));
+        event.setSentryInterfaces(EventBuilder.<SentryInterface>freeze(sentryInterfaces));
         return event;
     }
 
@@ -0,0 +1,180 @@
+package net.kencochrane.raven.event;
+
+import net.kencochrane.raven.filter.KeyFilter;
+
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Immutable view of the extra properties of an {@link Event} made of the properties added one by one and of whole
+ * contexts (such as the MDC) referenced without being copied.
+ * <p>
+ * The view gives the same result as a map in which every property and every entry of the contexts would have been put
+ * in turn: each layer takes precedence over the layers added before it. The properties added one by one since the last
+ * context make up the topmost layer, those added before a context are a layer below it. The keys of a context which
+ * are rejected by its {@link KeyFilter} are hidden.
+ * <p>
+ * Nothing is copied or merged when the event is built, the layers are only walked when the extras are read (usually
+ * by the marshaller, once). This makes lookups and iterations slightly more expensive than on a plain map, which is
+ * a good trade-off for maps read once at most.
+ * <p>
+ * The view is serialised as a plain {@link HashMap} holding the visible entries.
+ */
+final class LayeredExtraMap extends AbstractMap<String, Object> implements Serializable {
+    private final Map<String, Object> extra;
+    private final Map<String, ?>[] contexts;
+    private final KeyFilter[] contextFilters;
+    /**
+     * Number of visible entries, computed on first use.
+     */
+    private transient int size = -1;
+
+    /**
+     * Creates a view over the extra properties and contexts of an event.
+     *
+     * @param extra          properties added one by one after the last context, immutable.
+     * @param contexts       contexts and properties added before them, from the least to the most specific, none of
+     *                       them must be modified afterwards.
+     * @param contextFilters filter applied to each context.
+     */
+    @SuppressWarnings("unchecked")
+    LayeredExtraMap(Map<String, Object> extra, List<Map<String, ?>> contexts, List<KeyFilter> contextFilters) {
+        this.extra = extra;
+        this.contexts = contexts.toArray((Map<String, ?>[]) new Map<?, ?>[contexts.size()]);
+        this.contextFilters = contextFilters.toArray(new KeyFilter[contextFilters.size()]);
+    }
+
+    /**
+     * Checks whether a key of a context is visible, that is neither filtered out nor overridden.
+     *
+     * @param key          key to check.
+     * @param contextIndex index of the context containing the key.
+     * @return true if the value of the key in the given context is visible.
+     */
+    private boolean isVisible(Object key, int contextIndex) {
+        if (!isAccepted(key, contextIndex) || extra.containsKey(key))
+            return false;
+        for (int i = contextIndex + 1; i < contexts.length; i++) {
+            if (contexts[i].containsKey(key) && isAccepted(key, i))
+                return false;
+        }
+        return true;
+    }
+
+    private boolean isAccepted(Object key, int contextIndex) {
+        KeyFilter filter = contextFilters[contextIndex];
+        return filter.acceptsAll() || (key instanceof String && filter.accepts((String) key));
+    }
+
+    @Override
+    public Object get(Object key) {
+        if (extra.containsKey(key))
+            return extra.get(key);
+        for (int i = contexts.length - 1; i >= 0; i--) {
+            if (contexts[i].containsKey(key) && isAccepted(key, i))
+                return contexts[i].get(key);
+        }
+        return null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        if (extra.containsKey(key))
+            return true;
+        for (int i = contexts.length - 1; i >= 0; i--) {
+            if (contexts[i].containsKey(key) && isAccepted(key, i))
+                return true;
+        }
+        return false;
+    }
+
+    @Override
+    public int size() {
+        if (size < 0) {
+            int visibleEntries = 0;
+            for (Iterator<Entry<String, Object>> iterator = new EntryIterator(); iterator.hasNext(); iterator.next()) {
+                visibleEntries++;
+            }
+            size = visibleEntries;
+        }
+        return size;
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        return new AbstractSet<Entry<String, Object>>() {
+            @Override
+            public Iterator<Entry<String, Object>> iterator() {
+                return new EntryIterator();
+            }
+
+            @Override
+            public int size() {
+                return LayeredExtraMap.this.size();
+            }
+        };
+    }
+
+    /**
+     * Replaces the view with a plain map when the event is serialised.
+     *
+     * @return a map holding the visible entries.
+     * @throws ObjectStreamException never.
+     */
+    private Object writeReplace() throws ObjectStreamException {
+        return Collections.unmodifiableMap(new HashMap<String, Object>(this));
+    }
+
+    /**
+     * Iterator over the visible entries, starting with the properties added after the last context followed by the
+     * other layers from the most to the least specific.
+     */
+    private final class EntryIterator implements Iterator<Entry<String, Object>> {
+        private Iterator<? extends Entry<String, ?>> current = extra.entrySet().iterator();
+        /**
+         * Index of the context being iterated, {@code contexts.length} while iterating over {@link #extra}.
+         */
+        private int contextIndex = contexts.length;
+        private Entry<String, Object> next;
+
+        @Override
+        public boolean hasNext() {
+            while (next == null) {
+                if (current.hasNext()) {
+                    Entry<String, ?> entry = current.next();
+                    if (contextIndex == contexts.length || isVisible(entry.getKey(), contextIndex))
+                        next = new SimpleImmutableEntry<String, Object>(entry.getKey(), entry.getValue());
+                } else if (contextIndex > 0) {
+                    current = contexts[--contextIndex].entrySet().iterator();
+                } else {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public Entry<String, Object> next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+
+            Entry<String, Object> entry = next;
+            next = null;
+            return entry;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("The map is immutable");
+        }
+    }
+}
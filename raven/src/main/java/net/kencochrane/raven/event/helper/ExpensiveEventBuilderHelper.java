@@ -0,0 +1,16 @@
+package net.kencochrane.raven.event.helper;
+
+/**
+ * {@link EventBuilderHelper} whose work is expensive enough to be kept off the thread logging the event.
+ * <p>
+ * When an event is sent through {@link net.kencochrane.raven.Raven#sendEvent(net.kencochrane.raven.event.EventBuilder)}
+ * with an asynchronous connection, expensive helpers are run by the thread sending the event rather than by the
+ * calling thread, after every cheap helper. The {@link net.kencochrane.raven.context.RavenContext} of the calling
+ * thread is attached meanwhile, so the helpers see the snapshot of its HTTP request, limited to the details allowed by
+ * the policy of the Raven instance. Any other state bound to the calling thread (such as the MDC or custom thread
+ * locals) isn't propagated, and the helpers must be thread-safe.
+ * <p>
+ * Helpers which don't implement this interface are considered cheap and always run in the calling thread.
+ */
+public interface ExpensiveEventBuilderHelper extends EventBuilderHelper {
+}
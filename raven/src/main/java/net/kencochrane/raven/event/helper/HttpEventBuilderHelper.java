@@ -1,23 +1,53 @@
 package net.kencochrane.raven.event.helper;
 
+import net.kencochrane.raven.context.RavenContext;
 import net.kencochrane.raven.event.EventBuilder;
+import net.kencochrane.raven.event.interfaces.HttpCapturePolicy;
 import net.kencochrane.raven.event.interfaces.HttpInterface;
-import net.kencochrane.raven.servlet.RavenServletRequestListener;
-
-import javax.servlet.http.HttpServletRequest;
 
 /**
- * EventBuilderHelper allowing to retrieve the current {@link HttpServletRequest}.
+ * EventBuilderHelper allowing to retrieve the current HTTP request.
+ * <p>
+ * The HTTP request is retrieved from the {@link RavenContext} of the current thread, where it is stored by the
+ * {@link net.kencochrane.raven.servlet.RavenServletRequestListener}. This means that this builder must be called
+ * either from the thread in which the HTTP request has been handled, or from a thread to which the context has been
+ * propagated.
  * <p>
- * The {@link HttpServletRequest} is retrieved from a {@link ThreadLocal} storage. This means that this builder must
- * be called from the thread in which the HTTP request has been handled.
+ * The details of the request captured are selected by the {@link HttpCapturePolicy} of the helper, by default every
+ * detail is captured. Each Raven instance has its own helper, and therefore its own policy. The details are read from
+ * the request when the event is built, or restricted from the snapshot taken when the context was handed over to the
+ * current thread.
  */
 public class HttpEventBuilderHelper implements EventBuilderHelper {
+    private final HttpCapturePolicy capturePolicy;
+
+    /**
+     * Creates a helper capturing every detail of the requests.
+     */
+    public HttpEventBuilderHelper() {
+        this(HttpCapturePolicy.FULL);
+    }
+
+    /**
+     * Creates a helper capturing the details of the requests allowed by a policy.
+     *
+     * @param capturePolicy policy selecting the details of the requests to capture.
+     */
+    public HttpEventBuilderHelper(HttpCapturePolicy capturePolicy) {
+        if (capturePolicy == null)
+            throw new IllegalArgumentException("The capture policy can't be null");
+        this.capturePolicy = capturePolicy;
+    }
+
+    public HttpCapturePolicy getCapturePolicy() {
+        return capturePolicy;
+    }
+
     @Override
     public void helpBuildingEvent(EventBuilder eventBuilder) {
-        HttpServletRequest servletRequest = RavenServletRequestListener.getServletRequest();
-        if (servletRequest != null) {
-            eventBuilder.addSentryInterface(new HttpInterface(servletRequest));
+        HttpInterface httpInterface = RavenContext.current().getHttpInterface(capturePolicy);
+        if (httpInterface != null) {
+            eventBuilder.addSentryInterface(httpInterface);
         }
     }
 }
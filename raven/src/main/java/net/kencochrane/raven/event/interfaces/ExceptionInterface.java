@@ -21,6 +21,17 @@ public class ExceptionInterface implements SentryInterface {
         this(SentryException.extractExceptionQueue(throwable));
     }
 
+    /**
+     * Creates a new instance from the given {@code throwable}, keeping at most {@code maxFrames} frames in the
+     * StackTrace of each exception.
+     *
+     * @param throwable the {@link Throwable} to build this instance from
+     * @param maxFrames maximum number of frames for each exception, or {@link StackTraceInterface#UNLIMITED_FRAMES}
+     */
+    public ExceptionInterface(final Throwable throwable, final int maxFrames) {
+        this(SentryException.extractExceptionQueue(throwable, maxFrames));
+    }
+
     /**
      * Creates a new instance from the given {@code exceptions}.
      *
@@ -0,0 +1,228 @@
+package net.kencochrane.raven.event.interfaces;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import net.kencochrane.raven.metrics.Gauge;
+import net.kencochrane.raven.metrics.RavenMetrics;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool sharing identical stack frames and identical StackTraces between the captured exceptions.
+ * <p>
+ * When the same error happens repeatedly (during an outage for example), the events waiting to be sent hold
+ * StackTraces which are almost always identical. Interning the frames allows those events to share a single
+ * instance of each {@link StackTraceElement}, and interning the StackTraces allows identical StackTraces to share
+ * a single array of frames.
+ * <p>
+ * The pool only holds weak references, frames and StackTraces are released as soon as no event uses them anymore.
+ * <p>
+ * The pool keeps track of the number of frames and StackTraces that have been deduplicated, giving an idea of the
+ * memory saved, those numbers can be exposed as gauges of a {@link RavenMetrics} registry.
+ * <p>
+ * Interning costs an allocation and a lookup per frame on the thread capturing the exception, so it is disabled by
+ * default, the StackTraces then keep their own frames. The pool being shared by the whole JVM, so is this setting:
+ * it is enabled with the system property {@code raven.stacktrace.intern} or with {@link #setEnabled(boolean)}.
+ */
+public final class FrameInterner {
+    /**
+     * System property enabling the interning of the frames in the default pool, disabled by default.
+     */
+    public static final String INTERN_PROPERTY = "raven.stacktrace.intern";
+    private static final FrameInterner DEFAULT_INTERNER = new FrameInterner();
+    private final Interner<StackTraceElement> frameInterner = Interners.newWeakInterner();
+    private final Interner<InternedStackTrace> stackTraceInterner = Interners.newWeakInterner();
+    private final AtomicLong internedFrames = new AtomicLong();
+    private final AtomicLong deduplicatedFrames = new AtomicLong();
+    private final AtomicLong internedStackTraces = new AtomicLong();
+    private final AtomicLong deduplicatedStackTraces = new AtomicLong();
+    private final AtomicLong deduplicatedStackTraceFrames = new AtomicLong();
+    private volatile boolean enabled = Boolean.getBoolean(INTERN_PROPERTY);
+
+    /**
+     * Creates a new pool.
+     * <p>
+     * Most users should rely on {@link #getDefault()} instead, a pool being useful only if it is shared.
+     */
+    FrameInterner() {
+    }
+
+    /**
+     * Gets the pool used by the {@link StackTraceInterface}s.
+     *
+     * @return the default frame pool.
+     */
+    public static FrameInterner getDefault() {
+        return DEFAULT_INTERNER;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Enables or disables the interning of the StackTraces created from now on, in the whole JVM for the default pool.
+     *
+     * @param enabled whether the frames of the new StackTraces are shared through the pool.
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Interns a StackTrace and each of its frames.
+     * <p>
+     * The interned frames are gathered in a new array, {@code stackTrace} itself is left untouched.
+     *
+     * @param stackTrace StackTrace to intern.
+     * @return an interned StackTrace, holding frames equal to those of {@code stackTrace}.
+     */
+    InternedStackTrace intern(StackTraceElement[] stackTrace) {
+        StackTraceElement[] frames = new StackTraceElement[stackTrace.length];
+        int deduplicated = 0;
+        for (int i = 0; i < stackTrace.length; i++) {
+            frames[i] = frameInterner.intern(stackTrace[i]);
+            if (frames[i] != stackTrace[i])
+                deduplicated++;
+        }
+        internedFrames.addAndGet(frames.length);
+        deduplicatedFrames.addAndGet(deduplicated);
+
+        InternedStackTrace sample = new InternedStackTrace(frames);
+        InternedStackTrace internedStackTrace = stackTraceInterner.intern(sample);
+        internedStackTraces.incrementAndGet();
+        if (internedStackTrace != sample) {
+            deduplicatedStackTraces.incrementAndGet();
+            deduplicatedStackTraceFrames.addAndGet(frames.length);
+        }
+        return internedStackTrace;
+    }
+
+    /**
+     * Exposes the counters of the pool as gauges of a registry.
+     *
+     * @param metrics registry in which the gauges are registered.
+     */
+    public void registerGauges(RavenMetrics metrics) {
+        metrics.registerGauge(RavenMetrics.INTERNED_FRAMES, gauge(internedFrames));
+        metrics.registerGauge(RavenMetrics.DEDUPLICATED_FRAMES, gauge(deduplicatedFrames));
+        metrics.registerGauge(RavenMetrics.INTERNED_STACKTRACES, gauge(internedStackTraces));
+        metrics.registerGauge(RavenMetrics.DEDUPLICATED_STACKTRACES, gauge(deduplicatedStackTraces));
+        metrics.registerGauge(RavenMetrics.DEDUPLICATED_STACKTRACE_FRAMES, gauge(deduplicatedStackTraceFrames));
+    }
+
+    private static Gauge gauge(final AtomicLong value) {
+        return new Gauge() {
+            @Override
+            public long getValue() {
+                return value.get();
+            }
+        };
+    }
+
+    /**
+     * Gets the number of frames which went through the pool.
+     *
+     * @return the number of interned frames.
+     */
+    public long getInternedFrames() {
+        return internedFrames.get();
+    }
+
+    /**
+     * Gets the number of frames which have been replaced by an identical frame already in the pool.
+     * <p>
+     * Each of those is a {@link StackTraceElement} which didn't have to be retained.
+     *
+     * @return the number of deduplicated frames.
+     */
+    public long getDeduplicatedFrames() {
+        return deduplicatedFrames.get();
+    }
+
+    /**
+     * Gets the number of StackTraces which went through the pool.
+     *
+     * @return the number of interned StackTraces.
+     */
+    public long getInternedStackTraces() {
+        return internedStackTraces.get();
+    }
+
+    /**
+     * Gets the number of StackTraces which have been replaced by an identical StackTrace already in the pool.
+     *
+     * @return the number of deduplicated StackTraces.
+     */
+    public long getDeduplicatedStackTraces() {
+        return deduplicatedStackTraces.get();
+    }
+
+    /**
+     * Gets the number of array slots saved by sharing identical StackTraces.
+     *
+     * @return the total size of the deduplicated StackTraces.
+     */
+    public long getDeduplicatedStackTraceFrames() {
+        return deduplicatedStackTraceFrames.get();
+    }
+
+    @Override
+    public String toString() {
+        return "FrameInterner{"
+                + "enabled=" + enabled
+                + ", internedFrames=" + internedFrames
+                + ", deduplicatedFrames=" + deduplicatedFrames
+                + ", internedStackTraces=" + internedStackTraces
+                + ", deduplicatedStackTraces=" + deduplicatedStackTraces
+                + ", deduplicatedStackTraceFrames=" + deduplicatedStackTraceFrames
+                + '}';
+    }
+
+    /**
+     * StackTrace stored in the pool.
+     * <p>
+     * The array of frames must never be modified once the StackTrace has been interned. The pool only keeps a weak
+     * reference to this object, so the users of the frames must keep a reference to it as long as they use them.
+     */
+    static final class InternedStackTrace implements Serializable {
+        private final StackTraceElement[] frames;
+        private final int hash;
+
+        /**
+         * Creates a StackTrace for the pool.
+         *
+         * @param frames frames of the StackTrace, which must not be modified afterwards.
+         */
+        private InternedStackTrace(StackTraceElement[] frames) {
+            this.frames = frames;
+            this.hash = Arrays.hashCode(frames);
+        }
+
+        /**
+         * Gets the frames of the StackTrace.
+         *
+         * @return the frames, which must not be modified.
+         */
+        StackTraceElement[] getFrames() {
+            return frames;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            InternedStackTrace that = (InternedStackTrace) o;
+
+            return hash == that.hash && Arrays.equals(frames, that.frames);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package net.kencochrane.raven.event.interfaces;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Policy deciding which details of an HTTP request are captured in an {@link HttpInterface}.
+ * <p>
+ * The policy is applied while the request is read, the details which aren't kept are never copied. Headers, cookies
+ * and parameters can each be restricted to a list of names ({@code null} capturing every name, an empty list capturing
+ * none), and the captured values can be truncated. Restricting the parameters also restricts the query string, and
+ * restricting the cookies leaves out the {@code Cookie} header.
+ * <p>
+ * In the cheap mode, only the URL, the method and the allowed headers of the request are captured.
+ * <p>
+ * Instances are immutable and thread-safe.
+ */
+public final class HttpCapturePolicy {
+    /**
+     * Headers captured by {@link #CHEAP}.
+     */
+    public static final Set<String> CHEAP_HEADERS = Collections.unmodifiableSet(new LinkedHashSet<String>(
+            Arrays.asList("Host", "User-Agent", "Referer", "Content-Type", "Content-Length", "Accept")));
+    /**
+     * Value of {@link #getMaxValueLength()} when the values aren't truncated.
+     */
+    public static final int UNLIMITED_LENGTH = 0;
+    /**
+     * Policy capturing every detail of the request.
+     */
+    public static final HttpCapturePolicy FULL = new HttpCapturePolicy(false, null, null, null, UNLIMITED_LENGTH);
+    /**
+     * Policy capturing only the URL, the method and the {@link #CHEAP_HEADERS}.
+     */
+    public static final HttpCapturePolicy CHEAP = new HttpCapturePolicy(true, CHEAP_HEADERS,
+            Collections.<String>emptySet(), Collections.<String>emptySet(), UNLIMITED_LENGTH);
+    private final boolean cheap;
+    private final Set<String> headerNames;
+    private final Set<String> cookieNames;
+    private final Set<String> parameterNames;
+    private final int maxValueLength;
+
+    /**
+     * Creates a capture policy.
+     *
+     * @param cheap          whether only the URL, the method and the headers should be captured.
+     * @param headerNames    names of the headers to capture, {@code null} to capture every header.
+     * @param cookieNames    names of the cookies to capture, {@code null} to capture every cookie.
+     * @param parameterNames names of the parameters to capture, {@code null} to capture every parameter.
+     * @param maxValueLength maximum length of the captured values, longer values are truncated,
+     *                       {@link #UNLIMITED_LENGTH} to keep the values as they are.
+     */
+    public HttpCapturePolicy(boolean cheap, Set<String> headerNames, Set<String> cookieNames,
+                             Set<String> parameterNames, int maxValueLength) {
+        this.cheap = cheap;
+        this.headerNames = copyOf(headerNames);
+        this.cookieNames = copyOf(cookieNames);
+        this.parameterNames = copyOf(parameterNames);
+        this.maxValueLength = maxValueLength;
+    }
+
+    private static Set<String> copyOf(Set<String> names) {
+        return names != null ? Collections.unmodifiableSet(new LinkedHashSet<String>(names)) : null;
+    }
+
+    /**
+     * Truncates a captured value if necessary.
+     *
+     * @param value value to truncate, possibly {@code null}.
+     * @return the value, truncated to {@link #getMaxValueLength()}.
+     */
+    String truncate(String value) {
+        if (value == null || maxValueLength == UNLIMITED_LENGTH || value.length() <= maxValueLength)
+            return value;
+        return value.substring(0, maxValueLength);
+    }
+
+    /**
+     * Checks whether every detail of the requests is captured.
+     *
+     * @return true if this policy doesn't restrict the captured details.
+     */
+    public boolean isCapturingEverything() {
+        return !cheap && headerNames == null && cookieNames == null && parameterNames == null
+                && maxValueLength == UNLIMITED_LENGTH;
+    }
+
+    public boolean isCheap() {
+        return cheap;
+    }
+
+    /**
+     * Gets the names of the captured headers.
+     *
+     * @return the names of the captured headers, or {@code null} if every header is captured.
+     */
+    public Set<String> getHeaderNames() {
+        return headerNames;
+    }
+
+    /**
+     * Gets the names of the captured cookies.
+     *
+     * @return the names of the captured cookies, or {@code null} if every cookie is captured.
+     */
+    public Set<String> getCookieNames() {
+        return cookieNames;
+    }
+
+    /**
+     * Gets the names of the captured parameters.
+     *
+     * @return the names of the captured parameters, or {@code null} if every parameter is captured.
+     */
+    public Set<String> getParameterNames() {
+        return parameterNames;
+    }
+
+    public int getMaxValueLength() {
+        return maxValueLength;
+    }
+
+    @Override
+    public String toString() {
+        return "HttpCapturePolicy{"
+                + "cheap=" + cheap
+                + ", headerNames=" + headerNames
+                + ", cookieNames=" + cookieNames
+                + ", parameterNames=" + parameterNames
+                + ", maxValueLength=" + maxValueLength
+                + '}';
+    }
+}
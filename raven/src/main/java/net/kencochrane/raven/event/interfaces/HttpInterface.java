@@ -1,7 +1,11 @@
 package net.kencochrane.raven.event.interfaces;
 
+import com.google.common.collect.Maps;
+
 import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServletRequest;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
 import java.util.*;
 
 /**
@@ -12,6 +16,7 @@ public class HttpInterface implements SentryInterface {
      * Name of the HTTP interface in Sentry.
      */
     public static final String HTTP_INTERFACE = "sentry.interfaces.Http";
+    private static final String COOKIE_HEADER = "Cookie";
     private final String requestUrl;
     private final String method;
     private final Map<String, Collection<String>> parameters;
@@ -36,33 +41,246 @@ public class HttpInterface implements SentryInterface {
      * @param request Captured HTTP request to send to Sentry.
      */
     public HttpInterface(HttpServletRequest request) {
+        this(request, HttpCapturePolicy.FULL);
+    }
+
+    /**
+     * Creates a an HTTP element for an {@link net.kencochrane.raven.event.Event}, capturing only the details allowed
+     * by a policy.
+     *
+     * @param request       Captured HTTP request to send to Sentry.
+     * @param capturePolicy Policy selecting the details of the request to capture.
+     */
+    public HttpInterface(HttpServletRequest request, HttpCapturePolicy capturePolicy) {
+        // Only the URL, the method and the headers are captured in the cheap mode
+        boolean cheap = capturePolicy.isCheap();
         this.requestUrl = request.getRequestURL().toString();
         this.method = request.getMethod();
-        this.parameters = new HashMap<String, Collection<String>>();
-        for (Map.Entry<String, String[]> parameterMapEntry : request.getParameterMap().entrySet())
-            this.parameters.put(parameterMapEntry.getKey(), Arrays.asList(parameterMapEntry.getValue()));
-        this.queryString = request.getQueryString();
-        if (request.getCookies() != null) {
-            this.cookies = new HashMap<String, String>();
-            for (Cookie cookie : request.getCookies())
-                this.cookies.put(cookie.getName(), cookie.getValue());
+        this.headers = captureHeaders(request, capturePolicy);
+        this.parameters = cheap ? Collections.<String, Collection<String>>emptyMap()
+                : captureParameters(request, capturePolicy);
+        this.queryString = cheap ? null
+                : capturePolicy.truncate(restrictQueryString(request.getQueryString(), capturePolicy));
+        this.cookies = cheap ? Collections.<String, String>emptyMap() : captureCookies(request, capturePolicy);
+        this.remoteAddr = cheap ? null : request.getRemoteAddr();
+        this.serverName = cheap ? null : request.getServerName();
+        this.serverPort = cheap ? 0 : request.getServerPort();
+        this.localAddr = cheap ? null : request.getLocalAddr();
+        this.localName = cheap ? null : request.getLocalName();
+        this.localPort = cheap ? 0 : request.getLocalPort();
+        this.protocol = cheap ? null : request.getProtocol();
+        this.secure = !cheap && request.isSecure();
+        this.asyncStarted = !cheap && request.isAsyncStarted();
+        this.authType = cheap ? null : request.getAuthType();
+        this.remoteUser = cheap ? null : request.getRemoteUser();
+    }
+
+    /**
+     * Creates a copy of a snapshot keeping only the details allowed by a policy.
+     */
+    private HttpInterface(HttpInterface snapshot, HttpCapturePolicy capturePolicy) {
+        boolean cheap = capturePolicy.isCheap();
+        this.requestUrl = snapshot.requestUrl;
+        this.method = snapshot.method;
+        this.headers = restrictHeaders(snapshot.headers, capturePolicy);
+        this.parameters = cheap ? Collections.<String, Collection<String>>emptyMap()
+                : restrictValues(snapshot.parameters, capturePolicy.getParameterNames(), capturePolicy);
+        this.queryString = cheap ? null
+                : capturePolicy.truncate(restrictQueryString(snapshot.queryString, capturePolicy));
+        this.cookies = cheap ? Collections.<String, String>emptyMap()
+                : restrictCookies(snapshot.cookies, capturePolicy);
+        this.remoteAddr = cheap ? null : snapshot.remoteAddr;
+        this.serverName = cheap ? null : snapshot.serverName;
+        this.serverPort = cheap ? 0 : snapshot.serverPort;
+        this.localAddr = cheap ? null : snapshot.localAddr;
+        this.localName = cheap ? null : snapshot.localName;
+        this.localPort = cheap ? 0 : snapshot.localPort;
+        this.protocol = cheap ? null : snapshot.protocol;
+        this.secure = !cheap && snapshot.secure;
+        this.asyncStarted = !cheap && snapshot.asyncStarted;
+        this.authType = cheap ? null : snapshot.authType;
+        this.remoteUser = cheap ? null : snapshot.remoteUser;
+    }
+
+    private static Set<String> caseInsensitive(Set<String> names) {
+        if (names == null)
+            return null;
+        Set<String> caseInsensitiveNames = new TreeSet<String>(String.CASE_INSENSITIVE_ORDER);
+        caseInsensitiveNames.addAll(names);
+        return caseInsensitiveNames;
+    }
+
+    private static Map<String, Collection<String>> restrictValues(Map<String, Collection<String>> values,
+                                                                  Set<String> names,
+                                                                  HttpCapturePolicy capturePolicy) {
+        Map<String, Collection<String>> restrictedValues = new HashMap<String, Collection<String>>();
+        for (Map.Entry<String, Collection<String>> entry : values.entrySet()) {
+            if (names == null || names.contains(entry.getKey()))
+                restrictedValues.put(entry.getKey(),
+                        truncate(entry.getValue().toArray(new String[entry.getValue().size()]), capturePolicy));
+        }
+        return restrictedValues;
+    }
+
+    private static Map<String, Collection<String>> restrictHeaders(Map<String, Collection<String>> headers,
+                                                                   HttpCapturePolicy capturePolicy) {
+        Map<String, Collection<String>> restrictedHeaders = restrictValues(headers,
+                caseInsensitive(capturePolicy.getHeaderNames()), capturePolicy);
+        if (capturePolicy.getCookieNames() != null) {
+            for (Iterator<String> headerNames = restrictedHeaders.keySet().iterator(); headerNames.hasNext(); ) {
+                if (!isCapturedHeader(headerNames.next(), capturePolicy))
+                    headerNames.remove();
+            }
+        }
+        return restrictedHeaders;
+    }
+
+    /**
+     * Checks whether a header may be captured.
+     * <p>
+     * The {@code Cookie} header carries every cookie, it is left out as soon as the captured cookies are restricted.
+     */
+    private static boolean isCapturedHeader(String headerName, HttpCapturePolicy capturePolicy) {
+        return capturePolicy.getCookieNames() == null || !COOKIE_HEADER.equalsIgnoreCase(headerName);
+    }
+
+    /**
+     * Keeps only the allowed parameters in a query string.
+     * <p>
+     * The query string carries every parameter, when the captured parameters are restricted it is rebuilt from the
+     * pairs of the allowed parameters, as they were sent.
+     */
+    private static String restrictQueryString(String queryString, HttpCapturePolicy capturePolicy) {
+        Set<String> parameterNames = capturePolicy.getParameterNames();
+        if (queryString == null || parameterNames == null)
+            return queryString;
+
+        StringBuilder restrictedQueryString = new StringBuilder();
+        for (String parameterPair : queryString.split("&")) {
+            int separator = parameterPair.indexOf('=');
+            String parameterName = separator >= 0 ? parameterPair.substring(0, separator) : parameterPair;
+            try {
+                parameterName = URLDecoder.decode(parameterName, "UTF-8");
+            } catch (UnsupportedEncodingException e) {
+                throw new IllegalStateException("UTF-8 isn't supported", e);
+            } catch (IllegalArgumentException e) {
+                // Malformed parameter names can't be matched, leave them out
+                continue;
+            }
+            if (!parameterNames.contains(parameterName))
+                continue;
+            if (restrictedQueryString.length() > 0)
+                restrictedQueryString.append('&');
+            restrictedQueryString.append(parameterPair);
+        }
+        return restrictedQueryString.length() > 0 ? restrictedQueryString.toString() : null;
+    }
+
+    private static Map<String, String> restrictCookies(Map<String, String> cookies, HttpCapturePolicy capturePolicy) {
+        Set<String> cookieNames = capturePolicy.getCookieNames();
+        Map<String, String> restrictedCookies = new HashMap<String, String>();
+        for (Map.Entry<String, String> cookie : cookies.entrySet()) {
+            if (cookieNames == null || cookieNames.contains(cookie.getKey()))
+                restrictedCookies.put(cookie.getKey(), capturePolicy.truncate(cookie.getValue()));
+        }
+        return restrictedCookies;
+    }
+
+    private static Map<String, Collection<String>> captureParameters(HttpServletRequest request,
+                                                                     HttpCapturePolicy capturePolicy) {
+        Set<String> parameterNames = capturePolicy.getParameterNames();
+        if (parameterNames == null) {
+            Map<String, String[]> parameterMap = request.getParameterMap();
+            Map<String, Collection<String>> parameters = Maps.newHashMapWithExpectedSize(parameterMap.size());
+            for (Map.Entry<String, String[]> parameterMapEntry : parameterMap.entrySet())
+                parameters.put(parameterMapEntry.getKey(), truncate(parameterMapEntry.getValue(), capturePolicy));
+            return parameters;
+        }
+
+        // Only look up the allowed parameters instead of copying the whole parameter map
+        Map<String, Collection<String>> parameters = new HashMap<String, Collection<String>>();
+        for (String parameterName : parameterNames) {
+            String[] values = request.getParameterValues(parameterName);
+            if (values != null && values.length > 0)
+                parameters.put(parameterName, truncate(values, capturePolicy));
+        }
+        return parameters;
+    }
+
+    private static Map<String, String> captureCookies(HttpServletRequest request, HttpCapturePolicy capturePolicy) {
+        Set<String> cookieNames = capturePolicy.getCookieNames();
+        if (cookieNames != null && cookieNames.isEmpty())
+            return Collections.emptyMap();
+
+        Cookie[] requestCookies = request.getCookies();
+        if (requestCookies == null)
+            return Collections.emptyMap();
+
+        Map<String, String> cookies = new HashMap<String, String>();
+        for (Cookie cookie : requestCookies) {
+            if (cookieNames == null || cookieNames.contains(cookie.getName()))
+                cookies.put(cookie.getName(), capturePolicy.truncate(cookie.getValue()));
+        }
+        return cookies;
+    }
+
+    private static Map<String, Collection<String>> captureHeaders(HttpServletRequest request,
+                                                                  HttpCapturePolicy capturePolicy) {
+        Set<String> headerNames = capturePolicy.getHeaderNames();
+        Map<String, Collection<String>> headers = new HashMap<String, Collection<String>>();
+        if (headerNames == null) {
+            for (Enumeration<String> names = request.getHeaderNames(); names.hasMoreElements(); ) {
+                String headerName = names.nextElement();
+                if (isCapturedHeader(headerName, capturePolicy))
+                    headers.put(headerName, captureHeader(request, headerName, capturePolicy));
+            }
         } else {
-            this.cookies = Collections.emptyMap();
+            // Header names are case insensitive, the servlet container takes care of it
+            for (String headerName : headerNames) {
+                if (!isCapturedHeader(headerName, capturePolicy))
+                    continue;
+                Collection<String> values = captureHeader(request, headerName, capturePolicy);
+                if (!values.isEmpty())
+                    headers.put(headerName, values);
+            }
         }
-        this.remoteAddr = request.getRemoteAddr();
-        this.serverName = request.getServerName();
-        this.serverPort = request.getServerPort();
-        this.localAddr = request.getLocalAddr();
-        this.localName = request.getLocalName();
-        this.localPort = request.getLocalPort();
-        this.protocol = request.getProtocol();
-        this.secure = request.isSecure();
-        this.asyncStarted = request.isAsyncStarted();
-        this.authType = request.getAuthType();
-        this.remoteUser = request.getRemoteUser();
-        this.headers = new HashMap<String, Collection<String>>();
-        for (String headerName : Collections.list(request.getHeaderNames()))
-            this.headers.put(headerName, Collections.list(request.getHeaders(headerName)));
+        return headers;
+    }
+
+    private static Collection<String> captureHeader(HttpServletRequest request, String headerName,
+                                                    HttpCapturePolicy capturePolicy) {
+        Enumeration<String> values = request.getHeaders(headerName);
+        if (values == null || !values.hasMoreElements())
+            return Collections.emptyList();
+
+        List<String> capturedValues = new ArrayList<String>(1);
+        while (values.hasMoreElements()) {
+            capturedValues.add(capturePolicy.truncate(values.nextElement()));
+        }
+        return capturedValues;
+    }
+
+    private static Collection<String> truncate(String[] values, HttpCapturePolicy capturePolicy) {
+        if (capturePolicy.getMaxValueLength() == HttpCapturePolicy.UNLIMITED_LENGTH)
+            return Arrays.asList(values);
+
+        String[] truncatedValues = new String[values.length];
+        for (int i = 0; i < values.length; i++) {
+            truncatedValues[i] = capturePolicy.truncate(values[i]);
+        }
+        return Arrays.asList(truncatedValues);
+    }
+
+    /**
+     * Creates a copy of this snapshot keeping only the details allowed by a policy.
+     * <p>
+     * The details which were not captured in this snapshot can't be added back.
+     *
+     * @param capturePolicy policy selecting the details to keep.
+     * @return a restricted copy of this snapshot.
+     */
+    public HttpInterface restrict(HttpCapturePolicy capturePolicy) {
+        return new HttpInterface(this, capturePolicy);
     }
 
     @Override
@@ -87,7 +305,7 @@ public class HttpInterface implements SentryInterface {
     }
 
     public Map<String, String> getCookies() {
-        return cookies;
+        return Collections.unmodifiableMap(cookies);
     }
 
     public String getRemoteAddr() {
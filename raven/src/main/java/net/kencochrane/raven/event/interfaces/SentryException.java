@@ -28,11 +28,25 @@ public final class SentryException {
      * @param childExceptionStackTrace StackTrace of the exception caused by {@code throwable}.
      */
     public SentryException(Throwable throwable, StackTraceElement[] childExceptionStackTrace) {
+        this(throwable, throwable.getStackTrace(), childExceptionStackTrace, StackTraceInterface.UNLIMITED_FRAMES);
+    }
+
+    /**
+     * Creates a Sentry exception based on a Java Throwable and its already extracted StackTrace.
+     *
+     * @param throwable                Java exception to send to Sentry.
+     * @param stackTrace               StackTrace of {@code throwable}, owned by the new exception.
+     * @param childExceptionStackTrace StackTrace of the exception caused by {@code throwable}.
+     * @param maxFrames                maximum number of frames to keep in the StackTrace.
+     */
+    private SentryException(Throwable throwable, StackTraceElement[] stackTrace,
+                            StackTraceElement[] childExceptionStackTrace, int maxFrames) {
         this.exceptionMessage = throwable.getMessage();
         this.exceptionClassName = throwable.getClass().getSimpleName();
         Package exceptionPackage = throwable.getClass().getPackage();
         this.exceptionPackageName = exceptionPackage != null ? exceptionPackage.getName() : null;
-        this.stackTraceInterface = new StackTraceInterface(throwable.getStackTrace(), childExceptionStackTrace);
+        this.stackTraceInterface = StackTraceInterface.ownedStackTrace(stackTrace, childExceptionStackTrace,
+                maxFrames);
     }
 
     /**
@@ -62,14 +76,32 @@ public final class SentryException {
      * @return a queue of exception with StackTrace.
      */
     public static Deque<SentryException> extractExceptionQueue(Throwable throwable) {
+        return extractExceptionQueue(throwable, StackTraceInterface.UNLIMITED_FRAMES);
+    }
+
+    /**
+     * Transforms a {@link Throwable} into a Queue of {@link SentryException}, limiting the size of each StackTrace.
+     * <p>
+     * Exceptions are stored in the queue from the most recent one to the oldest one.
+     * <p>
+     * The StackTrace of each exception is retrieved only once, and shared with its cause to find the common frames.
+     *
+     * @param throwable throwable to transform in a queue of exceptions.
+     * @param maxFrames maximum number of frames kept for each exception, or
+     *                  {@link StackTraceInterface#UNLIMITED_FRAMES}.
+     * @return a queue of exception with StackTrace.
+     * @see StackTraceInterface#StackTraceInterface(StackTraceElement[], StackTraceElement[], int)
+     */
+    public static Deque<SentryException> extractExceptionQueue(Throwable throwable, int maxFrames) {
         Deque<SentryException> exceptions = new ArrayDeque<SentryException>();
         Set<Throwable> circularityDetector = new HashSet<Throwable>();
         StackTraceElement[] childExceptionStackTrace = new StackTraceElement[0];
 
         //Stack the exceptions to send them in the reverse order
         while (throwable != null && circularityDetector.add(throwable)) {
-            exceptions.add(new SentryException(throwable, childExceptionStackTrace));
-            childExceptionStackTrace = throwable.getStackTrace();
+            StackTraceElement[] stackTrace = throwable.getStackTrace();
+            exceptions.add(new SentryException(throwable, stackTrace, childExceptionStackTrace, maxFrames));
+            childExceptionStackTrace = stackTrace;
             throwable = throwable.getCause();
         }
 
@@ -10,8 +10,20 @@ public class StackTraceInterface implements SentryInterface {
      * Name of the Sentry interface allowing to send a StackTrace.
      */
     public static final String STACKTRACE_INTERFACE = "sentry.interfaces.Stacktrace";
+
+    /**
+     * Value of {@code maxFrames} used to keep every frame.
+     */
+    public static final int UNLIMITED_FRAMES = 0;
+    private static final StackTraceElement[] NO_FRAMES = new StackTraceElement[0];
+    /**
+     * Interned StackTrace, the reference is kept so the pool keeps providing the same frames. Null if the frames
+     * haven't been interned.
+     */
+    private final FrameInterner.InternedStackTrace internedStackTrace;
     private final StackTraceElement[] stackTrace;
     private final int framesCommonWithEnclosing;
+    private final int framesOmitted;
 
     /**
      * Creates a StackTrace for an {@link net.kencochrane.raven.event.Event}.
@@ -19,7 +31,7 @@ public class StackTraceInterface implements SentryInterface {
      * @param stackTrace StackTrace to provide to Sentry.
      */
     public StackTraceInterface(StackTraceElement[] stackTrace) {
-        this(stackTrace, new StackTraceElement[0]);
+        this(stackTrace, NO_FRAMES);
     }
 
     /**
@@ -33,15 +45,99 @@ public class StackTraceInterface implements SentryInterface {
      *                            are in common.
      */
     public StackTraceInterface(StackTraceElement[] stackTrace, StackTraceElement[] enclosingStackTrace) {
-        this.stackTrace = Arrays.copyOf(stackTrace, stackTrace.length);
+        this(stackTrace, enclosingStackTrace, UNLIMITED_FRAMES);
+    }
 
+    /**
+     * Creates a StackTrace for an {@link net.kencochrane.raven.event.Event} keeping at most {@code maxFrames} frames.
+     * <p>
+     * When the StackTrace is too deep, the most recent frames and the oldest frames are kept and the frames in the
+     * middle are omitted, the number of omitted frames being available through {@link #getFramesOmitted()}.
+     * <p>
+     * The frames are interned in the {@link FrameInterner#getDefault() default frame pool} if it is enabled.
+     *
+     * @param stackTrace          StackTrace to provide to Sentry.
+     * @param enclosingStackTrace StackTrace of the enclosing exception, to determine how many Stack frames
+     *                            are in common.
+     * @param maxFrames           maximum number of frames to keep, or {@link #UNLIMITED_FRAMES}.
+     */
+    public StackTraceInterface(StackTraceElement[] stackTrace, StackTraceElement[] enclosingStackTrace,
+                               int maxFrames) {
+        this(stackTrace, enclosingStackTrace, maxFrames, true);
+    }
+
+    /**
+     * Creates a StackTrace for an {@link net.kencochrane.raven.event.Event}.
+     *
+     * @param stackTrace          StackTrace to provide to Sentry.
+     * @param enclosingStackTrace StackTrace of the enclosing exception, to determine how many Stack frames
+     *                            are in common.
+     * @param maxFrames           maximum number of frames to keep, or {@link #UNLIMITED_FRAMES}.
+     * @param copy                whether {@code stackTrace} must be copied if all its frames are kept.
+     */
+    private StackTraceInterface(StackTraceElement[] stackTrace, StackTraceElement[] enclosingStackTrace,
+                                int maxFrames, boolean copy) {
+        int commonFrames = framesInCommon(stackTrace, enclosingStackTrace);
+        StackTraceElement[] frames;
+
+        if (maxFrames > UNLIMITED_FRAMES && stackTrace.length > maxFrames) {
+            // Keep the most recent frames (head) and the oldest frames (tail), drop the ones in the middle
+            int headFrames = (maxFrames + 1) / 2;
+            int tailFrames = maxFrames - headFrames;
+            frames = new StackTraceElement[maxFrames];
+            System.arraycopy(stackTrace, 0, frames, 0, headFrames);
+            System.arraycopy(stackTrace, stackTrace.length - tailFrames, frames, headFrames, tailFrames);
+            this.framesOmitted = stackTrace.length - maxFrames;
+            this.framesCommonWithEnclosing = Math.min(commonFrames, tailFrames);
+        } else {
+            frames = stackTrace;
+            this.framesOmitted = 0;
+            this.framesCommonWithEnclosing = commonFrames;
+        }
+
+        FrameInterner frameInterner = FrameInterner.getDefault();
+        if (frameInterner.isEnabled()) {
+            // Share the frames with identical StackTraces captured previously, the pool makes its own copy
+            this.internedStackTrace = frameInterner.intern(frames);
+            this.stackTrace = internedStackTrace.getFrames();
+        } else {
+            this.internedStackTrace = null;
+            this.stackTrace = copy && frames == stackTrace ? Arrays.copyOf(frames, frames.length) : frames;
+        }
+    }
+
+    /**
+     * Creates a StackTrace taking ownership of the given frames.
+     * <p>
+     * When the frames aren't interned, this avoids a copy of the frames obtained from
+     * {@link Throwable#getStackTrace()}, which already returns a new array on each call.
+     *
+     * @param stackTrace          StackTrace to provide to Sentry, which must not be modified afterwards.
+     * @param enclosingStackTrace StackTrace of the enclosing exception, to determine how many Stack frames
+     *                            are in common.
+     * @param maxFrames           maximum number of frames to keep, or {@link #UNLIMITED_FRAMES}.
+     * @return a StackTrace backed by the given frames, or by their interned copy.
+     */
+    static StackTraceInterface ownedStackTrace(StackTraceElement[] stackTrace,
+                                               StackTraceElement[] enclosingStackTrace, int maxFrames) {
+        return new StackTraceInterface(stackTrace, enclosingStackTrace, maxFrames, false);
+    }
+
+    /**
+     * Counts the frames at the bottom of the stack which are in common with the enclosing StackTrace.
+     *
+     * @param stackTrace          StackTrace provided to Sentry.
+     * @param enclosingStackTrace StackTrace of the enclosing exception.
+     * @return the number of frames in common.
+     */
+    private static int framesInCommon(StackTraceElement[] stackTrace, StackTraceElement[] enclosingStackTrace) {
         int m = stackTrace.length - 1;
         int n = enclosingStackTrace.length - 1;
         while (m >= 0 && n >= 0 && stackTrace[m].equals(enclosingStackTrace[n])) {
             m--;
             n--;
         }
-        framesCommonWithEnclosing = stackTrace.length - 1 - m;
+        return stackTrace.length - 1 - m;
     }
 
     @Override
@@ -49,14 +145,63 @@ public class StackTraceInterface implements SentryInterface {
         return STACKTRACE_INTERFACE;
     }
 
+    /**
+     * Gets a copy of the frames of the StackTrace.
+     * <p>
+     * To go through the frames without copying them, use {@link #getFrameCount()} and {@link #getFrame(int)}.
+     *
+     * @return a copy of the frames, starting from the most recent call.
+     */
     public StackTraceElement[] getStackTrace() {
         return Arrays.copyOf(stackTrace, stackTrace.length);
     }
 
+    /**
+     * Gets the number of frames in the StackTrace.
+     *
+     * @return the number of frames.
+     */
+    public int getFrameCount() {
+        return stackTrace.length;
+    }
+
+    /**
+     * Gets a single frame of the StackTrace.
+     *
+     * @param index position of the frame, starting from 0 for the most recent call.
+     * @return the frame at the given position.
+     * @throws ArrayIndexOutOfBoundsException if there is no frame at the given position.
+     */
+    public StackTraceElement getFrame(int index) {
+        return stackTrace[index];
+    }
+
     public int getFramesCommonWithEnclosing() {
         return framesCommonWithEnclosing;
     }
 
+    /**
+     * Gets the number of frames omitted because the StackTrace was deeper than the maximum number of frames.
+     *
+     * @return the number of omitted frames.
+     */
+    public int getFramesOmitted() {
+        return framesOmitted;
+    }
+
+    /**
+     * Gets the position of the frame which used to follow the omitted frames.
+     * <p>
+     * The omitted frames were located between the frames {@code getFramesOmittedIndex() - 1} and
+     * {@code getFramesOmittedIndex()}.
+     *
+     * @return the position of the first frame after the omitted ones, or {@link #getFrameCount()} if no frame has
+     * been omitted.
+     */
+    public int getFramesOmittedIndex() {
+        return framesOmitted > 0 ? (stackTrace.length + 1) / 2 : stackTrace.length;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -64,7 +209,7 @@ public class StackTraceInterface implements SentryInterface {
 
         StackTraceInterface that = (StackTraceInterface) o;
 
-        return Arrays.equals(stackTrace, that.stackTrace);
+        return framesOmitted == that.framesOmitted && Arrays.equals(stackTrace, that.stackTrace);
     }
 
     @Override
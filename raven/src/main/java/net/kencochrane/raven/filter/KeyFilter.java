@@ -0,0 +1,86 @@
+package net.kencochrane.raven.filter;
+
+import com.google.common.base.Splitter;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Filter selecting the keys of a context (such as the MDC) captured in the events.
+ * <p>
+ * A key is accepted if it is part of the included keys (when there are some) and isn't part of the excluded keys.
+ * <p>
+ * Instances are immutable and thread-safe.
+ */
+public final class KeyFilter {
+    /**
+     * Filter accepting every key.
+     */
+    public static final KeyFilter ACCEPT_ALL = new KeyFilter(Collections.<String>emptySet(),
+            Collections.<String>emptySet());
+    private final Set<String> includedKeys;
+    private final Set<String> excludedKeys;
+
+    /**
+     * Creates a filter.
+     *
+     * @param includedKeys keys accepted by the filter, or an empty set to accept every key which isn't excluded.
+     * @param excludedKeys keys rejected by the filter.
+     */
+    public KeyFilter(Set<String> includedKeys, Set<String> excludedKeys) {
+        this.includedKeys = Collections.unmodifiableSet(new HashSet<String>(includedKeys));
+        this.excludedKeys = Collections.unmodifiableSet(new HashSet<String>(excludedKeys));
+    }
+
+    /**
+     * Creates a filter from its textual configuration.
+     *
+     * @param includedKeys keys accepted by the filter separated by a comma, or {@code null} to accept every key.
+     * @param excludedKeys keys rejected by the filter separated by a comma, or {@code null}.
+     * @return a filter applying the given configuration.
+     */
+    public static KeyFilter parse(String includedKeys, String excludedKeys) {
+        if (includedKeys == null && excludedKeys == null)
+            return ACCEPT_ALL;
+
+        return new KeyFilter(splitKeys(includedKeys), splitKeys(excludedKeys));
+    }
+
+    private static Set<String> splitKeys(String keys) {
+        Set<String> keySet = new HashSet<String>();
+        if (keys != null) {
+            for (String key : Splitter.on(',').omitEmptyStrings().trimResults().split(keys)) {
+                keySet.add(key);
+            }
+        }
+        return keySet;
+    }
+
+    /**
+     * Checks whether the filter accepts every key, in which case the keys don't need to be checked at all.
+     *
+     * @return true if the filter doesn't reject anything.
+     */
+    public boolean acceptsAll() {
+        return includedKeys.isEmpty() && excludedKeys.isEmpty();
+    }
+
+    /**
+     * Checks whether a key should be captured.
+     *
+     * @param key key to check.
+     * @return true if the key is accepted by the filter.
+     */
+    public boolean accepts(String key) {
+        return (includedKeys.isEmpty() || includedKeys.contains(key)) && !excludedKeys.contains(key);
+    }
+
+    @Override
+    public String toString() {
+        return "KeyFilter{"
+                + "includedKeys=" + includedKeys
+                + ", excludedKeys=" + excludedKeys
+                + '}';
+    }
+}
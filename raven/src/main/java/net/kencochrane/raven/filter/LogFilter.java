@@ -0,0 +1,207 @@
+package net.kencochrane.raven.filter;
+
+import com.google.common.base.Splitter;
+import net.kencochrane.raven.event.Event;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Filter applied by the logging integrations before doing any work on a logging event.
+ * <p>
+ * Logging events can be rejected based on:
+ * <ul>
+ * <li>their level, with a minimum level applied to every logger</li>
+ * <li>their logger, with a minimum level applied to the loggers within a given prefix (package)</li>
+ * <li>their marker, for the logging frameworks supporting markers</li>
+ * </ul>
+ * The rules are compiled once, and the minimum level applying to each logger is cached to avoid going through the
+ * prefixes every time.
+ * <p>
+ * Instances are immutable and thread-safe.
+ */
+public final class LogFilter {
+    /**
+     * Filter accepting every logging event.
+     */
+    public static final LogFilter ACCEPT_ALL = new LogFilter(Event.Level.DEBUG,
+            Collections.<String, Event.Level>emptyMap(), Collections.<String>emptySet());
+    /**
+     * Maximum number of loggers for which the minimum level is cached.
+     * <p>
+     * Past this limit, the minimum level of the new loggers is computed each time.
+     */
+    private static final int MAX_CACHED_LOGGERS = 10000;
+    private final Event.Level minimumLevel;
+    /**
+     * Logger prefixes, from the most specific (longest) to the least specific.
+     */
+    private final String[] loggerPrefixes;
+    /**
+     * Minimum level for each prefix in {@link #loggerPrefixes}.
+     */
+    private final Event.Level[] loggerPrefixLevels;
+    private final Set<String> excludedMarkers;
+    private final boolean acceptAll;
+    private final ConcurrentMap<String, Event.Level> loggerLevels = new ConcurrentHashMap<String, Event.Level>();
+
+    /**
+     * Creates a filter.
+     *
+     * @param minimumLevel    minimum level of the events accepted, for every logger.
+     * @param loggerLevels    minimum level of the events accepted, for the loggers starting with a given prefix.
+     *                        When a logger matches multiple prefixes, the most specific one applies.
+     * @param excludedMarkers names of the markers for which the events are rejected.
+     */
+    public LogFilter(Event.Level minimumLevel, Map<String, Event.Level> loggerLevels, Set<String> excludedMarkers) {
+        this.minimumLevel = minimumLevel;
+        this.excludedMarkers = Collections.unmodifiableSet(new HashSet<String>(excludedMarkers));
+
+        List<String> prefixes = new ArrayList<String>(loggerLevels.keySet());
+        Collections.sort(prefixes, new Comparator<String>() {
+            @Override
+            public int compare(String prefix1, String prefix2) {
+                return prefix2.length() - prefix1.length();
+            }
+        });
+        this.loggerPrefixes = prefixes.toArray(new String[prefixes.size()]);
+        this.loggerPrefixLevels = new Event.Level[loggerPrefixes.length];
+        for (int i = 0; i < loggerPrefixes.length; i++) {
+            loggerPrefixLevels[i] = loggerLevels.get(loggerPrefixes[i]);
+        }
+
+        this.acceptAll = minimumLevel == Event.Level.DEBUG && loggerPrefixes.length == 0 && excludedMarkers.isEmpty();
+    }
+
+    /**
+     * Creates a filter from its textual configuration.
+     *
+     * @param minimumLevel    name of the minimum level for every logger (such as {@code WARNING}), or {@code null}
+     *                        to accept every level.
+     * @param loggerLevels    minimum level for logger prefixes, the prefixes and levels being separated by a colon and
+     *                        each prefix being separated by a comma (such as {@code org.hibernate:ERROR,com.foo:INFO}),
+     *                        or {@code null}.
+     * @param excludedMarkers names of the excluded markers separated by a comma, or {@code null}.
+     * @return a filter applying the given configuration.
+     * @throws IllegalArgumentException if a level isn't a valid {@link Event.Level}.
+     */
+    public static LogFilter parse(String minimumLevel, String loggerLevels, String excludedMarkers) {
+        if (minimumLevel == null && loggerLevels == null && excludedMarkers == null)
+            return ACCEPT_ALL;
+
+        Event.Level level = minimumLevel != null ? parseLevel(minimumLevel) : Event.Level.DEBUG;
+
+        Map<String, Event.Level> levels = new HashMap<String, Event.Level>();
+        if (loggerLevels != null) {
+            Map<String, String> levelNames = Splitter.on(',').omitEmptyStrings().trimResults()
+                    .withKeyValueSeparator(':').split(loggerLevels);
+            for (Map.Entry<String, String> levelName : levelNames.entrySet()) {
+                levels.put(levelName.getKey(), parseLevel(levelName.getValue()));
+            }
+        }
+
+        Set<String> markers = new HashSet<String>();
+        if (excludedMarkers != null) {
+            for (String marker : Splitter.on(',').omitEmptyStrings().trimResults().split(excludedMarkers)) {
+                markers.add(marker);
+            }
+        }
+
+        return new LogFilter(level, levels, markers);
+    }
+
+    private static Event.Level parseLevel(String level) {
+        return Event.Level.valueOf(level.trim().toUpperCase(Locale.ENGLISH));
+    }
+
+    /**
+     * Checks whether the filter accepts every logging event, in which case the logging events don't need to be
+     * inspected at all.
+     *
+     * @return true if the filter doesn't reject anything.
+     */
+    public boolean acceptsAll() {
+        return acceptAll;
+    }
+
+    /**
+     * Gets the names of the markers for which the logging events are rejected.
+     * <p>
+     * The logging frameworks whose markers can reference other markers check whether the marker of an event contains
+     * one of these markers, and give {@code null} as the marker name to {@link #isLoggable(String, Event.Level,
+     * String)}.
+     *
+     * @return the names of the excluded markers.
+     */
+    public Set<String> getExcludedMarkers() {
+        return excludedMarkers;
+    }
+
+    /**
+     * Checks whether a logging event should be sent to Sentry.
+     *
+     * @param loggerName name of the logger, or {@code null}.
+     * @param level      level of the logging event converted into a Sentry level, or {@code null}.
+     * @param markerName name of the marker of the logging event, or {@code null}.
+     * @return true if the logging event is accepted by the filter.
+     */
+    public boolean isLoggable(String loggerName, Event.Level level, String markerName) {
+        if (acceptAll)
+            return true;
+
+        if (markerName != null && excludedMarkers.contains(markerName))
+            return false;
+
+        // Level.FATAL is the first level, Level.DEBUG the last one.
+        return level == null || level.compareTo(getMinimumLevel(loggerName)) <= 0;
+    }
+
+    /**
+     * Gets the minimum level of the events accepted for a logger.
+     *
+     * @param loggerName name of the logger, or {@code null}.
+     * @return the minimum level applying to the logger.
+     */
+    public Event.Level getMinimumLevel(String loggerName) {
+        if (loggerName == null || loggerPrefixes.length == 0)
+            return minimumLevel;
+
+        Event.Level loggerLevel = loggerLevels.get(loggerName);
+        if (loggerLevel == null) {
+            loggerLevel = computeMinimumLevel(loggerName);
+            if (loggerLevels.size() < MAX_CACHED_LOGGERS)
+                loggerLevels.putIfAbsent(loggerName, loggerLevel);
+        }
+        return loggerLevel;
+    }
+
+    private Event.Level computeMinimumLevel(String loggerName) {
+        for (int i = 0; i < loggerPrefixes.length; i++) {
+            String prefix = loggerPrefixes[i];
+            // A prefix matches a whole logger name or package, "com.foo" matches "com.foo.Bar" but not "com.foobar"
+            if (loggerName.startsWith(prefix) && (loggerName.length() == prefix.length()
+                    || prefix.endsWith(".") || loggerName.charAt(prefix.length()) == '.'))
+                return loggerPrefixLevels[i];
+        }
+        return minimumLevel;
+    }
+
+    @Override
+    public String toString() {
+        return "LogFilter{"
+                + "minimumLevel=" + minimumLevel
+                + ", loggerPrefixes=" + Arrays.toString(loggerPrefixes)
+                + ", excludedMarkers=" + excludedMarkers
+                + '}';
+    }
+}
@@ -3,13 +3,17 @@ package net.kencochrane.raven.jul;
 import com.google.common.base.Splitter;
 import net.kencochrane.raven.Raven;
 import net.kencochrane.raven.RavenFactory;
+import net.kencochrane.raven.context.RavenContext;
 import net.kencochrane.raven.dsn.Dsn;
 import net.kencochrane.raven.dsn.InvalidDsnException;
 import net.kencochrane.raven.environment.RavenEnvironment;
+import net.kencochrane.raven.event.DeferredEvent;
 import net.kencochrane.raven.event.Event;
 import net.kencochrane.raven.event.EventBuilder;
 import net.kencochrane.raven.event.interfaces.ExceptionInterface;
 import net.kencochrane.raven.event.interfaces.MessageInterface;
+import net.kencochrane.raven.event.interfaces.StackTraceInterface;
+import net.kencochrane.raven.filter.LogFilter;
 
 import java.text.MessageFormat;
 import java.util.*;
@@ -45,6 +49,35 @@ public class SentryHandler extends Handler {
      * Tags to add to every event.
      */
     protected Map<String, String> tags = Collections.emptyMap();
+    /**
+     * Whether the events should be built by the thread sending them rather than by the thread logging them.
+     * <p>
+     * When enabled, only the log record is captured when the record is published; the event itself is built
+     * (and the builder helpers are run) later on, by the asynchronous connection if there is one.
+     */
+    protected boolean deferredBuilding;
+    /**
+     * Maximum number of frames kept in the StackTrace of each exception.
+     * <p>
+     * Deeper StackTraces keep their most recent and oldest frames, the frames in the middle are omitted.
+     * Unlimited by default ({@link StackTraceInterface#UNLIMITED_FRAMES}).
+     */
+    protected int maxFrames = StackTraceInterface.UNLIMITED_FRAMES;
+    /**
+     * Filter applied to the logging events before any other processing.
+     * <p>
+     * Built from {@link #minLevel} and {@link #loggerLevels}.
+     */
+    protected LogFilter logFilter = LogFilter.ACCEPT_ALL;
+    /**
+     * Minimum level of the logging events sent to Sentry, as a Sentry level name (such as {@code WARNING}).
+     */
+    protected String minLevel;
+    /**
+     * Minimum level of the logging events sent to Sentry for some loggers, by logger prefix
+     * (such as {@code org.hibernate:ERROR,com.foo:INFO}).
+     */
+    protected String loggerLevels;
 
     /**
      * Creates an instance of SentryHandler.
@@ -106,24 +139,65 @@ public class SentryHandler extends Handler {
         String tagsProperty = manager.getProperty(className + ".tags");
         if (tagsProperty != null)
             tags = Splitter.on(",").withKeyValueSeparator(":").split(tagsProperty);
+        deferredBuilding = Boolean.parseBoolean(manager.getProperty(className + ".deferredBuilding"));
+        String maxFramesProperty = manager.getProperty(className + ".maxFrames");
+        if (maxFramesProperty != null) {
+            try {
+                maxFrames = Integer.parseInt(maxFramesProperty.trim());
+            } catch (NumberFormatException e) {
+                reportError("Invalid maximum number of frames '" + maxFramesProperty + "', every frame is kept",
+                        e, ErrorManager.GENERIC_FAILURE);
+            }
+        }
+        minLevel = manager.getProperty(className + ".minLevel");
+        loggerLevels = manager.getProperty(className + ".loggerLevels");
+        try {
+            logFilter = LogFilter.parse(minLevel, loggerLevels, null);
+        } catch (IllegalArgumentException e) {
+            reportError("Invalid level in '" + minLevel + "' or '" + loggerLevels + "', every record is accepted",
+                    e, ErrorManager.GENERIC_FAILURE);
+            logFilter = LogFilter.ACCEPT_ALL;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The record must also be accepted by the {@link #logFilter}.
+     */
+    @Override
+    public boolean isLoggable(LogRecord record) {
+        return super.isLoggable(record) && (logFilter.acceptsAll()
+                || logFilter.isLoggable(record.getLoggerName(), getLevel(record.getLevel()), null));
     }
 
     @Override
     public void publish(LogRecord record) {
+        if (!isLoggable(record))
+            return;
+
         // Do not log the event if the current thread is managed by raven
-        if (!isLoggable(record) || RavenEnvironment.isManagingThread())
+        RavenEnvironment.ManagedScope managedScope = RavenEnvironment.enterIfNotManaged();
+        if (managedScope == null)
             return;
 
-        RavenEnvironment.startManagingThread();
         try {
             if (raven == null)
                 initRaven();
-            Event event = buildEvent(record);
-            raven.sendEvent(event);
+            // Sampled out events aren't even built
+            if (!raven.sample())
+                return;
+
+            if (deferredBuilding) {
+                raven.sendSampledEvent(new DeferredRecordEvent(record));
+            } else {
+                Event event = buildEvent(record);
+                raven.sendSampledEvent(event);
+            }
         } catch (Exception e) {
             reportError("An exception occurred while creating a new event in Raven", e, ErrorManager.WRITE_FAILURE);
         } finally {
-            RavenEnvironment.stopManagingThread();
+            managedScope.exit();
         }
     }
 
@@ -151,25 +225,52 @@ public class SentryHandler extends Handler {
      * @return Event containing details provided by the logging system.
      */
     protected Event buildEvent(LogRecord record) {
-        EventBuilder eventBuilder = new EventBuilder()
-                .setLevel(getLevel(record.getLevel()))
-                .setTimestamp(new Date(record.getMillis()))
-                .setLogger(record.getLoggerName());
+        String message = getMessage(record);
+        if (record.getParameters() == null)
+            return buildEvent(record, message, null);
+
+        return buildEvent(record, MessageFormat.format(message, record.getParameters()),
+                new MessageInterface(message, formatMessageParameters(record.getParameters())));
+    }
 
+    /**
+     * Gets the message of a log record, localised if the record has a resource bundle.
+     *
+     * @param record Log generated.
+     * @return the message, before its parameters are replaced.
+     */
+    private static String getMessage(LogRecord record) {
         String message = record.getMessage();
         if (record.getResourceBundle() != null && record.getResourceBundle().containsKey(record.getMessage())) {
             message = record.getResourceBundle().getString(record.getMessage());
         }
-        if (record.getParameters() != null) {
-            List<String> parameters = formatMessageParameters(record.getParameters());
-            eventBuilder.addSentryInterface(new MessageInterface(message, parameters));
-            message = MessageFormat.format(message, record.getParameters());
-        }
-        eventBuilder.setMessage(message);
+        return message;
+    }
+
+    /**
+     * Builds an Event based on the log record and its already formatted message.
+     * <p>
+     * The message and its parameters are formatted when the record is published, the parameters might be modified
+     * by the application afterwards.
+     *
+     * @param record           Log generated.
+     * @param formattedMessage Message of the record, with its parameters.
+     * @param messageInterface Message of the record along with its parameters formatted as strings, or {@code null}
+     *                         if the record has no parameters.
+     * @return Event containing details provided by the logging system.
+     */
+    protected Event buildEvent(LogRecord record, String formattedMessage, MessageInterface messageInterface) {
+        EventBuilder eventBuilder = new EventBuilder()
+                .setLevel(getLevel(record.getLevel()))
+                .setTimestamp(new Date(record.getMillis()))
+                .setLogger(record.getLoggerName())
+                .setMessage(formattedMessage);
+        if (messageInterface != null)
+            eventBuilder.addSentryInterface(messageInterface);
 
         Throwable throwable = record.getThrown();
         if (throwable != null)
-            eventBuilder.addSentryInterface(new ExceptionInterface(throwable));
+            eventBuilder.addSentryInterface(new ExceptionInterface(throwable, maxFrames));
 
         if (record.getSourceClassName() != null && record.getSourceMethodName() != null) {
             StackTraceElement fakeFrame = new StackTraceElement(record.getSourceClassName(),
@@ -193,6 +294,49 @@ public class SentryHandler extends Handler {
     public void flush() {
     }
 
+    public void setDeferredBuilding(boolean deferredBuilding) {
+        this.deferredBuilding = deferredBuilding;
+    }
+
+    public void setMaxFrames(int maxFrames) {
+        this.maxFrames = maxFrames;
+    }
+
+    /**
+     * Set the minimum level of the logging events sent to Sentry.
+     *
+     * @param minLevel name of a Sentry level ({@code DEBUG}, {@code INFO}, {@code WARNING}, {@code ERROR} or
+     *                 {@code FATAL}).
+     */
+    public void setMinLevel(String minLevel) {
+        this.minLevel = minLevel;
+        updateLogFilter();
+    }
+
+    /**
+     * Set the minimum level of the logging events sent to Sentry for some loggers.
+     *
+     * @param loggerLevels A String of logger prefixes and Sentry levels. prefixes/levels are separated by colon(:) and
+     *                     prefixes are separated by commas(,).
+     */
+    public void setLoggerLevels(String loggerLevels) {
+        this.loggerLevels = loggerLevels;
+        updateLogFilter();
+    }
+
+    /**
+     * Rebuilds the {@link #logFilter} after a change of its configuration, keeping the previous filter if a level
+     * is invalid.
+     */
+    private void updateLogFilter() {
+        try {
+            logFilter = LogFilter.parse(minLevel, loggerLevels, null);
+        } catch (IllegalArgumentException e) {
+            reportError("Invalid level in '" + minLevel + "' or '" + loggerLevels + "', the filter is left unchanged",
+                    e, ErrorManager.GENERIC_FAILURE);
+        }
+    }
+
     @Override
     public void close() throws SecurityException {
         RavenEnvironment.startManagingThread();
@@ -205,4 +349,46 @@ public class SentryHandler extends Handler {
             RavenEnvironment.stopManagingThread();
         }
     }
+
+    /**
+     * Event built from a log record once it's about to be sent.
+     */
+    private final class DeferredRecordEvent implements DeferredEvent {
+        private final LogRecord record;
+        private final String formattedMessage;
+        private final MessageInterface messageInterface;
+        private final RavenContext context;
+
+        /**
+         * Captures the log record, making sure that the details bound to the current thread are computed.
+         *
+         * @param record log record to capture.
+         */
+        private DeferredRecordEvent(LogRecord record) {
+            // The source class and method are inferred from the current stack, if not already set.
+            record.getSourceClassName();
+            this.record = record;
+            // Freezes the message, parameters might change once the logging call returns
+            String message = getMessage(record);
+            if (record.getParameters() != null) {
+                this.formattedMessage = MessageFormat.format(message, record.getParameters());
+                this.messageInterface = new MessageInterface(message, formatMessageParameters(record.getParameters()));
+            } else {
+                this.formattedMessage = message;
+                this.messageInterface = null;
+            }
+            this.context = raven.captureContext();
+        }
+
+        @Override
+        public Event build() {
+            // The builder helpers see the context of the thread in which the record was published
+            RavenContext previousContext = context.attach();
+            try {
+                return buildEvent(record, formattedMessage, messageInterface);
+            } finally {
+                RavenContext.restore(previousContext);
+            }
+        }
+    }
 }
@@ -1,44 +1,64 @@
 package net.kencochrane.raven.marshaller.json;
 
 import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
 import net.kencochrane.raven.event.interfaces.HttpInterface;
 
 import java.io.IOException;
 import java.util.Collection;
-import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.RandomAccess;
 
 /**
  * Binding system allowing to convert an {@link HttpInterface} into a JSON stream.
+ * <p>
+ * The names of the fields are encoded once, and the decorated header values are written from a buffer reused for
+ * every header of the request.
  */
 public class HttpInterfaceBinding implements InterfaceBinding<HttpInterface> {
-    private static final String URL = "url";
-    private static final String METHOD = "method";
-    private static final String DATA = "data";
-    private static final String QUERY_STRING = "query_string";
-    private static final String COOKIES = "cookies";
-    private static final String HEADERS = "headers";
-    private static final String ENVIRONMENT = "env";
-    private static final String ENV_REMOTE_ADDR = "REMOTE_ADDR";
-    private static final String ENV_SERVER_NAME = "SERVER_NAME";
-    private static final String ENV_SERVER_PORT = "SERVER_PORT";
-    private static final String ENV_LOCAL_ADDR = "LOCAL_ADDR";
-    private static final String ENV_LOCAL_NAME = "LOCAL_NAME";
-    private static final String ENV_LOCAL_PORT = "LOCAL_PORT";
-    private static final String ENV_SERVER_PROTOCOL = "SERVER_PROTOCOL";
-    private static final String ENV_REQUEST_SECURE = "REQUEST_SECURE";
-    private static final String ENV_REQUEST_ASYNC = "REQUEST_ASYNC";
-    private static final String ENV_AUTH_TYPE = "AUTH_TYPE";
-    private static final String ENV_REMOTE_USER = "REMOTE_USER";
+    private static final SerializableString URL = new SerializedString("url");
+    private static final SerializableString METHOD = new SerializedString("method");
+    private static final SerializableString DATA = new SerializedString("data");
+    private static final SerializableString QUERY_STRING = new SerializedString("query_string");
+    private static final SerializableString COOKIES = new SerializedString("cookies");
+    private static final SerializableString HEADERS = new SerializedString("headers");
+    private static final SerializableString ENVIRONMENT = new SerializedString("env");
+    private static final SerializableString ENV_REMOTE_ADDR = new SerializedString("REMOTE_ADDR");
+    private static final SerializableString ENV_SERVER_NAME = new SerializedString("SERVER_NAME");
+    private static final SerializableString ENV_SERVER_PORT = new SerializedString("SERVER_PORT");
+    private static final SerializableString ENV_LOCAL_ADDR = new SerializedString("LOCAL_ADDR");
+    private static final SerializableString ENV_LOCAL_NAME = new SerializedString("LOCAL_NAME");
+    private static final SerializableString ENV_LOCAL_PORT = new SerializedString("LOCAL_PORT");
+    private static final SerializableString ENV_SERVER_PROTOCOL = new SerializedString("SERVER_PROTOCOL");
+    private static final SerializableString ENV_REQUEST_SECURE = new SerializedString("REQUEST_SECURE");
+    private static final SerializableString ENV_REQUEST_ASYNC = new SerializedString("REQUEST_ASYNC");
+    private static final SerializableString ENV_AUTH_TYPE = new SerializedString("AUTH_TYPE");
+    private static final SerializableString ENV_REMOTE_USER = new SerializedString("REMOTE_USER");
+    /**
+     * Decoration around each header value, a header with the values {@code a} and {@code b} is written
+     * {@code ' a ',' b '}.
+     */
+    private static final char[] HEADER_VALUE_PREFIX = "' ".toCharArray();
+    private static final char[] HEADER_VALUE_SUFFIX = " '".toCharArray();
+    private static final char HEADER_VALUE_SEPARATOR = ',';
+    private static final int HEADER_BUFFER_SIZE = 256;
+
+    private static void writeStringField(JsonGenerator generator, SerializableString fieldName, String value)
+            throws IOException {
+        generator.writeFieldName(fieldName);
+        generator.writeString(value);
+    }
 
     @Override
     public void writeInterface(JsonGenerator generator, HttpInterface httpInterface) throws IOException {
         generator.writeStartObject();
-        generator.writeStringField(URL, httpInterface.getRequestUrl());
-        generator.writeStringField(METHOD, httpInterface.getMethod());
+        writeStringField(generator, URL, httpInterface.getRequestUrl());
+        writeStringField(generator, METHOD, httpInterface.getMethod());
         generator.writeFieldName(DATA);
         writeData(generator, httpInterface.getParameters());
-        generator.writeStringField(QUERY_STRING, httpInterface.getQueryString());
+        writeStringField(generator, QUERY_STRING, httpInterface.getQueryString());
         generator.writeFieldName(COOKIES);
         writeCookies(generator, httpInterface.getCookies());
         generator.writeFieldName(HEADERS);
@@ -50,34 +70,53 @@ public class HttpInterfaceBinding implements InterfaceBinding<HttpInterface> {
 
     private void writeEnvironment(JsonGenerator generator, HttpInterface httpInterface) throws IOException {
         generator.writeStartObject();
-        generator.writeStringField(ENV_REMOTE_ADDR, httpInterface.getRemoteAddr());
-        generator.writeStringField(ENV_SERVER_NAME, httpInterface.getServerName());
-        generator.writeNumberField(ENV_SERVER_PORT, httpInterface.getServerPort());
-        generator.writeStringField(ENV_LOCAL_ADDR, httpInterface.getLocalAddr());
-        generator.writeStringField(ENV_LOCAL_NAME, httpInterface.getLocalName());
-        generator.writeNumberField(ENV_LOCAL_PORT, httpInterface.getLocalPort());
-        generator.writeStringField(ENV_SERVER_PROTOCOL, httpInterface.getProtocol());
-        generator.writeBooleanField(ENV_REQUEST_SECURE, httpInterface.isSecure());
-        generator.writeBooleanField(ENV_REQUEST_ASYNC, httpInterface.isAsyncStarted());
-        generator.writeStringField(ENV_AUTH_TYPE, httpInterface.getAuthType());
+        writeStringField(generator, ENV_REMOTE_ADDR, httpInterface.getRemoteAddr());
+        writeStringField(generator, ENV_SERVER_NAME, httpInterface.getServerName());
+        generator.writeFieldName(ENV_SERVER_PORT);
+        generator.writeNumber(httpInterface.getServerPort());
+        writeStringField(generator, ENV_LOCAL_ADDR, httpInterface.getLocalAddr());
+        writeStringField(generator, ENV_LOCAL_NAME, httpInterface.getLocalName());
+        generator.writeFieldName(ENV_LOCAL_PORT);
+        generator.writeNumber(httpInterface.getLocalPort());
+        writeStringField(generator, ENV_SERVER_PROTOCOL, httpInterface.getProtocol());
+        generator.writeFieldName(ENV_REQUEST_SECURE);
+        generator.writeBoolean(httpInterface.isSecure());
+        generator.writeFieldName(ENV_REQUEST_ASYNC);
+        generator.writeBoolean(httpInterface.isAsyncStarted());
+        writeStringField(generator, ENV_AUTH_TYPE, httpInterface.getAuthType());
         //TODO: Should that be really displayed here ? Consider the user interface?
-        generator.writeStringField(ENV_REMOTE_USER, httpInterface.getRemoteUser());
+        writeStringField(generator, ENV_REMOTE_USER, httpInterface.getRemoteUser());
         generator.writeEndObject();
     }
 
     private void writeHeaders(JsonGenerator generator, Map<String, Collection<String>> headers) throws IOException {
         generator.writeStartObject();
+        char[] buffer = new char[HEADER_BUFFER_SIZE];
         for (Map.Entry<String, Collection<String>> headerEntry : headers.entrySet()) {
             generator.writeFieldName(headerEntry.getKey());
 
-            StringBuilder sb = new StringBuilder();
-            for (Iterator<String> it = headerEntry.getValue().iterator(); it.hasNext(); ) {
-                sb.append("' ").append(it.next()).append(" '");
-                if (it.hasNext()) {
-                    sb.append(",");
+            Collection<String> values = headerEntry.getValue();
+            int length = 0;
+            for (String value : values) {
+                int valueLength = String.valueOf(value).length();
+                int requiredLength = length + (length > 0 ? 1 : 0)
+                        + HEADER_VALUE_PREFIX.length + valueLength + HEADER_VALUE_SUFFIX.length;
+                if (requiredLength > buffer.length) {
+                    char[] newBuffer = new char[Math.max(requiredLength, buffer.length * 2)];
+                    System.arraycopy(buffer, 0, newBuffer, 0, length);
+                    buffer = newBuffer;
                 }
+
+                if (length > 0)
+                    buffer[length++] = HEADER_VALUE_SEPARATOR;
+                System.arraycopy(HEADER_VALUE_PREFIX, 0, buffer, length, HEADER_VALUE_PREFIX.length);
+                length += HEADER_VALUE_PREFIX.length;
+                String.valueOf(value).getChars(0, valueLength, buffer, length);
+                length += valueLength;
+                System.arraycopy(HEADER_VALUE_SUFFIX, 0, buffer, length, HEADER_VALUE_SUFFIX.length);
+                length += HEADER_VALUE_SUFFIX.length;
             }
-            generator.writeString(sb.toString());
+            generator.writeString(buffer, 0, length);
         }
         generator.writeEndObject();
     }
@@ -105,8 +144,17 @@ public class HttpInterfaceBinding implements InterfaceBinding<HttpInterface> {
         generator.writeStartObject();
         for (Map.Entry<String, Collection<String>> parameter : parameterMap.entrySet()) {
             generator.writeArrayFieldStart(parameter.getKey());
-            for (String parameterValue : parameter.getValue()) {
-                generator.writeString(parameterValue);
+            Collection<String> parameterValues = parameter.getValue();
+            if (parameterValues instanceof RandomAccess && parameterValues instanceof List) {
+                // Parameter values are usually backed by an array, avoid creating an iterator
+                List<String> valueList = (List<String>) parameterValues;
+                for (int i = 0; i < valueList.size(); i++) {
+                    generator.writeString(valueList.get(i));
+                }
+            } else {
+                for (String parameterValue : parameterValues) {
+                    generator.writeString(parameterValue);
+                }
             }
             generator.writeEndArray();
         }
@@ -3,9 +3,13 @@ package net.kencochrane.raven.marshaller.json;
 import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonGenerator;
 import com.google.common.base.Charsets;
+import com.google.common.io.CountingOutputStream;
 import net.kencochrane.raven.event.Event;
 import net.kencochrane.raven.event.interfaces.SentryInterface;
 import net.kencochrane.raven.marshaller.Marshaller;
+import net.kencochrane.raven.metrics.Histogram;
+import net.kencochrane.raven.metrics.Instrumented;
+import net.kencochrane.raven.metrics.RavenMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -24,8 +28,11 @@ import static com.google.common.io.BaseEncoding.base64;
  * <p>
  * The content can also be compressed with {@link DeflaterOutputStream} in which case the binary result is encoded
  * in base 64.
+ * <p>
+ * The time spent serialising each event and its size, before and after compression, are recorded in the
+ * {@link RavenMetrics}.
  */
-public class JsonMarshaller implements Marshaller {
+public class JsonMarshaller implements Marshaller, Instrumented {
     /**
      * Hexadecimal string representing a uuid4 value.
      */
@@ -97,18 +104,50 @@ public class JsonMarshaller implements Marshaller {
      * Enables disables the compression of JSON.
      */
     private boolean compression = true;
+    private Histogram serialisationTime;
+    private Histogram serialisedBytes;
+    private Histogram writtenBytes;
+    private boolean recording;
+
+    /**
+     * Creates a marshaller discarding its activity until it is given a registry.
+     */
+    public JsonMarshaller() {
+        bindMetrics(RavenMetrics.NOOP);
+    }
 
     @Override
     public void marshall(Event event, OutputStream destination) {
         // Prevent the stream from being closed automatically
-        destination = new UncloseableOutputStream(destination);
+        OutputStream uncloseableStream = new UncloseableOutputStream(destination);
+        // Without a registry the streams aren't counted and the serialisation isn't timed
+        if (!recording) {
+            writeEvent(event, compression ? compressingStream(uncloseableStream) : uncloseableStream);
+            return;
+        }
 
+        long start = System.nanoTime();
+        CountingOutputStream writtenStream = new CountingOutputStream(uncloseableStream);
+        CountingOutputStream jsonStream = writtenStream;
         if (compression)
-            destination = new DeflaterOutputStream(base64().encodingStream(
-                    new OutputStreamWriter(destination, Charsets.UTF_8)));
+            jsonStream = new CountingOutputStream(compressingStream(writtenStream));
+        try {
+            writeEvent(event, jsonStream);
+        } finally {
+            serialisationTime.update(System.nanoTime() - start);
+            serialisedBytes.update(jsonStream.getCount());
+            writtenBytes.update(writtenStream.getCount());
+        }
+    }
+
+    private OutputStream compressingStream(OutputStream destination) {
+        return new DeflaterOutputStream(base64().encodingStream(new OutputStreamWriter(destination, Charsets.UTF_8)));
+    }
+
+    private void writeEvent(Event event, OutputStream jsonStream) {
         JsonGenerator generator = null;
         try {
-            generator = jsonFactory.createGenerator(destination);
+            generator = jsonFactory.createGenerator(jsonStream);
             writeContent(generator, event);
         } catch (IOException e) {
             logger.error("An exception occurred while serialising the event.", e);
@@ -121,6 +160,23 @@ public class JsonMarshaller implements Marshaller {
         }
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The marshaller is usually given the registry of the connection using it.
+     */
+    @Override
+    public void setMetrics(RavenMetrics metrics) {
+        bindMetrics(metrics);
+    }
+
+    private void bindMetrics(RavenMetrics metrics) {
+        recording = metrics != RavenMetrics.NOOP;
+        serialisationTime = metrics.histogram(RavenMetrics.SERIALISATION_TIME);
+        serialisedBytes = metrics.histogram(RavenMetrics.SERIALISED_BYTES);
+        writtenBytes = metrics.histogram(RavenMetrics.WRITTEN_BYTES);
+    }
+
     private void writeContent(JsonGenerator generator, Event event) throws IOException {
         generator.writeStartObject();
 
@@ -12,6 +12,7 @@ import java.util.Collections;
  */
 public class StackTraceInterfaceBinding implements InterfaceBinding<StackTraceInterface> {
     private static final String FRAMES_PARAMETER = "frames";
+    private static final String FRAMES_OMITTED_PARAMETER = "frames_omitted";
     private static final String FILENAME_PARAMETER = "filename";
     private static final String FUNCTION_PARAMETER = "function";
     private static final String MODULE_PARAMETER = "module";
@@ -55,18 +56,24 @@ public class StackTraceInterfaceBinding implements InterfaceBinding<StackTraceIn
 
     @Override
     public void writeInterface(JsonGenerator generator, StackTraceInterface stackTraceInterface) throws IOException {
-        StackTraceElement[] stackTrace = stackTraceInterface.getStackTrace();
-
         generator.writeStartObject();
         generator.writeArrayFieldStart(FRAMES_PARAMETER);
         int commonWithEnclosing = stackTraceInterface.getFramesCommonWithEnclosing();
 
-        // Go through the stackTrace frames from the first call to the last
-        for (int i = stackTrace.length - 1; i >= 0; i--) {
-            writeFrame(generator, stackTrace[i], commonWithEnclosing-- > 0);
+        // Go through the stackTrace frames from the first call to the last, without copying them
+        for (int i = stackTraceInterface.getFrameCount() - 1; i >= 0; i--) {
+            writeFrame(generator, stackTraceInterface.getFrame(i), commonWithEnclosing-- > 0);
         }
-
         generator.writeEndArray();
+
+        if (stackTraceInterface.getFramesOmitted() > 0) {
+            // Range of the omitted frames, using the order of the frames sent (from the first call to the last)
+            int omittedStart = stackTraceInterface.getFrameCount() - stackTraceInterface.getFramesOmittedIndex();
+            generator.writeArrayFieldStart(FRAMES_OMITTED_PARAMETER);
+            generator.writeNumber(omittedStart);
+            generator.writeNumber(omittedStart + stackTraceInterface.getFramesOmitted());
+            generator.writeEndArray();
+        }
         generator.writeEndObject();
     }
 
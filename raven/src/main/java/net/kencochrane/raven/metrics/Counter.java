@@ -0,0 +1,79 @@
+package net.kencochrane.raven.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Monotonic counter which can be updated concurrently without locking.
+ * <p>
+ * The count is spread over one cell per stripe, each cell sitting on its own cache line. Updating the counter is a
+ * single atomic addition on the cell of the current thread, reading it sums every cell.
+ */
+public final class Counter {
+    /**
+     * Number of longs in a cache line, the distance between two cells.
+     */
+    private static final int CELL_SPACING = 8;
+    /**
+     * Cells of the counter, {@code null} if the counter discards its updates.
+     */
+    private final AtomicLongArray cells;
+
+    /**
+     * Creates a counter starting at 0.
+     */
+    public Counter() {
+        this(new AtomicLongArray(Striping.STRIPES * CELL_SPACING));
+    }
+
+    private Counter(AtomicLongArray cells) {
+        this.cells = cells;
+    }
+
+    /**
+     * Creates a counter ignoring the values added to it, which always stays at 0.
+     *
+     * @return a new discarding counter.
+     */
+    static Counter discarding() {
+        return new Counter(null);
+    }
+
+    /**
+     * Adds one to the counter.
+     */
+    public void increment() {
+        add(1);
+    }
+
+    /**
+     * Adds a value to the counter.
+     *
+     * @param delta value to add.
+     */
+    public void add(long delta) {
+        if (cells != null)
+            cells.getAndAdd(Striping.currentStripe() * CELL_SPACING, delta);
+    }
+
+    /**
+     * Gets the current count.
+     * <p>
+     * The count isn't an atomic snapshot, updates happening concurrently may or may not be part of it.
+     *
+     * @return the sum of the values added to the counter.
+     */
+    public long getCount() {
+        if (cells == null)
+            return 0;
+        long count = 0;
+        for (int i = 0; i < cells.length(); i += CELL_SPACING) {
+            count += cells.get(i);
+        }
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return String.valueOf(getCount());
+    }
+}
@@ -0,0 +1,15 @@
+package net.kencochrane.raven.metrics;
+
+/**
+ * Metric whose value is read from the component it measures when the metrics are queried, such as the size of a queue.
+ */
+public interface Gauge {
+    /**
+     * Reads the current value of the gauge.
+     * <p>
+     * Called by the threads querying the metrics, the implementations must be thread-safe.
+     *
+     * @return the current value.
+     */
+    long getValue();
+}
@@ -0,0 +1,165 @@
+package net.kencochrane.raven.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Distribution of non-negative values, such as durations or sizes, which can be updated concurrently without locking.
+ * <p>
+ * The values are counted in log-linear buckets, as in an HDR histogram: each power of two is split in
+ * {@link #SUB_BUCKETS} buckets of equal width, the values below {@link #SUB_BUCKETS} having a bucket each. The
+ * percentiles are therefore estimated within 12.5% of the actual value (and exactly for small values) whatever the
+ * magnitude of the values, the minimum, maximum, sum and count are exact.
+ * <p>
+ * Each stripe has its own set of buckets, allocated the first time a thread of that stripe records a value. Updating
+ * the histogram is a single atomic addition on a bucket of the current thread, followed by the update of the sum and,
+ * rarely, of the minimum or the maximum.
+ */
+public final class Histogram {
+    /**
+     * Number of bits of a value used to select its bucket within a power of two.
+     */
+    static final int SUB_BUCKET_BITS = 3;
+    /**
+     * Number of buckets per power of two.
+     */
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    /**
+     * Number of buckets, enough to hold any positive {@code long}.
+     */
+    static final int BUCKETS = bucketOf(Long.MAX_VALUE) + 1;
+    private final AtomicReferenceArray<AtomicLongArray> stripes = new AtomicReferenceArray<AtomicLongArray>(
+            Striping.STRIPES);
+    private final Counter sum = new Counter();
+    private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+    /**
+     * Whether the values are recorded, or discarded.
+     */
+    private final boolean recording;
+
+    /**
+     * Creates an empty histogram.
+     */
+    public Histogram() {
+        this(true);
+    }
+
+    private Histogram(boolean recording) {
+        this.recording = recording;
+    }
+
+    /**
+     * Creates a histogram ignoring the values recorded in it, which always stays empty.
+     *
+     * @return a new discarding histogram.
+     */
+    static Histogram discarding() {
+        return new Histogram(false);
+    }
+
+    /**
+     * Gets the bucket holding a value.
+     *
+     * @param value non-negative value.
+     * @return the index of the bucket holding the value.
+     */
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS)
+            return (int) value;
+
+        // Index of the highest bit set, the next SUB_BUCKET_BITS bits select the bucket within that power of two
+        int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) - SUB_BUCKETS;
+        return ((shift + 1) << SUB_BUCKET_BITS) + subBucket;
+    }
+
+    /**
+     * Gets the greatest value held by a bucket.
+     *
+     * @param bucket index of the bucket.
+     * @return the upper bound (included) of the bucket.
+     */
+    static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS)
+            return bucket;
+
+        int shift = (bucket >>> SUB_BUCKET_BITS) - 1;
+        long subBucket = bucket & (SUB_BUCKETS - 1);
+        // Overflows to Long.MAX_VALUE for the last bucket
+        return ((SUB_BUCKETS + subBucket + 1) << shift) - 1;
+    }
+
+    /**
+     * Gets the buckets of the stripe of the current thread, allocating them if necessary.
+     *
+     * @return the buckets of the current stripe.
+     */
+    private AtomicLongArray currentBuckets() {
+        int stripe = Striping.currentStripe();
+        AtomicLongArray buckets = stripes.get(stripe);
+        if (buckets == null) {
+            stripes.compareAndSet(stripe, null, new AtomicLongArray(BUCKETS));
+            buckets = stripes.get(stripe);
+        }
+        return buckets;
+    }
+
+    /**
+     * Records a value.
+     *
+     * @param value value to record, negative values are recorded as 0.
+     */
+    public void update(long value) {
+        if (!recording)
+            return;
+        if (value < 0)
+            value = 0;
+
+        currentBuckets().getAndIncrement(bucketOf(value));
+        sum.add(value);
+        updateMin(value);
+        updateMax(value);
+    }
+
+    private void updateMin(long value) {
+        long currentMin = min.get();
+        while (value < currentMin && !min.compareAndSet(currentMin, value)) {
+            currentMin = min.get();
+        }
+    }
+
+    private void updateMax(long value) {
+        long currentMax = max.get();
+        while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+            currentMax = max.get();
+        }
+    }
+
+    /**
+     * Takes a snapshot of the histogram.
+     * <p>
+     * The snapshot isn't atomic, updates happening concurrently may be partially part of it.
+     *
+     * @return an immutable copy of the current state of the histogram.
+     */
+    public HistogramSnapshot snapshot() {
+        long[] bucketCounts = new long[BUCKETS];
+        for (int stripe = 0; stripe < stripes.length(); stripe++) {
+            AtomicLongArray buckets = stripes.get(stripe);
+            if (buckets == null)
+                continue;
+            for (int i = 0; i < BUCKETS; i++) {
+                bucketCounts[i] += buckets.get(i);
+            }
+        }
+        return new HistogramSnapshot(bucketCounts, sum.getCount(), min.get(), max.get());
+    }
+
+    @Override
+    public String toString() {
+        return snapshot().toString();
+    }
+}
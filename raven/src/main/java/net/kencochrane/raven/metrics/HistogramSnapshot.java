@@ -0,0 +1,109 @@
+package net.kencochrane.raven.metrics;
+
+/**
+ * Immutable state of a {@link Histogram} at a given time.
+ */
+public final class HistogramSnapshot {
+    /**
+     * Quantiles of the percentiles reported by {@link #toString()}.
+     */
+    private static final double[] REPORTED_QUANTILES = {0.5, 0.9, 0.99, 0.999};
+    private static final String[] REPORTED_NAMES = {"p50", "p90", "p99", "p999"};
+    private final long[] bucketCounts;
+    private final long count;
+    private final long sum;
+    private final long min;
+    private final long max;
+
+    /**
+     * Creates a snapshot.
+     *
+     * @param bucketCounts number of values in each bucket, not copied.
+     * @param sum          sum of the values.
+     * @param min          smallest value, {@link Long#MAX_VALUE} if there are none.
+     * @param max          greatest value, {@link Long#MIN_VALUE} if there are none.
+     */
+    HistogramSnapshot(long[] bucketCounts, long sum, long min, long max) {
+        long totalCount = 0;
+        for (long bucketCount : bucketCounts) {
+            totalCount += bucketCount;
+        }
+        this.bucketCounts = bucketCounts;
+        this.count = totalCount;
+        this.sum = sum;
+        this.min = totalCount > 0 ? min : 0;
+        this.max = totalCount > 0 ? max : 0;
+    }
+
+    /**
+     * Estimates a percentile of the recorded values.
+     * <p>
+     * The estimate is the upper bound of the bucket holding the percentile, capped to the greatest recorded value.
+     *
+     * @param quantile quantile between 0 and 1, such as 0.99 for the 99th percentile.
+     * @return an estimate of the value below which the given proportion of the values are, 0 if there are no values.
+     */
+    public long getPercentile(double quantile) {
+        if (quantile < 0 || quantile > 1)
+            throw new IllegalArgumentException("The quantile must be between 0 and 1, not " + quantile);
+        if (count == 0)
+            return 0;
+
+        long rank = Math.max((long) Math.ceil(quantile * count), 1);
+        long seen = 0;
+        for (int bucket = 0; bucket < bucketCounts.length; bucket++) {
+            seen += bucketCounts[bucket];
+            if (seen >= rank)
+                return Math.max(Math.min(Histogram.upperBoundOf(bucket), max), min);
+        }
+        return max;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getSum() {
+        return sum;
+    }
+
+    /**
+     * Gets the smallest recorded value.
+     *
+     * @return the smallest value, 0 if there are no values.
+     */
+    public long getMin() {
+        return min;
+    }
+
+    /**
+     * Gets the greatest recorded value.
+     *
+     * @return the greatest value, 0 if there are no values.
+     */
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * Gets the mean of the recorded values.
+     *
+     * @return the mean, 0 if there are no values.
+     */
+    public double getMean() {
+        return count > 0 ? (double) sum / count : 0;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("HistogramSnapshot{")
+                .append("count=").append(count)
+                .append(", min=").append(min)
+                .append(", max=").append(max)
+                .append(", mean=").append(getMean());
+        for (int i = 0; i < REPORTED_QUANTILES.length; i++) {
+            sb.append(", ").append(REPORTED_NAMES[i]).append('=').append(getPercentile(REPORTED_QUANTILES[i]));
+        }
+        return sb.append('}').toString();
+    }
+}
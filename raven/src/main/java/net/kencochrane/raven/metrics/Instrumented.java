@@ -0,0 +1,17 @@
+package net.kencochrane.raven.metrics;
+
+/**
+ * Component of the client pipeline recording its activity in {@link RavenMetrics}.
+ * <p>
+ * Each component discards its activity ({@link RavenMetrics#NOOP}) until it is given the registry of the
+ * {@link net.kencochrane.raven.Raven} instance using it. Components wrapping other components (such as an
+ * asynchronous connection wrapping an HTTP connection, itself using a marshaller) pass the registry on.
+ */
+public interface Instrumented {
+    /**
+     * Sets the registry in which the activity of the component is recorded.
+     *
+     * @param metrics registry of metrics.
+     */
+    void setMetrics(RavenMetrics metrics);
+}
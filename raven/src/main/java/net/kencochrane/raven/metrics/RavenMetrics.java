@@ -0,0 +1,232 @@
+package net.kencochrane.raven.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Registry of the operational metrics of a Raven instance, such as the number of events sent or dropped.
+ * <p>
+ * The metrics are identified by their name, the names of the metrics recorded by Raven are defined here. Getting a
+ * metric creates it if necessary, the components look their metrics up once, when they are given the registry, and
+ * update them without locking afterwards.
+ * <p>
+ * The components which haven't been given a registry yet record their activity in {@link #NOOP}, which discards
+ * everything recorded in it.
+ * <p>
+ * Instances are thread-safe.
+ */
+public final class RavenMetrics {
+    /**
+     * Counter of the events given to Raven, whether they are sent or not.
+     */
+    public static final String EVENTS_CAPTURED = "raven.events.captured";
+    /**
+     * Counter of the events dropped because of the sample rate.
+     */
+    public static final String EVENTS_SAMPLED_OUT = "raven.events.dropped.sampled";
+    /**
+     * Counter of the events dropped because the queue of the asynchronous connection was full.
+     */
+    public static final String EVENTS_DROPPED_QUEUE = "raven.events.dropped.queue";
+    /**
+     * Counter of the events dropped because the asynchronous connection was closed.
+     */
+    public static final String EVENTS_DROPPED_CLOSED = "raven.events.dropped.closed";
+    /**
+     * Counter of the events successfully sent to Sentry.
+     */
+    public static final String EVENTS_SENT = "raven.events.sent";
+    /**
+     * Counter of the events which couldn't be sent to Sentry, such as the events rejected by the server.
+     */
+    public static final String EVENTS_FAILED = "raven.events.failed";
+    /**
+     * Gauge of the number of events waiting in the queue of the asynchronous connection.
+     */
+    public static final String QUEUE_DEPTH = "raven.async.queue.depth";
+    /**
+     * Histogram of the time spent serialising each event, in nanoseconds.
+     */
+    public static final String SERIALISATION_TIME = "raven.marshaller.time";
+    /**
+     * Histogram of the size of each serialised event before compression, in bytes.
+     */
+    public static final String SERIALISED_BYTES = "raven.marshaller.bytes.uncompressed";
+    /**
+     * Histogram of the size of each serialised event as sent to Sentry, after compression if enabled, in bytes.
+     */
+    public static final String WRITTEN_BYTES = "raven.marshaller.bytes.written";
+    /**
+     * Prefix of the counters of the HTTP status codes returned by Sentry, followed by the code (such as
+     * {@code raven.http.status.200}).
+     */
+    public static final String HTTP_STATUS_PREFIX = "raven.http.status.";
+    /**
+     * Counter of the HTTP requests to Sentry which failed without a response, such as a refused connection or a
+     * timeout.
+     */
+    public static final String HTTP_CONNECTION_FAILURES = "raven.http.connection.failures";
+    /**
+     * Histogram of the duration of the lockdowns of the connections, in nanoseconds.
+     */
+    public static final String LOCKDOWN_TIME = "raven.lockdown.time";
+    /**
+     * Histogram of the time spent by each event in the queue of the asynchronous connection, including the time
+     * spent paused, in nanoseconds.
+     */
+    public static final String QUEUE_TIME = "raven.latency.queue";
+    /**
+     * Histogram of the duration of each HTTP request to Sentry, from the end of the serialisation of the event to the
+     * response, in nanoseconds. The serialisation itself is recorded in {@link #SERIALISATION_TIME}.
+     */
+    public static final String HTTP_TIME = "raven.latency.http";
+    /**
+     * Histogram of the time between the timestamp of each event and the end of its delivery by the asynchronous
+     * connection, in nanoseconds (with the millisecond precision of the timestamps).
+     */
+    public static final String DELIVERY_TIME = "raven.latency.delivery";
+    /**
+     * Gauge of the number of stack frames which went through the frame pool, shared by the whole JVM.
+     */
+    public static final String INTERNED_FRAMES = "raven.stacktrace.frames.interned";
+    /**
+     * Gauge of the number of stack frames replaced by an identical frame already in the frame pool.
+     */
+    public static final String DEDUPLICATED_FRAMES = "raven.stacktrace.frames.deduplicated";
+    /**
+     * Gauge of the number of StackTraces which went through the frame pool.
+     */
+    public static final String INTERNED_STACKTRACES = "raven.stacktrace.interned";
+    /**
+     * Gauge of the number of StackTraces replaced by an identical StackTrace already in the frame pool.
+     */
+    public static final String DEDUPLICATED_STACKTRACES = "raven.stacktrace.deduplicated";
+    /**
+     * Gauge of the total size of the StackTraces replaced by an identical StackTrace already in the frame pool.
+     */
+    public static final String DEDUPLICATED_STACKTRACE_FRAMES = "raven.stacktrace.deduplicated.frames";
+    /**
+     * Registry discarding everything recorded in it, shared by the components until they are given a registry.
+     * <p>
+     * Its counters and histograms stay empty and its gauges aren't registered.
+     */
+    public static final RavenMetrics NOOP = new RavenMetrics(false);
+    private static final Counter DISCARDING_COUNTER = Counter.discarding();
+    private static final Histogram DISCARDING_HISTOGRAM = Histogram.discarding();
+    private final ConcurrentMap<String, Counter> counters = new ConcurrentHashMap<String, Counter>();
+    private final ConcurrentMap<String, Histogram> histograms = new ConcurrentHashMap<String, Histogram>();
+    private final ConcurrentMap<String, Gauge> gauges = new ConcurrentHashMap<String, Gauge>();
+    private final boolean recording;
+
+    /**
+     * Creates an empty registry.
+     */
+    public RavenMetrics() {
+        this(true);
+    }
+
+    private RavenMetrics(boolean recording) {
+        this.recording = recording;
+    }
+
+    /**
+     * Gets a counter, creating it if necessary.
+     *
+     * @param name name of the counter.
+     * @return the counter with the given name.
+     */
+    public Counter counter(String name) {
+        if (!recording)
+            return DISCARDING_COUNTER;
+        Counter counter = counters.get(name);
+        if (counter == null) {
+            Counter newCounter = new Counter();
+            counter = counters.putIfAbsent(name, newCounter);
+            if (counter == null)
+                counter = newCounter;
+        }
+        return counter;
+    }
+
+    /**
+     * Gets a histogram, creating it if necessary.
+     *
+     * @param name name of the histogram.
+     * @return the histogram with the given name.
+     */
+    public Histogram histogram(String name) {
+        if (!recording)
+            return DISCARDING_HISTOGRAM;
+        Histogram histogram = histograms.get(name);
+        if (histogram == null) {
+            Histogram newHistogram = new Histogram();
+            histogram = histograms.putIfAbsent(name, newHistogram);
+            if (histogram == null)
+                histogram = newHistogram;
+        }
+        return histogram;
+    }
+
+    /**
+     * Registers a gauge, replacing the gauge previously registered under the same name.
+     *
+     * @param name  name of the gauge.
+     * @param gauge gauge to register.
+     */
+    public void registerGauge(String name, Gauge gauge) {
+        if (recording)
+            gauges.put(name, gauge);
+    }
+
+    /**
+     * Gets the current value of every counter.
+     *
+     * @return the value of the counters, sorted by name.
+     */
+    public SortedMap<String, Long> getCounters() {
+        SortedMap<String, Long> values = new TreeMap<String, Long>();
+        for (Map.Entry<String, Counter> counterEntry : counters.entrySet()) {
+            values.put(counterEntry.getKey(), counterEntry.getValue().getCount());
+        }
+        return Collections.unmodifiableSortedMap(values);
+    }
+
+    /**
+     * Gets a snapshot of every histogram.
+     *
+     * @return the snapshots of the histograms, sorted by name.
+     */
+    public SortedMap<String, HistogramSnapshot> getHistograms() {
+        SortedMap<String, HistogramSnapshot> snapshots = new TreeMap<String, HistogramSnapshot>();
+        for (Map.Entry<String, Histogram> histogramEntry : histograms.entrySet()) {
+            snapshots.put(histogramEntry.getKey(), histogramEntry.getValue().snapshot());
+        }
+        return Collections.unmodifiableSortedMap(snapshots);
+    }
+
+    /**
+     * Gets the current value of every gauge.
+     *
+     * @return the value of the gauges, sorted by name.
+     */
+    public SortedMap<String, Long> getGauges() {
+        SortedMap<String, Long> values = new TreeMap<String, Long>();
+        for (Map.Entry<String, Gauge> gaugeEntry : gauges.entrySet()) {
+            values.put(gaugeEntry.getKey(), gaugeEntry.getValue().getValue());
+        }
+        return Collections.unmodifiableSortedMap(values);
+    }
+
+    @Override
+    public String toString() {
+        return "RavenMetrics{"
+                + "counters=" + getCounters()
+                + ", histograms=" + getHistograms()
+                + ", gauges=" + getGauges()
+                + '}';
+    }
+}
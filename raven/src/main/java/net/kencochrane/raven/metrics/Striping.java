@@ -0,0 +1,43 @@
+package net.kencochrane.raven.metrics;
+
+/**
+ * Spreads the updates of the metrics over several cells, so that threads updating the same metric don't contend on a
+ * single memory location.
+ * <p>
+ * Each thread always updates the same cell, chosen from its identifier.
+ */
+final class Striping {
+    /**
+     * Number of cells of a striped metric, a power of two close to the number of processors.
+     */
+    static final int STRIPES = stripes(Runtime.getRuntime().availableProcessors());
+    /**
+     * Maximum number of cells, keeping the footprint of the histograms reasonable on large machines.
+     */
+    private static final int MAX_STRIPES = 16;
+    /**
+     * Multiplier spreading consecutive thread identifiers over the cells (Fibonacci hashing).
+     */
+    private static final int SPREAD = 0x9E3779B9;
+
+    private Striping() {
+    }
+
+    private static int stripes(int processors) {
+        int stripes = Integer.highestOneBit(Math.max(processors, 1));
+        if (stripes < processors)
+            stripes <<= 1;
+        return Math.min(stripes, MAX_STRIPES);
+    }
+
+    /**
+     * Gets the cell updated by the current thread.
+     *
+     * @return an index between 0 (included) and {@link #STRIPES} (excluded).
+     */
+    static int currentStripe() {
+        long threadId = Thread.currentThread().getId();
+        int hash = (int) (threadId ^ (threadId >>> Integer.SIZE)) * SPREAD;
+        return (hash >>> Integer.SIZE - Integer.numberOfTrailingZeros(STRIPES)) & (STRIPES - 1);
+    }
+}
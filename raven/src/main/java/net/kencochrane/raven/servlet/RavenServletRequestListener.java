@@ -1,5 +1,10 @@
 package net.kencochrane.raven.servlet;
 
+import net.kencochrane.raven.context.HttpRequestSource;
+import net.kencochrane.raven.context.RavenContext;
+import net.kencochrane.raven.event.interfaces.HttpCapturePolicy;
+import net.kencochrane.raven.event.interfaces.HttpInterface;
+
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletRequestEvent;
 import javax.servlet.ServletRequestListener;
@@ -9,10 +14,24 @@ import javax.servlet.http.HttpServletRequest;
  * Request listener in charge of capturing {@link HttpServletRequest} to allow
  * {@link net.kencochrane.raven.event.helper.HttpEventBuilderHelper} to provide details on the current HTTP session
  * in the event sent to Sentry.
+ * <p>
+ * When the request starts, the request is attached to the thread as its {@link RavenContext}, without reading any
+ * of its details. The details allowed by the {@link HttpCapturePolicy} of each Raven instance are read when an event
+ * is built, once the filters and the servlet have processed the request, and
+ * {@link RavenContext#capture(HttpCapturePolicy)} takes a snapshot of the allowed details when the work is handed over
+ * to other threads.
  */
 public class RavenServletRequestListener implements ServletRequestListener {
     private static final ThreadLocal<HttpServletRequest> THREAD_REQUEST = new ThreadLocal<HttpServletRequest>();
 
+    /**
+     * Gets the request handled by the current thread.
+     * <p>
+     * The request object can be recycled by the servlet container once the request is over, threads to which the work
+     * is handed over should rely on {@link RavenContext#capture(HttpCapturePolicy)} instead.
+     *
+     * @return the request handled by the current thread, or {@code null}.
+     */
     public static HttpServletRequest getServletRequest() {
         return THREAD_REQUEST.get();
     }
@@ -20,12 +39,39 @@ public class RavenServletRequestListener implements ServletRequestListener {
     @Override
     public void requestDestroyed(ServletRequestEvent servletRequestEvent) {
         THREAD_REQUEST.remove();
+        RavenContext.restore(RavenContext.EMPTY);
     }
 
     @Override
     public void requestInitialized(ServletRequestEvent servletRequestEvent) {
         ServletRequest servletRequest = servletRequestEvent.getServletRequest();
-        if (servletRequest instanceof HttpServletRequest)
-            THREAD_REQUEST.set((HttpServletRequest) servletRequest);
+        if (servletRequest instanceof HttpServletRequest) {
+            HttpServletRequest httpServletRequest = (HttpServletRequest) servletRequest;
+            THREAD_REQUEST.set(httpServletRequest);
+            new RavenContext(new ServletRequestSource(httpServletRequest)).attach();
+        }
+    }
+
+    /**
+     * Source reading the details of a request only when an event is built or the context is handed over.
+     */
+    private static final class ServletRequestSource implements HttpRequestSource {
+        private final HttpServletRequest request;
+
+        private ServletRequestSource(HttpServletRequest request) {
+            this.request = request;
+        }
+
+        @Override
+        public HttpInterface capture(HttpCapturePolicy policy) {
+            return new HttpInterface(request, policy);
+        }
+
+        @Override
+        public String toString() {
+            return "ServletRequestSource{"
+                    + "requestUrl=" + request.getRequestURL()
+                    + '}';
+        }
     }
 }
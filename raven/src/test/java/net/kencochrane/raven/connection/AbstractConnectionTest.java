@@ -2,6 +2,7 @@ package net.kencochrane.raven.connection;
 
 import mockit.*;
 import net.kencochrane.raven.event.Event;
+import net.kencochrane.raven.metrics.RavenMetrics;
 import org.testng.annotations.Test;
 
 import java.util.concurrent.locks.Condition;
@@ -10,6 +11,8 @@ import java.util.concurrent.locks.Lock;
 import static mockit.Deencapsulation.getField;
 import static mockit.Deencapsulation.setField;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.hasEntry;
 import static org.hamcrest.Matchers.is;
 
 public class AbstractConnectionTest {
@@ -99,4 +102,22 @@ public class AbstractConnectionTest {
             Thread.sleep(AbstractConnection.DEFAULT_MAX_WAITING_TIME);
         }};
     }
+
+    @Test
+    public void testSentAndFailedEventsAreCounted(@Injectable final Event mockEvent) throws Exception {
+        RavenMetrics metrics = new RavenMetrics();
+        abstractConnection.setMetrics(metrics);
+        abstractConnection.send(mockEvent);
+        new NonStrictExpectations() {{
+            abstractConnection.doSend((Event) any);
+            result = new ConnectionException();
+        }};
+
+        abstractConnection.send(mockEvent);
+
+        assertThat(metrics.getCounters(), allOf(
+                hasEntry(RavenMetrics.EVENTS_SENT, 1L),
+                hasEntry(RavenMetrics.EVENTS_FAILED, 1L)));
+        assertThat(metrics.getHistograms().get(RavenMetrics.LOCKDOWN_TIME).getCount(), is(1L));
+    }
 }
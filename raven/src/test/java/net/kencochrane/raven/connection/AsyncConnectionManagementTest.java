@@ -0,0 +1,170 @@
+package net.kencochrane.raven.connection;
+
+import mockit.Injectable;
+import mockit.Mocked;
+import mockit.NonStrictExpectations;
+import mockit.Verifications;
+import net.kencochrane.raven.event.Event;
+import net.kencochrane.raven.metrics.RavenMetrics;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class AsyncConnectionManagementTest {
+    @Injectable
+    private Connection mockConnection = null;
+    private ThreadPoolExecutor executor;
+    private AsyncConnection asyncConnection;
+    private AsyncConnectionManagement management;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        executor = new ThreadPoolExecutor(2, 2, 0, TimeUnit.MILLISECONDS, new ResizableBlockingQueue<Runnable>(10));
+        asyncConnection = new AsyncConnection(mockConnection, executor, false);
+        asyncConnection.setMetrics(new RavenMetrics());
+        executor.setRejectedExecutionHandler(
+                asyncConnection.countRejections(new ThreadPoolExecutor.DiscardOldestPolicy()));
+        management = new AsyncConnectionManagement(asyncConnection, executor);
+    }
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        asyncConnection.close();
+    }
+
+    @Test
+    public void testQueueAttributes(@Injectable Event mockEvent) throws Exception {
+        asyncConnection.pause();
+        // The workers don't take any event while the connection is paused
+        for (int i = 0; i < 5; i++) {
+            asyncConnection.send(mockEvent);
+        }
+
+        assertThat(management.getQueueSize(), is(5));
+        assertThat(management.getQueueCapacity(), is(10));
+        assertThat(management.getQueueRemainingCapacity(), is(5));
+        assertThat(management.isPaused(), is(true));
+    }
+
+    @Test
+    public void testQueueResized(@Injectable Event mockEvent) throws Exception {
+        asyncConnection.pause();
+        for (int i = 0; i < 3; i++) {
+            asyncConnection.send(mockEvent);
+        }
+
+        management.setQueueCapacity(3);
+
+        assertThat(management.getQueueCapacity(), is(3));
+        assertThat(management.getQueueRemainingCapacity(), is(0));
+        asyncConnection.send(mockEvent);
+        assertThat(management.getRejectedCount(), is(1L));
+        assertThat(management.getQueueSize(), is(3));
+    }
+
+    @Test(expectedExceptions = UnsupportedOperationException.class)
+    public void testFixedQueueCantBeResized() throws Exception {
+        ThreadPoolExecutor fixedExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(4));
+        try {
+            AsyncConnectionManagement fixedManagement = new AsyncConnectionManagement(asyncConnection, fixedExecutor);
+            assertThat(fixedManagement.getQueueCapacity(), is(4));
+            fixedManagement.setQueueCapacity(8);
+        } finally {
+            fixedExecutor.shutdown();
+        }
+    }
+
+    @Test
+    public void testWorkersResized() throws Exception {
+        management.setWorkers(4);
+
+        assertThat(management.getWorkers(), is(4));
+        assertThat(executor.getCorePoolSize(), is(4));
+
+        management.setWorkers(1);
+
+        assertThat(management.getWorkers(), is(1));
+        assertThat(executor.getCorePoolSize(), is(1));
+    }
+
+    @Test
+    public void testWorkersAddedWhilePausedDontTakeEvents(@Injectable final Event mockEvent) throws Exception {
+        management.pause();
+
+        management.setWorkers(3);
+        asyncConnection.send(mockEvent);
+
+        assertThat(management.getQueueSize(), is(1));
+        new Verifications() {{
+            mockConnection.send(mockEvent);
+            times = 0;
+        }};
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testAtLeastOneWorker() throws Exception {
+        management.setWorkers(0);
+    }
+
+    @Test
+    public void testFlushAndResume(@Injectable Event mockEvent) throws Exception {
+        management.pause();
+        for (int i = 0; i < 5; i++) {
+            asyncConnection.send(mockEvent);
+        }
+
+        assertThat(management.flush(), is(5));
+        assertThat(management.getQueueSize(), is(0));
+
+        management.resume();
+        assertThat(management.isPaused(), is(false));
+    }
+
+    @Test
+    public void testLockdownUnknownForOtherConnections() throws Exception {
+        assertThat(management.isLockedDown(), is(false));
+        assertThat(management.getLockdownWaitingTime(), is(-1L));
+    }
+
+    @Test
+    public void testLockdownOfAbstractConnection(@Mocked final AbstractConnection mockAbstractConnection)
+            throws Exception {
+        new NonStrictExpectations() {{
+            mockAbstractConnection.isLockedDown();
+            result = true;
+            mockAbstractConnection.getWaitingTime();
+            result = 40L;
+        }};
+        AsyncConnection lockedConnection = new AsyncConnection(mockAbstractConnection, executor, false);
+        AsyncConnectionManagement lockedManagement = new AsyncConnectionManagement(lockedConnection, executor);
+
+        assertThat(lockedManagement.isLockedDown(), is(true));
+        assertThat(lockedManagement.getLockdownWaitingTime(), is(40L));
+    }
+
+    @Test
+    public void testMBeanRegisteredUntilClosed() throws Exception {
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+
+        ObjectName name = asyncConnection.registerMBean("test");
+
+        assertThat(name, is(new ObjectName("net.kencochrane.raven:type=AsyncConnection,name=\"test\"")));
+        assertThat(mBeanServer.isRegistered(name), is(true));
+        assertThat(mBeanServer.getAttribute(name, "QueueCapacity"), is((Object) 10));
+
+        asyncConnection.close();
+
+        assertThat(mBeanServer.isRegistered(name), is(false));
+    }
+}
@@ -3,13 +3,28 @@ package net.kencochrane.raven.connection;
 import mockit.*;
 import net.kencochrane.raven.Raven;
 import net.kencochrane.raven.environment.RavenEnvironment;
+import net.kencochrane.raven.event.DeferredEvent;
 import net.kencochrane.raven.event.Event;
+import net.kencochrane.raven.metrics.HistogramSnapshot;
+import net.kencochrane.raven.metrics.RavenMetrics;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import java.util.Date;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.hasEntry;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+
 public class AsyncConnectionTest {
     @Tested
     private AsyncConnection asyncConnection = null;
@@ -151,4 +166,248 @@ public class AsyncConnectionTest {
         // Ensure that the shutdown hooks for the used @Tested instance are removed
         asyncConnection.close();
     }
+
+    @Test
+    public void testDeferredEventBuiltAndExecuted(@Injectable final DeferredEvent mockDeferredEvent,
+                                                  @Injectable final Event mockEvent) throws Exception {
+        new NonStrictExpectations() {{
+            mockExecutorService.execute((Runnable) any);
+            result = new Delegate<Void>() {
+                @SuppressWarnings("unused")
+                public void execute(Runnable command) {
+                    command.run();
+                }
+            };
+            mockDeferredEvent.build();
+            result = mockEvent;
+        }};
+
+        asyncConnection.send(mockDeferredEvent);
+
+        new VerificationsInOrder() {{
+            mockDeferredEvent.build();
+            mockConnection.send(mockEvent);
+        }};
+
+        // Ensure that the shutdown hooks for the used @Tested instance are removed
+        asyncConnection.close();
+    }
+
+    @Test
+    public void testDeferredEventFailingToBuildIsCaught(@Injectable final DeferredEvent mockDeferredEvent)
+            throws Exception {
+        new NonStrictExpectations() {{
+            mockExecutorService.execute((Runnable) any);
+            result = new Delegate<Void>() {
+                @SuppressWarnings("unused")
+                public void execute(Runnable command) {
+                    command.run();
+                }
+            };
+            mockDeferredEvent.build();
+            result = new RuntimeException();
+        }};
+
+        asyncConnection.send(mockDeferredEvent);
+
+        new Verifications() {{
+            mockConnection.send((Event) any);
+            times = 0;
+        }};
+
+        // Ensure that the shutdown hooks for the used @Tested instance are removed
+        asyncConnection.close();
+    }
+
+    @Test
+    public void testEventsSentAfterCloseAreCountedAsDropped(@Injectable final Event mockEvent) throws Exception {
+        RavenMetrics metrics = new RavenMetrics();
+        asyncConnection.setMetrics(metrics);
+        asyncConnection.close();
+
+        asyncConnection.send(mockEvent);
+
+        assertThat(metrics.getCounters(), hasEntry(RavenMetrics.EVENTS_DROPPED_CLOSED, 1L));
+    }
+
+    @Test
+    public void testEventsDiscardedByTheQueueAreCounted(@Injectable final Event mockEvent) throws Exception {
+        // Ensure that the shutdown hooks for the unused @Tested instance are removed
+        asyncConnection.close();
+        final CountDownLatch blocker = new CountDownLatch(1);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(1));
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    blocker.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        AsyncConnection connection = new AsyncConnection(mockConnection, executor, false);
+        executor.setRejectedExecutionHandler(connection.countRejections(new ThreadPoolExecutor.DiscardOldestPolicy()));
+        RavenMetrics metrics = new RavenMetrics();
+        connection.setMetrics(metrics);
+
+        connection.send(mockEvent);
+        connection.send(mockEvent);
+        connection.send(mockEvent);
+
+        assertThat(metrics.getCounters(), hasEntry(RavenMetrics.EVENTS_DROPPED_QUEUE, 2L));
+        assertThat(metrics.getGauges(), hasEntry(RavenMetrics.QUEUE_DEPTH, 1L));
+        blocker.countDown();
+        connection.close();
+    }
+
+    @Test
+    public void testCallerExecutorKeepsItsPolicy(@Injectable final Event mockEvent) throws Exception {
+        // Ensure that the shutdown hooks for the unused @Tested instance are removed
+        asyncConnection.close();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(1));
+        executor.shutdown();
+        RejectedExecutionHandler policy = executor.getRejectedExecutionHandler();
+        AsyncConnection connection = new AsyncConnection(mockConnection, executor, false);
+        RavenMetrics metrics = new RavenMetrics();
+        connection.setMetrics(metrics);
+
+        try {
+            connection.send(mockEvent);
+        } catch (RejectedExecutionException e) {
+            // The default policy of the executor reports the rejection
+        }
+
+        assertThat(executor.getRejectedExecutionHandler(), is(sameInstance(policy)));
+        assertThat(metrics.getCounters(), hasEntry(RavenMetrics.EVENTS_DROPPED_QUEUE, 1L));
+        connection.close();
+    }
+
+    @Test
+    public void testRejectionsCountedOnce(@Injectable final Event mockEvent) throws Exception {
+        // Ensure that the shutdown hooks for the unused @Tested instance are removed
+        asyncConnection.close();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(1));
+        executor.shutdown();
+        AsyncConnection connection = new AsyncConnection(mockConnection, executor, false);
+        executor.setRejectedExecutionHandler(connection.countRejections(new ThreadPoolExecutor.AbortPolicy()));
+        RavenMetrics metrics = new RavenMetrics();
+        connection.setMetrics(metrics);
+
+        try {
+            connection.send(mockEvent);
+        } catch (RejectedExecutionException e) {
+            // The policy reports the rejection
+        }
+
+        assertThat(metrics.getCounters(), hasEntry(RavenMetrics.EVENTS_DROPPED_QUEUE, 1L));
+        connection.close();
+    }
+
+    @Test
+    public void testPausedConnectionHoldsEventsUntilResumed(@Injectable final Event mockEvent) throws Exception {
+        // Ensure that the shutdown hooks for the unused @Tested instance are removed
+        asyncConnection.close();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ResizableBlockingQueue<Runnable>());
+        AsyncConnection connection = new AsyncConnection(mockConnection, executor, false);
+
+        connection.pause();
+        connection.send(mockEvent);
+        Thread.sleep(50);
+
+        assertThat(connection.isPaused(), is(true));
+        // The worker doesn't hold the event while the connection is paused
+        assertThat(executor.getQueue().size(), is(1));
+        new Verifications() {{
+            mockConnection.send(mockEvent);
+            times = 0;
+        }};
+
+        connection.resume();
+        connection.close();
+
+        assertThat(connection.isPaused(), is(false));
+        new Verifications() {{
+            mockConnection.send(mockEvent);
+            times = 1;
+        }};
+    }
+
+    @Test
+    public void testFlushSendsQueuedEventsWhilePaused(@Injectable final Event mockEvent) throws Exception {
+        // Ensure that the shutdown hooks for the unused @Tested instance are removed
+        asyncConnection.close();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ResizableBlockingQueue<Runnable>());
+        AsyncConnection connection = new AsyncConnection(mockConnection, executor, false);
+        connection.pause();
+        connection.send(mockEvent);
+        connection.send(mockEvent);
+        connection.send(mockEvent);
+
+        int flushed = connection.flush();
+
+        assertThat(flushed, is(3));
+        assertThat(executor.getQueue().size(), is(0));
+        new Verifications() {{
+            mockConnection.send(mockEvent);
+            times = 3;
+        }};
+        connection.close();
+    }
+
+    @Test
+    public void testPauseIgnoredWithoutResizableQueue() throws Exception {
+        // Ensure that the shutdown hooks for the unused @Tested instance are removed
+        asyncConnection.close();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(1));
+        AsyncConnection connection = new AsyncConnection(mockConnection, executor, false);
+
+        connection.pause();
+
+        assertThat(connection.isPaused(), is(false));
+        connection.close();
+    }
+
+    @Test
+    public void testFlushWithoutThreadPoolExecutor() throws Exception {
+        assertThat(asyncConnection.flush(), is(0));
+
+        // Ensure that the shutdown hooks for the used @Tested instance are removed
+        asyncConnection.close();
+    }
+
+    @Test
+    public void testQueueAndDeliveryTimesAreRecorded(@Injectable final Event mockEvent) throws Exception {
+        final long age = 5000;
+        new NonStrictExpectations() {{
+            mockExecutorService.execute((Runnable) any);
+            result = new Delegate<Void>() {
+                @SuppressWarnings("unused")
+                public void execute(Runnable command) {
+                    command.run();
+                }
+            };
+            mockEvent.getTimestamp();
+            result = new Date(System.currentTimeMillis() - age);
+        }};
+        RavenMetrics metrics = new RavenMetrics();
+        asyncConnection.setMetrics(metrics);
+
+        asyncConnection.send(mockEvent);
+
+        HistogramSnapshot queueTime = metrics.getHistograms().get(RavenMetrics.QUEUE_TIME);
+        HistogramSnapshot deliveryTime = metrics.getHistograms().get(RavenMetrics.DELIVERY_TIME);
+        assertThat(queueTime.getCount(), is(1L));
+        assertThat(deliveryTime.getCount(), is(1L));
+        assertThat(deliveryTime.getMin(), is(greaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(age))));
+
+        // Ensure that the shutdown hooks for the used @Tested instance are removed
+        asyncConnection.close();
+    }
 }
@@ -4,6 +4,8 @@ import mockit.*;
 import net.kencochrane.raven.environment.RavenEnvironment;
 import net.kencochrane.raven.event.Event;
 import net.kencochrane.raven.marshaller.Marshaller;
+import net.kencochrane.raven.metrics.HistogramSnapshot;
+import net.kencochrane.raven.metrics.RavenMetrics;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
@@ -16,9 +18,13 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URI;
 import java.net.URL;
+import java.util.concurrent.TimeUnit;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.hasEntry;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
 
 public class HttpConnectionTest {
     @Injectable
@@ -132,6 +138,116 @@ public class HttpConnectionTest {
         httpConnection.doSend(mockEvent);
     }
 
+    @Test
+    public void testStatusCodesAreCounted(@Injectable final Event mockEvent) throws Exception {
+        RavenMetrics metrics = new RavenMetrics();
+        httpConnection.setMetrics(metrics);
+        new NonStrictExpectations() {{
+            mockUrlConnection.getResponseCode();
+            returns(200, 429);
+            mockUrlConnection.getInputStream();
+            result = mockInputStream;
+            result = new IOException();
+            mockUrlConnection.getErrorStream();
+            result = new ByteArrayInputStream("Too many requests".getBytes());
+        }};
+
+        httpConnection.send(mockEvent);
+        httpConnection.send(mockEvent);
+
+        assertThat(metrics.getCounters(), allOf(
+                hasEntry(RavenMetrics.HTTP_STATUS_PREFIX + "200", 1L),
+                hasEntry(RavenMetrics.HTTP_STATUS_PREFIX + "429", 1L),
+                hasEntry(RavenMetrics.EVENTS_SENT, 1L),
+                hasEntry(RavenMetrics.EVENTS_FAILED, 1L)));
+        assertThat(metrics.getHistograms().get(RavenMetrics.HTTP_TIME).getCount(), is(2L));
+    }
+
+    @Test
+    public void testStatusCodesCountedInTheCurrentRegistry(@Injectable final Event mockEvent) throws Exception {
+        RavenMetrics firstMetrics = new RavenMetrics();
+        RavenMetrics secondMetrics = new RavenMetrics();
+        new NonStrictExpectations() {{
+            mockUrlConnection.getResponseCode();
+            result = 418;
+            mockUrlConnection.getInputStream();
+            result = mockInputStream;
+        }};
+
+        httpConnection.setMetrics(firstMetrics);
+        httpConnection.send(mockEvent);
+        httpConnection.setMetrics(secondMetrics);
+        httpConnection.send(mockEvent);
+
+        assertThat(firstMetrics.getCounters(), hasEntry(RavenMetrics.HTTP_STATUS_PREFIX + "418", 1L));
+        assertThat(secondMetrics.getCounters(), hasEntry(RavenMetrics.HTTP_STATUS_PREFIX + "418", 1L));
+    }
+
+    @Test
+    public void testHttpTimeExcludesSerialisation(@Injectable final Event mockEvent) throws Exception {
+        final long serialisationTime = 50;
+        RavenMetrics metrics = new RavenMetrics();
+        httpConnection.setMetrics(metrics);
+        new NonStrictExpectations() {{
+            mockUrlConnection.getInputStream();
+            result = mockInputStream;
+            mockMarshaller.marshall(mockEvent, (OutputStream) any);
+            result = new Delegate<Void>() {
+                @SuppressWarnings("unused")
+                public void marshall(Event event, OutputStream destination) throws InterruptedException {
+                    Thread.sleep(serialisationTime);
+                }
+            };
+        }};
+
+        httpConnection.send(mockEvent);
+
+        HistogramSnapshot httpTime = metrics.getHistograms().get(RavenMetrics.HTTP_TIME);
+        assertThat(httpTime.getCount(), is(1L));
+        assertThat(httpTime.getMax(), is(lessThan(TimeUnit.MILLISECONDS.toNanos(serialisationTime))));
+    }
+
+    @Test
+    public void testHttpTimeNotRecordedWithoutRequest(@Injectable final Event mockEvent) throws Exception {
+        RavenMetrics metrics = new RavenMetrics();
+        httpConnection.setMetrics(metrics);
+        new NonStrictExpectations() {{
+            mockUrlConnection.getOutputStream();
+            result = new IOException();
+        }};
+
+        try {
+            httpConnection.doSend(mockEvent);
+        } catch (ConnectionException e) {
+            // The event couldn't be serialised in the request
+        }
+
+        assertThat(metrics.getHistograms().get(RavenMetrics.HTTP_TIME).getCount(), is(0L));
+    }
+
+    @Test
+    public void testConnectionFailureCountedWithoutReadingTheStatus(@Injectable final Event mockEvent)
+            throws Exception {
+        RavenMetrics metrics = new RavenMetrics();
+        httpConnection.setMetrics(metrics);
+        new NonStrictExpectations() {{
+            mockUrlConnection.connect();
+            result = new IOException();
+        }};
+
+        try {
+            httpConnection.doSend(mockEvent);
+        } catch (ConnectionException e) {
+            // Sentry couldn't be reached
+        }
+
+        assertThat(metrics.getCounters(), hasEntry(RavenMetrics.HTTP_CONNECTION_FAILURES, 1L));
+        new Verifications() {{
+            mockUrlConnection.getResponseCode();
+            times = 0;
+        }};
+    }
+
     @Test
     public void testApiUrlCreation(@Injectable final URI sentryUri) throws Exception {
         final String uri = "http://host/sentry/";
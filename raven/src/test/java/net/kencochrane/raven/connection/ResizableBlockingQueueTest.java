@@ -0,0 +1,179 @@
+package net.kencochrane.raven.connection;
+
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class ResizableBlockingQueueTest {
+    @Test
+    public void testOfferRejectedWhenFull() throws Exception {
+        ResizableBlockingQueue<String> queue = new ResizableBlockingQueue<String>(2);
+
+        assertThat(queue.offer("a"), is(true));
+        assertThat(queue.offer("b"), is(true));
+        assertThat(queue.offer("c"), is(false));
+        assertThat(queue.size(), is(2));
+        assertThat(queue.remainingCapacity(), is(0));
+    }
+
+    @Test
+    public void testGrowingTheQueueAcceptsNewElements() throws Exception {
+        ResizableBlockingQueue<String> queue = new ResizableBlockingQueue<String>(1);
+        queue.offer("a");
+
+        queue.setCapacity(3);
+
+        assertThat(queue.offer("b"), is(true));
+        assertThat(queue.remainingCapacity(), is(1));
+    }
+
+    @Test
+    public void testShrinkingTheQueueKeepsTheElements() throws Exception {
+        ResizableBlockingQueue<String> queue = new ResizableBlockingQueue<String>(3);
+        queue.offer("a");
+        queue.offer("b");
+        queue.offer("c");
+
+        queue.setCapacity(1);
+
+        assertThat(queue.size(), is(3));
+        assertThat(queue.remainingCapacity(), is(0));
+        assertThat(queue.offer("d"), is(false));
+        List<String> drained = new ArrayList<String>();
+        queue.drainTo(drained, 2);
+        assertThat(drained, contains("a", "b"));
+        assertThat(queue.offer("d"), is(false));
+        assertThat(queue.poll(), is("c"));
+        assertThat(queue.offer("d"), is(true));
+    }
+
+    @Test
+    public void testTimedOfferGivesUpWhenFull() throws Exception {
+        ResizableBlockingQueue<String> queue = new ResizableBlockingQueue<String>(1);
+        queue.offer("a");
+
+        assertThat(queue.offer("b", 5, TimeUnit.MILLISECONDS), is(false));
+    }
+
+    @Test
+    public void testPutWaitsForRoom() throws Exception {
+        final ResizableBlockingQueue<String> queue = new ResizableBlockingQueue<String>(1);
+        queue.offer("a");
+        Thread consumer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(20);
+                    queue.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        consumer.start();
+
+        queue.put("b");
+
+        consumer.join();
+        assertThat(queue, contains("b"));
+    }
+
+    @Test
+    public void testPausedQueueKeepsItsElements() throws Exception {
+        ResizableBlockingQueue<String> queue = new ResizableBlockingQueue<String>();
+        queue.offer("a");
+        queue.offer("b");
+
+        queue.pause();
+
+        assertThat(queue.poll(5, TimeUnit.MILLISECONDS), is(nullValue()));
+        assertThat(queue.size(), is(2));
+        // Discarding or draining elements is still possible
+        assertThat(queue.poll(), is("a"));
+        List<String> drained = new ArrayList<String>();
+        queue.drainTo(drained);
+        assertThat(drained, contains("b"));
+    }
+
+    @Test
+    public void testTakeWaitsForResume() throws Exception {
+        final ResizableBlockingQueue<String> queue = new ResizableBlockingQueue<String>();
+        final List<String> taken = new ArrayList<String>();
+        queue.pause();
+        Thread consumer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    taken.add(queue.take());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        consumer.start();
+        queue.offer("a");
+        Thread.sleep(20);
+
+        assertThat(consumer.isAlive(), is(true));
+        queue.resume();
+
+        consumer.join();
+        assertThat(taken, contains("a"));
+        assertThat(queue.isEmpty(), is(true));
+    }
+
+    @Test
+    public void testGrowingTheQueueWakesUpProducers() throws Exception {
+        final ResizableBlockingQueue<String> queue = new ResizableBlockingQueue<String>(1);
+        queue.offer("a");
+        Thread resizer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(20);
+                    queue.setCapacity(2);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        resizer.start();
+
+        assertThat(queue.offer("b", 1, TimeUnit.SECONDS), is(true));
+
+        resizer.join();
+        assertThat(queue, contains("a", "b"));
+    }
+
+    @Test
+    public void testIteratorRemovesFromTheQueue() throws Exception {
+        ResizableBlockingQueue<String> queue = new ResizableBlockingQueue<String>(2);
+        queue.offer("a");
+        queue.offer("b");
+
+        Iterator<String> iterator = queue.iterator();
+        iterator.next();
+        iterator.remove();
+
+        assertThat(queue, contains("b"));
+        assertThat(queue.offer("c"), is(true));
+    }
+
+    @Test
+    public void testDefaultCapacityIsUnbounded() throws Exception {
+        ResizableBlockingQueue<String> queue = new ResizableBlockingQueue<String>();
+
+        assertThat(queue.getCapacity(), is(Integer.MAX_VALUE));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testCapacityMustBePositive() throws Exception {
+        new ResizableBlockingQueue<String>(1).setCapacity(0);
+    }
+}
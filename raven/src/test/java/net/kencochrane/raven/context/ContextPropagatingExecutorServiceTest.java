@@ -0,0 +1,102 @@
+package net.kencochrane.raven.context;
+
+import mockit.Injectable;
+import mockit.NonStrictExpectations;
+import net.kencochrane.raven.event.interfaces.HttpCapturePolicy;
+import net.kencochrane.raven.event.interfaces.HttpInterface;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class ContextPropagatingExecutorServiceTest {
+    @Injectable
+    private HttpInterface mockHttpInterface = null;
+    private ExecutorService executorService;
+    private RavenContext context;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        executorService = new ContextPropagatingExecutorService(Executors.newSingleThreadExecutor());
+        context = new RavenContext(mockHttpInterface);
+        context.attach();
+    }
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        executorService.shutdownNow();
+        RavenContext.restore(RavenContext.EMPTY);
+    }
+
+    private static Callable<RavenContext> currentContextTask() {
+        return new Callable<RavenContext>() {
+            @Override
+            public RavenContext call() throws Exception {
+                return RavenContext.current();
+            }
+        };
+    }
+
+    @Test
+    public void testSubmittedTaskRunsWithSubmittingContext() throws Exception {
+        Future<RavenContext> contextInTask = executorService.submit(currentContextTask());
+
+        assertThat(contextInTask.get(), is(sameInstance(context)));
+    }
+
+    @Test
+    public void testInvokedTasksRunWithSubmittingContext() throws Exception {
+        List<Callable<RavenContext>> tasks = new ArrayList<Callable<RavenContext>>();
+        tasks.add(currentContextTask());
+        tasks.add(currentContextTask());
+
+        List<Future<RavenContext>> contextsInTasks = executorService.invokeAll(tasks);
+
+        for (Future<RavenContext> contextInTask : contextsInTasks) {
+            assertThat(contextInTask.get(), is(sameInstance(context)));
+        }
+    }
+
+    @Test
+    public void testTasksGivenDetailsAllowedByPolicy(@Injectable final HttpInterface mockCheapInterface)
+            throws Exception {
+        new NonStrictExpectations() {{
+            mockHttpInterface.restrict(HttpCapturePolicy.CHEAP);
+            result = mockCheapInterface;
+        }};
+        ExecutorService cheapExecutorService = new ContextPropagatingExecutorService(
+                Executors.newSingleThreadExecutor(), HttpCapturePolicy.CHEAP);
+        try {
+            Future<RavenContext> contextInTask = cheapExecutorService.submit(currentContextTask());
+
+            assertThat(contextInTask.get().getHttpInterface(), is(sameInstance(mockCheapInterface)));
+        } finally {
+            cheapExecutorService.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testWorkerThreadRestoredAfterTask() throws Exception {
+        executorService.submit(currentContextTask()).get();
+        RavenContext.restore(RavenContext.EMPTY);
+
+        Future<RavenContext> contextInTask = executorService.submit(new Callable<RavenContext>() {
+            @Override
+            public RavenContext call() throws Exception {
+                return RavenContext.current();
+            }
+        });
+
+        assertThat(contextInTask.get(), is(sameInstance(RavenContext.EMPTY)));
+    }
+}
@@ -0,0 +1,206 @@
+package net.kencochrane.raven.context;
+
+import mockit.Injectable;
+import mockit.NonStrictExpectations;
+import mockit.Verifications;
+import net.kencochrane.raven.event.interfaces.HttpCapturePolicy;
+import net.kencochrane.raven.event.interfaces.HttpInterface;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class RavenContextTest {
+    @Injectable
+    private HttpInterface mockHttpInterface = null;
+    @Injectable
+    private HttpRequestSource mockRequestSource = null;
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        RavenContext.restore(RavenContext.EMPTY);
+    }
+
+    @Test
+    public void testEmptyByDefault() throws Exception {
+        assertThat(RavenContext.current(), is(sameInstance(RavenContext.EMPTY)));
+    }
+
+    @Test
+    public void testAttachAndRestore() throws Exception {
+        RavenContext outerContext = new RavenContext(mockHttpInterface);
+        RavenContext innerContext = new RavenContext((HttpInterface) null);
+
+        RavenContext emptyContext = outerContext.attach();
+        RavenContext previousContext = innerContext.attach();
+        assertThat(RavenContext.current(), is(sameInstance(innerContext)));
+
+        RavenContext.restore(previousContext);
+        assertThat(RavenContext.current(), is(sameInstance(outerContext)));
+        RavenContext.restore(emptyContext);
+        assertThat(RavenContext.current(), is(sameInstance(RavenContext.EMPTY)));
+    }
+
+    @Test
+    public void testWrappedRunnableRunsWithSubmittingContext() throws Exception {
+        final RavenContext context = new RavenContext(mockHttpInterface);
+        final AtomicReference<RavenContext> contextInTask = new AtomicReference<RavenContext>();
+        context.attach();
+        Runnable task = RavenContext.wrap(new Runnable() {
+            @Override
+            public void run() {
+                contextInTask.set(RavenContext.current());
+            }
+        });
+        RavenContext.restore(RavenContext.EMPTY);
+
+        task.run();
+
+        assertThat(contextInTask.get(), is(sameInstance(context)));
+        assertThat(RavenContext.current(), is(sameInstance(RavenContext.EMPTY)));
+    }
+
+    @Test
+    public void testWrappedCallableRunsWithSubmittingContext() throws Exception {
+        RavenContext context = new RavenContext(mockHttpInterface);
+        context.attach();
+        Callable<RavenContext> task = RavenContext.wrap(new Callable<RavenContext>() {
+            @Override
+            public RavenContext call() throws Exception {
+                return RavenContext.current();
+            }
+        });
+        RavenContext.restore(RavenContext.EMPTY);
+
+        assertThat(task.call(), is(sameInstance(context)));
+        assertThat(RavenContext.current(), is(sameInstance(RavenContext.EMPTY)));
+    }
+
+    @Test
+    public void testPropagatingExecutor() throws Exception {
+        final RavenContext context = new RavenContext(mockHttpInterface);
+        final AtomicReference<RavenContext> contextInTask = new AtomicReference<RavenContext>();
+        Executor executor = RavenContext.propagatingExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                Thread thread = new Thread(command);
+                thread.start();
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        });
+        context.attach();
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                contextInTask.set(RavenContext.current());
+            }
+        });
+
+        assertThat(contextInTask.get(), is(sameInstance(context)));
+    }
+
+    @Test
+    public void testLiveRequestReadWithPolicy(@Injectable final HttpInterface mockCheapInterface) throws Exception {
+        new NonStrictExpectations() {{
+            mockRequestSource.capture(HttpCapturePolicy.CHEAP);
+            result = mockCheapInterface;
+        }};
+        RavenContext context = new RavenContext(mockRequestSource);
+
+        assertThat(context.getHttpInterface(HttpCapturePolicy.CHEAP), is(sameInstance(mockCheapInterface)));
+    }
+
+    @Test
+    public void testLiveRequestCapturedWithPolicyWhenHandedOver(@Injectable final HttpInterface mockCheapInterface)
+            throws Exception {
+        new NonStrictExpectations() {{
+            mockRequestSource.capture(HttpCapturePolicy.CHEAP);
+            result = mockCheapInterface;
+        }};
+        new RavenContext(mockRequestSource).attach();
+
+        RavenContext capturedContext = RavenContext.capture(HttpCapturePolicy.CHEAP);
+
+        assertThat(capturedContext.getHttpInterface(), is(sameInstance(mockCheapInterface)));
+        new Verifications() {{
+            mockRequestSource.capture(HttpCapturePolicy.FULL);
+            times = 0;
+        }};
+    }
+
+    @Test
+    public void testLiveRequestReadOnEachCapture(@Injectable final HttpInterface mockUpdatedInterface)
+            throws Exception {
+        new NonStrictExpectations() {{
+            mockRequestSource.capture(HttpCapturePolicy.FULL);
+            returns(mockHttpInterface, mockUpdatedInterface);
+        }};
+        new RavenContext(mockRequestSource).attach();
+
+        RavenContext firstContext = RavenContext.capture();
+        RavenContext secondContext = RavenContext.capture();
+
+        assertThat(firstContext.getHttpInterface(), is(sameInstance(mockHttpInterface)));
+        assertThat(secondContext.getHttpInterface(), is(sameInstance(mockUpdatedInterface)));
+    }
+
+    @Test
+    public void testSnapshotRestrictedWhenCaptured(@Injectable final HttpInterface mockCheapInterface)
+            throws Exception {
+        new NonStrictExpectations() {{
+            mockHttpInterface.restrict(HttpCapturePolicy.CHEAP);
+            result = mockCheapInterface;
+        }};
+        RavenContext context = new RavenContext(mockHttpInterface);
+        context.attach();
+
+        assertThat(RavenContext.capture(), is(sameInstance(context)));
+        assertThat(RavenContext.capture(HttpCapturePolicy.CHEAP).getHttpInterface(),
+                is(sameInstance(mockCheapInterface)));
+    }
+
+    @Test
+    public void testWrappedTaskGivenCapturedDetails(@Injectable final HttpInterface mockCheapInterface)
+            throws Exception {
+        new NonStrictExpectations() {{
+            mockRequestSource.capture(HttpCapturePolicy.CHEAP);
+            result = mockCheapInterface;
+        }};
+        new RavenContext(mockRequestSource).attach();
+        final AtomicReference<HttpInterface> httpInterfaceInTask = new AtomicReference<HttpInterface>();
+
+        Runnable task = RavenContext.wrap(new Runnable() {
+            @Override
+            public void run() {
+                httpInterfaceInTask.set(RavenContext.current().getHttpInterface());
+            }
+        }, HttpCapturePolicy.CHEAP);
+        RavenContext.restore(RavenContext.EMPTY);
+        task.run();
+
+        assertThat(httpInterfaceInTask.get(), is(sameInstance(mockCheapInterface)));
+    }
+
+    @Test
+    public void testSnapshotRestrictedByPolicy(@Injectable final HttpInterface mockCheapInterface) throws Exception {
+        new NonStrictExpectations() {{
+            mockHttpInterface.restrict(HttpCapturePolicy.CHEAP);
+            result = mockCheapInterface;
+        }};
+        RavenContext context = new RavenContext(mockHttpInterface);
+
+        assertThat(context.getHttpInterface(HttpCapturePolicy.FULL), is(sameInstance(mockHttpInterface)));
+        assertThat(context.getHttpInterface(HttpCapturePolicy.CHEAP), is(sameInstance(mockCheapInterface)));
+    }
+}
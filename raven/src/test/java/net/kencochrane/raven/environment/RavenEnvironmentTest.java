@@ -3,8 +3,11 @@ package net.kencochrane.raven.environment;
 import org.testng.annotations.AfterMethod;
 import org.testng.annotations.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import static org.hamcrest.MatcherAssert.assertThat;
-import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.*;
 
 public class RavenEnvironmentTest {
     @AfterMethod
@@ -59,4 +62,43 @@ public class RavenEnvironmentTest {
         RavenEnvironment.stopManagingThread();
         assertThat(RavenEnvironment.isManagingThread(), is(false));
     }
+
+    @Test
+    public void testEnterIfNotManagedManagesThread() throws Exception {
+        RavenEnvironment.ManagedScope managedScope = RavenEnvironment.enterIfNotManaged();
+
+        assertThat(managedScope, is(notNullValue()));
+        assertThat(RavenEnvironment.isManagingThread(), is(true));
+        managedScope.exit();
+        assertThat(RavenEnvironment.isManagingThread(), is(false));
+    }
+
+    @Test
+    public void testEnterIfNotManagedOnManagedThread() throws Exception {
+        RavenEnvironment.startManagingThread();
+
+        assertThat(RavenEnvironment.enterIfNotManaged(), is(nullValue()));
+        RavenEnvironment.stopManagingThread();
+        assertThat(RavenEnvironment.isManagingThread(), is(false));
+    }
+
+    @Test
+    public void testRavenThreadIsAlwaysManaged() throws Exception {
+        final List<Object> results = new ArrayList<Object>();
+        Thread ravenThread = new RavenThread(Thread.currentThread().getThreadGroup(), new Runnable() {
+            @Override
+            public void run() {
+                results.add(RavenEnvironment.isManagingThread());
+                results.add(RavenEnvironment.enterIfNotManaged());
+                RavenEnvironment.startManagingThread();
+                RavenEnvironment.stopManagingThread();
+                results.add(RavenEnvironment.isManagingThread());
+            }
+        }, "raven-test-thread");
+
+        ravenThread.start();
+        ravenThread.join();
+
+        assertThat(results, contains((Object) true, null, true));
+    }
 }
@@ -0,0 +1,113 @@
+package net.kencochrane.raven.event;
+
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class CompactMapTest {
+    @Test
+    public void testPutReplacesExistingValue() throws Exception {
+        CompactMap<String, String> map = new CompactMap<String, String>();
+
+        map.put("key", "value1");
+        String previous = map.put("key", "value2");
+
+        assertThat(previous, is("value1"));
+        assertThat(map.size(), is(1));
+        assertThat(map.get("key"), is("value2"));
+    }
+
+    @Test
+    public void testGrowsBeyondInitialCapacity() throws Exception {
+        CompactMap<String, Integer> map = new CompactMap<String, Integer>();
+        Map<String, Integer> expected = new HashMap<String, Integer>();
+
+        for (int i = 0; i < 20; i++) {
+            map.put("key" + i, i);
+            expected.put("key" + i, i);
+        }
+
+        assertThat(map.size(), is(20));
+        assertThat(map.get("key17"), is(17));
+        assertThat(map.equals(expected), is(true));
+        assertThat(map.hashCode(), is(expected.hashCode()));
+    }
+
+    @Test
+    public void testLargeMapKeepsInsertionOrder() throws Exception {
+        CompactMap<String, Integer> map = new CompactMap<String, Integer>();
+        List<String> keys = new ArrayList<String>();
+
+        for (int i = 20; i > 0; i--) {
+            map.put("key" + i, i);
+            keys.add("key" + i);
+        }
+        Integer previous = map.put("key3", -3);
+        map.put(null, 0);
+        keys.add(null);
+
+        assertThat(previous, is(3));
+        assertThat(map.get("key3"), is(-3));
+        assertThat(map.containsKey(null), is(true));
+        assertThat(new ArrayList<String>(map.keySet()), is(keys));
+    }
+
+    @Test(expectedExceptions = UnsupportedOperationException.class)
+    public void testFrozenLargeMapRejectsPut() throws Exception {
+        CompactMap<String, Integer> map = new CompactMap<String, Integer>();
+        for (int i = 0; i < 20; i++) {
+            map.put("key" + i, i);
+        }
+        map.freeze();
+
+        map.put("key", 0);
+    }
+
+    @Test(expectedExceptions = UnsupportedOperationException.class)
+    public void testLargeMapEntriesCantBeModified() throws Exception {
+        CompactMap<String, Integer> map = new CompactMap<String, Integer>();
+        for (int i = 0; i < 20; i++) {
+            map.put("key" + i, i);
+        }
+
+        map.entrySet().iterator().next().setValue(0);
+    }
+
+    @Test
+    public void testSupportsNullKeysAndValues() throws Exception {
+        CompactMap<String, String> map = new CompactMap<String, String>();
+
+        map.put(null, "value");
+        map.put("key", null);
+
+        assertThat(map.get(null), is("value"));
+        assertThat(map.containsKey("key"), is(true));
+        assertThat(map.get("key"), is(nullValue()));
+        assertThat(map.containsKey("missing"), is(false));
+    }
+
+    @Test(expectedExceptions = UnsupportedOperationException.class)
+    public void testFrozenMapRejectsPut() throws Exception {
+        CompactMap<String, String> map = new CompactMap<String, String>();
+        map.freeze();
+
+        map.put("key", "value");
+    }
+
+    @Test(expectedExceptions = UnsupportedOperationException.class)
+    public void testEntriesCantBeRemoved() throws Exception {
+        CompactMap<String, String> map = new CompactMap<String, String>();
+        map.put("key", "value");
+
+        Iterator<Map.Entry<String, String>> iterator = map.entrySet().iterator();
+        iterator.next();
+        iterator.remove();
+    }
+}
@@ -3,12 +3,15 @@ package net.kencochrane.raven.event;
 import mockit.Injectable;
 import mockit.NonStrictExpectations;
 import net.kencochrane.raven.event.interfaces.SentryInterface;
+import net.kencochrane.raven.filter.KeyFilter;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
 import java.net.InetAddress;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.UUID;
 
 import static mockit.Deencapsulation.getField;
@@ -331,6 +334,24 @@ public class EventBuilderTest {
         assertThat(event.getExtra().entrySet(), hasSize(1));
     }
 
+    @Test
+    public void builtEventExtrasFollowTheOrderOfAddition() throws Exception {
+        final EventBuilder eventBuilder = new EventBuilder();
+        eventBuilder.addExtra("before", "extra");
+        eventBuilder.addExtra("after", "extra");
+        Map<String, Object> context = new HashMap<String, Object>();
+        context.put("before", "context");
+        context.put("after", "context");
+        eventBuilder.addExtraContext(context, KeyFilter.ACCEPT_ALL);
+        eventBuilder.addExtra("after", "overridden");
+
+        final Event event = eventBuilder.build();
+
+        assertThat(event.getExtra(), hasEntry("before", (Object) "context"));
+        assertThat(event.getExtra(), hasEntry("after", (Object) "overridden"));
+        assertThat(event.getExtra().entrySet(), hasSize(2));
+    }
+
     @Test
     public void builtEventWithoutCheckHasNullChecksum() throws Exception {
         final EventBuilder eventBuilder = new EventBuilder();
@@ -0,0 +1,116 @@
+package net.kencochrane.raven.event;
+
+import net.kencochrane.raven.filter.KeyFilter;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class LayeredExtraMapTest {
+    private static Map<String, Object> map(Object... keyValues) {
+        Map<String, Object> map = new HashMap<String, Object>();
+        for (int i = 0; i < keyValues.length; i += 2) {
+            map.put((String) keyValues[i], keyValues[i + 1]);
+        }
+        return map;
+    }
+
+    private static List<Map<String, ?>> contexts(Map<String, ?> context) {
+        return Collections.<Map<String, ?>>singletonList(context);
+    }
+
+    private static List<Map<String, ?>> contexts(Map<String, ?> first, Map<String, ?> second) {
+        List<Map<String, ?>> contexts = new ArrayList<Map<String, ?>>();
+        contexts.add(first);
+        contexts.add(second);
+        return contexts;
+    }
+
+    private static LayeredExtraMap layeredMap(Map<String, Object> extra, List<Map<String, ?>> contexts,
+                                              KeyFilter... filters) {
+        return new LayeredExtraMap(extra, contexts, Arrays.asList(filters));
+    }
+
+    @Test
+    public void testLayersPrecedence() throws Exception {
+        Map<String, Object> extra = map("a", "extra");
+        List<Map<String, ?>> contexts = contexts(map("a", "ctx1", "b", "ctx1", "c", "ctx1"), map("b", "ctx2"));
+
+        LayeredExtraMap layeredMap = layeredMap(extra, contexts, KeyFilter.ACCEPT_ALL, KeyFilter.ACCEPT_ALL);
+
+        assertThat(layeredMap.get("a"), is((Object) "extra"));
+        assertThat(layeredMap.get("b"), is((Object) "ctx2"));
+        assertThat(layeredMap.get("c"), is((Object) "ctx1"));
+        assertThat(layeredMap.get("d"), is(nullValue()));
+        assertThat(layeredMap.size(), is(3));
+        assertThat(layeredMap, is(equalTo(map("a", "extra", "b", "ctx2", "c", "ctx1"))));
+    }
+
+    @Test
+    public void testContextOverridesThePropertiesAddedBeforeIt() throws Exception {
+        // Properties added before the context, the context itself, then the properties added after it
+        List<Map<String, ?>> contexts = contexts(map("a", "before", "b", "before"), map("a", "ctx", "c", "ctx"));
+
+        LayeredExtraMap layeredMap = layeredMap(map("c", "after"), contexts, KeyFilter.ACCEPT_ALL,
+                KeyFilter.ACCEPT_ALL);
+
+        assertThat(layeredMap, is(equalTo(map("a", "ctx", "b", "before", "c", "after"))));
+    }
+
+    @Test
+    public void testFilteredKeysAreHidden() throws Exception {
+        List<Map<String, ?>> contexts = contexts(map("a", "ctx1", "b", "ctx1"),
+                map("a", "ctx2", "b", "ctx2", "c", "ctx2"));
+
+        LayeredExtraMap layeredMap = layeredMap(Collections.<String, Object>emptyMap(), contexts,
+                KeyFilter.ACCEPT_ALL, KeyFilter.parse(null, "a,c"));
+
+        assertThat(layeredMap.get("a"), is((Object) "ctx1"));
+        assertThat(layeredMap.get("b"), is((Object) "ctx2"));
+        assertThat(layeredMap.containsKey("c"), is(false));
+        assertThat(layeredMap, is(equalTo(map("a", "ctx1", "b", "ctx2"))));
+    }
+
+    @Test
+    public void testIterationVisitsEachKeyOnce() throws Exception {
+        List<Map<String, ?>> contexts = contexts(map("a", 1, "b", 1), map("a", 2, "b", 2));
+        LayeredExtraMap layeredMap = layeredMap(map("b", 3), contexts, KeyFilter.ACCEPT_ALL, KeyFilter.ACCEPT_ALL);
+
+        Iterator<Map.Entry<String, Object>> iterator = layeredMap.entrySet().iterator();
+        Map.Entry<String, Object> first = iterator.next();
+        Map.Entry<String, Object> second = iterator.next();
+
+        assertThat(first.getKey(), is("b"));
+        assertThat(first.getValue(), is((Object) 3));
+        assertThat(second.getKey(), is("a"));
+        assertThat(second.getValue(), is((Object) 2));
+        assertThat(iterator.hasNext(), is(false));
+    }
+
+    @Test
+    public void testSerializedAsPlainMap() throws Exception {
+        List<Map<String, ?>> contexts = contexts(map("a", "ctx1"));
+        LayeredExtraMap layeredMap = layeredMap(map("b", "extra"), contexts, KeyFilter.ACCEPT_ALL);
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        ObjectOutputStream objectOutputStream = new ObjectOutputStream(outputStream);
+        objectOutputStream.writeObject(layeredMap);
+        objectOutputStream.close();
+        Object deserialized = new ObjectInputStream(new ByteArrayInputStream(outputStream.toByteArray())).readObject();
+
+        assertThat(deserialized, is(not(instanceOf(LayeredExtraMap.class))));
+        assertThat(deserialized, is((Object) map("a", "ctx1", "b", "extra")));
+    }
+}
@@ -1,51 +1,100 @@
 package net.kencochrane.raven.event.helper;
 
 import mockit.*;
+import net.kencochrane.raven.context.HttpRequestSource;
+import net.kencochrane.raven.context.RavenContext;
 import net.kencochrane.raven.event.EventBuilder;
+import net.kencochrane.raven.event.interfaces.HttpCapturePolicy;
 import net.kencochrane.raven.event.interfaces.HttpInterface;
 import net.kencochrane.raven.event.interfaces.SentryInterface;
-import net.kencochrane.raven.servlet.RavenServletRequestListener;
+import org.testng.annotations.AfterMethod;
 import org.testng.annotations.Test;
 
-import javax.servlet.http.HttpServletRequest;
-
 public class HttpEventBuilderHelperTest {
     @Tested
     private HttpEventBuilderHelper httpEventBuilderHelper = null;
     @Injectable
     private EventBuilder mockEventBuilder = null;
-    @SuppressWarnings("unused")
-    @Mocked
+    @Injectable
     private HttpInterface mockHttpInterface = null;
 
+    @AfterMethod
+    public void tearDown() throws Exception {
+        RavenContext.restore(RavenContext.EMPTY);
+    }
+
     @Test
     public void testNoRequest() throws Exception {
-        new NonStrictExpectations(RavenServletRequestListener.class) {{
-            RavenServletRequestListener.getServletRequest();
-            result = null;
-        }};
         httpEventBuilderHelper.helpBuildingEvent(mockEventBuilder);
 
         new Verifications() {{
-            new HttpInterface(withInstanceOf(HttpServletRequest.class));
-            times = 0;
             mockEventBuilder.addSentryInterface(withInstanceOf(SentryInterface.class));
             times = 0;
         }};
     }
 
     @Test
-    public void testWithRequest(@Injectable final HttpServletRequest mockHttpServletRequest) throws Exception {
-        new NonStrictExpectations(RavenServletRequestListener.class) {{
-            RavenServletRequestListener.getServletRequest();
-            result = mockHttpServletRequest;
+    public void testWithRequest() throws Exception {
+        new RavenContext(mockHttpInterface).attach();
+
+        httpEventBuilderHelper.helpBuildingEvent(mockEventBuilder);
+
+        new Verifications() {{
+            mockEventBuilder.addSentryInterface(mockHttpInterface);
         }};
+    }
+
+    @Test
+    public void testWithPropagatedRequest() throws Exception {
+        new RavenContext(mockHttpInterface).attach();
+        Thread thread = new Thread(RavenContext.wrap(new Runnable() {
+            @Override
+            public void run() {
+                httpEventBuilderHelper.helpBuildingEvent(mockEventBuilder);
+            }
+        }));
+        thread.start();
+        thread.join();
+
+        new Verifications() {{
+            mockEventBuilder.addSentryInterface(mockHttpInterface);
+        }};
+    }
+
+    @Test
+    public void testLiveRequestReadWhenBuilding(@Injectable final HttpRequestSource mockRequestSource)
+            throws Exception {
+        new NonStrictExpectations() {{
+            mockRequestSource.capture(HttpCapturePolicy.FULL);
+            result = mockHttpInterface;
+        }};
+        new RavenContext(mockRequestSource).attach();
 
         httpEventBuilderHelper.helpBuildingEvent(mockEventBuilder);
 
         new Verifications() {{
-            new HttpInterface(mockHttpServletRequest);
-            mockEventBuilder.addSentryInterface(this.<HttpInterface>withNotNull());
+            mockEventBuilder.addSentryInterface(mockHttpInterface);
+        }};
+    }
+
+    @Test
+    public void testLiveRequestReadWithTheHelperPolicy(@Injectable final HttpRequestSource mockRequestSource,
+                                                       @Injectable final HttpInterface mockCheapInterface)
+            throws Exception {
+        new NonStrictExpectations() {{
+            mockRequestSource.capture(HttpCapturePolicy.CHEAP);
+            result = mockCheapInterface;
+            mockRequestSource.capture(HttpCapturePolicy.FULL);
+            result = mockHttpInterface;
+        }};
+        new RavenContext(mockRequestSource).attach();
+
+        new HttpEventBuilderHelper(HttpCapturePolicy.CHEAP).helpBuildingEvent(mockEventBuilder);
+
+        new Verifications() {{
+            mockEventBuilder.addSentryInterface(mockCheapInterface);
+            mockEventBuilder.addSentryInterface(mockHttpInterface);
+            times = 0;
         }};
     }
 }
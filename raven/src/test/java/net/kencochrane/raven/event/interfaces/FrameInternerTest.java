@@ -0,0 +1,82 @@
+package net.kencochrane.raven.event.interfaces;
+
+import net.kencochrane.raven.metrics.RavenMetrics;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.hasEntry;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class FrameInternerTest {
+    private FrameInterner frameInterner;
+
+    private static StackTraceElement[] createStackTrace(String methodName) {
+        return new StackTraceElement[]{
+                new StackTraceElement("a.b.C", methodName, "C.java", 1),
+                new StackTraceElement("a.b.D", "run", "D.java", 2)
+        };
+    }
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        frameInterner = new FrameInterner();
+    }
+
+    @Test
+    public void testIdenticalStackTracesAreShared() throws Exception {
+        FrameInterner.InternedStackTrace first = frameInterner.intern(createStackTrace("call"));
+        FrameInterner.InternedStackTrace second = frameInterner.intern(createStackTrace("call"));
+
+        assertThat(second, is(sameInstance(first)));
+        assertThat(second.getFrames(), is(sameInstance(first.getFrames())));
+        assertThat(frameInterner.getInternedStackTraces(), is(2L));
+        assertThat(frameInterner.getDeduplicatedStackTraces(), is(1L));
+        assertThat(frameInterner.getDeduplicatedStackTraceFrames(), is(2L));
+    }
+
+    @Test
+    public void testIdenticalFramesAreSharedBetweenDifferentStackTraces() throws Exception {
+        StackTraceElement[] firstFrames = frameInterner.intern(createStackTrace("call")).getFrames();
+        StackTraceElement[] secondFrames = frameInterner.intern(createStackTrace("otherCall")).getFrames();
+
+        assertThat(secondFrames, is(not(sameInstance(firstFrames))));
+        assertThat(secondFrames[0], is(not(sameInstance(firstFrames[0]))));
+        assertThat(secondFrames[1], is(sameInstance(firstFrames[1])));
+        assertThat(frameInterner.getInternedFrames(), is(4L));
+        assertThat(frameInterner.getDeduplicatedFrames(), is(1L));
+        assertThat(frameInterner.getDeduplicatedStackTraces(), is(0L));
+    }
+
+    @Test
+    public void testCallerArrayIsNotModified() throws Exception {
+        StackTraceElement[] firstFrames = frameInterner.intern(createStackTrace("call")).getFrames();
+        StackTraceElement[] stackTrace = createStackTrace("call");
+        StackTraceElement originalFrame = stackTrace[0];
+
+        StackTraceElement[] internedFrames = frameInterner.intern(stackTrace).getFrames();
+
+        assertThat(internedFrames, is(sameInstance(firstFrames)));
+        assertThat(stackTrace[0], is(sameInstance(originalFrame)));
+        assertThat(stackTrace[0], is(not(sameInstance(firstFrames[0]))));
+    }
+
+    @Test
+    public void testCountersExposedAsGauges() throws Exception {
+        RavenMetrics metrics = new RavenMetrics();
+        frameInterner.registerGauges(metrics);
+
+        frameInterner.intern(createStackTrace("call"));
+        frameInterner.intern(createStackTrace("call"));
+
+        assertThat(metrics.getGauges(), allOf(
+                hasEntry(RavenMetrics.INTERNED_FRAMES, 4L),
+                hasEntry(RavenMetrics.DEDUPLICATED_FRAMES, 2L),
+                hasEntry(RavenMetrics.INTERNED_STACKTRACES, 2L),
+                hasEntry(RavenMetrics.DEDUPLICATED_STACKTRACES, 1L),
+                hasEntry(RavenMetrics.DEDUPLICATED_STACKTRACE_FRAMES, 2L)));
+    }
+}
@@ -2,6 +2,7 @@ package net.kencochrane.raven.event.interfaces;
 
 import mockit.Injectable;
 import mockit.NonStrictExpectations;
+import mockit.Verifications;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
@@ -10,6 +11,7 @@ import javax.servlet.http.HttpServletRequest;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashSet;
 import java.util.NoSuchElementException;
 
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -174,4 +176,152 @@ public class HttpInterfaceTest {
 
         assertThat(httpInterface.getCookies().size(), is(0));
     }
+
+    @Test(expectedExceptions = UnsupportedOperationException.class)
+    public void testCookiesUnmodifiable() throws Exception {
+        new NonStrictExpectations() {{
+            mockCookie.getName();
+            result = "name";
+            mockHttpServletRequest.getCookies();
+            result = new Cookie[]{mockCookie};
+        }};
+
+        new HttpInterface(mockHttpServletRequest).getCookies().remove("name");
+    }
+
+    @Test
+    public void testCheapPolicyOnlyKeepsUrlMethodAndHeaders() throws Exception {
+        new NonStrictExpectations() {{
+            mockHttpServletRequest.getHeaders("User-Agent");
+            result = Collections.enumeration(Arrays.asList("agent"));
+        }};
+
+        HttpInterface httpInterface = new HttpInterface(mockHttpServletRequest, HttpCapturePolicy.CHEAP);
+
+        assertThat(httpInterface.getMethod(), is("method"));
+        assertThat(httpInterface.getHeaders().keySet(), contains("User-Agent"));
+        assertThat(httpInterface.getParameters().size(), is(0));
+        assertThat(httpInterface.getCookies().size(), is(0));
+        assertThat(httpInterface.getQueryString(), is(nullValue()));
+        assertThat(httpInterface.getRemoteAddr(), is(nullValue()));
+        new Verifications() {{
+            mockHttpServletRequest.getParameterMap();
+            times = 0;
+            mockHttpServletRequest.getCookies();
+            times = 0;
+            mockHttpServletRequest.getHeaderNames();
+            times = 0;
+        }};
+    }
+
+    @Test
+    public void testPolicyFiltersAndTruncatesValues() throws Exception {
+        new NonStrictExpectations() {{
+            mockHttpServletRequest.getParameterValues("kept");
+            result = new String[]{"0123456789"};
+            mockCookie.getName();
+            result = "secret";
+            mockCookie.getValue();
+            result = "value";
+            mockHttpServletRequest.getCookies();
+            result = new Cookie[]{mockCookie};
+            mockHttpServletRequest.getHeaders("X-Header");
+            result = Collections.enumeration(Arrays.asList("abcdefghij"));
+        }};
+        HttpCapturePolicy capturePolicy = new HttpCapturePolicy(false, Collections.singleton("X-Header"),
+                Collections.singleton("session"), new HashSet<String>(Arrays.asList("kept", "missing")), 4);
+
+        HttpInterface httpInterface = new HttpInterface(mockHttpServletRequest, capturePolicy);
+
+        assertThat(httpInterface.getParameters().size(), is(1));
+        assertThat(httpInterface.getParameters(), hasEntry(is("kept"), contains("0123")));
+        assertThat(httpInterface.getCookies().size(), is(0));
+        assertThat(httpInterface.getHeaders(), hasEntry(is("X-Header"), contains("abcd")));
+        assertThat(httpInterface.getQueryString(), is(nullValue()));
+        new Verifications() {{
+            mockHttpServletRequest.getParameterMap();
+            times = 0;
+        }};
+    }
+
+    @Test
+    public void testSnapshotRestrictedByPolicy() throws Exception {
+        new NonStrictExpectations() {{
+            mockHttpServletRequest.getParameterMap();
+            result = Collections.singletonMap("kept", new String[]{"0123456789"});
+            mockCookie.getName();
+            result = "secret";
+            mockCookie.getValue();
+            result = "value";
+            mockHttpServletRequest.getCookies();
+            result = new Cookie[]{mockCookie};
+            mockHttpServletRequest.getHeaderNames();
+            result = Collections.enumeration(Arrays.asList("x-header", "Other"));
+            mockHttpServletRequest.getHeaders(anyString);
+            result = Collections.enumeration(Arrays.asList("abcdefghij"));
+        }};
+        HttpInterface snapshot = new HttpInterface(mockHttpServletRequest);
+        HttpCapturePolicy capturePolicy = new HttpCapturePolicy(false, Collections.singleton("X-Header"),
+                Collections.singleton("session"), Collections.singleton("kept"), 4);
+
+        HttpInterface httpInterface = snapshot.restrict(capturePolicy);
+
+        assertThat(httpInterface.getParameters(), hasEntry(is("kept"), contains("0123")));
+        assertThat(httpInterface.getCookies().size(), is(0));
+        assertThat(httpInterface.getHeaders().keySet(), contains("x-header"));
+        assertThat(httpInterface.getQueryString(), is(nullValue()));
+        assertThat(httpInterface.getRemoteUser(), is("remoteUser"));
+        assertThat(snapshot.restrict(HttpCapturePolicy.CHEAP).getRemoteUser(), is(nullValue()));
+    }
+
+    @Test
+    public void testRestrictedParametersRestrictTheQueryString() throws Exception {
+        new NonStrictExpectations() {{
+            mockHttpServletRequest.getQueryString();
+            result = "token=secret&kept=value&ke%70t=encoded&password";
+        }};
+        HttpCapturePolicy capturePolicy = new HttpCapturePolicy(false, null, null, Collections.singleton("kept"),
+                HttpCapturePolicy.UNLIMITED_LENGTH);
+
+        HttpInterface httpInterface = new HttpInterface(mockHttpServletRequest, capturePolicy);
+        HttpInterface restrictedSnapshot = new HttpInterface(mockHttpServletRequest).restrict(capturePolicy);
+
+        assertThat(httpInterface.getQueryString(), is("kept=value&ke%70t=encoded"));
+        assertThat(restrictedSnapshot.getQueryString(), is("kept=value&ke%70t=encoded"));
+    }
+
+    @Test
+    public void testRestrictedCookiesLeaveOutTheCookieHeader() throws Exception {
+        new NonStrictExpectations() {{
+            mockHttpServletRequest.getHeaderNames();
+            result = Collections.enumeration(Arrays.asList("cookie", "X-Header"));
+            mockHttpServletRequest.getHeaders(anyString);
+            result = Collections.enumeration(Arrays.asList("value"));
+        }};
+        HttpCapturePolicy capturePolicy = new HttpCapturePolicy(false, null, Collections.singleton("session"), null,
+                HttpCapturePolicy.UNLIMITED_LENGTH);
+
+        HttpInterface httpInterface = new HttpInterface(mockHttpServletRequest, capturePolicy);
+
+        assertThat(httpInterface.getHeaders().keySet(), contains("X-Header"));
+        new Verifications() {{
+            mockHttpServletRequest.getHeaders("cookie");
+            times = 0;
+        }};
+    }
+
+    @Test
+    public void testSnapshotRestrictedByCookiesLeavesOutTheCookieHeader() throws Exception {
+        new NonStrictExpectations() {{
+            mockHttpServletRequest.getHeaderNames();
+            result = Collections.enumeration(Arrays.asList("Cookie", "X-Header"));
+            mockHttpServletRequest.getHeaders(anyString);
+            result = Collections.enumeration(Arrays.asList("value"));
+        }};
+        HttpInterface snapshot = new HttpInterface(mockHttpServletRequest);
+        HttpCapturePolicy capturePolicy = new HttpCapturePolicy(false, Collections.singleton("Cookie"),
+                Collections.singleton("session"), null, HttpCapturePolicy.UNLIMITED_LENGTH);
+
+        assertThat(snapshot.restrict(capturePolicy).getHeaders().size(), is(0));
+    }
 }
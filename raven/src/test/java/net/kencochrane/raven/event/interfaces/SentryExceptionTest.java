@@ -37,4 +37,31 @@ public class SentryExceptionTest {
         assertThat(exceptions.getFirst().getExceptionMessage(), is(exceptionMessage));
         assertThat(exceptions.getLast().getExceptionMessage(), is(causeMessage));
     }
+
+    @Test
+    public void ensureStackTraceIsRetrievedOnceForEachException() throws Exception {
+        StackTraceCountingException cause = new StackTraceCountingException(null);
+        StackTraceCountingException exception = new StackTraceCountingException(cause);
+
+        Deque<SentryException> exceptions = SentryException.extractExceptionQueue(exception);
+
+        assertThat(exception.stackTraceCalls, is(1));
+        assertThat(cause.stackTraceCalls, is(1));
+        assertThat(exceptions.getLast().getStackTraceInterface().getFramesCommonWithEnclosing(),
+                is(cause.getStackTrace().length - 1));
+    }
+
+    private static final class StackTraceCountingException extends Exception {
+        private int stackTraceCalls;
+
+        private StackTraceCountingException(Throwable cause) {
+            super(cause);
+        }
+
+        @Override
+        public StackTraceElement[] getStackTrace() {
+            stackTraceCalls++;
+            return super.getStackTrace();
+        }
+    }
 }
@@ -5,6 +5,8 @@ import org.testng.annotations.Test;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
 
 public class StackTraceInterfaceTest {
     @Test
@@ -17,4 +19,100 @@ public class StackTraceInterfaceTest {
 
         assertThat(stackTraceInterface.getFramesCommonWithEnclosing(), is(exception.getStackTrace().length - 1));
     }
+
+    @Test
+    public void testFramesAreAccessibleByIndex() throws Exception {
+        StackTraceElement[] stackTrace = new Exception().getStackTrace();
+
+        StackTraceInterface stackTraceInterface = new StackTraceInterface(stackTrace);
+
+        assertThat(stackTraceInterface.getFrameCount(), is(stackTrace.length));
+        for (int i = 0; i < stackTrace.length; i++) {
+            assertThat(stackTraceInterface.getFrame(i), is(stackTrace[i]));
+        }
+    }
+
+    @Test
+    public void testStackTraceIsCopiedOnConstruction() throws Exception {
+        StackTraceElement[] stackTrace = new Exception().getStackTrace();
+        StackTraceElement originalFrame = stackTrace[0];
+
+        StackTraceInterface stackTraceInterface = new StackTraceInterface(stackTrace);
+        stackTrace[0] = new StackTraceElement("", "", null, 0);
+
+        assertThat(stackTraceInterface.getFrame(0), is(originalFrame));
+        assertThat(stackTraceInterface.getStackTrace(), is(not(sameInstance(stackTrace))));
+    }
+
+    @Test
+    public void testFramesNotInternedByDefault() throws Exception {
+        FrameInterner frameInterner = FrameInterner.getDefault();
+        long internedFrames = frameInterner.getInternedFrames();
+        StackTraceElement[] stackTrace = new Exception().getStackTrace();
+
+        StackTraceInterface stackTraceInterface = new StackTraceInterface(stackTrace);
+
+        assertThat(frameInterner.isEnabled(), is(false));
+        assertThat(stackTraceInterface.getFrame(0), is(sameInstance(stackTrace[0])));
+        assertThat(frameInterner.getInternedFrames(), is(internedFrames));
+    }
+
+    @Test
+    public void testFramesInternedWhenEnabled() throws Exception {
+        FrameInterner frameInterner = FrameInterner.getDefault();
+        StackTraceElement[] stackTrace = new Exception().getStackTrace();
+        StackTraceElement[] otherStackTrace = new Exception().getStackTrace();
+
+        frameInterner.setEnabled(true);
+        try {
+            StackTraceInterface first = new StackTraceInterface(stackTrace);
+            StackTraceInterface second = new StackTraceInterface(otherStackTrace);
+
+            assertThat(second.getFrame(1), is(sameInstance(first.getFrame(1))));
+            assertThat(second.getFrame(1), is(not(sameInstance(otherStackTrace[1]))));
+        } finally {
+            frameInterner.setEnabled(false);
+        }
+    }
+
+    @Test
+    public void testDeepStackTraceKeepsHeadAndTailFrames() throws Exception {
+        StackTraceElement[] stackTrace = new StackTraceElement[10];
+        for (int i = 0; i < stackTrace.length; i++) {
+            stackTrace[i] = new StackTraceElement("class" + i, "method", null, i);
+        }
+
+        StackTraceInterface stackTraceInterface = new StackTraceInterface(stackTrace, new StackTraceElement[0], 5);
+
+        assertThat(stackTraceInterface.getFrameCount(), is(5));
+        assertThat(stackTraceInterface.getFramesOmitted(), is(5));
+        assertThat(stackTraceInterface.getFramesOmittedIndex(), is(3));
+        assertThat(stackTraceInterface.getFrame(2), is(stackTrace[2]));
+        assertThat(stackTraceInterface.getFrame(3), is(stackTrace[8]));
+        assertThat(stackTraceInterface.getFrame(4), is(stackTrace[9]));
+    }
+
+    @Test
+    public void testCommonFramesAreLimitedToKeptFrames() throws Exception {
+        StackTraceElement[] stackTrace = new StackTraceElement[10];
+        for (int i = 0; i < stackTrace.length; i++) {
+            stackTrace[i] = new StackTraceElement("class" + i, "method", null, i);
+        }
+
+        StackTraceInterface stackTraceInterface = new StackTraceInterface(stackTrace, stackTrace, 4);
+
+        assertThat(stackTraceInterface.getFramesCommonWithEnclosing(), is(2));
+    }
+
+    @Test
+    public void testShallowStackTraceIsNotTrimmed() throws Exception {
+        StackTraceElement[] stackTrace = new Exception().getStackTrace();
+
+        StackTraceInterface stackTraceInterface = new StackTraceInterface(stackTrace, new StackTraceElement[0],
+                stackTrace.length);
+
+        assertThat(stackTraceInterface.getFrameCount(), is(stackTrace.length));
+        assertThat(stackTraceInterface.getFramesOmitted(), is(0));
+        assertThat(stackTraceInterface.getFramesOmittedIndex(), is(stackTrace.length));
+    }
 }
@@ -0,0 +1,37 @@
+package net.kencochrane.raven.filter;
+
+import org.testng.annotations.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class KeyFilterTest {
+    @Test
+    public void testEmptyConfigurationAcceptsEverything() throws Exception {
+        KeyFilter keyFilter = KeyFilter.parse(null, null);
+
+        assertThat(keyFilter, is(sameInstance(KeyFilter.ACCEPT_ALL)));
+        assertThat(keyFilter.acceptsAll(), is(true));
+        assertThat(keyFilter.accepts("key"), is(true));
+    }
+
+    @Test
+    public void testIncludedKeys() throws Exception {
+        KeyFilter keyFilter = KeyFilter.parse("requestId, userId", null);
+
+        assertThat(keyFilter.acceptsAll(), is(false));
+        assertThat(keyFilter.accepts("requestId"), is(true));
+        assertThat(keyFilter.accepts("userId"), is(true));
+        assertThat(keyFilter.accepts("password"), is(false));
+    }
+
+    @Test
+    public void testExcludedKeysTakePrecedence() throws Exception {
+        KeyFilter keyFilter = KeyFilter.parse("requestId,password", "password");
+
+        assertThat(keyFilter.accepts("requestId"), is(true));
+        assertThat(keyFilter.accepts("password"), is(false));
+        assertThat(keyFilter.accepts("userId"), is(false));
+    }
+}
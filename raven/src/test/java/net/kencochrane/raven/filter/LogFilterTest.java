@@ -0,0 +1,64 @@
+package net.kencochrane.raven.filter;
+
+import net.kencochrane.raven.event.Event;
+import org.testng.annotations.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class LogFilterTest {
+    @Test
+    public void testEmptyConfigurationAcceptsEverything() throws Exception {
+        LogFilter logFilter = LogFilter.parse(null, null, null);
+
+        assertThat(logFilter, is(sameInstance(LogFilter.ACCEPT_ALL)));
+        assertThat(logFilter.isLoggable("com.example.Foo", Event.Level.DEBUG, "marker"), is(true));
+        assertThat(logFilter.isLoggable(null, null, null), is(true));
+    }
+
+    @Test
+    public void testMinimumLevel() throws Exception {
+        LogFilter logFilter = LogFilter.parse("warning", null, null);
+
+        assertThat(logFilter.isLoggable("com.example.Foo", Event.Level.INFO, null), is(false));
+        assertThat(logFilter.isLoggable("com.example.Foo", Event.Level.WARNING, null), is(true));
+        assertThat(logFilter.isLoggable("com.example.Foo", Event.Level.FATAL, null), is(true));
+        assertThat(logFilter.isLoggable(null, Event.Level.DEBUG, null), is(false));
+    }
+
+    @Test
+    public void testMostSpecificLoggerPrefixApplies() throws Exception {
+        LogFilter logFilter = LogFilter.parse("info", "com.example:ERROR, com.example.verbose:DEBUG", null);
+
+        assertThat(logFilter.getMinimumLevel("com.example.Foo"), is(Event.Level.ERROR));
+        assertThat(logFilter.getMinimumLevel("com.example"), is(Event.Level.ERROR));
+        assertThat(logFilter.getMinimumLevel("com.example.verbose.Foo"), is(Event.Level.DEBUG));
+        assertThat(logFilter.getMinimumLevel("org.example.Foo"), is(Event.Level.INFO));
+        // Cached value
+        assertThat(logFilter.getMinimumLevel("com.example.verbose.Foo"), is(Event.Level.DEBUG));
+    }
+
+    @Test
+    public void testLoggerPrefixMatchesWholePackages() throws Exception {
+        LogFilter logFilter = LogFilter.parse(null, "com.foo:ERROR", null);
+
+        assertThat(logFilter.getMinimumLevel("com.foo.Bar"), is(Event.Level.ERROR));
+        assertThat(logFilter.getMinimumLevel("com.foobar.Bar"), is(Event.Level.DEBUG));
+    }
+
+    @Test
+    public void testExcludedMarkers() throws Exception {
+        LogFilter logFilter = LogFilter.parse(null, null, "NO_SENTRY, CONFIDENTIAL");
+
+        assertThat(logFilter.isLoggable("com.example.Foo", Event.Level.ERROR, "NO_SENTRY"), is(false));
+        assertThat(logFilter.isLoggable("com.example.Foo", Event.Level.ERROR, "CONFIDENTIAL"), is(false));
+        assertThat(logFilter.isLoggable("com.example.Foo", Event.Level.ERROR, "OTHER"), is(true));
+        assertThat(logFilter.isLoggable("com.example.Foo", Event.Level.ERROR, null), is(true));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidLevelRejected() throws Exception {
+        LogFilter.parse("verbose", null, null);
+    }
+}
@@ -1,25 +1,37 @@
 package net.kencochrane.raven.jul;
 
+import mockit.Delegate;
 import mockit.Injectable;
+import mockit.NonStrictExpectations;
 import mockit.Tested;
 import mockit.Verifications;
 import net.kencochrane.raven.Raven;
+import net.kencochrane.raven.context.RavenContext;
+import net.kencochrane.raven.event.DeferredEvent;
 import net.kencochrane.raven.event.Event;
 import net.kencochrane.raven.event.EventBuilder;
 import net.kencochrane.raven.event.interfaces.ExceptionInterface;
+import net.kencochrane.raven.event.interfaces.HttpInterface;
 import net.kencochrane.raven.event.interfaces.MessageInterface;
 import net.kencochrane.raven.event.interfaces.SentryException;
 import net.kencochrane.raven.event.interfaces.SentryInterface;
+import net.kencochrane.raven.event.interfaces.StackTraceInterface;
+import net.kencochrane.raven.filter.LogFilter;
 import org.hamcrest.Matchers;
+import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.logging.ErrorManager;
 import java.util.logging.Level;
+import java.util.logging.LogManager;
 import java.util.logging.LogRecord;
 
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -33,6 +45,14 @@ public class SentryHandlerEventBuildingTest {
     @Injectable
     private Raven mockRaven = null;
 
+    @BeforeMethod
+    public void setUp() throws Exception {
+        new NonStrictExpectations() {{
+            mockRaven.sample();
+            result = true;
+        }};
+    }
+
     private void assertNoErrorsInErrorManager() throws Exception {
         new Verifications() {{
             errorManager.error(anyString, (Exception) any, anyInt);
@@ -53,7 +73,7 @@ public class SentryHandlerEventBuildingTest {
         new Verifications() {{
             Event event;
             mockRaven.runBuilderHelpers((EventBuilder) any);
-            mockRaven.sendEvent(event = withCapture());
+            mockRaven.sendSampledEvent(event = withCapture());
             assertThat(event.getMessage(), is(message));
             Map<String, SentryInterface> sentryInterfaces = event.getSentryInterfaces();
             assertThat(sentryInterfaces, hasKey(MessageInterface.MESSAGE_INTERFACE));
@@ -84,7 +104,7 @@ public class SentryHandlerEventBuildingTest {
 
         new Verifications() {{
             Event event;
-            mockRaven.sendEvent(event = withCapture());
+            mockRaven.sendSampledEvent(event = withCapture());
             assertThat(event.getLevel(), is(expectedLevel));
         }};
         assertNoErrorsInErrorManager();
@@ -98,7 +118,7 @@ public class SentryHandlerEventBuildingTest {
 
         new Verifications() {{
             Event event;
-            mockRaven.sendEvent(event = withCapture());
+            mockRaven.sendSampledEvent(event = withCapture());
             ExceptionInterface exceptionInterface = (ExceptionInterface) event.getSentryInterfaces()
                     .get(ExceptionInterface.EXCEPTION_INTERFACE);
             final SentryException sentryException = exceptionInterface.getExceptions().getFirst();
@@ -119,7 +139,7 @@ public class SentryHandlerEventBuildingTest {
 
         new Verifications() {{
             Event event;
-            mockRaven.sendEvent(event = withCapture());
+            mockRaven.sendSampledEvent(event = withCapture());
             assertThat(event.getCulprit(), is("a.b"));
         }};
         assertNoErrorsInErrorManager();
@@ -133,18 +153,133 @@ public class SentryHandlerEventBuildingTest {
 
         new Verifications() {{
             Event event;
-            mockRaven.sendEvent(event = withCapture());
+            mockRaven.sendSampledEvent(event = withCapture());
             assertThat(event.getCulprit(), is(loggerName));
         }};
         assertNoErrorsInErrorManager();
     }
 
+    @Test
+    public void testSampledOutEventsAreNotBuilt() throws Exception {
+        new NonStrictExpectations() {{
+            mockRaven.sample();
+            result = false;
+        }};
+
+        sentryHandler.publish(new LogRecord(Level.SEVERE, "Sampled out"));
+
+        new Verifications() {{
+            mockRaven.runBuilderHelpers((EventBuilder) any);
+            times = 0;
+            mockRaven.sendSampledEvent((Event) any);
+            times = 0;
+        }};
+        assertNoErrorsInErrorManager();
+    }
+
+    @Test
+    public void testRecordsFilteredByLevel() throws Exception {
+        sentryHandler.setMinLevel("warning");
+        sentryHandler.setLoggerLevels("com.example.noisy:ERROR");
+
+        assertThat(sentryHandler.isLoggable(newLogRecord("com.example.Foo", Level.INFO, null, null, null)), is(false));
+        assertThat(sentryHandler.isLoggable(newLogRecord("com.example.noisy.Foo", Level.WARNING, null, null, null)),
+                is(false));
+        assertThat(sentryHandler.isLoggable(newLogRecord("com.example.noisy.Foo", Level.SEVERE, null, null, null)),
+                is(true));
+        assertThat(sentryHandler.isLoggable(newLogRecord("com.example.Foo", Level.WARNING, null, null, null)),
+                is(true));
+    }
+
+    @Test
+    public void testInvalidMaxFramesReported() throws Exception {
+        String property = SentryHandler.class.getName() + ".maxFrames=ten";
+        LogManager.getLogManager().readConfiguration(new ByteArrayInputStream(property.getBytes("UTF-8")));
+        try {
+            sentryHandler.setErrorManager(errorManager);
+            sentryHandler.retrieveProperties();
+        } finally {
+            LogManager.getLogManager().readConfiguration();
+        }
+
+        assertThat(sentryHandler.maxFrames, is(StackTraceInterface.UNLIMITED_FRAMES));
+        new Verifications() {{
+            errorManager.error(anyString, (NumberFormatException) any, ErrorManager.GENERIC_FAILURE);
+            times = 1;
+        }};
+    }
+
+    @Test
+    public void testInvalidLevelReported() throws Exception {
+        String property = SentryHandler.class.getName() + ".minLevel=verbose";
+        LogManager.getLogManager().readConfiguration(new ByteArrayInputStream(property.getBytes("UTF-8")));
+        try {
+            sentryHandler.setErrorManager(errorManager);
+            sentryHandler.retrieveProperties();
+        } finally {
+            LogManager.getLogManager().readConfiguration();
+        }
+
+        assertThat(sentryHandler.logFilter, is(LogFilter.ACCEPT_ALL));
+        new Verifications() {{
+            errorManager.error(anyString, (IllegalArgumentException) any, ErrorManager.GENERIC_FAILURE);
+            times = 1;
+        }};
+    }
+
     private LogRecord newLogRecord(String loggerName, Level level, String message,
                                    Object[] argumentArray, Throwable t) {
         return newLogRecord(loggerName, level, message, argumentArray, t, null,
                 Thread.currentThread().getId(), System.currentTimeMillis());
     }
 
+    @Test
+    public void testDeferredBuildingKeepsCallerContextAndParameters(@Injectable HttpInterface httpInterface)
+            throws Exception {
+        final List<HttpInterface> helperHttpInterfaces = new ArrayList<HttpInterface>();
+        new NonStrictExpectations() {{
+            mockRaven.captureContext();
+            result = new Delegate<RavenContext>() {
+                @SuppressWarnings("unused")
+                public RavenContext captureContext() {
+                    return RavenContext.capture();
+                }
+            };
+            mockRaven.runBuilderHelpers((EventBuilder) any);
+            result = new Delegate<Void>() {
+                @SuppressWarnings("unused")
+                public void runBuilderHelpers(EventBuilder eventBuilder) {
+                    helperHttpInterfaces.add(RavenContext.current().getHttpInterface());
+                }
+            };
+        }};
+        sentryHandler.setDeferredBuilding(true);
+        StringBuilder parameter = new StringBuilder("before");
+
+        RavenContext previousContext = new RavenContext(httpInterface).attach();
+        try {
+            sentryHandler.publish(newLogRecord("logger", Level.INFO, "Value {0}", new Object[]{parameter}, null, null,
+                    Thread.currentThread().getId(), System.currentTimeMillis()));
+        } finally {
+            RavenContext.restore(previousContext);
+        }
+        parameter.replace(0, parameter.length(), "after");
+
+        final List<DeferredEvent> deferredEvents = new ArrayList<DeferredEvent>();
+        new Verifications() {{
+            mockRaven.sendSampledEvent(withCapture(deferredEvents));
+        }};
+        Event event = deferredEvents.get(0).build();
+
+        assertThat(helperHttpInterfaces, contains(httpInterface));
+        assertThat(RavenContext.current().getHttpInterface(), is(nullValue()));
+        assertThat(event.getMessage(), is("Value before"));
+        MessageInterface messageInterface = (MessageInterface) event.getSentryInterfaces()
+                .get(MessageInterface.MESSAGE_INTERFACE);
+        assertThat(messageInterface.getParameters(), contains("before"));
+        assertNoErrorsInErrorManager();
+    }
+
     private LogRecord newLogRecord(String loggerName, Level level, String message, Object[] argumentArray,
                                    Throwable throwable, StackTraceElement[] callerData, long threadId, long timestamp) {
         LogRecord logRecord = new LogRecord(level, message);
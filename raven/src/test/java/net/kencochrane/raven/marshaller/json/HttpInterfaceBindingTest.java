@@ -0,0 +1,92 @@
+package net.kencochrane.raven.marshaller.json;
+
+import mockit.Injectable;
+import mockit.NonStrictExpectations;
+import mockit.Tested;
+import net.kencochrane.raven.event.interfaces.HttpInterface;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static net.kencochrane.raven.marshaller.json.JsonTestTool.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class HttpInterfaceBindingTest {
+    @Tested
+    private HttpInterfaceBinding interfaceBinding = null;
+    @Injectable
+    private HttpInterface mockHttpInterface = null;
+
+    @Test
+    public void testHttpRequest() throws Exception {
+        final JsonGeneratorTool generatorTool = newJsonGenerator();
+        final Map<String, Collection<String>> headers = new LinkedHashMap<String, Collection<String>>();
+        headers.put("Host", Collections.singletonList("localhost:8080"));
+        headers.put("Accept", Arrays.asList("text/html", "application/json"));
+        headers.put("X-Empty", Collections.<String>emptyList());
+        final Map<String, Collection<String>> parameters = new LinkedHashMap<String, Collection<String>>();
+        parameters.put("query", Arrays.asList("raven", "sentry"));
+        new NonStrictExpectations() {{
+            mockHttpInterface.getRequestUrl();
+            result = "http://localhost:8080/search";
+            mockHttpInterface.getMethod();
+            result = "GET";
+            mockHttpInterface.getParameters();
+            result = parameters;
+            mockHttpInterface.getQueryString();
+            result = "query=raven&query=sentry";
+            mockHttpInterface.getCookies();
+            result = Collections.singletonMap("session", "2f7d3c1e");
+            mockHttpInterface.getHeaders();
+            result = headers;
+            mockHttpInterface.getRemoteAddr();
+            result = "127.0.0.1";
+            mockHttpInterface.getServerName();
+            result = "localhost";
+            mockHttpInterface.getServerPort();
+            result = 8080;
+            mockHttpInterface.getLocalAddr();
+            result = "127.0.0.2";
+            mockHttpInterface.getLocalName();
+            result = "local";
+            mockHttpInterface.getLocalPort();
+            result = 8081;
+            mockHttpInterface.getProtocol();
+            result = "HTTP/1.1";
+            mockHttpInterface.isSecure();
+            result = true;
+            mockHttpInterface.isAsyncStarted();
+            result = false;
+            mockHttpInterface.getAuthType();
+            result = null;
+            mockHttpInterface.getRemoteUser();
+            result = "user";
+        }};
+
+        interfaceBinding.writeInterface(generatorTool.generator(), mockHttpInterface);
+
+        assertThat(generatorTool.value(), is(jsonResource("/net/kencochrane/raven/marshaller/json/Http1.json")));
+    }
+
+    @Test
+    public void testNoCookies() throws Exception {
+        final JsonGeneratorTool generatorTool = newJsonGenerator();
+        new NonStrictExpectations() {{
+            mockHttpInterface.getCookies();
+            result = Collections.emptyMap();
+            mockHttpInterface.getHeaders();
+            result = Collections.emptyMap();
+            mockHttpInterface.getParameters();
+            result = Collections.emptyMap();
+        }};
+
+        interfaceBinding.writeInterface(generatorTool.generator(), mockHttpInterface);
+
+        assertThat(generatorTool.value().get("cookies").isNull(), is(true));
+    }
+}
@@ -5,6 +5,8 @@ import com.google.common.base.Charsets;
 import mockit.*;
 import net.kencochrane.raven.event.Event;
 import net.kencochrane.raven.event.interfaces.SentryInterface;
+import net.kencochrane.raven.metrics.HistogramSnapshot;
+import net.kencochrane.raven.metrics.RavenMetrics;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
@@ -18,6 +20,7 @@ import java.util.UUID;
 
 import static net.kencochrane.raven.marshaller.json.JsonTestTool.*;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.is;
 
 public class JsonMarshallerTest {
@@ -273,4 +276,48 @@ public class JsonMarshallerTest {
                 + "S8L5xkagHG0MFt+0GKslKMmdMx2N6qeB36x/kn7X9"
                 + "MPsbwgxBSQ=="));
     }
+
+    @Test
+    public void testSizeBeforeAndAfterCompressionIsRecorded() throws Exception {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        RavenMetrics metrics = new RavenMetrics();
+        jsonMarshaller.setMetrics(metrics);
+        jsonMarshaller.setCompression(true);
+
+        jsonMarshaller.marshall(mockEvent, outputStream);
+
+        HistogramSnapshot writtenBytes = metrics.getHistograms().get(RavenMetrics.WRITTEN_BYTES);
+        HistogramSnapshot serialisedBytes = metrics.getHistograms().get(RavenMetrics.SERIALISED_BYTES);
+        assertThat(writtenBytes.getCount(), is(1L));
+        assertThat(writtenBytes.getSum(), is((long) outputStream.size()));
+        assertThat(serialisedBytes.getSum(), is(greaterThan(writtenBytes.getSum())));
+        assertThat(metrics.getHistograms().get(RavenMetrics.SERIALISATION_TIME).getCount(), is(1L));
+    }
+
+    @Test
+    public void testSizeWithoutCompressionIsRecorded() throws Exception {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        RavenMetrics metrics = new RavenMetrics();
+        jsonMarshaller.setMetrics(metrics);
+
+        jsonMarshaller.marshall(mockEvent, outputStream);
+
+        assertThat(metrics.getHistograms().get(RavenMetrics.SERIALISED_BYTES).getSum(),
+                is((long) outputStream.size()));
+        assertThat(metrics.getHistograms().get(RavenMetrics.WRITTEN_BYTES).getSum(),
+                is((long) outputStream.size()));
+    }
+
+    @Test
+    public void testRecordingDoesNotChangeTheOutput() throws Exception {
+        ByteArrayOutputStream unrecordedStream = new ByteArrayOutputStream();
+        ByteArrayOutputStream recordedStream = new ByteArrayOutputStream();
+        jsonMarshaller.setCompression(true);
+
+        jsonMarshaller.marshall(mockEvent, unrecordedStream);
+        jsonMarshaller.setMetrics(new RavenMetrics());
+        jsonMarshaller.marshall(mockEvent, recordedStream);
+
+        assertThat(recordedStream.toByteArray(), is(unrecordedStream.toByteArray()));
+    }
 }
@@ -24,8 +24,10 @@ public class StackTraceInterfaceBindingTest {
         final int lineNumber = 1;
         final StackTraceElement stackTraceElement = new StackTraceElement(className, methodName, null, lineNumber);
         new NonStrictExpectations() {{
-            mockStackTraceInterface.getStackTrace();
-            result = new StackTraceElement[]{stackTraceElement};
+            mockStackTraceInterface.getFrameCount();
+            result = 1;
+            mockStackTraceInterface.getFrame(0);
+            result = stackTraceElement;
         }};
 
         interfaceBinding.writeInterface(generatorTool.generator(), mockStackTraceInterface);
@@ -38,8 +40,10 @@ public class StackTraceInterfaceBindingTest {
         final JsonGeneratorTool generatorTool = newJsonGenerator();
         final StackTraceElement stackTraceElement = new StackTraceElement("", "", null, 0);
         new NonStrictExpectations() {{
-            mockStackTraceInterface.getStackTrace();
-            result = new StackTraceElement[]{stackTraceElement, stackTraceElement};
+            mockStackTraceInterface.getFrameCount();
+            result = 2;
+            mockStackTraceInterface.getFrame(anyInt);
+            result = stackTraceElement;
             mockStackTraceInterface.getFramesCommonWithEnclosing();
             result = 1;
         }};
@@ -55,8 +59,10 @@ public class StackTraceInterfaceBindingTest {
         final JsonGeneratorTool generatorTool = newJsonGenerator();
         final StackTraceElement stackTraceElement = new StackTraceElement("", "", null, 0);
         new NonStrictExpectations() {{
-            mockStackTraceInterface.getStackTrace();
-            result = new StackTraceElement[]{stackTraceElement, stackTraceElement};
+            mockStackTraceInterface.getFrameCount();
+            result = 2;
+            mockStackTraceInterface.getFrame(anyInt);
+            result = stackTraceElement;
             mockStackTraceInterface.getFramesCommonWithEnclosing();
             result = 1;
         }};
@@ -66,4 +72,24 @@ public class StackTraceInterfaceBindingTest {
 
         assertThat(generatorTool.value(), is(jsonResource("/net/kencochrane/raven/marshaller/json/StackTrace3.json")));
     }
+
+    @Test
+    public void testFramesOmitted() throws Exception {
+        final JsonGeneratorTool generatorTool = newJsonGenerator();
+        final StackTraceElement stackTraceElement = new StackTraceElement("", "", null, 0);
+        new NonStrictExpectations() {{
+            mockStackTraceInterface.getFrameCount();
+            result = 2;
+            mockStackTraceInterface.getFrame(anyInt);
+            result = stackTraceElement;
+            mockStackTraceInterface.getFramesOmitted();
+            result = 3;
+            mockStackTraceInterface.getFramesOmittedIndex();
+            result = 1;
+        }};
+
+        interfaceBinding.writeInterface(generatorTool.generator(), mockStackTraceInterface);
+
+        assertThat(generatorTool.value(), is(jsonResource("/net/kencochrane/raven/marshaller/json/StackTrace4.json")));
+    }
 }
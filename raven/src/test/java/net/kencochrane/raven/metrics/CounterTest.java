@@ -0,0 +1,50 @@
+package net.kencochrane.raven.metrics;
+
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class CounterTest {
+    @Test
+    public void testNewCounterIsZero() throws Exception {
+        assertThat(new Counter().getCount(), is(0L));
+    }
+
+    @Test
+    public void testIncrementAndAdd() throws Exception {
+        Counter counter = new Counter();
+
+        counter.increment();
+        counter.add(41);
+
+        assertThat(counter.getCount(), is(42L));
+    }
+
+    @Test
+    public void testConcurrentUpdatesAreNotLost() throws Exception {
+        final Counter counter = new Counter();
+        final int increments = 10000;
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 8; i++) {
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < increments; j++) {
+                        counter.increment();
+                    }
+                }
+            });
+        }
+
+        for (Thread thread : threads)
+            thread.start();
+        for (Thread thread : threads)
+            thread.join();
+
+        assertThat(counter.getCount(), is(8L * increments));
+    }
+}
@@ -0,0 +1,111 @@
+package net.kencochrane.raven.metrics;
+
+import org.testng.annotations.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class HistogramTest {
+    @Test
+    public void testEmptySnapshot() throws Exception {
+        HistogramSnapshot snapshot = new Histogram().snapshot();
+
+        assertThat(snapshot.getCount(), is(0L));
+        assertThat(snapshot.getMin(), is(0L));
+        assertThat(snapshot.getMax(), is(0L));
+        assertThat(snapshot.getMean(), is(0.0));
+        assertThat(snapshot.getPercentile(0.99), is(0L));
+    }
+
+    @Test
+    public void testExactStatistics() throws Exception {
+        Histogram histogram = new Histogram();
+
+        histogram.update(3);
+        histogram.update(10);
+        histogram.update(1000);
+
+        HistogramSnapshot snapshot = histogram.snapshot();
+        assertThat(snapshot.getCount(), is(3L));
+        assertThat(snapshot.getSum(), is(1013L));
+        assertThat(snapshot.getMin(), is(3L));
+        assertThat(snapshot.getMax(), is(1000L));
+        assertThat(snapshot.getMean(), is(closeTo(337.67, 0.01)));
+    }
+
+    @Test
+    public void testNegativeValuesAreRecordedAsZero() throws Exception {
+        Histogram histogram = new Histogram();
+
+        histogram.update(-5);
+
+        assertThat(histogram.snapshot().getMin(), is(0L));
+        assertThat(histogram.snapshot().getSum(), is(0L));
+    }
+
+    @Test
+    public void testPercentilesAreWithinAFactorOfTwo() throws Exception {
+        Histogram histogram = new Histogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.update(i);
+        }
+
+        HistogramSnapshot snapshot = histogram.snapshot();
+        assertThat(snapshot.getPercentile(0.5), is(both(greaterThanOrEqualTo(500L)).and(lessThan(1000L))));
+        assertThat(snapshot.getPercentile(1), is(1000L));
+        assertThat(snapshot.getPercentile(0), is(1L));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidQuantile() throws Exception {
+        new Histogram().snapshot().getPercentile(1.5);
+    }
+
+    @Test
+    public void testPercentilesAreWithinAnEighth() throws Exception {
+        Histogram histogram = new Histogram();
+        for (int i = 1; i <= 100000; i++) {
+            histogram.update(i * 1000L);
+        }
+
+        HistogramSnapshot snapshot = histogram.snapshot();
+        assertThat(snapshot.getPercentile(0.5), is(both(greaterThanOrEqualTo(50000000L)).and(lessThan(56250000L))));
+        assertThat(snapshot.getPercentile(0.99), is(both(greaterThanOrEqualTo(99000000L)).and(lessThanOrEqualTo(100000000L))));
+    }
+
+    @Test
+    public void testSmallValuesAreExact() throws Exception {
+        Histogram histogram = new Histogram();
+        for (int i = 0; i < 8; i++) {
+            histogram.update(i);
+        }
+
+        assertThat(histogram.snapshot().getPercentile(0.5), is(3L));
+    }
+
+    @Test
+    public void testBuckets() throws Exception {
+        assertThat(Histogram.bucketOf(0), is(0));
+        assertThat(Histogram.bucketOf(1), is(1));
+        assertThat(Histogram.bucketOf(7), is(7));
+        assertThat(Histogram.bucketOf(8), is(8));
+        assertThat(Histogram.bucketOf(15), is(15));
+        assertThat(Histogram.bucketOf(16), is(16));
+        assertThat(Histogram.bucketOf(17), is(16));
+        assertThat(Histogram.bucketOf(18), is(17));
+        assertThat(Histogram.bucketOf(Long.MAX_VALUE), is(Histogram.BUCKETS - 1));
+        assertThat(Histogram.upperBoundOf(7), is(7L));
+        assertThat(Histogram.upperBoundOf(16), is(17L));
+        assertThat(Histogram.upperBoundOf(Histogram.BUCKETS - 1), is(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testEveryValueIsWithinItsBucket() throws Exception {
+        for (long value = 0; value < 100000; value++) {
+            int bucket = Histogram.bucketOf(value);
+            assertThat(Histogram.upperBoundOf(bucket), is(greaterThanOrEqualTo(value)));
+            if (bucket > 0)
+                assertThat(Histogram.upperBoundOf(bucket - 1), is(lessThan(value)));
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package net.kencochrane.raven.metrics;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class RavenMetricsTest {
+    private RavenMetrics metrics;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        metrics = new RavenMetrics();
+    }
+
+    @Test
+    public void testMetricsAreCreatedOnce() throws Exception {
+        assertThat(metrics.counter("a"), is(sameInstance(metrics.counter("a"))));
+        assertThat(metrics.histogram("a"), is(sameInstance(metrics.histogram("a"))));
+    }
+
+    @Test
+    public void testCountersAreQueryable() throws Exception {
+        metrics.counter(RavenMetrics.EVENTS_SENT).add(2);
+        metrics.counter(RavenMetrics.EVENTS_FAILED).increment();
+
+        assertThat(metrics.getCounters(), allOf(
+                hasEntry(RavenMetrics.EVENTS_SENT, 2L),
+                hasEntry(RavenMetrics.EVENTS_FAILED, 1L)));
+    }
+
+    @Test
+    public void testHistogramsAreQueryable() throws Exception {
+        metrics.histogram(RavenMetrics.LOCKDOWN_TIME).update(10);
+
+        HistogramSnapshot snapshot = metrics.getHistograms().get(RavenMetrics.LOCKDOWN_TIME);
+        assertThat(snapshot.getCount(), is(1L));
+        assertThat(snapshot.getMax(), is(10L));
+    }
+
+    @Test
+    public void testGaugesAreReadWhenQueried() throws Exception {
+        final long[] value = {1};
+        metrics.registerGauge(RavenMetrics.QUEUE_DEPTH, new Gauge() {
+            @Override
+            public long getValue() {
+                return value[0];
+            }
+        });
+        value[0] = 5;
+
+        assertThat(metrics.getGauges(), hasEntry(RavenMetrics.QUEUE_DEPTH, 5L));
+    }
+
+    @Test(expectedExceptions = UnsupportedOperationException.class)
+    public void testQueriedCountersAreImmutable() throws Exception {
+        metrics.getCounters().put("a", 1L);
+    }
+
+    @Test
+    public void testNoopRegistryDiscardsEverything() throws Exception {
+        RavenMetrics.NOOP.counter(RavenMetrics.EVENTS_SENT).add(2);
+        RavenMetrics.NOOP.histogram(RavenMetrics.LOCKDOWN_TIME).update(10);
+        RavenMetrics.NOOP.registerGauge(RavenMetrics.QUEUE_DEPTH, new Gauge() {
+            @Override
+            public long getValue() {
+                return 1;
+            }
+        });
+
+        assertThat(RavenMetrics.NOOP.counter(RavenMetrics.EVENTS_SENT).getCount(), is(0L));
+        assertThat(RavenMetrics.NOOP.histogram(RavenMetrics.LOCKDOWN_TIME).snapshot().getCount(), is(0L));
+        assertThat(RavenMetrics.NOOP.getGauges().isEmpty(), is(true));
+    }
+}
@@ -1,8 +1,13 @@
 package net.kencochrane.raven.servlet;
 
 import mockit.Injectable;
+import mockit.Mocked;
 import mockit.NonStrictExpectations;
 import mockit.Tested;
+import mockit.Verifications;
+import net.kencochrane.raven.context.RavenContext;
+import net.kencochrane.raven.event.interfaces.HttpCapturePolicy;
+import net.kencochrane.raven.event.interfaces.HttpInterface;
 import org.testng.annotations.AfterMethod;
 import org.testng.annotations.Test;
 
@@ -13,6 +18,7 @@ import javax.servlet.http.HttpServletRequest;
 import static mockit.Deencapsulation.getField;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
 import static org.hamcrest.Matchers.nullValue;
 
 public class RavenServletRequestListenerTest {
@@ -20,11 +26,15 @@ public class RavenServletRequestListenerTest {
     private RavenServletRequestListener ravenServletRequestListener = null;
     @Injectable
     private ServletRequestEvent mockServletRequestEvent = null;
+    @SuppressWarnings("unused")
+    @Mocked
+    private HttpInterface mockHttpInterface = null;
 
     @AfterMethod
     public void tearDown() throws Exception {
         // Reset the threadLocal value
         ((ThreadLocal) getField(RavenServletRequestListener.class, "THREAD_REQUEST")).remove();
+        RavenContext.restore(RavenContext.EMPTY);
     }
 
     @Test
@@ -89,4 +99,74 @@ public class RavenServletRequestListenerTest {
 
         assertThat(RavenServletRequestListener.getServletRequest(), is(nullValue()));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void requestListenerDoesntReadTheRequestWhenItStarts(
+            @Injectable final HttpServletRequest mockHttpServletRequest) throws Exception {
+        new NonStrictExpectations() {{
+            mockServletRequestEvent.getServletRequest();
+            result = mockHttpServletRequest;
+        }};
+
+        ravenServletRequestListener.requestInitialized(mockServletRequestEvent);
+
+        new Verifications() {{
+            new HttpInterface((HttpServletRequest) any, (HttpCapturePolicy) any);
+            times = 0;
+            mockHttpServletRequest.getParameterMap();
+            times = 0;
+            mockHttpServletRequest.getParameterValues(anyString);
+            times = 0;
+        }};
+    }
+
+    @Test
+    public void requestListenerAttachesTheCurrentRequest(@Injectable final HttpServletRequest mockHttpServletRequest)
+            throws Exception {
+        new NonStrictExpectations() {{
+            mockServletRequestEvent.getServletRequest();
+            result = mockHttpServletRequest;
+        }};
+        ravenServletRequestListener.requestInitialized(mockServletRequestEvent);
+
+        assertThat(RavenContext.current().getHttpInterface(HttpCapturePolicy.CHEAP), is(notNullValue()));
+
+        new Verifications() {{
+            new HttpInterface(mockHttpServletRequest, HttpCapturePolicy.CHEAP);
+        }};
+    }
+
+    @Test
+    public void requestListenerContextCapturedWithPolicy(@Injectable final HttpServletRequest mockHttpServletRequest)
+            throws Exception {
+        new NonStrictExpectations() {{
+            mockServletRequestEvent.getServletRequest();
+            result = mockHttpServletRequest;
+        }};
+        ravenServletRequestListener.requestInitialized(mockServletRequestEvent);
+
+        RavenContext.capture(HttpCapturePolicy.CHEAP);
+        RavenContext.capture(HttpCapturePolicy.CHEAP);
+
+        new Verifications() {{
+            new HttpInterface(mockHttpServletRequest, HttpCapturePolicy.CHEAP);
+            times = 2;
+            new HttpInterface(mockHttpServletRequest, HttpCapturePolicy.FULL);
+            times = 0;
+        }};
+    }
+
+    @Test
+    public void requestListenerDestroyDetachesTheSnapshot(@Injectable final HttpServletRequest mockHttpServletRequest)
+            throws Exception {
+        new NonStrictExpectations() {{
+            mockServletRequestEvent.getServletRequest();
+            result = mockHttpServletRequest;
+        }};
+        ravenServletRequestListener.requestInitialized(mockServletRequestEvent);
+
+        ravenServletRequestListener.requestDestroyed(mockServletRequestEvent);
+
+        assertThat(RavenContext.current(), is(RavenContext.EMPTY));
+    }
+}
@@ -1,21 +1,68 @@
 package net.kencochrane.raven.sentrystub;
 
+import com.google.common.io.ByteStreams;
 import net.kencochrane.raven.sentrystub.event.Event;
+import net.kencochrane.raven.sentrystub.log.Transport;
 
 import javax.servlet.ServletException;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
 
+/**
+ * Servlet receiving the events sent over HTTP.
+ * <p>
+ * The body of the request can be compressed with the {@code gzip} or {@code deflate} {@code Content-Encoding}, in
+ * addition to the formats detected by the {@link net.kencochrane.raven.sentrystub.unmarshaller.JsonDecoder}. The
+ * payload logged by the stub is the body once that {@code Content-Encoding} removed.
+ */
 @WebServlet(name = "SentryHttpServlet", displayName = "SentryHttpServlet", urlPatterns = "/api/*")
 public class SentryHttpServlet extends HttpServlet {
+    private static final String CONTENT_ENCODING = "Content-Encoding";
     private SentryStub sentryStub = SentryStub.getInstance();
 
     @Override
     protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
-        Event event = sentryStub.parseEvent(req.getInputStream());
+        InputStream body = decodeContent(req.getHeader(CONTENT_ENCODING), req.getInputStream());
+        if (body == null) {
+            resp.sendError(HttpServletResponse.SC_UNSUPPORTED_MEDIA_TYPE,
+                    "Unsupported Content-Encoding " + req.getHeader(CONTENT_ENCODING));
+            return;
+        }
+
+        if (sentryStub.isLoggingPayloads()) {
+            byte[] payload = ByteStreams.toByteArray(body);
+            sentryStub.logPayload(Transport.HTTP, ByteBuffer.wrap(payload));
+            body = new ByteArrayInputStream(payload);
+        }
+
+        Event event = sentryStub.parseEvent(body);
         sentryStub.addEvent(event);
     }
+
+    /**
+     * Decodes the body of a request according to its {@code Content-Encoding}.
+     *
+     * @param contentEncoding value of the {@code Content-Encoding} header, possibly {@code null}.
+     * @param body            body of the request.
+     * @return the decoded body, or {@code null} if the encoding isn't supported.
+     * @throws IOException if the body can't be read.
+     */
+    private InputStream decodeContent(String contentEncoding, InputStream body) throws IOException {
+        if (contentEncoding == null || contentEncoding.equalsIgnoreCase("identity"))
+            return body;
+        else if (contentEncoding.equalsIgnoreCase("gzip") || contentEncoding.equalsIgnoreCase("x-gzip"))
+            return new GZIPInputStream(body);
+        else if (contentEncoding.equalsIgnoreCase("deflate"))
+            return new InflaterInputStream(body);
+        else
+            return null;
+    }
 }
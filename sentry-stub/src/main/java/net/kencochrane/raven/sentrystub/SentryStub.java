@@ -2,23 +2,63 @@ package net.kencochrane.raven.sentrystub;
 
 import net.kencochrane.raven.sentrystub.auth.AuthValidator;
 import net.kencochrane.raven.sentrystub.event.Event;
+import net.kencochrane.raven.sentrystub.log.PayloadLog;
+import net.kencochrane.raven.sentrystub.log.Transport;
+import net.kencochrane.raven.sentrystub.store.EventFilter;
+import net.kencochrane.raven.sentrystub.store.EventStore;
 import net.kencochrane.raven.sentrystub.unmarshaller.JsonUnmarshaller;
 import net.kencochrane.raven.sentrystub.unmarshaller.Unmarshaller;
 
+import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.LinkedList;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
+/**
+ * State of the stub, shared by the HTTP and UDP endpoints.
+ * <p>
+ * The received events are kept in a bounded {@link EventStore}. Its capacity and whether the events are indexed can
+ * be set with the {@code sentrystub.store.capacity} and {@code sentrystub.store.indexed} system properties.
+ * <p>
+ * When the {@code sentrystub.log.dir} system property is set, the raw payloads are also appended to a
+ * {@link PayloadLog} in that directory, to be replayed later. The size of its segments can be set with the
+ * {@code sentrystub.log.segmentSize} system property.
+ */
 public final class SentryStub {
+    private static final Logger logger = Logger.getLogger(SentryStub.class.getCanonicalName());
+    /**
+     * Default maximum number of events kept by the stub.
+     */
+    public static final int DEFAULT_STORE_CAPACITY = 100000;
     private static SentryStub instance = new SentryStub();
-    private final Collection<Event> events = new LinkedList<Event>();
+    private final EventStore events = new EventStore(
+            Integer.getInteger("sentrystub.store.capacity", DEFAULT_STORE_CAPACITY),
+            Boolean.parseBoolean(System.getProperty("sentrystub.store.indexed", "true")));
+    private final AtomicLong receivedEventCount = new AtomicLong();
     private final AuthValidator authValidator = new AuthValidator();
     private final Unmarshaller unmarshaller = new JsonUnmarshaller();
+    private final PayloadLog payloadLog;
 
     private SentryStub() {
         authValidator.loadSentryUsers("/net/kencochrane/raven/sentrystub/sentry.properties");
+        payloadLog = openPayloadLog();
+    }
+
+    private static PayloadLog openPayloadLog() {
+        String directory = System.getProperty("sentrystub.log.dir");
+        if (directory == null)
+            return null;
+        try {
+            return new PayloadLog(new File(directory),
+                    Integer.getInteger("sentrystub.log.segmentSize", PayloadLog.DEFAULT_SEGMENT_SIZE));
+        } catch (IOException e) {
+            throw new IllegalStateException("Couldn't open the payload log in " + directory, e);
+        }
     }
 
     public static SentryStub getInstance() {
@@ -26,19 +66,81 @@ public final class SentryStub {
     }
 
     public void addEvent(Event event) {
+        // Content which couldn't be parsed has already been reported by the unmarshaller
+        if (event == null)
+            return;
         validateEvent(event);
         events.add(event);
+        receivedEventCount.incrementAndGet();
     }
 
     public void validateEvent(Event event) {
     }
 
+    /**
+     * Checks whether the received payloads are appended to a {@link PayloadLog}.
+     *
+     * @return true if the payloads should be given to {@link #logPayload(Transport, ByteBuffer)}.
+     */
+    public boolean isLoggingPayloads() {
+        return payloadLog != null;
+    }
+
+    /**
+     * Appends a received payload to the payload log, if enabled.
+     *
+     * @param transport transport through which the payload was received.
+     * @param payload   payload between its position and its limit, the buffer itself isn't modified.
+     */
+    public void logPayload(Transport transport, ByteBuffer payload) {
+        if (payloadLog == null)
+            return;
+        try {
+            payloadLog.append(transport, System.currentTimeMillis(), payload);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Couldn't append the payload to the log.", e);
+        } catch (IllegalArgumentException e) {
+            logger.log(Level.WARNING, "Couldn't append the payload to the log.", e);
+        }
+    }
+
+    /**
+     * Gets the log of the received payloads.
+     *
+     * @return the payload log, or {@code null} if the payloads aren't logged.
+     */
+    public PayloadLog getPayloadLog() {
+        return payloadLog;
+    }
+
+    /**
+     * Writes the payload log to the disk and closes it, once the stub is stopping.
+     */
+    public void closePayloadLog() {
+        if (payloadLog == null)
+            return;
+        try {
+            payloadLog.close();
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Couldn't close the payload log.", e);
+        }
+    }
+
     public Event parseEvent(InputStream source) {
         return unmarshaller.unmarshall(source);
     }
 
     public Collection<Event> getEvents() {
-        return Collections.unmodifiableCollection(events);
+        return events.getEvents(EventFilter.ALL);
+    }
+
+    /**
+     * Gets the store holding the events received by the stub, to query them.
+     *
+     * @return the event store.
+     */
+    public EventStore getEventStore() {
+        return events;
     }
 
     public void validateAuth(Map<String, String> authHeader, String projectId) {
@@ -49,6 +151,15 @@ public final class SentryStub {
         authValidator.validateSentryAuth(authHeader);
     }
 
+    /**
+     * Gets the number of events received since the stub started, including the events removed since.
+     *
+     * @return the number of events received.
+     */
+    public long getReceivedEventCount() {
+        return receivedEventCount.get();
+    }
+
     public void removeEvents() {
         events.clear();
     }
@@ -2,6 +2,10 @@ package net.kencochrane.raven.sentrystub;
 
 import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonGenerator;
+import net.kencochrane.raven.sentrystub.event.Event;
+import net.kencochrane.raven.sentrystub.store.EventFilter;
+import net.kencochrane.raven.sentrystub.store.EventStore;
+import net.kencochrane.raven.sentrystub.store.EventVisitor;
 
 import javax.servlet.ServletException;
 import javax.servlet.annotation.WebServlet;
@@ -12,17 +16,66 @@ import java.io.IOException;
 
 /**
  * Simple API to access the sentry stub details.
+ * <p>
+ * The {@code count} and {@code events} operations accept the {@code level}, {@code logger} and {@code checksum}
+ * parameters to select the events.
  */
 @WebServlet(name = "SentryStubServlet", displayName = "SentryStubServlet", urlPatterns = "/stub/*")
 public class SentryStubServlet extends HttpServlet {
     private static final String COUNT_OPERATION = "count";
+    private static final String EVENTS_OPERATION = "events";
     private static final String CLEANUP_OPERATION = "cleanup";
     private SentryStub sentryStub = SentryStub.getInstance();
     private JsonFactory jsonFactory = new JsonFactory();
 
-    public void getEventsCounter(JsonGenerator generator) throws IOException {
+    private static EventFilter getFilter(HttpServletRequest req) {
+        return new EventFilter(req.getParameter("level"), req.getParameter("logger"), req.getParameter("checksum"));
+    }
+
+    public void getEventsCounter(JsonGenerator generator, EventFilter filter) throws IOException {
+        EventStore eventStore = sentryStub.getEventStore();
+        generator.writeStartObject();
+        generator.writeNumberField("count", eventStore.count(filter));
+        generator.writeNumberField("evicted", eventStore.getEvictedCount());
+        generator.writeEndObject();
+    }
+
+    /**
+     * Streams a summary of the selected events as a JSON array.
+     *
+     * @param generator generator writing the response.
+     * @param filter    filter selecting the events.
+     * @throws IOException if the response couldn't be written.
+     */
+    public void getEvents(final JsonGenerator generator, EventFilter filter) throws IOException {
+        final IOException[] writeException = new IOException[1];
+        generator.writeStartArray();
+        sentryStub.getEventStore().stream(filter, new EventVisitor() {
+            @Override
+            public boolean visit(Event event) {
+                try {
+                    writeEvent(generator, event);
+                    return true;
+                } catch (IOException e) {
+                    writeException[0] = e;
+                    return false;
+                }
+            }
+        });
+        if (writeException[0] != null)
+            throw writeException[0];
+        generator.writeEndArray();
+    }
+
+    private void writeEvent(JsonGenerator generator, Event event) throws IOException {
         generator.writeStartObject();
-        generator.writeNumberField("count", sentryStub.getEvents().size());
+        generator.writeStringField("event_id", event.getEventId());
+        if (event.getTimestamp() != null)
+            generator.writeNumberField("timestamp", event.getTimestamp().getTime());
+        generator.writeStringField("level", event.getLevel());
+        generator.writeStringField("logger", event.getLogger());
+        generator.writeStringField("checksum", event.getChecksum());
+        generator.writeStringField("message", event.getMessage());
         generator.writeEndObject();
     }
 
@@ -33,7 +86,9 @@ public class SentryStubServlet extends HttpServlet {
         JsonGenerator jsonGenerator = jsonFactory.createGenerator(resp.getOutputStream());
 
         if (COUNT_OPERATION.equals(operation)) {
-            getEventsCounter(jsonGenerator);
+            getEventsCounter(jsonGenerator, getFilter(req));
+        } else if (EVENTS_OPERATION.equals(operation)) {
+            getEvents(jsonGenerator, getFilter(req));
         } else {
             resp.setStatus(HttpServletResponse.SC_NOT_FOUND);
         }
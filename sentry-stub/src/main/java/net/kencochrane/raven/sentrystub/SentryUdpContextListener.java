@@ -1,133 +1,141 @@
 package net.kencochrane.raven.sentrystub;
 
-import net.kencochrane.raven.sentrystub.auth.InvalidAuthException;
 import net.kencochrane.raven.sentrystub.event.Event;
+import net.kencochrane.raven.sentrystub.log.Transport;
 
 import javax.servlet.ServletContextEvent;
 import javax.servlet.ServletContextListener;
 import javax.servlet.annotation.WebListener;
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
-import java.net.SocketException;
-import java.util.HashMap;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
- * ContextListener stating an UDP socket when the servlet container starts.
+ * ContextListener starting an UDP channel when the servlet container starts.
  * <p>
- * This listener allows a {@link DatagramSocket} to be started to listen to UDP requests.
+ * Several receiver threads share the {@link DatagramChannel}, each of them receiving the datagrams in its own direct
+ * buffer, allocated once and large enough for any datagram. Only the actual content of a datagram is then copied to
+ * the heap and handed to the handler threads, so a burst of datagrams can be absorbed while the events are parsed.
+ * The auth header is parsed in place and the content is decoded straight from that copy, without any intermediate
+ * stream or string builder.
+ * <p>
+ * The port and the number of receiver threads can be set with the {@code sentryUdpPort} and
+ * {@code sentryUdpReceivers} init parameters.
  */
 @WebListener
 public class SentryUdpContextListener implements ServletContextListener {
     private static final Logger logger = Logger.getLogger(SentryUdpContextListener.class.getCanonicalName());
     private static final int DEFAULT_SENTRY_UDP_PORT = 9001;
     private static final String SENTRY_UDP_PORT_PARAMETER = "sentryUdpPort";
+    private static final String SENTRY_UDP_RECEIVERS_PARAMETER = "sentryUdpReceivers";
+    /**
+     * Maximum size of a datagram, we'll assume that no-one sends a > 65KB datagram (max size allowed on IPV4).
+     */
+    private static final int MAX_DATAGRAM_SIZE = 65536;
+    /**
+     * Size requested for the receive buffer of the socket, to absorb the bursts of datagrams.
+     */
+    private static final int SOCKET_RECEIVE_BUFFER_SIZE = 8 * 1024 * 1024;
+    private static final int DEFAULT_RECEIVERS = 2;
     private final SentryStub sentryStub = SentryStub.getInstance();
-    private ExecutorService executorService = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
-    private DatagramSocket udpSocket;
+    private final ExecutorService executorService = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors());
+    private final List<Thread> receivers = new ArrayList<Thread>();
+    private DatagramChannel udpChannel;
 
     @Override
     public void contextInitialized(ServletContextEvent sce) {
         String sentryUdpPortParameter = sce.getServletContext().getInitParameter(SENTRY_UDP_PORT_PARAMETER);
-        startUdpSocket(sentryUdpPortParameter != null
-                ? Integer.parseInt(sentryUdpPortParameter)
-                : DEFAULT_SENTRY_UDP_PORT);
+        String receiversParameter = sce.getServletContext().getInitParameter(SENTRY_UDP_RECEIVERS_PARAMETER);
+        startUdpChannel(sentryUdpPortParameter != null
+                        ? Integer.parseInt(sentryUdpPortParameter)
+                        : DEFAULT_SENTRY_UDP_PORT,
+                receiversParameter != null
+                        ? Integer.parseInt(receiversParameter)
+                        : DEFAULT_RECEIVERS);
     }
 
-    private void startUdpSocket(int port) {
+    private void startUdpChannel(int port, int receiverCount) {
         try {
-            udpSocket = new DatagramSocket(port);
-            new UdpListenerThread().start();
-        } catch (SocketException e) {
+            udpChannel = DatagramChannel.open();
+            udpChannel.socket().setReceiveBufferSize(SOCKET_RECEIVE_BUFFER_SIZE);
+            // SO_REUSEPORT would allow a channel per receiver, but it requires Java 9
+            udpChannel.socket().bind(new InetSocketAddress(port));
+        } catch (IOException e) {
             throw new RuntimeException(e);
         }
+
+        for (int i = 0; i < receiverCount; i++) {
+            Thread receiver = new UdpReceiverThread(i);
+            receivers.add(receiver);
+            receiver.start();
+        }
     }
 
     @Override
     public void contextDestroyed(ServletContextEvent sce) {
         executorService.shutdownNow();
-        udpSocket.close();
+        try {
+            // Wakes up the receivers blocked on the channel
+            udpChannel.close();
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Couldn't close the UDP channel.", e);
+        }
+        receivers.clear();
+        sentryStub.closePayloadLog();
     }
 
     private final class UdpRequestHandler implements Runnable {
-        private final DatagramPacket datagramPacket;
+        private final ByteBuffer datagram;
 
-        private UdpRequestHandler(DatagramPacket datagramPacket) {
-            this.datagramPacket = datagramPacket;
+        private UdpRequestHandler(ByteBuffer datagram) {
+            this.datagram = datagram;
         }
 
         @Override
         public void run() {
-            InputStream bais = new ByteArrayInputStream(datagramPacket.getData(),
-                    datagramPacket.getOffset(),
-                    datagramPacket.getLength());
-            validateAuthHeader(bais);
-            Event event = sentryStub.parseEvent(bais);
+            Map<String, String> authHeader = UdpAuthHeaderParser.parse(datagram);
+            sentryStub.validateAuth(authHeader);
+            sentryStub.logPayload(Transport.UDP, datagram);
+            Event event = sentryStub.parseEvent(new ByteBufferInputStream(datagram));
             sentryStub.addEvent(event);
         }
+    }
 
-        /**
-         * Extracts the Auth Header from a binary stream and leave the stream as is once the header is parsed.
-         *
-         * @param inputStream
-         */
-        private void validateAuthHeader(InputStream inputStream) {
-            try {
-                Map<String, String> authHeader = parseAuthHeader(inputStream);
-                sentryStub.validateAuth(authHeader);
-            } catch (IOException e) {
-                throw new InvalidAuthException("Impossible to extract the auth header from an UDP packet", e);
-            }
-        }
-
-        private Map<String, String> parseAuthHeader(InputStream inputStream) throws IOException {
-            Map<String, String> authHeader = new HashMap<String, String>();
+    private final class UdpReceiverThread extends Thread {
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(MAX_DATAGRAM_SIZE);
 
-            int i;
-            StringBuilder sb = new StringBuilder();
-            String key = null;
-            while ((i = inputStream.read()) >= 0) {
-                if (i == '\n') {
-                    authHeader.put(key, sb.toString().trim());
-                    //Assume it's the double \n, parse the next once
-                    inputStream.read();
-                    break;
-                } else if (i == '=' && key == null) {
-                    key = sb.toString().trim();
-                    sb = new StringBuilder();
-                } else if (i == ',' && key != null) {
-                    authHeader.put(key, sb.toString().trim());
-                    sb = new StringBuilder();
-                    key = null;
-                } else {
-                    sb.append((char) i);
-                }
-            }
-            return authHeader;
+        private UdpReceiverThread(int index) {
+            super("sentry-stub-udp-" + index);
+            setDaemon(true);
         }
-    }
 
-    private class UdpListenerThread extends Thread {
         @Override
         public void run() {
-            // We'll assume that no-one sends a > 65KB datagram (max size allowed on IPV4).
-            final int datagramPacketSize = 65536;
-            while (!udpSocket.isClosed()) {
+            while (udpChannel.isOpen()) {
+                buffer.clear();
                 try {
-                    byte[] buffer = new byte[datagramPacketSize];
-                    DatagramPacket datagramPacket = new DatagramPacket(buffer, buffer.length);
-                    udpSocket.receive(datagramPacket);
-                    executorService.execute(new UdpRequestHandler(datagramPacket));
+                    udpChannel.receive(buffer);
+                    buffer.flip();
+                    ByteBuffer datagram = ByteBuffer.allocate(buffer.remaining());
+                    datagram.put(buffer).flip();
+                    executorService.execute(new UdpRequestHandler(datagram));
+                } catch (ClosedChannelException e) {
+                    logger.log(Level.FINE, "The UDP channel has been closed.", e);
                 } catch (IOException e) {
-                    logger.log(Level.FINE,
-                            "An exception occurred during the reception of a UDP packet (server probably closing).", e);
+                    logger.log(Level.FINE, "An exception occurred during the reception of a UDP packet.", e);
+                } catch (RejectedExecutionException e) {
+                    logger.log(Level.FINE, "The UDP packet has been received while the server was closing.", e);
                 }
             }
         }
@@ -0,0 +1,72 @@
+package net.kencochrane.raven.sentrystub;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Parses the auth header at the beginning of a UDP datagram, directly from the buffer in which it was received.
+ * <p>
+ * The header is made of {@code key=value} pairs separated by commas and ends with an empty line. The bytes are
+ * scanned in place, only the keys and values themselves are copied into Strings. The header is expected to be ASCII.
+ */
+final class UdpAuthHeaderParser {
+    private UdpAuthHeaderParser() {
+    }
+
+    /**
+     * Parses the auth header and moves the position of the buffer to the content following the header.
+     *
+     * @param buffer datagram, between its position and its limit.
+     * @return the parameters of the auth header.
+     */
+    static Map<String, String> parse(ByteBuffer buffer) {
+        Map<String, String> authHeader = new HashMap<String, String>();
+        int limit = buffer.limit();
+        int tokenStart = buffer.position();
+        String key = null;
+        int i = tokenStart;
+        while (i < limit) {
+            byte b = buffer.get(i++);
+            if (b == '\n') {
+                authHeader.put(key, asciiString(buffer, tokenStart, i - 1));
+                //Assume it's the double \n, skip the second one
+                if (i < limit)
+                    i++;
+                break;
+            } else if (b == '=' && key == null) {
+                key = asciiString(buffer, tokenStart, i - 1);
+                tokenStart = i;
+            } else if (b == ',' && key != null) {
+                authHeader.put(key, asciiString(buffer, tokenStart, i - 1));
+                key = null;
+                tokenStart = i;
+            }
+        }
+        buffer.position(i);
+        return authHeader;
+    }
+
+    /**
+     * Reads an ASCII String from the buffer, trimming the leading and trailing whitespaces.
+     *
+     * @param buffer buffer holding the String.
+     * @param start  index of the first byte (included).
+     * @param end    index of the last byte (excluded).
+     * @return the trimmed String.
+     */
+    private static String asciiString(ByteBuffer buffer, int start, int end) {
+        while (start < end && buffer.get(start) <= ' ') {
+            start++;
+        }
+        while (end > start && buffer.get(end - 1) <= ' ') {
+            end--;
+        }
+
+        char[] chars = new char[end - start];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = (char) (buffer.get(start + i) & 0xFF);
+        }
+        return new String(chars);
+    }
+}
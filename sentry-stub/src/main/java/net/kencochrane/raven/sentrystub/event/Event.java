@@ -58,4 +58,28 @@ public class Event {
     public void setStackTraceInterfaceLong(StackTraceInterface stackTraceInterface) {
         this.stackTraceInterface = stackTraceInterface;
     }
+
+    public String getEventId() {
+        return eventId;
+    }
+
+    public String getChecksum() {
+        return checksum;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public Date getTimestamp() {
+        return timestamp;
+    }
+
+    public String getLevel() {
+        return level;
+    }
+
+    public String getLogger() {
+        return logger;
+    }
 }
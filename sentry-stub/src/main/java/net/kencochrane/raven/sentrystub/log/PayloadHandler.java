@@ -0,0 +1,19 @@
+package net.kencochrane.raven.sentrystub.log;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Callback receiving the payloads read from a {@link PayloadLog}.
+ */
+public interface PayloadHandler {
+    /**
+     * Handles a payload.
+     *
+     * @param offset    offset of the payload in the log.
+     * @param timestamp time at which the payload was received, in milliseconds since the epoch.
+     * @param transport transport through which the payload was received.
+     * @param payload   read-only view of the payload, only valid during the call.
+     * @return true to keep reading the log, false to stop.
+     */
+    boolean handle(long offset, long timestamp, Transport transport, ByteBuffer payload);
+}
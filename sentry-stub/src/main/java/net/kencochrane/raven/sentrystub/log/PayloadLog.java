@@ -0,0 +1,300 @@
+package net.kencochrane.raven.sentrystub.log;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Append-only log of the payloads received by the stub, persisted in memory-mapped segment files.
+ * <p>
+ * Each payload gets an offset, its position in the log starting at 0. The log is split in segments named after the
+ * offset of their first payload, each segment being made of two files:
+ * <ul>
+ * <li>{@code <offset>.log} holds the records, each made of its total length (int), the time at which the payload was
+ * received (long), the {@link Transport} (byte) and the payload itself;
+ * <li>{@code <offset>.index} holds the position of each record in the {@code .log} file (int), to find a payload from
+ * its offset without scanning the segment.
+ * </ul>
+ * The length of a record is written last, a record which was only partially written when the process stopped is
+ * ignored (and overwritten) when the log is opened again. The files are mapped at their full size when the segment is
+ * created, a new segment is started once the current one is full.
+ * <p>
+ * Appending is synchronised, reading the log while payloads are appended is safe. Once the log is closed, appending
+ * fails.
+ */
+public class PayloadLog implements Closeable {
+    /**
+     * Default size of the data file of a segment.
+     */
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+    private static final String DATA_SUFFIX = ".log";
+    private static final String INDEX_SUFFIX = ".index";
+    /**
+     * Size of the length, timestamp and transport preceding each payload.
+     */
+    private static final int RECORD_HEADER_SIZE = 4 + 8 + 1;
+    private static final int TIMESTAMP_POSITION = 4;
+    private static final int TRANSPORT_POSITION = 12;
+    private static final int INDEX_ENTRY_SIZE = 4;
+    private final File directory;
+    private final int segmentSize;
+    private final NavigableMap<Long, Segment> segments = new ConcurrentSkipListMap<Long, Segment>();
+    private Segment activeSegment;
+    private boolean closed;
+
+    /**
+     * Opens a log, creating it if necessary.
+     *
+     * @param directory   directory holding the segments of the log.
+     * @param segmentSize size of the data file of each new segment, the largest payload it can hold being slightly
+     *                    smaller. The existing segments keep their size.
+     * @throws IOException if the segments can't be opened.
+     */
+    public PayloadLog(File directory, int segmentSize) throws IOException {
+        if (segmentSize <= RECORD_HEADER_SIZE)
+            throw new IllegalArgumentException("The segments must be larger than " + RECORD_HEADER_SIZE + " bytes");
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Couldn't create the directory " + directory);
+
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        for (long baseOffset : findSegments(directory)) {
+            segments.put(baseOffset, new Segment(directory, baseOffset, segmentSize));
+        }
+        if (segments.isEmpty())
+            segments.put(0L, new Segment(directory, 0L, segmentSize));
+        activeSegment = segments.lastEntry().getValue();
+    }
+
+    private static List<Long> findSegments(File directory) {
+        String[] dataFiles = directory.list(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(DATA_SUFFIX);
+            }
+        });
+        List<Long> baseOffsets = new ArrayList<Long>();
+        if (dataFiles != null) {
+            for (String dataFile : dataFiles) {
+                try {
+                    baseOffsets.add(Long.parseLong(dataFile.substring(0, dataFile.length() - DATA_SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    // Not a segment of the log
+                }
+            }
+        }
+        Collections.sort(baseOffsets);
+        return baseOffsets;
+    }
+
+    private static String segmentName(long baseOffset) {
+        return String.format("%020d", baseOffset);
+    }
+
+    /**
+     * Appends a payload to the log.
+     *
+     * @param transport transport through which the payload was received.
+     * @param timestamp time at which the payload was received, in milliseconds since the epoch.
+     * @param payload   payload between its position and its limit, the buffer itself isn't modified.
+     * @return the offset of the payload.
+     * @throws IOException if the log is closed or a new segment couldn't be created.
+     */
+    public synchronized long append(Transport transport, long timestamp, ByteBuffer payload) throws IOException {
+        if (closed)
+            throw new IOException("The payload log in " + directory + " is closed");
+        int recordSize = RECORD_HEADER_SIZE + payload.remaining();
+        if (recordSize > segmentSize)
+            throw new IllegalArgumentException("The payload (" + payload.remaining() + " bytes) is larger than "
+                    + "the segments of the log");
+
+        if (!activeSegment.hasRoom(recordSize)) {
+            activeSegment.force();
+            long baseOffset = activeSegment.getNextOffset();
+            activeSegment = new Segment(directory, baseOffset, segmentSize);
+            segments.put(baseOffset, activeSegment);
+        }
+        return activeSegment.append(transport, timestamp, payload, recordSize);
+    }
+
+    /**
+     * Reads the payloads of the log, from the oldest to the most recent.
+     * <p>
+     * The payloads appended while the log is being read are read as well.
+     *
+     * @param fromOffset offset of the first payload to read.
+     * @param handler    callback receiving the payloads.
+     * @return the number of payloads read.
+     */
+    public long replay(long fromOffset, PayloadHandler handler) {
+        Long firstSegment = segments.floorKey(fromOffset);
+        NavigableMap<Long, Segment> readSegments = firstSegment != null ? segments.tailMap(firstSegment, true)
+                : segments;
+        long count = 0;
+        for (Segment segment : readSegments.values()) {
+            long read = segment.read(fromOffset, handler);
+            if (read < 0)
+                return count - read - 1;
+            count += read;
+        }
+        return count;
+    }
+
+    /**
+     * Gets the offset which will be given to the next payload.
+     *
+     * @return the number of payloads ever appended to the log.
+     */
+    public synchronized long getNextOffset() {
+        return activeSegment.getNextOffset();
+    }
+
+    /**
+     * Writes the payloads appended so far to the disk.
+     */
+    public synchronized void flush() {
+        if (!closed)
+            activeSegment.force();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        for (Segment segment : segments.values()) {
+            segment.close();
+        }
+    }
+
+    /**
+     * Part of the log held in a data file and its index file.
+     */
+    private static final class Segment {
+        private final long baseOffset;
+        private final RandomAccessFile dataFile;
+        private final RandomAccessFile indexFile;
+        private final MappedByteBuffer data;
+        private final MappedByteBuffer index;
+        private final int maxRecords;
+        private int writePosition;
+        /**
+         * Number of records in the segment, written after each record to publish it to the readers.
+         */
+        private volatile int recordCount;
+
+        private Segment(File directory, long baseOffset, int segmentSize) throws IOException {
+            this.baseOffset = baseOffset;
+            File file = new File(directory, segmentName(baseOffset) + DATA_SUFFIX);
+            dataFile = new RandomAccessFile(file, "rw");
+            // An existing segment keeps its size, even if the log is now opened with another one
+            int dataSize = dataFile.length() > 0 ? (int) dataFile.length() : segmentSize;
+            dataFile.setLength(dataSize);
+            data = dataFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, dataSize);
+
+            maxRecords = dataSize / RECORD_HEADER_SIZE;
+            indexFile = new RandomAccessFile(new File(directory, segmentName(baseOffset) + INDEX_SUFFIX), "rw");
+            indexFile.setLength((long) maxRecords * INDEX_ENTRY_SIZE);
+            index = indexFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+                    (long) maxRecords * INDEX_ENTRY_SIZE);
+            recover();
+        }
+
+        /**
+         * Finds the complete records of the segment, rebuilds their index and clears what follows them.
+         */
+        private void recover() {
+            int position = 0;
+            int count = 0;
+            while (position + RECORD_HEADER_SIZE <= data.capacity()) {
+                int recordSize = data.getInt(position);
+                if (recordSize < RECORD_HEADER_SIZE || position + recordSize > data.capacity())
+                    break;
+                index.putInt(count * INDEX_ENTRY_SIZE, position);
+                count++;
+                position += recordSize;
+            }
+            writePosition = position;
+            recordCount = count;
+
+            // The bytes of a partly written record would otherwise be read as the length of a shorter record
+            for (int i = writePosition; i < data.capacity(); i++) {
+                if (data.get(i) != 0)
+                    data.put(i, (byte) 0);
+            }
+        }
+
+        private boolean hasRoom(int recordSize) {
+            return writePosition + recordSize <= data.capacity() && recordCount < maxRecords;
+        }
+
+        private long getNextOffset() {
+            return baseOffset + recordCount;
+        }
+
+        private long append(Transport transport, long timestamp, ByteBuffer payload, int recordSize) {
+            int position = writePosition;
+            data.putLong(position + TIMESTAMP_POSITION, timestamp);
+            data.put(position + TRANSPORT_POSITION, (byte) transport.ordinal());
+            ByteBuffer payloadView = data.duplicate();
+            payloadView.position(position + RECORD_HEADER_SIZE);
+            payloadView.put(payload.duplicate());
+            // The length commits the record
+            data.putInt(position, recordSize);
+            index.putInt(recordCount * INDEX_ENTRY_SIZE, position);
+
+            writePosition += recordSize;
+            recordCount++;
+            return baseOffset + recordCount - 1;
+        }
+
+        /**
+         * Reads the records of the segment.
+         *
+         * @param fromOffset offset of the first payload to read.
+         * @param handler    callback receiving the payloads.
+         * @return the number of payloads read, or {@code -(n + 1)} if the handler stopped the reading after n payloads.
+         */
+        private long read(long fromOffset, PayloadHandler handler) {
+            int count = recordCount;
+            ByteBuffer view = data.asReadOnlyBuffer();
+            Transport[] transports = Transport.values();
+            long read = 0;
+            for (int i = (int) Math.max(fromOffset - baseOffset, 0); i < count; i++) {
+                int position = index.getInt(i * INDEX_ENTRY_SIZE);
+                int recordSize = view.getInt(position);
+                long timestamp = view.getLong(position + TIMESTAMP_POSITION);
+                Transport transport = transports[view.get(position + TRANSPORT_POSITION)];
+                view.limit(position + recordSize).position(position + RECORD_HEADER_SIZE);
+                ByteBuffer payload = view.slice();
+                view.clear();
+
+                read++;
+                if (!handler.handle(baseOffset + i, timestamp, transport, payload))
+                    return -read - 1;
+            }
+            return read;
+        }
+
+        private void force() {
+            data.force();
+            index.force();
+        }
+
+        private void close() throws IOException {
+            force();
+            dataFile.close();
+            indexFile.close();
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package net.kencochrane.raven.sentrystub.log;
+
+/**
+ * Transport through which a payload was received by the stub.
+ */
+public enum Transport {
+    /**
+     * Body of an HTTP request.
+     */
+    HTTP,
+    /**
+     * Content of a UDP datagram, following the auth header.
+     */
+    UDP
+}
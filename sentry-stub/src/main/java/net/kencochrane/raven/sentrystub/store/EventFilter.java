@@ -0,0 +1,71 @@
+package net.kencochrane.raven.sentrystub.store;
+
+import net.kencochrane.raven.sentrystub.event.Event;
+
+/**
+ * Criteria selecting events in an {@link EventStore}.
+ * <p>
+ * Each criterion is optional, a {@code null} criterion matching every event. Instances are immutable.
+ */
+public final class EventFilter {
+    /**
+     * Filter matching every event.
+     */
+    public static final EventFilter ALL = new EventFilter(null, null, null);
+    private final String level;
+    private final String logger;
+    private final String checksum;
+
+    /**
+     * Creates a filter.
+     *
+     * @param level    level of the events, or {@code null}.
+     * @param logger   logger of the events, or {@code null}.
+     * @param checksum checksum of the events, or {@code null}.
+     */
+    public EventFilter(String level, String logger, String checksum) {
+        this.level = level;
+        this.logger = logger;
+        this.checksum = checksum;
+    }
+
+    private static boolean matches(String criterion, String value) {
+        return criterion == null || criterion.equals(value);
+    }
+
+    /**
+     * Checks whether an event matches every criterion of the filter.
+     *
+     * @param event event to check.
+     * @return true if the event is selected by the filter.
+     */
+    public boolean matches(Event event) {
+        return matches(level, event.getLevel()) && matches(logger, event.getLogger())
+                && matches(checksum, event.getChecksum());
+    }
+
+    public boolean isEmpty() {
+        return level == null && logger == null && checksum == null;
+    }
+
+    public String getLevel() {
+        return level;
+    }
+
+    public String getLogger() {
+        return logger;
+    }
+
+    public String getChecksum() {
+        return checksum;
+    }
+
+    @Override
+    public String toString() {
+        return "EventFilter{"
+                + "level='" + level + '\''
+                + ", logger='" + logger + '\''
+                + ", checksum='" + checksum + '\''
+                + '}';
+    }
+}
@@ -0,0 +1,304 @@
+package net.kencochrane.raven.sentrystub.store;
+
+import net.kencochrane.raven.sentrystub.event.Event;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Thread-safe and bounded store of the events received by the stub.
+ * <p>
+ * The events are kept in a ring, once the store is full each new event evicts the oldest one. Each event gets a
+ * sequence number, the events present in the store being those between {@code head} (included) and {@code tail}
+ * (excluded).
+ * <p>
+ * The store can index the events by level, logger and checksum. Each index maps a value to the sequence numbers of
+ * the events having it, in the order in which they were received, so that evicting the oldest event only removes the
+ * first element of its entries.
+ * <p>
+ * Queries only hold the lock briefly: the events are streamed by batches, the store can keep receiving events while
+ * they are being consumed. An event evicted while a query is running is skipped.
+ */
+public class EventStore {
+    /**
+     * Number of events fetched at once while streaming.
+     */
+    private static final int BATCH_SIZE = 256;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Event[] ring;
+    private final boolean indexed;
+    private final Map<String, ArrayDeque<Long>> levelIndex = new HashMap<String, ArrayDeque<Long>>();
+    private final Map<String, ArrayDeque<Long>> loggerIndex = new HashMap<String, ArrayDeque<Long>>();
+    private final Map<String, ArrayDeque<Long>> checksumIndex = new HashMap<String, ArrayDeque<Long>>();
+    private long head;
+    private long tail;
+    private long evictedCount;
+
+    /**
+     * Creates a store.
+     *
+     * @param capacity maximum number of events kept in the store.
+     * @param indexed  whether the events should be indexed by level, logger and checksum.
+     */
+    public EventStore(int capacity, boolean indexed) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("The capacity must be positive, not " + capacity);
+        this.ring = new Event[capacity];
+        this.indexed = indexed;
+    }
+
+    private static void index(Map<String, ArrayDeque<Long>> index, String key, long sequence) {
+        if (key == null)
+            return;
+        ArrayDeque<Long> sequences = index.get(key);
+        if (sequences == null) {
+            sequences = new ArrayDeque<Long>();
+            index.put(key, sequences);
+        }
+        sequences.addLast(sequence);
+    }
+
+    /**
+     * Removes the oldest event with the given key from an index.
+     */
+    private static void unindexOldest(Map<String, ArrayDeque<Long>> index, String key) {
+        if (key == null)
+            return;
+        ArrayDeque<Long> sequences = index.get(key);
+        sequences.pollFirst();
+        if (sequences.isEmpty())
+            index.remove(key);
+    }
+
+    private static ArrayDeque<Long> smallest(ArrayDeque<Long> current, Map<String, ArrayDeque<Long>> index,
+                                             String key) {
+        if (key == null)
+            return current;
+        ArrayDeque<Long> sequences = index.get(key);
+        if (sequences == null)
+            return new ArrayDeque<Long>(0);
+        return current == null || sequences.size() < current.size() ? sequences : current;
+    }
+
+    private int slotOf(long sequence) {
+        return (int) (sequence % ring.length);
+    }
+
+    /**
+     * Adds an event, evicting the oldest event if the store is full.
+     *
+     * @param event event to add.
+     */
+    public void add(Event event) {
+        lock.writeLock().lock();
+        try {
+            if (tail - head == ring.length)
+                evictOldest();
+            ring[slotOf(tail)] = event;
+            if (indexed) {
+                index(levelIndex, event.getLevel(), tail);
+                index(loggerIndex, event.getLogger(), tail);
+                index(checksumIndex, event.getChecksum(), tail);
+            }
+            tail++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void evictOldest() {
+        int slot = slotOf(head);
+        Event evicted = ring[slot];
+        ring[slot] = null;
+        if (indexed) {
+            unindexOldest(levelIndex, evicted.getLevel());
+            unindexOldest(loggerIndex, evicted.getLogger());
+            unindexOldest(checksumIndex, evicted.getChecksum());
+        }
+        head++;
+        evictedCount++;
+    }
+
+    /**
+     * Removes every event from the store.
+     */
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            Arrays.fill(ring, null);
+            head = tail;
+            levelIndex.clear();
+            loggerIndex.clear();
+            checksumIndex.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the sequence numbers of the events which may match a filter, using the most selective index.
+     * <p>
+     * Must be called with the lock held.
+     *
+     * @param filter filter to apply.
+     * @return the sequence numbers of the candidates, or {@code null} if every event is a candidate.
+     */
+    private ArrayDeque<Long> candidates(EventFilter filter) {
+        if (!indexed || filter.isEmpty())
+            return null;
+
+        ArrayDeque<Long> candidates = smallest(null, levelIndex, filter.getLevel());
+        candidates = smallest(candidates, loggerIndex, filter.getLogger());
+        return smallest(candidates, checksumIndex, filter.getChecksum());
+    }
+
+    /**
+     * Counts the events matching a filter.
+     *
+     * @param filter filter selecting the events.
+     * @return the number of events in the store matching the filter.
+     */
+    public int count(EventFilter filter) {
+        lock.readLock().lock();
+        try {
+            ArrayDeque<Long> candidates = candidates(filter);
+            if (candidates == null) {
+                if (filter.isEmpty())
+                    return (int) (tail - head);
+                int count = 0;
+                for (long sequence = head; sequence < tail; sequence++) {
+                    if (filter.matches(ring[slotOf(sequence)]))
+                        count++;
+                }
+                return count;
+            }
+
+            int count = 0;
+            for (Long sequence : candidates) {
+                if (filter.matches(ring[slotOf(sequence)]))
+                    count++;
+            }
+            return count;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Streams the events matching a filter, from the oldest to the most recent.
+     * <p>
+     * The events received after the beginning of the query aren't streamed, those evicted meanwhile are skipped.
+     *
+     * @param filter  filter selecting the events.
+     * @param visitor callback receiving the events, called without holding any lock.
+     */
+    public void stream(EventFilter filter, EventVisitor visitor) {
+        long[] sequences;
+        long start;
+        long end;
+        lock.readLock().lock();
+        try {
+            ArrayDeque<Long> candidates = candidates(filter);
+            sequences = candidates != null ? toArray(candidates) : null;
+            start = head;
+            end = tail;
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        int total = sequences != null ? sequences.length : (int) (end - start);
+        List<Event> batch = new ArrayList<Event>(Math.min(total, BATCH_SIZE));
+        for (int offset = 0; offset < total; offset += BATCH_SIZE) {
+            batch.clear();
+            int batchEnd = Math.min(offset + BATCH_SIZE, total);
+            lock.readLock().lock();
+            try {
+                for (int i = offset; i < batchEnd; i++) {
+                    long sequence = sequences != null ? sequences[i] : start + i;
+                    if (sequence < head)
+                        continue;
+                    Event event = ring[slotOf(sequence)];
+                    if (filter.matches(event))
+                        batch.add(event);
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+
+            for (Event event : batch) {
+                if (!visitor.visit(event))
+                    return;
+            }
+        }
+    }
+
+    private long[] toArray(ArrayDeque<Long> candidates) {
+        long[] sequences = new long[candidates.size()];
+        int i = 0;
+        for (Long sequence : candidates) {
+            sequences[i++] = sequence;
+        }
+        return sequences;
+    }
+
+    /**
+     * Gets a copy of the events matching a filter.
+     *
+     * @param filter filter selecting the events.
+     * @return the events, from the oldest to the most recent.
+     */
+    public List<Event> getEvents(EventFilter filter) {
+        final List<Event> events = new ArrayList<Event>();
+        stream(filter, new EventVisitor() {
+            @Override
+            public boolean visit(Event event) {
+                events.add(event);
+                return true;
+            }
+        });
+        return Collections.unmodifiableList(events);
+    }
+
+    /**
+     * Gets the number of events in the store.
+     *
+     * @return the number of events currently kept.
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return (int) (tail - head);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the number of events evicted to make room for newer events since the store was created.
+     *
+     * @return the number of evicted events.
+     */
+    public long getEvictedCount() {
+        lock.readLock().lock();
+        try {
+            return evictedCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getCapacity() {
+        return ring.length;
+    }
+
+    public boolean isIndexed() {
+        return indexed;
+    }
+}
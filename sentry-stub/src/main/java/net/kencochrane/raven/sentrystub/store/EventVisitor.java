@@ -0,0 +1,16 @@
+package net.kencochrane.raven.sentrystub.store;
+
+import net.kencochrane.raven.sentrystub.event.Event;
+
+/**
+ * Callback receiving the events streamed by an {@link EventStore}.
+ */
+public interface EventVisitor {
+    /**
+     * Handles an event.
+     *
+     * @param event event selected by the query.
+     * @return true to keep streaming, false to stop.
+     */
+    boolean visit(Event event);
+}
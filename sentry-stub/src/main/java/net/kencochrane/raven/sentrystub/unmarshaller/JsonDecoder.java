@@ -1,14 +1,12 @@
 package net.kencochrane.raven.sentrystub.unmarshaller;
 
-import com.fasterxml.jackson.core.JsonFactory;
-import com.fasterxml.jackson.core.JsonParser;
+import com.google.common.base.Charsets;
 
-import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.util.logging.Level;
-import java.util.logging.Logger;
+import java.io.PushbackInputStream;
+import java.util.zip.GZIPInputStream;
 import java.util.zip.InflaterInputStream;
 
 import static com.google.common.io.BaseEncoding.base64;
@@ -19,119 +17,119 @@ import static com.google.common.io.BaseEncoding.base64;
  * The supported stream formats are:
  * <ul>
  * <li>JSON Stream (nothing to do)
+ * <li>Deflated (zlib) or gzipped JSON streams (inflated)
  * <li>Base 64'd JSON streams (base64 decoded)
- * <li>Base 64'd and deflated JSON streams (base64 decoded and inflated)
+ * <li>Base 64'd and deflated (or gzipped) JSON streams (base64 decoded and inflated)
  * </ul>
+ * The format is identified from the first bytes of the stream, which is then decoded in a single pass while it's
+ * being parsed.
  */
 public class JsonDecoder {
-    private static Logger logger = Logger.getLogger(JsonDecoder.class.getCanonicalName());
+    /**
+     * Number of bytes inspected to identify the format, a base64 quantum.
+     */
+    private static final int SNIFF_LENGTH = 4;
+    private static final int GZIP_MAGIC_FIRST_BYTE = 0x1f;
+    private static final int GZIP_MAGIC_SECOND_BYTE = 0x8b;
+    private static final int ZLIB_DEFLATE_METHOD = 8;
+    private static final int ZLIB_METHOD_MASK = 0x0f;
+    private static final int ZLIB_HEADER_CHECK = 31;
+
+    /**
+     * Checks whether a byte can start a JSON document.
+     */
+    private static boolean isJsonStart(int b) {
+        return b == '{' || b == '[' || b == ' ' || b == '\t' || b == '\r' || b == '\n';
+    }
+
+    private static boolean isGzipHeader(int b0, int b1) {
+        return b0 == GZIP_MAGIC_FIRST_BYTE && b1 == GZIP_MAGIC_SECOND_BYTE;
+    }
+
+    /**
+     * Checks whether two bytes are a valid zlib header using the deflate method (RFC 1950).
+     */
+    private static boolean isZlibHeader(int b0, int b1) {
+        return (b0 & ZLIB_METHOD_MASK) == ZLIB_DEFLATE_METHOD && ((b0 << Byte.SIZE) | b1) % ZLIB_HEADER_CHECK == 0;
+    }
+
+    private static int readFully(InputStream inputStream, byte[] buffer) throws IOException {
+        int length = 0;
+        while (length < buffer.length) {
+            int read = inputStream.read(buffer, length, buffer.length - length);
+            if (read < 0)
+                break;
+            length += read;
+        }
+        return length;
+    }
 
     /**
-     * Attempts to read the content of the stream and determine if it's compressed, encoded or simple JSON.
-     * <p>
-     * This method isn't efficient but it isn't really a problem as this part of the project is not about performances.
+     * Identifies the format of the stream from its first bytes and decodes it as it's read.
      *
      * @param originalStream origin stream of information that can be compressed or encoded in base64.
      * @return a Stream containing pure JSON.
      * @throws IOException if it's impossible to read the content of the Stream.
      */
     public InputStream decapsulateContent(InputStream originalStream) throws IOException {
-        //Hopefully the sent content isn't bigger than 1MB...
-        final int messageSize = 1048576;
-        //Make it uncloseable to avoid issues with the InflaterInputStream.
-        originalStream = new Uncloseable(new BufferedInputStream(originalStream));
-        originalStream.mark(messageSize);
-        InputStream inputStream = originalStream;
-        if (!isJson(originalStream)) {
-            inputStream = base64().decodingStream(new InputStreamReader(inputStream));
-            originalStream.reset();
-            if (!isJson(base64().decodingStream(new InputStreamReader(originalStream)))) {
-                inputStream = new InflaterInputStream(inputStream);
-                originalStream.reset();
-                if (!isJson(new InflaterInputStream(base64().decodingStream(new InputStreamReader(originalStream))))) {
-                    throw new IllegalArgumentException("The given Stream is neither JSON, Base64'd JSON "
-                            + "nor Base64'd deflated JSON.");
-                }
+        PushbackInputStream inputStream = new PushbackInputStream(originalStream, SNIFF_LENGTH);
+        byte[] head = new byte[SNIFF_LENGTH];
+        int headLength = readFully(inputStream, head);
+        inputStream.unread(head, 0, headLength);
+
+        InputStream decodedStream = decodeBinary(inputStream, head, headLength);
+        if (decodedStream == null && headLength == SNIFF_LENGTH) {
+            byte[] decodedHead = decodeBase64Head(head);
+            if (decodedHead != null) {
+                InputStream base64Stream = base64().decodingStream(new InputStreamReader(inputStream, Charsets.US_ASCII));
+                decodedStream = decodeBinary(base64Stream, decodedHead, decodedHead.length);
             }
         }
 
-        originalStream.reset();
-        return inputStream;
+        if (decodedStream == null)
+            throw new IllegalArgumentException("The given Stream is neither JSON, Base64'd JSON "
+                    + "nor Base64'd deflated JSON.");
+        return decodedStream;
     }
 
     /**
-     * Checks that the parsed content is JSON content.
+     * Decodes a stream which is either JSON or compressed JSON.
      *
-     * @param inputStream data source.
-     * @return true if the content is in JSON, false otherwise.
+     * @param inputStream stream to decode.
+     * @param head        first bytes of the stream.
+     * @param headLength  number of bytes available in {@code head}.
+     * @return the JSON stream, or {@code null} if the stream is neither JSON nor compressed.
+     * @throws IOException if the compressed stream can't be read.
      */
-    private boolean isJson(InputStream inputStream) {
-        boolean valid = false;
-        try {
-            final JsonParser parser = new JsonFactory().createParser(inputStream);
-            do {
-                parser.nextToken();
-            } while (parser.hasCurrentToken());
-            valid = true;
-        } catch (Exception e) {
-            logger.log(Level.FINE, "An exception occurred while trying to parse an allegedly JSON document", e);
-        }
-
-        return valid;
+    private InputStream decodeBinary(InputStream inputStream, byte[] head, int headLength) throws IOException {
+        if (headLength == 0)
+            return null;
+
+        int b0 = head[0] & 0xFF;
+        if (isJsonStart(b0))
+            return inputStream;
+        if (headLength < 2)
+            return null;
+
+        int b1 = head[1] & 0xFF;
+        if (isGzipHeader(b0, b1))
+            return new GZIPInputStream(inputStream);
+        if (isZlibHeader(b0, b1))
+            return new InflaterInputStream(inputStream);
+        return null;
     }
 
     /**
-     * InputStream that delegates everything but the {@link #close()} method.
+     * Decodes the first base64 quantum of the stream.
+     *
+     * @param head first bytes of the stream.
+     * @return the decoded bytes, or {@code null} if the stream doesn't start with base64 content.
      */
-    private static final class Uncloseable extends InputStream {
-        private final InputStream original;
-
-        private Uncloseable(InputStream original) {
-            this.original = original;
-        }
-
-        @Override
-        public int read() throws IOException {
-            return original.read();
-        }
-
-        @Override
-        public int read(byte[] b) throws IOException {
-            return original.read(b);
-        }
-
-        @Override
-        public int read(byte[] b, int off, int len) throws IOException {
-            return original.read(b, off, len);
-        }
-
-        @Override
-        public long skip(long n) throws IOException {
-            return original.skip(n);
-        }
-
-        @Override
-        public int available() throws IOException {
-            return original.available();
-        }
-
-        @Override
-        public void close() throws IOException {
-        }
-
-        @Override
-        public void mark(int readlimit) {
-            original.mark(readlimit);
-        }
-
-        @Override
-        public void reset() throws IOException {
-            original.reset();
-        }
-
-        @Override
-        public boolean markSupported() {
-            return original.markSupported();
+    private byte[] decodeBase64Head(byte[] head) {
+        try {
+            return base64().decode(new String(head, Charsets.US_ASCII));
+        } catch (IllegalArgumentException e) {
+            return null;
         }
     }
 }
@@ -0,0 +1,129 @@
+package net.kencochrane.raven.sentrystub;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+import mockit.Deencapsulation;
+import mockit.Injectable;
+import mockit.NonStrictExpectations;
+import mockit.Verifications;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class SentryHttpServletTest {
+    private static final String JSON = "{\"message\":\"8c0f1d0e-3d2b-4e4b-9a53-4f3c2a0c7a61\"}";
+    private SentryHttpServlet sentryHttpServlet;
+    @Injectable
+    private SentryStub mockSentryStub = null;
+    @Injectable
+    private HttpServletRequest mockRequest = null;
+    @Injectable
+    private HttpServletResponse mockResponse = null;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        sentryHttpServlet = new SentryHttpServlet();
+        Deencapsulation.setField(sentryHttpServlet, "sentryStub", mockSentryStub);
+    }
+
+    private static byte[] deflate(byte[] content) throws Exception {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        OutputStream outputStream = new DeflaterOutputStream(compressed);
+        outputStream.write(content);
+        outputStream.close();
+        return compressed.toByteArray();
+    }
+
+    private static byte[] gzip(byte[] content) throws Exception {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        OutputStream outputStream = new GZIPOutputStream(compressed);
+        outputStream.write(content);
+        outputStream.close();
+        return compressed.toByteArray();
+    }
+
+    private void post(final String contentEncoding, final byte[] body) throws Exception {
+        new NonStrictExpectations() {{
+            mockRequest.getHeader("Content-Encoding");
+            result = contentEncoding;
+            mockRequest.getInputStream();
+            result = new ByteArrayServletInputStream(body);
+        }};
+
+        sentryHttpServlet.doPost(mockRequest, mockResponse);
+    }
+
+    private void assertParsedBody(final String expectedBody) throws Exception {
+        new Verifications() {{
+            InputStream parsedBody;
+            mockSentryStub.parseEvent(parsedBody = withCapture());
+            assertThat(new String(ByteStreams.toByteArray(parsedBody), Charsets.UTF_8), is(expectedBody));
+            mockResponse.sendError(anyInt, anyString);
+            times = 0;
+        }};
+    }
+
+    @Test
+    public void testBodyWithoutEncodingParsedAsIs() throws Exception {
+        post(null, JSON.getBytes(Charsets.UTF_8));
+
+        assertParsedBody(JSON);
+    }
+
+    @Test
+    public void testIdentityEncodedBodyParsedAsIs() throws Exception {
+        post("identity", JSON.getBytes(Charsets.UTF_8));
+
+        assertParsedBody(JSON);
+    }
+
+    @Test
+    public void testGzipEncodedBodyInflated() throws Exception {
+        post("gzip", gzip(JSON.getBytes(Charsets.UTF_8)));
+
+        assertParsedBody(JSON);
+    }
+
+    @Test
+    public void testDeflateEncodedBodyInflated() throws Exception {
+        post("Deflate", deflate(JSON.getBytes(Charsets.UTF_8)));
+
+        assertParsedBody(JSON);
+    }
+
+    @Test
+    public void testUnsupportedEncodingRejected() throws Exception {
+        post("br", JSON.getBytes(Charsets.UTF_8));
+
+        new Verifications() {{
+            mockResponse.sendError(HttpServletResponse.SC_UNSUPPORTED_MEDIA_TYPE, anyString);
+            mockSentryStub.parseEvent((InputStream) any);
+            times = 0;
+        }};
+    }
+
+    private static final class ByteArrayServletInputStream extends ServletInputStream {
+        private final ByteArrayInputStream content;
+
+        private ByteArrayServletInputStream(byte[] content) {
+            this.content = new ByteArrayInputStream(content);
+        }
+
+        @Override
+        public int read() {
+            return content.read();
+        }
+    }
+}
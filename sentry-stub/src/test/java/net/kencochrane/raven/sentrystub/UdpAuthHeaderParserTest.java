@@ -0,0 +1,86 @@
+package net.kencochrane.raven.sentrystub;
+
+import com.google.common.base.Charsets;
+import org.testng.annotations.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class UdpAuthHeaderParserTest {
+    private static ByteBuffer datagram(String content) {
+        return ByteBuffer.wrap(content.getBytes(Charsets.US_ASCII));
+    }
+
+    private static String remaining(ByteBuffer buffer) {
+        byte[] content = new byte[buffer.remaining()];
+        buffer.duplicate().get(content);
+        return new String(content, Charsets.US_ASCII);
+    }
+
+    @Test
+    public void testHeaderParsed() throws Exception {
+        ByteBuffer datagram = datagram("Sentry sentry_version=5,sentry_client=raven-java/test,"
+                + "sentry_key=public,sentry_secret=secret\n\n{}");
+
+        Map<String, String> authHeader = UdpAuthHeaderParser.parse(datagram);
+
+        assertThat(authHeader.size(), is(4));
+        assertThat(authHeader, hasEntry("Sentry sentry_version", "5"));
+        assertThat(authHeader, hasEntry("sentry_client", "raven-java/test"));
+        assertThat(authHeader, hasEntry("sentry_key", "public"));
+        assertThat(authHeader, hasEntry("sentry_secret", "secret"));
+    }
+
+    @Test
+    public void testPositionMovedToContent() throws Exception {
+        ByteBuffer datagram = datagram("sentry_key=public,sentry_secret=secret\n\n{\"message\":\"content\"}");
+
+        UdpAuthHeaderParser.parse(datagram);
+
+        assertThat(remaining(datagram), is("{\"message\":\"content\"}"));
+    }
+
+    @Test
+    public void testWhitespacesTrimmed() throws Exception {
+        ByteBuffer datagram = datagram(" sentry_key = public ,\tsentry_secret=secret \n\n{}");
+
+        Map<String, String> authHeader = UdpAuthHeaderParser.parse(datagram);
+
+        assertThat(authHeader, hasEntry("sentry_key", "public"));
+        assertThat(authHeader, hasEntry("sentry_secret", "secret"));
+    }
+
+    @Test
+    public void testValueMayContainEqualSign() throws Exception {
+        ByteBuffer datagram = datagram("sentry_key=a=b\n\n{}");
+
+        Map<String, String> authHeader = UdpAuthHeaderParser.parse(datagram);
+
+        assertThat(authHeader, hasEntry("sentry_key", "a=b"));
+    }
+
+    @Test
+    public void testParsingStartsAtBufferPosition() throws Exception {
+        ByteBuffer datagram = datagram("ignored,sentry_key=public\n\n{}");
+        datagram.position("ignored,".length());
+
+        Map<String, String> authHeader = UdpAuthHeaderParser.parse(datagram);
+
+        assertThat(authHeader.size(), is(1));
+        assertThat(authHeader, hasEntry("sentry_key", "public"));
+        assertThat(remaining(datagram), is("{}"));
+    }
+
+    @Test
+    public void testHeaderWithoutContent() throws Exception {
+        ByteBuffer datagram = datagram("sentry_key=public\n");
+
+        Map<String, String> authHeader = UdpAuthHeaderParser.parse(datagram);
+
+        assertThat(authHeader, hasEntry("sentry_key", "public"));
+        assertThat(datagram.hasRemaining(), is(false));
+    }
+}
@@ -0,0 +1,271 @@
+package net.kencochrane.raven.sentrystub.log;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class PayloadLogTest {
+    private File directory;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        directory = Files.createTempDir();
+    }
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    private static ByteBuffer payload(String content) {
+        return ByteBuffer.wrap(content.getBytes(Charsets.UTF_8));
+    }
+
+    private static File dataFile(File directory, long baseOffset) {
+        return new File(directory, String.format("%020d", baseOffset) + ".log");
+    }
+
+    @Test
+    public void testPayloadsReplayedInOrder() throws Exception {
+        PayloadLog payloadLog = new PayloadLog(directory, PayloadLog.DEFAULT_SEGMENT_SIZE);
+        ByteBuffer first = payload("first");
+
+        assertThat(payloadLog.append(Transport.HTTP, 42L, first), is(0L));
+        assertThat(payloadLog.append(Transport.UDP, 43L, payload("second")), is(1L));
+        RecordingHandler handler = new RecordingHandler();
+        long read = payloadLog.replay(0, handler);
+        payloadLog.close();
+
+        assertThat(read, is(2L));
+        assertThat(handler.offsets, contains(0L, 1L));
+        assertThat(handler.timestamps, contains(42L, 43L));
+        assertThat(handler.transports, contains(Transport.HTTP, Transport.UDP));
+        assertThat(handler.payloads, contains("first", "second"));
+        assertThat(first.remaining(), is("first".length()));
+    }
+
+    @Test
+    public void testReplayStartsAtOffset() throws Exception {
+        PayloadLog payloadLog = new PayloadLog(directory, PayloadLog.DEFAULT_SEGMENT_SIZE);
+        payloadLog.append(Transport.HTTP, 0L, payload("first"));
+        payloadLog.append(Transport.HTTP, 0L, payload("second"));
+        payloadLog.append(Transport.HTTP, 0L, payload("third"));
+
+        RecordingHandler handler = new RecordingHandler();
+        payloadLog.replay(1, handler);
+        payloadLog.close();
+
+        assertThat(handler.offsets, contains(1L, 2L));
+        assertThat(handler.payloads, contains("second", "third"));
+    }
+
+    @Test
+    public void testReplayStoppedByHandler() throws Exception {
+        PayloadLog payloadLog = new PayloadLog(directory, PayloadLog.DEFAULT_SEGMENT_SIZE);
+        payloadLog.append(Transport.HTTP, 0L, payload("first"));
+        payloadLog.append(Transport.HTTP, 0L, payload("second"));
+
+        RecordingHandler handler = new RecordingHandler(1);
+        long read = payloadLog.replay(0, handler);
+        payloadLog.close();
+
+        assertThat(read, is(1L));
+        assertThat(handler.payloads, contains("first"));
+    }
+
+    @Test
+    public void testReopenedLogKeepsPayloads() throws Exception {
+        PayloadLog payloadLog = new PayloadLog(directory, PayloadLog.DEFAULT_SEGMENT_SIZE);
+        payloadLog.append(Transport.HTTP, 0L, payload("first"));
+        payloadLog.close();
+
+        payloadLog = new PayloadLog(directory, PayloadLog.DEFAULT_SEGMENT_SIZE);
+        long offset = payloadLog.append(Transport.UDP, 0L, payload("second"));
+        RecordingHandler handler = new RecordingHandler();
+        payloadLog.replay(0, handler);
+        payloadLog.close();
+
+        assertThat(offset, is(1L));
+        assertThat(handler.payloads, contains("first", "second"));
+    }
+
+    @Test
+    public void testTruncatedRecordIgnoredWhenReopened() throws Exception {
+        PayloadLog payloadLog = new PayloadLog(directory, PayloadLog.DEFAULT_SEGMENT_SIZE);
+        payloadLog.append(Transport.HTTP, 0L, payload("first"));
+        payloadLog.append(Transport.HTTP, 0L, payload("second"));
+        payloadLog.close();
+        // A record whose payload was written but not its length, as if the process stopped meanwhile
+        int truncatedPosition = 2 * 13 + "first".length() + "second".length();
+        RandomAccessFile dataFile = new RandomAccessFile(dataFile(directory, 0), "rw");
+        try {
+            dataFile.seek(truncatedPosition + 4);
+            dataFile.writeLong(1L);
+            dataFile.write("truncated".getBytes(Charsets.UTF_8));
+        } finally {
+            dataFile.close();
+        }
+
+        payloadLog = new PayloadLog(directory, PayloadLog.DEFAULT_SEGMENT_SIZE);
+        assertThat(payloadLog.getNextOffset(), is(2L));
+        long offset = payloadLog.append(Transport.UDP, 0L, payload("third"));
+        RecordingHandler handler = new RecordingHandler();
+        payloadLog.replay(0, handler);
+        payloadLog.close();
+
+        assertThat(offset, is(2L));
+        assertThat(handler.offsets, contains(0L, 1L, 2L));
+        assertThat(handler.payloads, contains("first", "second", "third"));
+    }
+
+    @Test
+    public void testShortRecordAppendedOverTruncatedRecord() throws Exception {
+        PayloadLog payloadLog = new PayloadLog(directory, PayloadLog.DEFAULT_SEGMENT_SIZE);
+        payloadLog.append(Transport.HTTP, 0L, payload("first"));
+        payloadLog.close();
+        // A truncated record whose payload holds, right after a 2 bytes payload, a valid record length
+        int truncatedPosition = 13 + "first".length();
+        RandomAccessFile dataFile = new RandomAccessFile(dataFile(directory, 0), "rw");
+        try {
+            dataFile.seek(truncatedPosition + 4);
+            dataFile.writeLong(1L);
+            dataFile.writeByte(Transport.HTTP.ordinal());
+            dataFile.write(new byte[]{1, 1});
+            dataFile.writeInt(13);
+            dataFile.write(new byte[]{1, 1, 1, 1});
+        } finally {
+            dataFile.close();
+        }
+
+        payloadLog = new PayloadLog(directory, PayloadLog.DEFAULT_SEGMENT_SIZE);
+        payloadLog.append(Transport.UDP, 0L, payload("ab"));
+        payloadLog.close();
+        payloadLog = new PayloadLog(directory, PayloadLog.DEFAULT_SEGMENT_SIZE);
+        RecordingHandler handler = new RecordingHandler();
+        payloadLog.replay(0, handler);
+        long nextOffset = payloadLog.getNextOffset();
+        payloadLog.close();
+
+        assertThat(nextOffset, is(2L));
+        assertThat(handler.payloads, contains("first", "ab"));
+    }
+
+    @Test
+    public void testNewSegmentStartedWhenFull() throws Exception {
+        // Records of 13 + 17 bytes, three per segment
+        int segmentSize = 100;
+        PayloadLog payloadLog = new PayloadLog(directory, segmentSize);
+        List<String> contents = new ArrayList<String>();
+        for (int i = 0; i < 7; i++) {
+            String content = String.format("payload-%09d", i);
+            contents.add(content);
+            assertThat(payloadLog.append(Transport.HTTP, i, payload(content)), is((long) i));
+        }
+        RecordingHandler fromStart = new RecordingHandler();
+        payloadLog.replay(0, fromStart);
+        RecordingHandler acrossBoundary = new RecordingHandler();
+        payloadLog.replay(2, acrossBoundary);
+        payloadLog.close();
+
+        assertThat(dataFile(directory, 0).isFile(), is(true));
+        assertThat(dataFile(directory, 3).isFile(), is(true));
+        assertThat(dataFile(directory, 6).isFile(), is(true));
+        assertThat(dataFile(directory, 0).length(), is((long) segmentSize));
+        assertThat(fromStart.payloads, is(contents));
+        assertThat(fromStart.offsets, contains(0L, 1L, 2L, 3L, 4L, 5L, 6L));
+        assertThat(acrossBoundary.offsets, contains(2L, 3L, 4L, 5L, 6L));
+        assertThat(acrossBoundary.payloads, is(contents.subList(2, 7)));
+    }
+
+    @Test
+    public void testReopenedAfterSegmentBoundary() throws Exception {
+        int segmentSize = 100;
+        PayloadLog payloadLog = new PayloadLog(directory, segmentSize);
+        for (int i = 0; i < 4; i++) {
+            payloadLog.append(Transport.HTTP, i, payload(String.format("payload-%09d", i)));
+        }
+        payloadLog.close();
+
+        payloadLog = new PayloadLog(directory, segmentSize);
+        long offset = payloadLog.append(Transport.HTTP, 4L, payload("payload-000000004"));
+        RecordingHandler handler = new RecordingHandler();
+        payloadLog.replay(3, handler);
+        payloadLog.close();
+
+        assertThat(offset, is(4L));
+        assertThat(handler.payloads, contains("payload-000000003", "payload-000000004"));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testPayloadLargerThanSegmentRejected() throws Exception {
+        PayloadLog payloadLog = new PayloadLog(directory, 20);
+        try {
+            payloadLog.append(Transport.HTTP, 0L, payload("larger than the segment"));
+        } finally {
+            payloadLog.close();
+        }
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void testAppendAfterCloseFails() throws Exception {
+        PayloadLog payloadLog = new PayloadLog(directory, PayloadLog.DEFAULT_SEGMENT_SIZE);
+        payloadLog.close();
+
+        payloadLog.append(Transport.HTTP, 0L, payload("late"));
+    }
+
+    @Test
+    public void testCloseIsIdempotent() throws Exception {
+        PayloadLog payloadLog = new PayloadLog(directory, PayloadLog.DEFAULT_SEGMENT_SIZE);
+        payloadLog.append(Transport.HTTP, 0L, payload("first"));
+        payloadLog.close();
+
+        payloadLog.close();
+        payloadLog.flush();
+    }
+
+    private static final class RecordingHandler implements PayloadHandler {
+        private final int maxPayloads;
+        private final List<Long> offsets = new ArrayList<Long>();
+        private final List<Long> timestamps = new ArrayList<Long>();
+        private final List<Transport> transports = new ArrayList<Transport>();
+        private final List<String> payloads = new ArrayList<String>();
+
+        private RecordingHandler() {
+            this(Integer.MAX_VALUE);
+        }
+
+        private RecordingHandler(int maxPayloads) {
+            this.maxPayloads = maxPayloads;
+        }
+
+        @Override
+        public boolean handle(long offset, long timestamp, Transport transport, ByteBuffer payload) {
+            byte[] content = new byte[payload.remaining()];
+            payload.get(content);
+            offsets.add(offset);
+            timestamps.add(timestamp);
+            transports.add(transport);
+            payloads.add(new String(content, Charsets.UTF_8));
+            return payloads.size() < maxPayloads;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package net.kencochrane.raven.sentrystub.store;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.kencochrane.raven.sentrystub.event.Event;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class EventStoreTest {
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private static Event event(String eventId, String level, String logger, String checksum) {
+        Map<String, Object> content = new HashMap<String, Object>();
+        content.put("event_id", eventId);
+        content.put("timestamp", 0L);
+        content.put("level", level);
+        content.put("logger", logger);
+        content.put("checksum", checksum);
+        return OBJECT_MAPPER.convertValue(content, Event.class);
+    }
+
+    private static List<String> eventIds(List<Event> events) {
+        List<String> eventIds = new ArrayList<String>(events.size());
+        for (Event event : events) {
+            eventIds.add(event.getEventId());
+        }
+        return eventIds;
+    }
+
+    @DataProvider(name = "indexed")
+    public Object[][] indexedProvider() {
+        return new Object[][]{{true}, {false}};
+    }
+
+    @Test(dataProvider = "indexed")
+    public void testEventsKeptInOrder(boolean indexed) throws Exception {
+        EventStore eventStore = new EventStore(10, indexed);
+        eventStore.add(event("1", "error", "logger", "a"));
+        eventStore.add(event("2", "warning", "logger", "b"));
+
+        assertThat(eventStore.size(), is(2));
+        assertThat(eventStore.count(EventFilter.ALL), is(2));
+        assertThat(eventIds(eventStore.getEvents(EventFilter.ALL)), contains("1", "2"));
+    }
+
+    @Test(dataProvider = "indexed")
+    public void testOldestEventEvictedWhenFull(boolean indexed) throws Exception {
+        EventStore eventStore = new EventStore(3, indexed);
+        for (int i = 0; i < 5; i++) {
+            eventStore.add(event(String.valueOf(i), "error", "logger", "checksum"));
+        }
+
+        assertThat(eventStore.size(), is(3));
+        assertThat(eventStore.getEvictedCount(), is(2L));
+        assertThat(eventIds(eventStore.getEvents(EventFilter.ALL)), contains("2", "3", "4"));
+    }
+
+    @Test(dataProvider = "indexed")
+    public void testEventsFiltered(boolean indexed) throws Exception {
+        EventStore eventStore = new EventStore(10, indexed);
+        eventStore.add(event("1", "error", "first", "a"));
+        eventStore.add(event("2", "warning", "first", "b"));
+        eventStore.add(event("3", "error", "second", "a"));
+        eventStore.add(event("4", "error", "first", "a"));
+        eventStore.add(event("5", null, null, null));
+
+        EventFilter byLevelAndLogger = new EventFilter("error", "first", null);
+        EventFilter byChecksum = new EventFilter(null, null, "a");
+        EventFilter unknownLevel = new EventFilter("debug", null, null);
+
+        assertThat(eventStore.count(byLevelAndLogger), is(2));
+        assertThat(eventIds(eventStore.getEvents(byLevelAndLogger)), contains("1", "4"));
+        assertThat(eventStore.count(byChecksum), is(3));
+        assertThat(eventIds(eventStore.getEvents(byChecksum)), contains("1", "3", "4"));
+        assertThat(eventStore.count(unknownLevel), is(0));
+        assertThat(eventStore.getEvents(unknownLevel), is(empty()));
+    }
+
+    @Test(dataProvider = "indexed")
+    public void testEvictedEventsNotMatched(boolean indexed) throws Exception {
+        EventStore eventStore = new EventStore(2, indexed);
+        eventStore.add(event("1", "error", "logger", "a"));
+        eventStore.add(event("2", "warning", "logger", "b"));
+        eventStore.add(event("3", "warning", "logger", "b"));
+
+        assertThat(eventStore.count(new EventFilter("error", null, null)), is(0));
+        assertThat(eventIds(eventStore.getEvents(new EventFilter("warning", "logger", null))), contains("2", "3"));
+    }
+
+    @Test(dataProvider = "indexed")
+    public void testClearRemovesEveryEvent(boolean indexed) throws Exception {
+        EventStore eventStore = new EventStore(10, indexed);
+        eventStore.add(event("1", "error", "logger", "a"));
+        eventStore.add(event("2", "error", "logger", "a"));
+
+        eventStore.clear();
+        eventStore.add(event("3", "error", "logger", "a"));
+
+        assertThat(eventStore.size(), is(1));
+        assertThat(eventStore.getEvictedCount(), is(0L));
+        assertThat(eventIds(eventStore.getEvents(new EventFilter("error", null, null))), contains("3"));
+    }
+
+    @Test(dataProvider = "indexed")
+    public void testStreamSpansSeveralBatches(boolean indexed) throws Exception {
+        EventStore eventStore = new EventStore(1000, indexed);
+        List<String> expectedIds = new ArrayList<String>();
+        for (int i = 0; i < 600; i++) {
+            eventStore.add(event(String.valueOf(i), "error", "logger", "a"));
+            expectedIds.add(String.valueOf(i));
+        }
+
+        assertThat(eventIds(eventStore.getEvents(EventFilter.ALL)), is(expectedIds));
+        assertThat(eventIds(eventStore.getEvents(new EventFilter("error", null, null))), is(expectedIds));
+    }
+
+    @Test
+    public void testStreamStoppedByVisitor() throws Exception {
+        EventStore eventStore = new EventStore(10, true);
+        eventStore.add(event("1", "error", "logger", "a"));
+        eventStore.add(event("2", "error", "logger", "a"));
+        final List<Event> visited = new ArrayList<Event>();
+
+        eventStore.stream(EventFilter.ALL, new EventVisitor() {
+            @Override
+            public boolean visit(Event event) {
+                visited.add(event);
+                return false;
+            }
+        });
+
+        assertThat(eventIds(visited), contains("1"));
+    }
+
+    @Test(expectedExceptions = UnsupportedOperationException.class)
+    public void testEventsReturnedUnmodifiable() throws Exception {
+        EventStore eventStore = new EventStore(10, true);
+
+        eventStore.getEvents(EventFilter.ALL).add(event("1", "error", "logger", "a"));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidCapacityRejected() throws Exception {
+        new EventStore(0, true);
+    }
+}
@@ -0,0 +1,113 @@
+package net.kencochrane.raven.sentrystub.unmarshaller;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static com.google.common.io.BaseEncoding.base64;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class JsonDecoderTest {
+    private static final String JSON = "{\"message\":\"2f5b5cb4-c0a1-4d86-b4b1-5bbb3a2b1d3c\"}";
+    private JsonDecoder jsonDecoder;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        jsonDecoder = new JsonDecoder();
+    }
+
+    private static byte[] deflate(byte[] content) throws Exception {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        OutputStream outputStream = new DeflaterOutputStream(compressed);
+        outputStream.write(content);
+        outputStream.close();
+        return compressed.toByteArray();
+    }
+
+    private static byte[] gzip(byte[] content) throws Exception {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        OutputStream outputStream = new GZIPOutputStream(compressed);
+        outputStream.write(content);
+        outputStream.close();
+        return compressed.toByteArray();
+    }
+
+    private static byte[] base64Encode(byte[] content) {
+        return base64().encode(content).getBytes(Charsets.US_ASCII);
+    }
+
+    private String decode(byte[] content) throws Exception {
+        InputStream decodedStream = jsonDecoder.decapsulateContent(new ByteArrayInputStream(content));
+        return new String(ByteStreams.toByteArray(decodedStream), Charsets.UTF_8);
+    }
+
+    @Test
+    public void testJsonKeptAsIs() throws Exception {
+        assertThat(decode(JSON.getBytes(Charsets.UTF_8)), is(JSON));
+    }
+
+    @Test
+    public void testJsonStartingWithWhitespaceKeptAsIs() throws Exception {
+        String json = "\n  " + JSON;
+
+        assertThat(decode(json.getBytes(Charsets.UTF_8)), is(json));
+    }
+
+    @Test
+    public void testJsonArrayKeptAsIs() throws Exception {
+        String json = "[" + JSON + "]";
+
+        assertThat(decode(json.getBytes(Charsets.UTF_8)), is(json));
+    }
+
+    @Test
+    public void testDeflatedJsonInflated() throws Exception {
+        assertThat(decode(deflate(JSON.getBytes(Charsets.UTF_8))), is(JSON));
+    }
+
+    @Test
+    public void testGzippedJsonInflated() throws Exception {
+        assertThat(decode(gzip(JSON.getBytes(Charsets.UTF_8))), is(JSON));
+    }
+
+    @Test
+    public void testBase64JsonDecoded() throws Exception {
+        assertThat(decode(base64Encode(JSON.getBytes(Charsets.UTF_8))), is(JSON));
+    }
+
+    @Test
+    public void testBase64DeflatedJsonDecodedAndInflated() throws Exception {
+        assertThat(decode(base64Encode(deflate(JSON.getBytes(Charsets.UTF_8)))), is(JSON));
+    }
+
+    @Test
+    public void testBase64GzippedJsonDecodedAndInflated() throws Exception {
+        assertThat(decode(base64Encode(gzip(JSON.getBytes(Charsets.UTF_8)))), is(JSON));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testUnknownFormatRejected() throws Exception {
+        jsonDecoder.decapsulateContent(new ByteArrayInputStream("<event/>".getBytes(Charsets.UTF_8)));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testBase64OfUnknownFormatRejected() throws Exception {
+        byte[] content = base64Encode("<event/>".getBytes(Charsets.UTF_8));
+
+        jsonDecoder.decapsulateContent(new ByteArrayInputStream(content));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testEmptyStreamRejected() throws Exception {
+        jsonDecoder.decapsulateContent(new ByteArrayInputStream(new byte[0]));
+    }
+}